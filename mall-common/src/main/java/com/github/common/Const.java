@@ -60,6 +60,8 @@ public final class Const {
 
     /** pc 端传过来的 token 的 key */
     public static final String TOKEN = "X-t";
+    /** token 快要过期时, 返回新 token 的响应头 */
+    public static final String REFRESH_TOKEN = "X-rt";
     /** pc 端传过来的 version 的 key */
     public static final String VERSION = "X-v";
 
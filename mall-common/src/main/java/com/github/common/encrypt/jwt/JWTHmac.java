@@ -0,0 +1,52 @@
+package com.github.common.encrypt.jwt;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.naming.OperationNotSupportedException;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 签名和验证共用的 hmac 上下文.
+ *
+ * Mac.getInstance 每次都要去查找 provider(内部有同步), init 还要重新处理密钥, 高并发时很慢.
+ * 这里每个算法每个线程只初始化一次, doFinal 之后 Mac 会自动重置, 下次接着用
+ * </pre>
+ */
+final class JWTHmac {
+
+    /** base64url 编码, 不带 = 补位 */
+    static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    /** base64url 解码, 有没有 = 补位都可以 */
+    static final Base64.Decoder URL_DECODER = Base64.getUrlDecoder();
+
+    private final Map<Algorithm, ThreadLocal<Mac>> macs = new EnumMap<>(Algorithm.class);
+
+    JWTHmac(byte[] secret) {
+        byte[] key = secret.clone();
+        for (Algorithm algorithm : new Algorithm[] { Algorithm.HS256, Algorithm.HS384, Algorithm.HS512 }) {
+            String name = algorithm.getValue();
+            macs.put(algorithm, ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance(name);
+                    mac.init(new SecretKeySpec(key, name));
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("无法初始化 " + name, e);
+                }
+            }));
+        }
+    }
+
+    /** 当前线程的 Mac, 已经用密钥初始化过. 只支持 hmac */
+    Mac mac(Algorithm algorithm) throws OperationNotSupportedException {
+        ThreadLocal<Mac> mac = macs.get(algorithm);
+        if (mac == null) {
+            throw new OperationNotSupportedException("Unsupported signing method");
+        }
+        return mac.get();
+    }
+}
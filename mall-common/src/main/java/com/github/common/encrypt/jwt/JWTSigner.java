@@ -3,12 +3,8 @@ package com.github.common.encrypt.jwt;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.apache.commons.codec.binary.Base64;
 
 import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import javax.naming.OperationNotSupportedException;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
@@ -19,14 +15,27 @@ import java.util.*;
  * No support for RSA encryption at present
  */
 public class JWTSigner {
-    private final byte[] secret;
+    /** ObjectMapper 是线程安全的, 不需要每次都 new */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /** 头只跟算法有关, 编码好之后直接用 */
+    static final Map<Algorithm, byte[]> ENCODED_HEADERS = new EnumMap<>(Algorithm.class);
+    static {
+        for (Algorithm algorithm : Algorithm.values()) {
+            ObjectNode header = JsonNodeFactory.instance.objectNode();
+            header.put("typ", "JWT");
+            header.put("alg", algorithm.name());
+            ENCODED_HEADERS.put(algorithm, JWTHmac.URL_ENCODER.encode(header.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private final JWTHmac hmac;
 
     public JWTSigner(String secret) {
         this(secret.getBytes());
     }
 
     public JWTSigner(byte[] secret) {
-        this.secret = secret;
+        this.hmac = new JWTHmac(secret);
     }
 
     /**
@@ -54,16 +63,24 @@ public class JWTSigner {
             algorithm = options.getAlgorithm();
         }
 
-        List<String> segments = new ArrayList<>();
         try {
-            segments.add(encodedHeader(algorithm));
-            segments.add(encodedPayload(claims, options));
-            segments.add(encodedSignature(join(segments, "."), algorithm));
+            byte[] header = encodedHeader(algorithm);
+            byte[] payload = encodedPayload(claims, options);
+
+            // header.payload.signature 都是 ascii, 直接在字节上拼接, 签名的也是这段字节
+            int signingLength = header.length + 1 + payload.length;
+            byte[] token = new byte[signingLength + 1 + encodedSignatureLength(algorithm)];
+            System.arraycopy(header, 0, token, 0, header.length);
+            token[header.length] = '.';
+            System.arraycopy(payload, 0, token, header.length + 1, payload.length);
+            token[signingLength] = '.';
+
+            byte[] signature = encodedSignature(token, signingLength, algorithm);
+            System.arraycopy(signature, 0, token, signingLength + 1, signature.length);
+            return new String(token, StandardCharsets.ISO_8859_1);
         } catch (Exception e) {
             throw (e instanceof RuntimeException) ? (RuntimeException) e : new RuntimeException(e);
         }
-
-        return join(segments, ".");
     }
 
     /**
@@ -77,23 +94,17 @@ public class JWTSigner {
     /**
      * Generate the header part of a JSON web token.
      */
-    private String encodedHeader(Algorithm algorithm) throws UnsupportedEncodingException {
+    private byte[] encodedHeader(Algorithm algorithm) {
         if (algorithm == null) { // default the algorithm if not specified
             algorithm = Algorithm.HS256;
         }
-
-        // create the header
-        ObjectNode header = JsonNodeFactory.instance.objectNode();
-        header.put("typ", "JWT");
-        header.put("alg", algorithm.name());
-
-        return base64UrlEncode(header.toString().getBytes(StandardCharsets.UTF_8));
+        return ENCODED_HEADERS.get(algorithm);
     }
 
     /**
      * Generate the JSON web token payload string from the claims.
      */
-    private String encodedPayload(Map<String, Object> _claims, Options options) throws Exception {
+    private byte[] encodedPayload(Map<String, Object> _claims, Options options) throws Exception {
         Map<String, Object> claims = new HashMap<>(_claims);
         enforceStringOrURI(claims, "iss");
         enforceStringOrURI(claims, "sub");
@@ -107,8 +118,7 @@ public class JWTSigner {
             processPayloadOptions(claims, options);
         }
 
-        String payload = new ObjectMapper().writeValueAsString(claims);
-        return base64UrlEncode(payload.getBytes(StandardCharsets.UTF_8));
+        return JWTHmac.URL_ENCODER.encode(MAPPER.writeValueAsBytes(claims));
     }
 
     private void processPayloadOptions(Map<String, Object> claims, Options options) {
@@ -212,57 +222,18 @@ public class JWTSigner {
     /**
      * Sign the header and payload
      */
-    private String encodedSignature(String signingInput, Algorithm algorithm) throws Exception {
-        byte[] signature = sign(algorithm, signingInput, secret);
-        return base64UrlEncode(signature);
-    }
-
-    /**
-     * Safe URL encode a byte array to a String
-     */
-    private String base64UrlEncode(byte[] str) {
-        return new String(Base64.encodeBase64URLSafe(str));
+    private byte[] encodedSignature(byte[] token, int signingLength, Algorithm algorithm) throws Exception {
+        Mac mac = hmac.mac(algorithm);
+        mac.update(token, 0, signingLength);
+        return JWTHmac.URL_ENCODER.encode(mac.doFinal());
     }
 
     /**
-     * Switch the signing algorithm based on input, RSA not supported
+     * Length of the base64url (no padding) encoded signature, RSA not supported
      */
-    private static byte[] sign(Algorithm algorithm, String msg, byte[] secret) throws Exception {
-        switch (algorithm) {
-        case HS256:
-        case HS384:
-        case HS512:
-            return signHmac(algorithm, msg, secret);
-        case RS256:
-        case RS384:
-        case RS512:
-        default:
-            throw new OperationNotSupportedException("Unsupported signing method");
-        }
-    }
-
-    /**
-     * Sign an input string using HMAC and return the encrypted bytes
-     */
-    private static byte[] signHmac(Algorithm algorithm, String msg, byte[] secret) throws Exception {
-        Mac mac = Mac.getInstance(algorithm.getValue());
-        mac.init(new SecretKeySpec(secret, algorithm.getValue()));
-        return mac.doFinal(msg.getBytes());
-    }
-
-    private String join(List<String> input, String on) {
-        int size = input.size();
-        int count = 1;
-        StringBuilder joined = new StringBuilder();
-        for (String string : input) {
-            joined.append(string);
-            if (count < size) {
-                joined.append(on);
-            }
-            count++;
-        }
-
-        return joined.toString();
+    private int encodedSignatureLength(Algorithm algorithm) throws Exception {
+        int length = hmac.mac(algorithm).getMacLength();
+        return (length * 4 + 2) / 3;
     }
 
     /**
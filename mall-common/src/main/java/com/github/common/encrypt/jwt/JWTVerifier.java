@@ -2,16 +2,17 @@ package com.github.common.encrypt.jwt;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang3.math.NumberUtils;
 
 import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import javax.naming.OperationNotSupportedException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,14 +24,15 @@ public class JWTVerifier {
 
     public static final String EXP = "exp";
 
-    private final byte[] secret;
+    private final JWTHmac hmac;
     private final String audience;
     private final String issuer;
-    private final Base64 decoder = new Base64(true);
 
     private final ObjectMapper mapper;
 
-    private Map<String, String> algorithms;
+    private Map<String, Algorithm> algorithms;
+    /** 自己签发的 token 头只有这几种(编码后的), 匹配上就不用再解析 json */
+    private Map<String, Algorithm> encodedHeaders;
 
     public JWTVerifier(String secret, String audience, String issuer) {
         this(secret.getBytes(StandardCharsets.UTF_8), audience, issuer);
@@ -52,11 +54,16 @@ public class JWTVerifier {
     	mapper = new ObjectMapper();
 
         algorithms = new HashMap<>();
-        algorithms.put("HS256", "HmacSHA256");
-        algorithms.put("HS384", "HmacSHA384");
-        algorithms.put("HS512", "HmacSHA512");
+        algorithms.put("HS256", Algorithm.HS256);
+        algorithms.put("HS384", Algorithm.HS384);
+        algorithms.put("HS512", Algorithm.HS512);
 
-        this.secret = secret;
+        encodedHeaders = new HashMap<>();
+        for (Algorithm algorithm : algorithms.values()) {
+            encodedHeaders.put(new String(JWTSigner.ENCODED_HEADERS.get(algorithm), StandardCharsets.ISO_8859_1), algorithm);
+        }
+
+        this.hmac = new JWTHmac(secret);
         this.audience = audience;
         this.issuer = issuer;
     }
@@ -77,81 +84,109 @@ public class JWTVerifier {
             throw new IllegalStateException("token not set");
         }
 
-        String[] pieces = token.split("\\.");
-
-        // check number of segments
-        if (pieces.length != 3) {
-            throw new IllegalStateException("Wrong number of segments: " + pieces.length);
+        // 只找两个点的位置, 不切分字符串
+        int first = token.indexOf('.');
+        int second = (first < 0) ? -1 : token.indexOf('.', first + 1);
+        if (second < 0 || second == token.length() - 1 || token.indexOf('.', second + 1) >= 0) {
+            // check number of segments
+            throw new IllegalStateException("Wrong number of segments: " + token.split("\\.").length);
         }
+        // token 是 base64url 编码的, 都是 ascii
+        byte[] bytes = token.getBytes(StandardCharsets.ISO_8859_1);
 
         // get JWTHeader JSON object. Extract algorithm
-        JsonNode jwtHeader = decodeAndParse(pieces[0]);
+        Algorithm algorithm = null;
+        for (Map.Entry<String, Algorithm> entry : encodedHeaders.entrySet()) {
+            String header = entry.getKey();
+            if (header.length() == first && token.startsWith(header)) {
+                algorithm = entry.getValue();
+                break;
+            }
+        }
+        if (algorithm == null) {
+            algorithm = getAlgorithm(decodeAndParse(bytes, 0, first));
+        }
 
-        String algorithm = getAlgorithm(jwtHeader);
+        // check signature, before parsing the payload
+        verifySignature(bytes, second, algorithm);
 
         // get JWTClaims JSON object
-        JsonNode jwtPayload = decodeAndParse(pieces[1]);
-
-        // check signature
-        verifySignature(pieces, algorithm);
+        ByteBuffer payload = JWTHmac.URL_DECODER.decode(ByteBuffer.wrap(bytes, first + 1, second - first - 1));
+        Map<String, Object> jwtPayload = mapper.readValue(payload.array(), payload.arrayOffset() + payload.position(),
+                payload.remaining(), Map.class);
 
         // additional JWTClaims checks
         verifyExpiration(jwtPayload);
         verifyIssuer(jwtPayload);
         verifyAudience(jwtPayload);
 
-        return mapper.treeToValue(jwtPayload, Map.class);
+        return jwtPayload;
     }
 
-    void verifySignature(String[] pieces, String algorithm) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-        Mac hmac = Mac.getInstance(algorithm);
-        hmac.init(new SecretKeySpec(secret, algorithm));
-        byte[] sig = hmac.doFinal((pieces[0] + "." + pieces[1]).getBytes());
-
-        if (!MessageDigest.isEqual(sig, decoder.decode(pieces[2]))) {
+    /** 对 header.payload 签名后编码, 和 token 中的签名按字节比较(比较时间和内容无关) */
+    void verifySignature(byte[] token, int second, Algorithm algorithm) throws SignatureException {
+        Mac mac;
+        try {
+            mac = hmac.mac(algorithm);
+        } catch (OperationNotSupportedException e) {
+            throw new IllegalStateException("unsupported algorithm");
+        }
+        mac.update(token, 0, second);
+        byte[] sig = JWTHmac.URL_ENCODER.encode(mac.doFinal());
+
+        int offset = second + 1;
+        int diff = sig.length ^ (token.length - offset);
+        for (int i = 0; i < sig.length; i++) {
+            int index = offset + i;
+            diff |= sig[i] ^ ((index < token.length) ? token[index] : 0);
+        }
+        if (diff != 0) {
             throw new SignatureException("signature verification failed");
         }
     }
 
-    void verifyExpiration(JsonNode jwtClaims) throws JWTExpiredException {
-        final long expiration = jwtClaims.has(EXP) ? jwtClaims.get(EXP).asLong(0) : 0;
+    void verifyExpiration(Map<String, Object> jwtClaims) throws JWTExpiredException {
+        Object exp = jwtClaims.get(EXP);
+        final long expiration = (exp instanceof Number) ? ((Number) exp).longValue()
+                : ((exp instanceof String) ? NumberUtils.toLong((String) exp, 0) : 0);
 
         if (expiration != 0 && System.currentTimeMillis() >= expiration) {
             throw new JWTExpiredException("jwt expired", expiration);
         }
     }
 
-    void verifyIssuer(JsonNode jwtClaims) throws JWTIssuerException {
-        final String issuerFromToken = jwtClaims.has("iss") ? jwtClaims.get("iss").asText() : null;
+    void verifyIssuer(Map<String, Object> jwtClaims) throws JWTIssuerException {
+        Object iss = jwtClaims.get("iss");
+        final String issuerFromToken = (iss != null) ? iss.toString() : null;
 
         if (issuerFromToken != null && issuer != null && !issuer.equals(issuerFromToken)) {
             throw new JWTIssuerException("jwt issuer invalid", issuerFromToken);
         }
     }
 
-    void verifyAudience(JsonNode jwtClaims) throws JWTAudienceException {
+    void verifyAudience(Map<String, Object> jwtClaims) throws JWTAudienceException {
         if (audience == null) {
             return;
         }
-        JsonNode audNode = jwtClaims.get("aud");
-        if (audNode == null) {
+        Object aud = jwtClaims.get("aud");
+        if (aud == null) {
             return;
         }
-        if (audNode.isArray()) {
-            for (JsonNode jsonNode : audNode) {
-                if (audience.equals(jsonNode.textValue())) {
+        if (aud instanceof Collection) {
+            for (Object value : (Collection<?>) aud) {
+                if (audience.equals(value)) {
                     return;
                 }
             }
-        } else if (audNode.isTextual()) {
-            if (audience.equals(audNode.textValue())) {
+        } else if (aud instanceof String) {
+            if (audience.equals(aud)) {
                 return;
             }
         }
-        throw new JWTAudienceException("jwt audience invalid", audNode);
+        throw new JWTAudienceException("jwt audience invalid", mapper.valueToTree(aud));
     }
 
-    String getAlgorithm(JsonNode jwtHeader) {
+    Algorithm getAlgorithm(JsonNode jwtHeader) {
         final String algorithmName = jwtHeader.has("alg") ? jwtHeader.get("alg").asText() : null;
 
         if (jwtHeader.get("alg") == null) {
@@ -165,7 +200,8 @@ public class JWTVerifier {
         return algorithms.get(algorithmName);
     }
 
-    JsonNode decodeAndParse(String b64String) throws IOException {
-        return mapper.readValue(new String(decoder.decode(b64String), StandardCharsets.UTF_8), JsonNode.class);
+    JsonNode decodeAndParse(byte[] token, int offset, int length) throws IOException {
+        ByteBuffer json = JWTHmac.URL_DECODER.decode(ByteBuffer.wrap(token, offset, length));
+        return mapper.readTree(json.array(), json.arrayOffset() + json.position(), json.remaining());
     }
 }
@@ -1,15 +1,42 @@
 package com.github.common.export;
 
 import com.google.common.collect.Maps;
+import com.github.common.date.DateFormatType;
+import com.github.common.date.DateUtil;
 import com.github.common.util.A;
 import com.github.common.util.U;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 
+import java.lang.invoke.*;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 final class ExportColumnHandler {
 
+    /** 编译好的取值器: 类 -> { 字段说明(属性名|日期格式) -> 取值器 } */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Accessor>> ACCESSOR_CACHE = new ConcurrentHashMap<>();
+    /** 取原始值的取值器: 类 -> { 字段说明 -> 取值器 } */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, ValueGetter>> VALUE_CACHE = new ConcurrentHashMap<>();
+    /** 枚举每个值导出时的内容, 下标是 ordinal */
+    private static final ConcurrentMap<Class<?>, String[]> ENUM_CACHE = new ConcurrentHashMap<>();
+    /** 导入时的赋值器: 类 -> { 标题说明或属性名 -> 赋值器 } */
+    private static final ConcurrentMap<Class<?>, Map<String, Setter>> SETTER_CACHE = new ConcurrentHashMap<>();
+    /** 日期格式 -> 格式化器 */
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTER_CACHE = new ConcurrentHashMap<>();
+
+    private static final DateTimeFormatter DEFAULT_FORMATTER =
+            DateTimeFormat.forPattern(DateFormatType.YYYY_MM_DD_HH_MM_SS.getValue());
+
     /** 从类上收集导出的标题(在字段上标的 &#064;ExportColumn 注解) */
     static LinkedHashMap<String, String> collectTitle(Class clazz) {
         LinkedHashMap<String, String> titleMap = Maps.newLinkedHashMap();
@@ -37,4 +64,406 @@ final class ExportColumnHandler {
         }
         return titleMap;
     }
+
+    /**
+     * 一列的取值器, 和 {@link U#getField(Object, String)} 的结果一致:
+     * 枚举调用其 getValue 方法(没有值则使用枚举的 name), 日期按字段说明中的格式格式化, 空值返回空字符串
+     */
+    @FunctionalInterface
+    interface Accessor {
+        String get(Object data);
+    }
+
+    /**
+     * 一行数据的取值器. 每列的取值器按类编译一次后缓存, 导出时不再反射, 也不再每个单元格都去拆分字段说明.
+     * 同一次导出中数据的类型变化时才重新去缓存中取, 非线程安全, 每次导出 new 一个
+     */
+    static final class RowAccessor {
+        private final String[] fields;
+        private Class<?> dataClass;
+        private Accessor[] accessors;
+
+        /** @param fields 字段说明(属性名|日期格式), 也就是标题中的 key */
+        RowAccessor(String[] fields) {
+            this.fields = fields;
+        }
+
+        /** 返回当前行每列的取值器, 下标和字段说明一致 */
+        Accessor[] of(Object data) {
+            Class<?> clazz = data.getClass();
+            if (clazz != dataClass) {
+                accessors = compile(clazz, fields);
+                dataClass = clazz;
+            }
+            return accessors;
+        }
+    }
+
+    /** 一列的原始值, 不转换成字符串, 空值或 get 方法异常时返回 null. 列式导出时用到 */
+    @FunctionalInterface
+    interface ValueGetter {
+        Object get(Object data);
+    }
+
+    /** 和 {@link RowAccessor} 一样, 只是取的是原始值. 非线程安全, 每次导出 new 一个 */
+    static final class RowValues {
+        private final String[] fields;
+        private Class<?> dataClass;
+        private ValueGetter[] getters;
+
+        /** @param fields 字段说明(属性名|日期格式), 也就是标题中的 key */
+        RowValues(String[] fields) {
+            this.fields = fields;
+        }
+
+        /** 返回当前行每列的取值器, 下标和字段说明一致 */
+        ValueGetter[] of(Object data) {
+            Class<?> clazz = data.getClass();
+            if (clazz != dataClass) {
+                ConcurrentMap<String, ValueGetter> classCache = VALUE_CACHE.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>());
+                ValueGetter[] array = new ValueGetter[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    array[i] = classCache.computeIfAbsent(fields[i], field -> compileValue(clazz, field));
+                }
+                getters = array;
+                dataClass = clazz;
+            }
+            return getters;
+        }
+    }
+
+    /**
+     * 字段的声明类型(get 方法的返回类型, 基本类型会转成包装类型),
+     * map 或者没有 get 方法时返回 Object, 此时只能在导出时看值的类型
+     */
+    static Class<?> valueType(Class<?> clazz, String field) {
+        if (Map.class.isAssignableFrom(clazz)) {
+            return Object.class;
+        }
+        try {
+            Class<?> type = clazz.getMethod(U.fieldToMethod(field.split("\\|")[0])).getReturnType();
+            return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+        } catch (NoSuchMethodException e) {
+            return Object.class;
+        }
+    }
+
+    private static ValueGetter compileValue(Class<?> clazz, String field) {
+        String name = field.split("\\|")[0];
+        if (Map.class.isAssignableFrom(clazz)) {
+            return data -> ((Map) data).get(name);
+        }
+        Function<Object, Object> getter;
+        try {
+            getter = getter(clazz, clazz.getMethod(U.fieldToMethod(name)));
+        } catch (NoSuchMethodException e) {
+            getter = null;
+        }
+        if (getter == null) {
+            return data -> null;
+        }
+        Function<Object, Object> function = getter;
+        return data -> invoke(function, data);
+    }
+
+    /**
+     * 导入时一列的赋值器: 把单元格的内容转换成字段的类型后调用 set 方法.
+     * 内容不能转换成字段的类型时抛出 IllegalArgumentException, 异常信息可以直接给用户看
+     */
+    @FunctionalInterface
+    interface Setter {
+        void set(Object data, String value);
+    }
+
+    /**
+     * 导入时用到: 标题说明(&#064;ExportColumn 中 | 前面的部分)和属性名 -> 赋值器, 按类编译一次后缓存.
+     * 日期按注解上的格式解析, 解析不了再按常用的格式试; 枚举可以是导出时的内容(getValue)也可以是 name
+     */
+    static Map<String, Setter> setters(Class<?> clazz) {
+        return SETTER_CACHE.computeIfAbsent(clazz, c -> {
+            Map<String, Setter> setterMap = new HashMap<>();
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                    continue;
+                }
+                Setter setter = compileSetter(c, field);
+                if (setter == null) {
+                    continue;
+                }
+                setterMap.put(field.getName(), setter);
+                ExportColumn column = field.getAnnotation(ExportColumn.class);
+                if (column != null && U.isNotBlank(column.value())) {
+                    setterMap.put(column.value().split("\\|")[0].trim(), setter);
+                }
+            }
+            return setterMap;
+        });
+    }
+
+    private static Setter compileSetter(Class<?> clazz, Field field) {
+        String name = field.getName();
+        MethodHandle handle;
+        try {
+            Method method = clazz.getMethod("set" + name.substring(0, 1).toUpperCase() + name.substring(1), field.getType());
+            if (!Modifier.isPublic(clazz.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            handle = MethodHandles.lookup().unreflect(method)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+        } catch (Exception e) {
+            // 没有 set 方法的字段不导入
+            return null;
+        }
+
+        ExportColumn column = field.getAnnotation(ExportColumn.class);
+        String title = (column != null && U.isNotBlank(column.value())) ? column.value().split("\\|")[0].trim() : name;
+        Function<String, Object> converter = converter(field, title);
+        return (data, value) -> {
+            Object obj = converter.apply(value);
+            try {
+                handle.invokeExact(data, obj);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    /** 单元格内容到字段类型的转换. 数字允许带千分位的逗号, 整数类型的字段不允许有小数 */
+    private static Function<String, Object> converter(Field field, String title) {
+        Class<?> type = field.getType();
+        if (type == String.class) {
+            return value -> value;
+        }
+        Class<?> wrap = type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+        if (Number.class.isAssignableFrom(wrap)) {
+            return value -> {
+                BigDecimal decimal;
+                try {
+                    decimal = new BigDecimal(value.replace(",", ""));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("%s(%s)不是数字", title, value));
+                }
+                try {
+                    if (wrap == Integer.class) {
+                        return decimal.intValueExact();
+                    } else if (wrap == Long.class) {
+                        return decimal.longValueExact();
+                    } else if (wrap == Short.class) {
+                        return decimal.shortValueExact();
+                    } else if (wrap == Byte.class) {
+                        return decimal.byteValueExact();
+                    } else if (wrap == Double.class) {
+                        return decimal.doubleValue();
+                    } else if (wrap == Float.class) {
+                        return decimal.floatValue();
+                    } else if (wrap == BigDecimal.class) {
+                        return decimal;
+                    }
+                } catch (ArithmeticException e) {
+                    throw new IllegalArgumentException(String.format("%s(%s)不是整数或超出了范围", title, value));
+                }
+                throw new IllegalArgumentException(String.format("%s 不支持导入", title));
+            };
+        } else if (wrap == Boolean.class) {
+            return value -> {
+                if ("true".equalsIgnoreCase(value) || "1".equals(value) || "是".equals(value)) {
+                    return Boolean.TRUE;
+                } else if ("false".equalsIgnoreCase(value) || "0".equals(value) || "否".equals(value)) {
+                    return Boolean.FALSE;
+                }
+                throw new IllegalArgumentException(String.format("%s(%s)只能是 是 或 否", title, value));
+            };
+        } else if (Date.class.isAssignableFrom(type)) {
+            ExportColumn column = field.getAnnotation(ExportColumn.class);
+            DateTimeFormatter formatter = (column == null) ? DEFAULT_FORMATTER : formatter(column.dateFormat().getValue());
+            return value -> {
+                try {
+                    return formatter.parseDateTime(value).toDate();
+                } catch (IllegalArgumentException e) {
+                    Date date = DateUtil.parse(value);
+                    if (date == null) {
+                        throw new IllegalArgumentException(String.format("%s(%s)不是时间", title, value));
+                    }
+                    return date;
+                }
+            };
+        } else if (type.isEnum()) {
+            Object[] constants = type.getEnumConstants();
+            String[] values = enumValues(type);
+            return value -> {
+                for (int i = 0; i < constants.length; i++) {
+                    if (value.equals(values[i]) || value.equalsIgnoreCase(((Enum) constants[i]).name())) {
+                        return constants[i];
+                    }
+                }
+                throw new IllegalArgumentException(String.format("%s(%s)不是可选的值", title, value));
+            };
+        } else {
+            return value -> {
+                throw new IllegalArgumentException(String.format("%s 不支持导入", title));
+            };
+        }
+    }
+
+    /** 返回类中每个字段说明对应的取值器, 没有编译过的编译后放入缓存 */
+    static Accessor[] compile(Class<?> clazz, String[] fields) {
+        ConcurrentMap<String, Accessor> classCache = ACCESSOR_CACHE.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>());
+        Accessor[] accessors = new Accessor[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            accessors[i] = classCache.computeIfAbsent(fields[i], field -> compile(clazz, field));
+        }
+        return accessors;
+    }
+
+    private static Accessor compile(Class<?> clazz, String field) {
+        String[] split = field.split("\\|");
+        String name = split[0];
+        DateTimeFormatter formatter = (split.length > 1 && U.isNotBlank(split[1])) ? formatter(split[1]) : DEFAULT_FORMATTER;
+        if (Map.class.isAssignableFrom(clazz)) {
+            return data -> toStr(((Map) data).get(name), formatter);
+        }
+
+        Method method = method(clazz, U.fieldToMethod(name));
+        if (method == null) {
+            // 没有对应的 get 方法时导出空
+            return data -> U.EMPTY;
+        }
+        Function<Object, Object> getter = getter(clazz, method);
+        if (getter == null) {
+            return data -> U.EMPTY;
+        }
+
+        Class<?> type = method.getReturnType();
+        if (Date.class.isAssignableFrom(type)) {
+            return data -> {
+                Date value = (Date) invoke(getter, data);
+                return (value == null) ? U.EMPTY : formatter.print(value.getTime());
+            };
+        } else if (type.isEnum()) {
+            String[] values = enumValues(type);
+            return data -> {
+                Enum value = (Enum) invoke(getter, data);
+                return (value == null) ? U.EMPTY : values[value.ordinal()];
+            };
+        } else if (type.isAssignableFrom(Date.class) || type.isAssignableFrom(Enum.class)) {
+            // 返回 Object 之类的宽泛类型时, 导出时再看值的类型
+            return data -> toStr(invoke(getter, data), formatter);
+        } else {
+            return data -> toStr(invoke(getter, data));
+        }
+    }
+
+    /** 和 {@link U#getMethod(Object, String, Object...)} 一样先找类自己声明的方法(非公有的也可以), 再找公有方法(含父类的) */
+    private static Method method(Class<?> clazz, String name) {
+        try {
+            Method method = clazz.getDeclaredMethod(name);
+            if (!Modifier.isPublic(method.getModifiers())) {
+                method.setAccessible(true);
+            }
+            return method;
+        } catch (NoSuchMethodException | SecurityException e) {
+            try {
+                return clazz.getMethod(name);
+            } catch (NoSuchMethodException | SecurityException ex) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 公有类的公有方法并且和当前类在同一个类加载器可见时生成 lambda, 调用和直接调用 get 方法一样快,
+     * 否则用 MethodHandle 调用, 依然比反射快. 都失败时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(Class<?> clazz, Method method) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle;
+        try {
+            if (!Modifier.isPublic(clazz.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            handle = lookup.unreflect(method);
+        } catch (Exception e) {
+            return null;
+        }
+
+        if (Modifier.isPublic(clazz.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers())
+                && Modifier.isPublic(method.getModifiers()) && visible(clazz)) {
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class), MethodType.methodType(Object.class, Object.class),
+                        handle, handle.type().wrap().changeParameterType(0, clazz));
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable e) {
+                // 生成失败时退回到 MethodHandle
+            }
+        }
+        MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return data -> {
+            try {
+                return (Object) generic.invokeExact(data);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    /** 生成的 lambda 在当前类的加载器中解析目标类, 目标类是别的加载器(比如热加载)加载的就不能生成 */
+    private static boolean visible(Class<?> clazz) {
+        try {
+            return Class.forName(clazz.getName(), false, ExportColumnHandler.class.getClassLoader()) == clazz;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /** 和 {@link U#getMethod(Object, String, Object...)} 一样, get 方法抛出的异常被忽略, 当成空值 */
+    private static Object invoke(Function<Object, Object> getter, Object data) {
+        try {
+            return getter.apply(data);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static DateTimeFormatter formatter(String pattern) {
+        return FORMATTER_CACHE.computeIfAbsent(pattern, DateTimeFormat::forPattern);
+    }
+
+    /** 枚举每个值导出时的内容: 调用其 getValue 方法, getValue 没有值则使用枚举的 name */
+    static String[] enumValues(Class<?> enumClass) {
+        return ENUM_CACHE.computeIfAbsent(enumClass, c -> {
+            Object[] constants = c.getEnumConstants();
+            String[] values = new String[constants.length];
+            for (int i = 0; i < constants.length; i++) {
+                Object enumValue = U.getMethod(constants[i], "getValue");
+                values[i] = U.getNil(enumValue != null ? enumValue : constants[i]);
+            }
+            return values;
+        });
+    }
+
+    /** 类型在导出时才知道的值 */
+    private static String toStr(Object value, DateTimeFormatter formatter) {
+        if (value instanceof Date) {
+            return formatter.print(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            return enumValues(((Enum) value).getDeclaringClass())[((Enum) value).ordinal()];
+        } else {
+            return toStr(value);
+        }
+    }
+
+    /** 和 {@link U#getNil(Object)} 一样, 只调用一次 toString */
+    private static String toStr(Object value) {
+        if (value == null) {
+            return U.EMPTY;
+        }
+        String str = value.toString().trim();
+        return (str.isEmpty() || "null".equalsIgnoreCase(str)) ? U.EMPTY : str;
+    }
 }
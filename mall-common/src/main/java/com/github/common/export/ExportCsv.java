@@ -1,48 +1,107 @@
 package com.github.common.export;
 
-import com.github.common.util.U;
 import com.github.common.util.A;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
-
-/** 如果想要将数据导成文件保持, 使用 {@link FileExport} 类, 如果要导出文件在 web 端下载, 使用 {@link WebExport} 类 */
-final class ExportCsv {
-
-    static String getContent(LinkedHashMap<String, String> titleMap, List<?> dataList) {
-        if (A.isNotEmpty(titleMap) && A.isNotEmpty(dataList)) {
-            // csv 用英文逗号(,)隔开列, 用换行(\n)隔开行, 内容中包含了逗号的需要用双引号包裹, 若内容中包含了双引号则需要用两个双引号表示.
-            StringBuilder sbd = new StringBuilder();
-            int i = 0;
-            for (String title : titleMap.values()) {
-                sbd.append(handleCsvContent(title.split("\\|")[0]));
-                i++;
-                if (i != titleMap.size()) {
-                    sbd.append(",");
-                }
+
+/**
+ * <pre>
+ * 如果想要将数据导成文件保持, 使用 {@link FileExport} 类, 如果要导出文件在 web 端下载, 使用 {@link WebExport} 类
+ *
+ * csv 的输出可以在启动时设置:
+ *   {@link #setBom(boolean)}  文件开头是否写入 utf-8 的 BOM, 不写时 windows 上的 excel 直接打开中文会乱码
+ *   {@link #setGzip(boolean)} web 导出时, 客户端支持的话是否使用 gzip 传输
+ * </pre>
+ */
+public final class ExportCsv {
+
+    /** utf-8 的 BOM */
+    private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    /** 写入时的缓冲大小 */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static volatile boolean bom = false;
+    private static volatile boolean gzip = false;
+
+    /** 文件开头是否写入 utf-8 的 BOM, 默认不写 */
+    public static void setBom(boolean bom) {
+        ExportCsv.bom = bom;
+    }
+    /** web 导出时, 客户端支持的话是否使用 gzip 传输, 默认不使用 */
+    public static void setGzip(boolean gzip) {
+        ExportCsv.gzip = gzip;
+    }
+    static boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * 一边迭代一边写到输出流, 内存中只有当前行. 没有数据或没有标题时什么都不写(内容为空的文件).
+     * 标题行写完后就刷一次, 不论数据有多少, 客户端都能马上收到内容
+     */
+    static void write(LinkedHashMap<String, String> titleMap, Iterator<?> dataIterator,
+                      OutputStream outputStream) throws IOException {
+        if (A.isEmpty(titleMap) || dataIterator == null || !dataIterator.hasNext()) {
+            return;
+        }
+
+        if (bom) {
+            outputStream.write(BOM);
+        }
+        // csv 用英文逗号(,)隔开列, 用换行(\n)隔开行, 内容中包含了逗号的需要用双引号包裹, 若内容中包含了双引号则需要用两个双引号表示.
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        String[] fields = titleMap.keySet().toArray(new String[0]);
+        int i = 0;
+        for (String title : titleMap.values()) {
+            if (i > 0) {
+                writer.write(',');
             }
-            if (A.isNotEmpty(dataList)) {
-                for (Object data : dataList) {
-                    if (sbd.length() > 0) {
-                        sbd.append("\n");
-                    }
-                    i = 0;
-                    for (String title : titleMap.keySet()) {
-                        sbd.append(handleCsvContent(U.getField(data, title)));
-                        i++;
-                        if (i != titleMap.size()) {
-                            sbd.append(",");
-                        }
-                    }
+            // 标题说明|数字格式|宽度, 只输出标题说明
+            int end = title.indexOf('|');
+            writeCell(writer, title, (end < 0) ? title.length() : end);
+            i++;
+        }
+        writer.flush();
+
+        // 每列的取值器按类编译好, 不再每个单元格都去反射
+        ExportColumnHandler.RowAccessor rowAccessor = new ExportColumnHandler.RowAccessor(fields);
+        while (dataIterator.hasNext()) {
+            Object data = dataIterator.next();
+            if (data == null) {
+                continue;
+            }
+            writer.write('\n');
+            ExportColumnHandler.Accessor[] accessors = rowAccessor.of(data);
+            for (i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
                 }
+                String content = accessors[i].get(data);
+                writeCell(writer, content, content.length());
             }
-            return sbd.toString();
         }
-        // 没有数据或没有标题, 返回一个内容为空的文件
-        return U.EMPTY;
+        // 输出流由调用方关闭
+        writer.flush();
     }
 
-    private static String handleCsvContent(String content) {
-        return "\"" + content.replace("\"", "\"\"") + "\"";
+    /** 用双引号包裹, 内容中的双引号写两次. 直接分段写入, 不生成新的字符串 */
+    private static void writeCell(Writer writer, String content, int end) throws IOException {
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+            if (content.charAt(i) == '"') {
+                // 连同这个双引号一起写, 再补一个
+                writer.write(content, start, i + 1 - start);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            writer.write(content, start, end - start);
+        }
+        writer.write('"');
     }
 }
@@ -5,12 +5,28 @@ import com.github.common.util.U;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** 如果想要将数据导成文件保持, 使用 {@link FileExport} 类, 如果要导出文件在 web 端下载, 使用 {@link WebExport} 类 */
 final class ExportExcel {
@@ -29,17 +45,132 @@ final class ExportExcel {
     /** 行高. 要比上面的字体大一点! */
     private static final short ROW_HEIGHT = 15;
 
+    /** 流式写 xlsx 时内存中保留的行数, 超出的行会被刷到临时文件中 */
+    private static final int ROW_ACCESS_WINDOW = 500;
+
+    /** 并行生成时, 读的线程每攒够这么多行交给写的线程 */
+    private static final int PIPE_BATCH = 512;
+    /** 并行生成时, 读和写之间最多积压的批数 */
+    private static final int PIPE_CAPACITY = 8;
+
+    /**
+     * 并行生成时所有导出共用的线程池, 读和写各一个, 线程数都是 cpu 核数, 用到时才建.
+     * 读的线程会等写的线程, 放在一个池子里可能会互相等待; 写的线程是读的线程开始后才提交的, 两边线程数一样就不会互相等死
+     */
+    private static final class Pools {
+        private static final ExecutorService READERS = newPool("export-sheet-reader-");
+        private static final ExecutorService WRITERS = newPool("export-sheet-writer-");
+
+        private static ExecutorService newPool(String prefix) {
+            AtomicInteger index = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(U.PROCESSORS, U.PROCESSORS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, prefix + index.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * 提交到共用线程池的任务. Future#cancel 只是发出中断, 不会等任务停下来,
+     * 出错时要等读写的线程都真正退出了才能清理工作簿, 不然它们还在往已经清理的 sheet 和临时文件里写
+     */
+    private static final class Task {
+        private static final int NEW = 0;
+        private static final int STARTED = 1;
+        private static final int SKIPPED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final Future<?> future;
+
+        private Task(ExecutorService pool, Callable<?> body) {
+            future = pool.submit(() -> {
+                if (!state.compareAndSet(NEW, STARTED)) {
+                    return null;
+                }
+                try {
+                    return body.call();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        private void get() throws InterruptedException, ExecutionException {
+            future.get();
+        }
+
+        private boolean isDone() {
+            return future.isDone();
+        }
+
+        /** 中断任务并等它退出, 还没开始的直接跳过. 等待时不响应中断, 等完再恢复中断标记 */
+        private void cancelAndWait() {
+            future.cancel(true);
+            if (state.compareAndSet(NEW, SKIPPED)) {
+                return;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
-     * 返回一个 excel 工作簿
+     * 返回一个 excel 工作簿, 写完之后使用 {@link #write(Workbook, OutputStream)} 输出并清理临时文件.
+     *
+     * 2007 的版本使用流式的 SXSSFWorkbook: 数据一边迭代一边写, 内存中只保留最近的 {@link #ROW_ACCESS_WINDOW} 行,
+     * 字符串直接写在行内(不使用共享字符串表), 所以内存占用和数据量无关.
+     * 2003 的版本没有流式写法, 依然全部在内存中, 大数据量请使用 2007 或者 csv
      *
      * @param excel07  是否返回 microsoft excel 2007 的版本
      * @param titleMap 属性名为 key, 对应的标题为 value, 为了处理显示时的顺序, 因此使用 linkedHashMap
      * @param dataMap  以「sheet 名」为 key, 对应的数据为 value(每一行的数据为一个 Object)
      */
     static Workbook handle(boolean excel07, LinkedHashMap<String, String> titleMap,
-                           LinkedHashMap<String, List<?>> dataMap) {
-        // 声明一个工作薄. HSSFWorkbook 是 Office 2003 的版本, XSSFWorkbook 是 2007
-        Workbook workbook = excel07 ? new XSSFWorkbook() : new HSSFWorkbook();
+                           LinkedHashMap<String, Iterator<?>> dataMap) {
+        return handle(excel07, titleMap, dataMap, 1);
+    }
+
+    /**
+     * 同 {@link #handle(boolean, LinkedHashMap, LinkedHashMap)}, 2007 的版本在 parallelism 大于 1 时并行生成:
+     *
+     * 每个 sheet 名对应的数据在单独的线程中迭代并取出每个单元格的值, 同时由另一个线程写入 sheet,
+     * 取数据(比如分页调用 dubbo)和写文件互不等待, 数据超过 {@link #EXCEL_TOTAL} 拆成多个 sheet 时也是一样.
+     * 多个 sheet 名之间最多 parallelism 个同时进行.
+     * 字符串写在行内、样式在开始前就都生成好了, 每个 sheet 写的是自己的临时文件, 不同的 sheet 之间没有共享的可变数据,
+     * 只有新建 sheet 时需要锁住工作簿. 完成后按 sheet 名的顺序重排, 和顺序生成的结果一致.
+     *
+     * 线程用的是所有导出共用的线程池(线程数是 cpu 核数), 迭代数据是在别的线程中, 当前线程的 ThreadLocal(比如请求上下文、
+     * dubbo 的隐式参数)在迭代时是拿不到的, 数据依赖这些时不要并行
+     *
+     * @param parallelism 同时生成的 sheet 名的数量(不超过 cpu 核数), 小于等于 1 时在当前线程中顺序生成
+     */
+    static Workbook handle(boolean excel07, LinkedHashMap<String, String> titleMap,
+                           LinkedHashMap<String, Iterator<?>> dataMap, int parallelism) {
+        // 声明一个工作薄. HSSFWorkbook 是 Office 2003 的版本, SXSSFWorkbook 是 2007 的流式版本
+        Workbook workbook;
+        if (excel07) {
+            SXSSFWorkbook sxssfWorkbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+            // 临时文件使用 gzip 压缩, 大数据量时能省下不少磁盘
+            sxssfWorkbook.setCompressTempFiles(true);
+            workbook = sxssfWorkbook;
+        } else {
+            workbook = new HSSFWorkbook();
+        }
         // 没有标题直接返回
         if (A.isEmpty(titleMap)) {
             return workbook;
@@ -49,140 +180,292 @@ final class ExportExcel {
             dataMap = new LinkedHashMap<>();
         }
 
-        // 头样式
-        CellStyle headStyle = createHeadStyle(workbook);
-        // 内容样式
-        CellStyle contentStyle = createContentStyle(workbook);
-        // 数字样式
-        CellStyle numberStyle = createNumberStyle(workbook);
-        // 每个列用到的样式
-        CellStyle cellTmpStyle;
-
-        Sheet sheet;
-        //  行
-        Row row;
-        //   列
-        Cell cell;
-        //  表格数       行索引      列索引
-        int sheetCount, rowIndex, cellIndex;
-        //  数据总条数  数据起始索引  数据结束索引
-        int size, fromIndex, toIndex;
-        //      数据
-        List<?> dataList;
-        //      每个 sheet 的数据, 当数据量大, 有多个 sheet 时会用到
-        List<?> sheetList;
-
-        // 标题头, 这里跟数据中的属性相对应
-        Set<Map.Entry<String, String>> titleEntry = titleMap.entrySet();
-        // 是否能正确中文字体的大小
-        boolean rightChineseFont = false;
-
-        // 单个列的数据
-        String cellData;
-        // 标题说明|数字格式(比如金额用 0.00)|宽度(255 以内)
-        String[] titleValues;
-        // 数字格式
-        DataFormat dataFormat = workbook.createDataFormat();
-
-        for (Map.Entry<String, List<?>> entry : dataMap.entrySet()) {
-            // 当前 sheet 的数据
-            dataList = entry.getValue();
-            size = A.isEmpty(dataList) ? 0 : dataList.size();
-            // 一个 sheet 数据过多 excel 处理会出错, 分多个 sheet
-            sheetCount = ((size % EXCEL_TOTAL == 0) ? (size / EXCEL_TOTAL) : (size / EXCEL_TOTAL + 1));
-            if (sheetCount == 0) {
-                // 如果没有记录时也至少构建一个(确保导出的文件有标题头)
-                sheetCount = 1;
-            }
-            for (int i = 0; i < sheetCount; i++) {
-                // 构建 sheet, 带名字
-                sheet = workbook.createSheet(entry.getKey() + (sheetCount > 1 ? ("-" + (i + 1)) : U.EMPTY));
-
-                // 每个 sheet 的标题行
-                rowIndex = 0;
-                cellIndex = 0;
-                row = sheet.createRow(rowIndex);
-                row.setHeightInPoints(ROW_HEIGHT);
-                // 每个 sheet 的标题行
-                for (Map.Entry<String, String> titleMapEntry : titleEntry) {
-                    cell = row.createCell(cellIndex);
-                    cell.setCellStyle(headStyle);
-                    cell.setCellValue(U.getNil(titleMapEntry.getValue().split("\\|")[0]));
-                    cellIndex++;
-                }
-                // 冻结第一行
-                sheet.createFreezePane(0, 1, 0, 1);
-
-                if (size > 0) {
-                    if (sheetCount > 1) {
-                        // 每个 sheet 除标题行以外的数据
-                        fromIndex = EXCEL_TOTAL * i;
-                        toIndex = (i + 1 == sheetCount) ? size : EXCEL_TOTAL;
-                        sheetList = dataList.subList(fromIndex, toIndex);
-                    } else {
-                        sheetList = dataList;
-                    }
-                    for (Object data : sheetList) {
+        try {
+            Columns columns = new Columns(workbook, titleMap);
+            if (excel07 && parallelism > 1 && !dataMap.isEmpty()) {
+                parallelFill(workbook, columns, dataMap, parallelism);
+            } else {
+                for (Map.Entry<String, Iterator<?>> entry : dataMap.entrySet()) {
+                    SheetWriter sheetWriter = new SheetWriter(workbook, columns, entry.getKey());
+                    Iterator<?> iterator = entry.getValue();
+                    ExportColumnHandler.RowAccessor rowAccessor = new ExportColumnHandler.RowAccessor(columns.fields);
+                    while (iterator != null && iterator.hasNext()) {
+                        Object data = iterator.next();
                         if (data != null) {
-                            rowIndex++;
-                            // 每行
-                            row = sheet.createRow(rowIndex);
-                            row.setHeightInPoints(ROW_HEIGHT);
-
-                            cellIndex = 0;
-                            for (Map.Entry<String, String> titleMapEntry : titleEntry) {
-                                // 每列
-                                cell = row.createCell(cellIndex);
-
-                                cellData = U.getField(data, titleMapEntry.getKey());
-                                if (NumberUtils.isCreatable(cellData)) {
-                                    cell.setCellType(CellType.NUMERIC);
-                                    cell.setCellValue(NumberUtils.toDouble(cellData));
-
-                                    titleValues = titleMapEntry.getValue().split("\\|");
-                                    if (titleValues.length > 1) {
-                                        // 数字样式需要单独设置格式, 每次都生成一个
-                                        cellTmpStyle = createNumberStyle(workbook);
-                                        cellTmpStyle.setDataFormat(dataFormat.getFormat(titleValues[1]));
-                                    } else {
-                                        cellTmpStyle = numberStyle;
-                                    }
-                                } else {
-                                    cell.setCellType(CellType.STRING);
-                                    cell.setCellValue(cellData);
-                                    // 给字符串设置样式意义并不大, 忽略样式. 此处并不每次都生成一个
-                                    cellTmpStyle = contentStyle;
-                                }
-                                cell.setCellStyle(cellTmpStyle);
-                                cellIndex++;
-                            }
+                            sheetWriter.write(columns.cells(rowAccessor, data));
                         }
                     }
                 }
+            }
+        } catch (RuntimeException e) {
+            // 生成失败时不会再调用 write, 在这里清理临时文件
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+            throw e;
+        }
+        return workbook;
+    }
 
-                cellIndex = 0;
-                for (Map.Entry<String, String> titleMapEntry : titleEntry) {
-                    // 让列的宽度自适应. 缺少中文字体计算宽度时会有问题, 可以统一宽度并接受自定义列宽度(像下面), 或者复制字体文件到操作系统
-                    if (rightChineseFont) {
-                        sheet.autoSizeColumn(cellIndex, true);
-                    } else {
-                        // 左移 8 相当于 * 256
-                        sheet.setColumnWidth(cellIndex, 12 << 8);
-
-                        titleValues = titleMapEntry.getValue().split("\\|");
-                        if (titleValues.length > 2) {
-                            int width = NumberUtils.toInt(titleValues[2]);
-                            if (width > 0) {
-                                // 左移 8 相当于 * 256
-                                sheet.setColumnWidth(cellIndex, width << 8);
-                            }
-                        }
+    private static void parallelFill(Workbook workbook, Columns columns,
+                                     LinkedHashMap<String, Iterator<?>> dataMap, int parallelism) {
+        // 每个 sheet 名的第一个 sheet 在这里按顺序建好
+        List<SheetWriter> sheetWriters = new ArrayList<>();
+        for (String sheetName : dataMap.keySet()) {
+            sheetWriters.add(new SheetWriter(workbook, columns, sheetName));
+        }
+
+        // 共用的线程池里同时只跑 parallelism 个 sheet 名, 按顺序一个完成再提交下一个
+        int limit = Math.min(Math.min(parallelism, U.PROCESSORS), sheetWriters.size());
+        List<Iterator<?>> iterators = new ArrayList<>(dataMap.values());
+        List<Task> running = new ArrayList<>();
+        try {
+            int next = 0;
+            for (; next < limit; next++) {
+                running.add(submit(columns, iterators.get(next), sheetWriters.get(next)));
+            }
+            for (int i = 0; i < running.size(); i++) {
+                running.get(i).get();
+                if (next < sheetWriters.size()) {
+                    running.add(submit(columns, iterators.get(next), sheetWriters.get(next)));
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("生成 excel 时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof RuntimeException) ? (RuntimeException) cause : new RuntimeException(cause);
+        } finally {
+            // 出错时中断还在跑的并等它们退出, 读的线程退出前会等自己的写线程也退出, 之后才能清理工作簿
+            for (Task task : running) {
+                task.cancelAndWait();
+            }
+        }
+
+        // 拆分出来的 sheet 是在写的过程中建的, 顺序可能是交错的, 按 sheet 名的顺序重排
+        int order = 0;
+        for (SheetWriter sheetWriter : sheetWriters) {
+            for (String sheetName : sheetWriter.sheetNames) {
+                workbook.setSheetOrder(sheetName, order++);
+            }
+        }
+    }
+
+    private static Task submit(Columns columns, Iterator<?> iterator, SheetWriter sheetWriter) {
+        return new Task(Pools.READERS, () -> {
+            pipe(columns, iterator, sheetWriter);
+            return null;
+        });
+    }
+
+    /** 当前线程迭代数据并取出单元格的值, 攒成一批交给写的线程 */
+    private static void pipe(Columns columns, Iterator<?> iterator, SheetWriter sheetWriter) throws Exception {
+        BlockingQueue<List<String[]>> queue = new ArrayBlockingQueue<>(PIPE_CAPACITY);
+        Task writing = new Task(Pools.WRITERS, () -> {
+            while (true) {
+                List<String[]> batch = queue.take();
+                if (batch.isEmpty()) {
+                    return null;
+                }
+                for (String[] cells : batch) {
+                    sheetWriter.write(cells);
+                }
+            }
+        });
+
+        try {
+            ExportColumnHandler.RowAccessor rowAccessor = new ExportColumnHandler.RowAccessor(columns.fields);
+            List<String[]> batch = new ArrayList<>(PIPE_BATCH);
+            while (iterator != null && iterator.hasNext()) {
+                Object data = iterator.next();
+                if (data == null) {
+                    continue;
+                }
+                batch.add(columns.cells(rowAccessor, data));
+                if (batch.size() >= PIPE_BATCH) {
+                    put(queue, batch, writing);
+                    batch = new ArrayList<>(PIPE_BATCH);
+                }
+            }
+            if (!batch.isEmpty()) {
+                put(queue, batch, writing);
+            }
+            // 空的一批表示结束
+            put(queue, Collections.emptyList(), writing);
+            writing.get();
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        } finally {
+            // 读出错或被中断时, 写的线程还在等下一批, 停掉它并等它退出, 不然会一直占着共用的线程
+            writing.cancelAndWait();
+        }
+    }
+
+    /** 队列满了就等写的线程, 写的线程出错退出时不再等 */
+    private static void put(BlockingQueue<List<String[]>> queue, List<String[]> batch,
+                            Task writing) throws Exception {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (writing.isDone()) {
+                try {
+                    writing.get();
+                } catch (ExecutionException e) {
+                    throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }
+                throw new IllegalStateException("写 sheet 的线程已经退出");
+            }
+        }
+    }
+
+    /** 每列的信息, 标题说明|数字格式(比如金额用 0.00)|宽度(255 以内) 只解析一次, 样式在开始写之前都生成好 */
+    private static final class Columns {
+        private final String[] fields;
+        private final String[] titles;
+        private final int[] widths;
+        /** 每列的数字样式, 相同格式的列共用一个 */
+        private final CellStyle[] numberStyles;
+        private final CellStyle headStyle;
+        private final CellStyle contentStyle;
+
+        private Columns(Workbook workbook, LinkedHashMap<String, String> titleMap) {
+            // 头样式
+            headStyle = createHeadStyle(workbook);
+            // 内容样式
+            contentStyle = createContentStyle(workbook);
+            // 数字样式, 以格式为 key, 没有格式的是空字符串. excel 中的样式数量是有上限的, 每种格式只生成一个
+            Map<String, CellStyle> numberStyleMap = new HashMap<>();
+            numberStyleMap.put(U.EMPTY, createNumberStyle(workbook));
+            DataFormat dataFormat = workbook.createDataFormat();
+
+            // 标题头, 这里跟数据中的属性相对应
+            int columnCount = titleMap.size();
+            fields = new String[columnCount];
+            titles = new String[columnCount];
+            widths = new int[columnCount];
+            numberStyles = new CellStyle[columnCount];
+            int columnIndex = 0;
+            for (Map.Entry<String, String> titleMapEntry : titleMap.entrySet()) {
+                String[] titleValues = titleMapEntry.getValue().split("\\|");
+                fields[columnIndex] = titleMapEntry.getKey();
+                titles[columnIndex] = U.getNil(titleValues[0]);
+                String format = (titleValues.length > 1) ? titleValues[1].trim() : U.EMPTY;
+                numberStyles[columnIndex] = numberStyleMap.computeIfAbsent(format, f -> {
+                    CellStyle style = createNumberStyle(workbook);
+                    style.setDataFormat(dataFormat.getFormat(f));
+                    return style;
+                });
+                widths[columnIndex] = (titleValues.length > 2) ? NumberUtils.toInt(titleValues[2]) : 0;
+                columnIndex++;
+            }
+        }
+
+        /** 一行中每个单元格的值 */
+        private String[] cells(ExportColumnHandler.RowAccessor rowAccessor, Object data) {
+            ExportColumnHandler.Accessor[] accessors = rowAccessor.of(data);
+            String[] cells = new String[accessors.length];
+            for (int i = 0; i < accessors.length; i++) {
+                cells[i] = accessors[i].get(data);
+            }
+            return cells;
+        }
+    }
+
+    /** 往一个 sheet 名中写数据, 一个 sheet 数据过多 excel 处理会出错, 超过 {@link #EXCEL_TOTAL} 行时分多个 sheet */
+    private static final class SheetWriter {
+        private final Workbook workbook;
+        private final Columns columns;
+        private final String sheetName;
+        /** 写过的所有 sheet */
+        private final List<String> sheetNames = new ArrayList<>();
+
+        private Sheet sheet;
+        private int rowIndex = 0;
+
+        private SheetWriter(Workbook workbook, Columns columns, String sheetName) {
+            this.workbook = workbook;
+            this.columns = columns;
+            this.sheetName = sheetName;
+            // 如果没有记录时也至少构建一个(确保导出的文件有标题头)
+            this.sheet = newSheet(sheetName);
+        }
+
+        private Sheet newSheet(String name) {
+            // 并行写时只有建 sheet 会改到工作簿
+            synchronized (workbook) {
+                Sheet newSheet = createSheet(workbook, name, columns);
+                sheetNames.add(name);
+                return newSheet;
+            }
+        }
+
+        private void write(String[] cells) {
+            if (rowIndex >= EXCEL_TOTAL) {
+                if (sheetNames.size() == 1) {
+                    String first = sheetName + "-1";
+                    synchronized (workbook) {
+                        workbook.setSheetName(workbook.getSheetIndex(sheet), first);
                     }
-                    cellIndex++;
+                    sheetNames.set(0, first);
+                }
+                sheet = newSheet(sheetName + "-" + (sheetNames.size() + 1));
+                rowIndex = 0;
+            }
+
+            rowIndex++;
+            // 每行
+            Row row = sheet.createRow(rowIndex);
+            row.setHeightInPoints(ROW_HEIGHT);
+            for (int i = 0; i < cells.length; i++) {
+                // 每列
+                Cell cell = row.createCell(i);
+                String cellData = cells[i];
+                if (NumberUtils.isCreatable(cellData)) {
+                    cell.setCellType(CellType.NUMERIC);
+                    cell.setCellValue(NumberUtils.toDouble(cellData));
+                    cell.setCellStyle(columns.numberStyles[i]);
+                } else {
+                    cell.setCellType(CellType.STRING);
+                    cell.setCellValue(cellData);
+                    // 给字符串设置样式意义并不大, 忽略样式. 此处并不每次都生成一个
+                    cell.setCellStyle(columns.contentStyle);
                 }
             }
         }
-        return workbook;
+    }
+
+    /** 生成 sheet, 并写好标题行和列宽 */
+    private static Sheet createSheet(Workbook workbook, String name, Columns columns) {
+        // 构建 sheet, 带名字
+        Sheet sheet = workbook.createSheet(name);
+
+        // 每个 sheet 的标题行
+        Row row = sheet.createRow(0);
+        row.setHeightInPoints(ROW_HEIGHT);
+        for (int i = 0; i < columns.fields.length; i++) {
+            Cell cell = row.createCell(i);
+            cell.setCellStyle(columns.headStyle);
+            cell.setCellValue(columns.titles[i]);
+
+            // 缺少中文字体时自适应宽度会有问题, 统一宽度并接受自定义列宽度. 左移 8 相当于 * 256
+            int width = columns.widths[i];
+            sheet.setColumnWidth(i, (width > 0 ? width : 12) << 8);
+        }
+        // 冻结第一行
+        sheet.createFreezePane(0, 1, 0, 1);
+        return sheet;
+    }
+
+    /** 输出工作簿, 流式的工作簿输出后会删除临时文件 */
+    static void write(Workbook workbook, OutputStream outputStream) throws IOException {
+        try {
+            workbook.write(outputStream);
+        } finally {
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+            workbook.close();
+        }
     }
 
     /** 头样式 */
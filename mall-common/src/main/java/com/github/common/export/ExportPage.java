@@ -0,0 +1,69 @@
+package com.github.common.export;
+
+import com.github.common.page.Page;
+import com.github.common.util.A;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <pre>
+ * 分页取导出的数据, 导出时一页一页地取, 取完一页写完一页, 不需要把所有的数据都放到内存里
+ *
+ * WebExport.export(type, "订单", (page, limit) -&gt; orderService.exportList(param, page, limit), Order.class, response);
+ *
+ * 返回的条数小于 limit 时表示没有下一页了. 回调里通常会用 {@link Page} 去查, 它会把大于 {@link Page#MAX_LIMIT} 的条数
+ * 改成默认的 15 条, 这时会被当成最后一页, 所以每页的条数最多是 {@link Page#MAX_LIMIT}
+ * </pre>
+ */
+@FunctionalInterface
+public interface ExportPage<T> {
+
+    /** 默认每页的条数, 和分页查询的最大条数一致 */
+    int DEFAULT_LIMIT = Page.MAX_LIMIT;
+
+    /**
+     * @param page 页数, 从 1 开始
+     * @param limit 每页条数
+     * @return 当前页的数据, 没有数据时返回空
+     */
+    List<T> page(int page, int limit);
+
+    /** 转换成迭代器, 用到下一页时才去取. limit 不在 1 ~ {@link Page#MAX_LIMIT} 之间时使用 {@link #DEFAULT_LIMIT} */
+    static <T> Iterator<T> iterator(ExportPage<T> exportPage, int pageLimit) {
+        int limit = (pageLimit <= 0 || pageLimit > Page.MAX_LIMIT) ? DEFAULT_LIMIT : pageLimit;
+        return new Iterator<T>() {
+            private int page = 0;
+            private Iterator<T> current = Collections.emptyIterator();
+            private boolean last = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (last) {
+                        return false;
+                    }
+                    page++;
+                    List<T> list = exportPage.page(page, limit);
+                    if (A.isEmpty(list)) {
+                        last = true;
+                        return false;
+                    }
+                    last = list.size() < limit;
+                    current = list.iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+}
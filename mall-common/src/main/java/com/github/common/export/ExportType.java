@@ -5,7 +5,7 @@ import com.github.common.util.U;
 /** 如果想要将数据导成文件保持, 使用 {@link FileExport} 类, 如果要导出文件在 web 端下载, 使用 {@link WebExport} 类 */
 enum ExportType {
 
-    Xls03, Xls07, Csv;
+    Xls03, Xls07, Csv, Arrow;
 
     boolean is03() {
         return this == Xls03;
@@ -21,6 +21,10 @@ enum ExportType {
         return this == Csv;
     }
 
+    boolean isArrow() {
+        return this == Arrow;
+    }
+
     static ExportType to(String type) {
         if (U.isNotBlank(type)) {
             for (ExportType exportType : values()) {
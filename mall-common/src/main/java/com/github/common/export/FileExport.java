@@ -1,16 +1,17 @@
 package com.github.common.export;
 
-import com.github.common.util.A;
 import com.github.common.util.U;
-import org.apache.poi.ss.usermodel.Workbook;
 
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * <pre>
@@ -37,10 +38,13 @@ import java.util.List;
  *
  * // {@link FileExport#save(String, String, List, Class, String)}
  * FileExport.save(type, "文件名", xxList, XX.class, directory);
- * // 其中 type 可以是 xls03、xls07、csv 三种(忽略大小写)
+ * // 其中 type 可以是 xls03、xls07、csv、arrow 四种(忽略大小写)
  *
  * // 如果不想在实体中使用 ExportColumn 注解, 可以自己构建一个 {"字段名": "标题"} 的 map,
  * // 调用 {@link FileExport#save(String, String, LinkedHashMap, List, String)} 即可
+ *
+ * // 数据量大时不要一次查出来, 传入迭代器、流或者分页的回调, 一边取一边写, 内存占用和数据量无关
+ * FileExport.save(type, "文件名", (page, limit) -&gt; xxService.xxx(..., page, limit), XX.class, directory);
  * </pre>
  */
 public final class FileExport {
@@ -48,7 +52,7 @@ public final class FileExport {
     /**
      * 保存文件!
      *
-     * @param type 文件类型, 现在有 xls03、xls07、csv 三种, 不在这三种中则默认是 xls07
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
      * @param name 导出时的文件名
      * @param dataList 导出的数据(数组中的每个 object 都是一行, 并且每个字段上有使用 &#064;ExportColumn 注解来说明导出的列名)
      * @param clazz 导出的实体类. 主要用来获取标题头
@@ -61,7 +65,47 @@ public final class FileExport {
     /**
      * 保存文件!
      *
-     * @param type 文件类型, 现在有 xls03、xls07、csv 三种, 不在这三种中则默认是 xls07
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param dataIterator 导出的数据, 一边迭代一边写
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     * @param directory 文件保存的目录
+     */
+    public static <T> void save(String type, String name, Iterator<T> dataIterator, Class<T> clazz, String directory) {
+        save(type, name, ExportColumnHandler.collectTitle(clazz), dataIterator, directory);
+    }
+
+    /**
+     * 保存文件! 写完后会关闭流
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param dataStream 导出的数据, 一边取一边写
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     * @param directory 文件保存的目录
+     */
+    public static <T> void save(String type, String name, Stream<T> dataStream, Class<T> clazz, String directory) {
+        save(type, name, ExportColumnHandler.collectTitle(clazz), dataStream, directory);
+    }
+
+    /**
+     * 保存文件!
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param exportPage 分页取数据的回调, 每页 {@link ExportPage#DEFAULT_LIMIT} 条, 取完一页写完一页
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     * @param directory 文件保存的目录
+     */
+    public static <T> void save(String type, String name, ExportPage<T> exportPage, Class<T> clazz, String directory) {
+        save(type, name, ExportColumnHandler.collectTitle(clazz),
+                ExportPage.iterator(exportPage, ExportPage.DEFAULT_LIMIT), directory);
+    }
+
+    /**
+     * 保存文件!
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
      * @param name 导出时的文件名
      * @param titleMap 标题(key 为英文, value 为标题内容)
      * @param dataList 导出的数据(数组中的每个 object 都是一行, object 中的属性名与标题中的 key 相对)
@@ -69,45 +113,86 @@ public final class FileExport {
      */
     public static void save(String type, String name, LinkedHashMap<String, String> titleMap,
                             List<?> dataList, String directory) {
-        ExportType exportType = ExportType.to(type);
-        if (exportType.isExcel()) {
-            saveExcel(exportType.is07(), name, titleMap, dataList, directory);
-        } else if (exportType.isCsv()) {
-            saveCsv(name, titleMap, dataList, directory);
+        save(type, name, titleMap, (dataList == null) ? null : dataList.iterator(), directory);
+    }
+
+    /**
+     * 保存文件! 写完后会关闭流
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param dataStream 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     * @param directory 文件保存的目录
+     */
+    public static void save(String type, String name, LinkedHashMap<String, String> titleMap,
+                            Stream<?> dataStream, String directory) {
+        if (dataStream == null) {
+            save(type, name, titleMap, (Iterator<?>) null, directory);
+        } else {
+            try (Stream<?> stream = dataStream) {
+                save(type, name, titleMap, stream.iterator(), directory);
+            }
         }
     }
 
     /**
-     * 保存 csv 格式文件
+     * 保存文件!
      *
-     * @param name     导出的文件名(不带后缀)
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
      * @param titleMap 标题(key 为英文, value 为标题内容)
-     * @param dataList 导出的数据(数组中的每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     * @param dataIterator 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     * @param directory 文件保存的目录
      */
-    private static void saveCsv(String name, LinkedHashMap<String, String> titleMap, List<?> dataList, String directory) {
-        String fileName = encodeName(name) + ".csv";
+    public static void save(String type, String name, LinkedHashMap<String, String> titleMap,
+                            Iterator<?> dataIterator, String directory) {
+        String fileName = encodeName(name) + "." + suffix(type);
 
         // 没有数据或没有标题, 返回一个内容为空的文件
-        String content = ExportCsv.getContent(titleMap, dataList);
-
-        try (FileOutputStream outputStream = new FileOutputStream(U.addSuffix(directory) + fileName)) {
-            outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(U.addSuffix(directory) + fileName))) {
+            write(type, name, titleMap, dataIterator, outputStream);
         } catch (IOException e) {
             throw new RuntimeException(String.format("保存文件(%s)到(%s)时异常", fileName, directory), e);
         }
     }
 
-    private static void saveExcel(boolean excel07, String name, LinkedHashMap<String, String> titleMap,
-                                  List<?> dataList, String directory) {
-        String fileName = encodeName(name) + "." + (excel07 ? "xlsx" : "xls");
+    /**
+     * 写到输出流, 输出流由调用方关闭. 后台任务写到自己的存储时用到
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的 sheet 名
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param dataIterator 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     */
+    public static void write(String type, String name, LinkedHashMap<String, String> titleMap,
+                             Iterator<?> dataIterator, OutputStream outputStream) throws IOException {
+        ExportType exportType = ExportType.to(type);
+        if (exportType.isExcel()) {
+            LinkedHashMap<String, Iterator<?>> dataMap = new LinkedHashMap<>();
+            dataMap.put(name, dataIterator);
+            ExportExcel.write(ExportExcel.handle(exportType.is07(), titleMap, dataMap), outputStream);
+        } else if (exportType.isCsv()) {
+            ExportCsv.write(titleMap, dataIterator, outputStream);
+        } else if (exportType.isArrow()) {
+            ExportArrow.write(titleMap, dataIterator, outputStream);
+        }
+    }
 
-        try (
-                FileOutputStream outputStream = new FileOutputStream(U.addSuffix(directory) + fileName);
-                Workbook workbook = ExportExcel.handle(excel07, titleMap, A.linkedMaps(name, dataList));
-        ) {
-            workbook.write(outputStream);
-        } catch (IOException e) {
-            throw new RuntimeException(String.format("保存文件(%s)到(%s)时异常", fileName, directory), e);
+    /** 从类上收集导出的标题(在字段上标的 &#064;ExportColumn 注解), 自己调用 {@link #write} 时用到 */
+    public static LinkedHashMap<String, String> title(Class<?> clazz) {
+        return ExportColumnHandler.collectTitle(clazz);
+    }
+
+    /** 文件类型对应的后缀: xls03 是 xls, csv 是 csv, arrow 是 arrow, 其他是 xlsx */
+    public static String suffix(String type) {
+        ExportType exportType = ExportType.to(type);
+        if (exportType.isCsv()) {
+            return "csv";
+        } else if (exportType.isArrow()) {
+            return "arrow";
+        } else {
+            return exportType.is03() ? "xls" : "xlsx";
         }
     }
 
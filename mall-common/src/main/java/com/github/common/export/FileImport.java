@@ -0,0 +1,370 @@
+package com.github.common.export;
+
+import com.github.common.util.U;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * 导入文件, 和导出相反: 第一行是标题, 标题和 &#064;ExportColumn 中的标题说明(或者属性名)对应上的列才会导入.
+ * 用导出的文件改一改再导入就可以. 如下示例
+ *
+ * &#064;PostMapping("/xx-import")
+ * public JsonResult&lt;ImportResult&gt; xxx(MultipartFile file) throws IOException {
+ *     String type = file.getOriginalFilename().endsWith(".csv") ? "csv" : "xls07";
+ *     ImportResult result = FileImport.read(type, file.getInputStream(), XX.class, 1000,
+ *             xx -&gt; (xx.getNum() == null || xx.getNum() &lt; 0) ? "数量不能小于 0" : null,
+ *             list -&gt; xxService.batchInsert(list));
+ *     return JsonResult.success("导入完成", result);
+ * }
+ *
+ * 文件一边读一边解析(xlsx 用 SAX, csv 逐个字符), 每 batchSize 行作为一块交给线程池转换和校验
+ * (可以传入自己的线程池, 不传时用所有导入共用的、线程数是 cpu 核数的线程池),
+ * 校验通过的行按文件中的顺序在调用线程中交给批处理回调, 同时在处理中的块是有上限的, 内存占用和文件大小无关.
+ * 转换或校验失败的行不会中断导入, 记录在结果中. 批处理回调抛出异常时导入中断
+ *
+ * 只支持 xls07(xlsx) 和 csv 两种, xls03 请先另存为 xlsx
+ * </pre>
+ */
+public final class FileImport {
+
+    /** 每次交给批处理回调的默认行数 */
+    public static final int DEFAULT_BATCH = 1000;
+
+    /** 读文件时每读完一行回调一次, 行号和打开文件时看到的一致 */
+    @FunctionalInterface
+    interface RowHandler {
+        void row(String sheet, int rowNum, String[] cells);
+    }
+
+    /**
+     * 导入文件, 每 {@link #DEFAULT_BATCH} 行回调一次, 不做额外的校验
+     *
+     * @param type 文件类型, 只支持 xls07、csv 两种, 不是 csv 都当成 xls07
+     * @param inputStream 文件内容, 由调用方关闭
+     * @param clazz 导入的实体类, 字段上用 &#064;ExportColumn 标注标题
+     * @param batchHandler 批处理回调, 比如批量写入数据库
+     */
+    public static <T> ImportResult read(String type, InputStream inputStream, Class<T> clazz,
+                                        Consumer<List<T>> batchHandler) throws IOException {
+        return read(type, inputStream, clazz, DEFAULT_BATCH, null, batchHandler);
+    }
+
+    /** 转换和校验时所有导入共用的线程池, 线程数是 cpu 核数, 用到时才建 */
+    private static final class SharedPool {
+        private static final ExecutorService EXECUTOR;
+        static {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(U.PROCESSORS, U.PROCESSORS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "import-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+
+    /**
+     * 导入文件. xlsx 需要随机读取, 会先把内容写到临时文件中, 有文件时直接用 {@link #read(String, File, Class, int, Function, Consumer)}
+     *
+     * @param type 文件类型, 只支持 xls07、csv 两种, 不是 csv 都当成 xls07
+     * @param inputStream 文件内容, 由调用方关闭
+     * @param clazz 导入的实体类, 字段上用 &#064;ExportColumn 标注标题
+     * @param batchSize 每次交给批处理回调的行数
+     * @param validator 每行的校验, 返回错误信息, 没有错误时返回空. 可以为空. 会在多个线程中调用
+     * @param batchHandler 批处理回调, 比如批量写入数据库. 只在调用线程中调用
+     */
+    public static <T> ImportResult read(String type, InputStream inputStream, Class<T> clazz, int batchSize,
+                                        Function<T, String> validator,
+                                        Consumer<List<T>> batchHandler) throws IOException {
+        return read(type, inputStream, clazz, batchSize, validator, batchHandler, null);
+    }
+
+    /**
+     * 同 {@link #read(String, InputStream, Class, int, Function, Consumer)}, 转换和校验使用传入的线程池
+     *
+     * @param executor 转换和校验用的线程池, 为空时用共用的线程池
+     */
+    public static <T> ImportResult read(String type, InputStream inputStream, Class<T> clazz, int batchSize,
+                                        Function<T, String> validator, Consumer<List<T>> batchHandler,
+                                        Executor executor) throws IOException {
+        U.assertNil(inputStream, "导入的文件不能为空");
+        ExportType importType = importType(type);
+        if (importType.isCsv()) {
+            Pipeline<T> pipeline = new Pipeline<>(clazz, batchSize, validator, batchHandler, executor);
+            return pipeline.run(handler -> ImportCsv.read(inputStream, handler));
+        }
+
+        File file = File.createTempFile("import-", ".xlsx");
+        try {
+            Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return read(type, file, clazz, batchSize, validator, batchHandler, executor);
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 导入文件
+     *
+     * @param type 文件类型, 只支持 xls07、csv 两种, 不是 csv 都当成 xls07
+     * @param file 导入的文件
+     * @param clazz 导入的实体类, 字段上用 &#064;ExportColumn 标注标题
+     * @param batchSize 每次交给批处理回调的行数
+     * @param validator 每行的校验, 返回错误信息, 没有错误时返回空. 可以为空. 会在多个线程中调用
+     * @param batchHandler 批处理回调, 比如批量写入数据库. 只在调用线程中调用
+     */
+    public static <T> ImportResult read(String type, File file, Class<T> clazz, int batchSize,
+                                        Function<T, String> validator,
+                                        Consumer<List<T>> batchHandler) throws IOException {
+        return read(type, file, clazz, batchSize, validator, batchHandler, null);
+    }
+
+    /**
+     * 同 {@link #read(String, File, Class, int, Function, Consumer)}, 转换和校验使用传入的线程池
+     *
+     * @param executor 转换和校验用的线程池, 为空时用共用的线程池
+     */
+    public static <T> ImportResult read(String type, File file, Class<T> clazz, int batchSize,
+                                        Function<T, String> validator, Consumer<List<T>> batchHandler,
+                                        Executor executor) throws IOException {
+        U.assertNil(file, "导入的文件不能为空");
+        boolean csv = importType(type).isCsv();
+        Pipeline<T> pipeline = new Pipeline<>(clazz, batchSize, validator, batchHandler, executor);
+        if (csv) {
+            try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+                return pipeline.run(handler -> ImportCsv.read(inputStream, handler));
+            }
+        } else {
+            return pipeline.run(handler -> ImportExcel.read(file, handler));
+        }
+    }
+
+    private static ExportType importType(String type) {
+        ExportType exportType = ExportType.to(type);
+        U.assertException(!exportType.is07() && !exportType.isCsv(), "导入只支持 xlsx 和 csv 文件");
+        return exportType;
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        void read(RowHandler handler) throws IOException;
+    }
+
+    /** 读出来还没有转换的一行 */
+    private static final class RawRow {
+        private final String sheet;
+        private final int rowNum;
+        private final String[] cells;
+        /** 这一行所在 sheet 每列的赋值器, 标题对应不上的列为 null */
+        private final ExportColumnHandler.Setter[] setters;
+
+        private RawRow(String sheet, int rowNum, String[] cells, ExportColumnHandler.Setter[] setters) {
+            this.sheet = sheet;
+            this.rowNum = rowNum;
+            this.cells = cells;
+            this.setters = setters;
+        }
+    }
+
+    /** 一块转换和校验后的结果 */
+    private static final class Parsed<T> {
+        private final List<T> list = new ArrayList<>();
+        private final List<ImportResult.RowError> errors = new ArrayList<>();
+    }
+
+    /**
+     * 读取 → 分块并行转换校验 → 按顺序批处理. 读取和批处理都在调用线程中,
+     * 同时在处理中的块最多是 cpu 核数的两倍, 批处理跟不上时读取会等待
+     */
+    private static final class Pipeline<T> implements RowHandler {
+
+        private final Class<T> clazz;
+        private final Constructor<T> constructor;
+        private final Map<String, ExportColumnHandler.Setter> setterMap;
+        private final int batchSize;
+        private final Function<T, String> validator;
+        private final Consumer<List<T>> batchHandler;
+
+        private final int parallelism = U.PROCESSORS;
+        private final Executor executor;
+        private final Deque<Future<Parsed<T>>> inFlight = new ArrayDeque<>();
+        private final ImportResult result = new ImportResult();
+
+        private boolean recognized;
+        private String currentSheet;
+        private boolean header;
+        private ExportColumnHandler.Setter[] setters;
+        private List<RawRow> chunk;
+
+        private Pipeline(Class<T> clazz, int batchSize, Function<T, String> validator,
+                         Consumer<List<T>> batchHandler, Executor executor) {
+            U.assertNil(clazz, "导入的实体类不能为空");
+            U.assertNil(batchHandler, "导入时批处理不能为空");
+            try {
+                constructor = clazz.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(String.format("%s 没有无参构造", clazz.getName()), e);
+            }
+            this.clazz = clazz;
+            this.setterMap = ExportColumnHandler.setters(clazz);
+            this.batchSize = (batchSize <= 0) ? DEFAULT_BATCH : batchSize;
+            this.validator = validator;
+            this.batchHandler = batchHandler;
+            this.chunk = new ArrayList<>(this.batchSize);
+            this.executor = (executor == null) ? SharedPool.EXECUTOR : executor;
+        }
+
+        private ImportResult run(RowReader reader) throws IOException {
+            try {
+                reader.read(this);
+                if (!chunk.isEmpty()) {
+                    submit();
+                }
+                while (!inFlight.isEmpty()) {
+                    deliver();
+                }
+            } finally {
+                // 中途出错时还没处理的块不用再做了
+                for (Future<Parsed<T>> future : inFlight) {
+                    future.cancel(true);
+                }
+            }
+            U.assertException(!recognized, "文件中没有可以识别的标题, 请使用导出的文件作为模板");
+            return result;
+        }
+
+        @Override
+        public void row(String sheet, int rowNum, String[] cells) {
+            // 每个 sheet 的第一行是标题
+            if (!header || !Objects.equals(sheet, currentSheet)) {
+                header = true;
+                currentSheet = sheet;
+                setters = header(cells);
+                return;
+            }
+            if (setters == null || blank(cells)) {
+                return;
+            }
+            chunk.add(new RawRow(sheet, rowNum, cells, setters));
+            if (chunk.size() >= batchSize) {
+                submit();
+            }
+        }
+
+        /** 标题对应的赋值器, 一列都对应不上时返回 null, 这个 sheet 不导入 */
+        private ExportColumnHandler.Setter[] header(String[] cells) {
+            ExportColumnHandler.Setter[] array = new ExportColumnHandler.Setter[cells.length];
+            boolean match = false;
+            for (int i = 0; i < cells.length; i++) {
+                array[i] = setterMap.get(cells[i].trim());
+                match |= (array[i] != null);
+            }
+            recognized |= match;
+            return match ? array : null;
+        }
+
+        private static boolean blank(String[] cells) {
+            for (String cell : cells) {
+                if (U.isNotBlank(cell)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void submit() {
+            List<RawRow> rows = chunk;
+            chunk = new ArrayList<>(batchSize);
+            FutureTask<Parsed<T>> task = new FutureTask<>(() -> parse(rows));
+            executor.execute(task);
+            inFlight.addLast(task);
+            if (inFlight.size() >= parallelism * 2) {
+                deliver();
+            }
+        }
+
+        /** 等最早提交的一块处理完, 交给批处理回调 */
+        private void deliver() {
+            Parsed<T> parsed;
+            try {
+                parsed = inFlight.pollFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("导入时被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw (cause instanceof RuntimeException) ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+            if (!parsed.list.isEmpty()) {
+                batchHandler.accept(parsed.list);
+                result.addSuccess(parsed.list.size());
+            }
+            result.addErrors(parsed.errors);
+        }
+
+        private Parsed<T> parse(List<RawRow> rows) {
+            Parsed<T> parsed = new Parsed<>();
+            List<String> messages = new ArrayList<>();
+            for (RawRow row : rows) {
+                messages.clear();
+                T data = newInstance();
+                for (int i = 0; i < row.cells.length && i < row.setters.length; i++) {
+                    ExportColumnHandler.Setter setter = row.setters[i];
+                    String value = row.cells[i].trim();
+                    if (setter != null && !value.isEmpty()) {
+                        try {
+                            setter.set(data, value);
+                        } catch (RuntimeException e) {
+                            messages.add(message(e));
+                        }
+                    }
+                }
+                if (messages.isEmpty() && validator != null) {
+                    try {
+                        String message = validator.apply(data);
+                        if (U.isNotBlank(message)) {
+                            messages.add(message);
+                        }
+                    } catch (RuntimeException e) {
+                        messages.add(message(e));
+                    }
+                }
+
+                if (messages.isEmpty()) {
+                    parsed.list.add(data);
+                } else {
+                    parsed.errors.add(new ImportResult.RowError(row.sheet, row.rowNum, String.join("; ", messages)));
+                }
+            }
+            return parsed;
+        }
+
+        private T newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(String.format("实例化 %s 时异常", clazz.getName()), e);
+            }
+        }
+
+        private static String message(RuntimeException e) {
+            return U.isBlank(e.getMessage()) ? e.getClass().getSimpleName() : e.getMessage();
+        }
+    }
+}
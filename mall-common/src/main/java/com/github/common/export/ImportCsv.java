@@ -0,0 +1,97 @@
+package com.github.common.export;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一边读一边解析 csv, 内存中只有当前行. 和 {@link ExportCsv} 写的格式一致:
+ * 英文逗号隔开列, 换行隔开行, 双引号包裹的内容中可以有逗号和换行, 内容中的双引号用两个双引号表示.
+ * 文件开头的 utf-8 BOM 会被忽略, 行尾的 \r 也会被去掉
+ */
+final class ImportCsv {
+
+    private static final char BOM = '\uFEFF';
+    /** 读取时的缓冲大小 */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** 每读完一行回调一次, 行号从 1 开始(和打开文件时看到的一致), 引号中有换行时行号是这一行开始的位置 */
+    static void read(InputStream inputStream, FileImport.RowHandler handler) throws IOException {
+        Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        char[] buffer = new char[BUFFER_SIZE];
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        // 上一个字符是引号中的双引号: 紧跟着双引号时是转义, 否则是引号结束
+        boolean quoteEnd = false;
+        boolean first = true;
+        boolean hasContent = false;
+        int line = 1;
+        int rowNum = 1;
+
+        int len;
+        while ((len = reader.read(buffer)) != -1) {
+            for (int i = 0; i < len; i++) {
+                char c = buffer[i];
+                if (first) {
+                    first = false;
+                    if (c == BOM) {
+                        continue;
+                    }
+                }
+                if (quoted) {
+                    if (quoteEnd) {
+                        quoteEnd = false;
+                        if (c == '"') {
+                            cell.append('"');
+                            continue;
+                        }
+                        quoted = false;
+                    } else {
+                        if (c == '"') {
+                            quoteEnd = true;
+                        } else {
+                            if (c == '\n') {
+                                line++;
+                            }
+                            cell.append(c);
+                        }
+                        continue;
+                    }
+                }
+
+                if (c == '"' && cell.length() == 0) {
+                    quoted = true;
+                    hasContent = true;
+                } else if (c == ',') {
+                    cells.add(cell.toString());
+                    cell.setLength(0);
+                    hasContent = true;
+                } else if (c == '\n') {
+                    endRow(handler, rowNum, cells, cell, hasContent);
+                    hasContent = false;
+                    line++;
+                    rowNum = line;
+                } else if (c != '\r') {
+                    cell.append(c);
+                    hasContent = true;
+                }
+            }
+        }
+        endRow(handler, rowNum, cells, cell, hasContent || quoted);
+    }
+
+    private static void endRow(FileImport.RowHandler handler, int rowNum, List<String> cells,
+                               StringBuilder cell, boolean hasContent) {
+        if (hasContent) {
+            cells.add(cell.toString());
+            handler.row(null, rowNum, cells.toArray(new String[0]));
+        }
+        cells.clear();
+        cell.setLength(0);
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.common.export;
+
+import com.github.common.util.U;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ * 用 SAX 一边读一边解析 xlsx, 不把整个工作簿加载进内存, 只支持 07 的格式.
+ * 共享字符串表会整个读进来, {@link ExportExcel} 导出的文件中字符串是直接写在单元格里的, 没有共享字符串表
+ *
+ * 单元格的内容按单元格的格式格式化后返回(和打开文件时看到的一致),
+ * 常规格式的数字不用科学计数法, 不然长的数字(比如订单号)会丢失精度
+ * </pre>
+ */
+final class ImportExcel {
+
+    /** 依次读取每个 sheet, 行号从 1 开始, 空行不会回调 */
+    static void read(File file, FileImport.RowHandler handler) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new PlainNumberFormatter();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream inputStream = sheets.next()) {
+                    String sheetName = sheets.getSheetName();
+                    XMLReader parser = SAXHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings,
+                            new SheetHandler(sheetName, handler), formatter, false));
+                    parser.parse(new InputSource(inputStream));
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            U.assertException("文件不是 xlsx 格式或者已经损坏");
+        } finally {
+            // 只读打开的用 revert 关闭, close 是用来保存的
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    /** 常规格式的数字原样输出, 其他格式还是按格式来 */
+    private static final class PlainNumberFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            if ("General".equalsIgnoreCase(formatString) && !Double.isNaN(value) && !Double.isInfinite(value)) {
+                return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString, use1904Windowing);
+        }
+    }
+
+    private static final class SheetHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final String sheetName;
+        private final FileImport.RowHandler handler;
+        private final List<String> cells = new ArrayList<>();
+        private int column;
+
+        private SheetHandler(String sheetName, FileImport.RowHandler handler) {
+            this.sheetName = sheetName;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            column = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!cells.isEmpty()) {
+                handler.row(sheetName, rowNum + 1, cells.toArray(new String[0]));
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // 空的单元格不会回调, 用单元格的位置补齐中间的空列
+            int index = (cellReference == null) ? column : new CellReference(cellReference).getCol();
+            while (cells.size() < index) {
+                cells.add(U.EMPTY);
+            }
+            cells.add(formattedValue == null ? U.EMPTY : formattedValue);
+            column = index + 1;
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+}
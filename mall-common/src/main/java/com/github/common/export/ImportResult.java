@@ -0,0 +1,50 @@
+package com.github.common.export;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** 导入的结果: 总行数、成功和失败的行数, 以及失败行的原因(最多 {@link #MAX_ERRORS} 条) */
+@Getter
+public class ImportResult {
+
+    /** 最多记录的错误数, 文件很大并且错误很多时, 错误信息不会把内存撑爆 */
+    public static final int MAX_ERRORS = 1000;
+
+    /** 数据的总行数, 不包括标题行和空行 */
+    private long total;
+    /** 交给批处理回调的行数 */
+    private long success;
+    /** 转换或校验失败的行数 */
+    private long fail;
+    /** 失败行的原因, 按行的顺序 */
+    private final List<RowError> errors = new ArrayList<>();
+
+    @Getter
+    @AllArgsConstructor
+    public static class RowError {
+        /** sheet 名, csv 时为空 */
+        private String sheet;
+        /** 行号, 和打开文件时看到的一致 */
+        private int row;
+        private String message;
+    }
+
+    void addSuccess(int count) {
+        total += count;
+        success += count;
+    }
+
+    void addErrors(List<RowError> rowErrors) {
+        total += rowErrors.size();
+        fail += rowErrors.size();
+        for (RowError error : rowErrors) {
+            if (errors.size() >= MAX_ERRORS) {
+                break;
+            }
+            errors.add(error);
+        }
+    }
+}
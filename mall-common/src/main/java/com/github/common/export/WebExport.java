@@ -1,6 +1,5 @@
 package com.github.common.export;
 
-import com.github.common.util.A;
 import com.github.common.util.RequestUtils;
 import com.github.common.util.U;
 
@@ -9,8 +8,11 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * <pre>
@@ -40,11 +42,17 @@ import java.util.List;
  *
  *     // {@link WebExport#export(String, String, List, Class, HttpServletResponse)}
  *     WebExport.export(type, "文件名", xxList, XX.class, response);
- *     // 其中 type 可以是 xls03、xls07、csv 三种(忽略大小写)
+ *     // 其中 type 可以是 xls03、xls07、csv、arrow 四种(忽略大小写)
  *
  *     // 如果不想在实体中使用 ExportColumn 注解, 可以自己构建一个 {"字段名": "标题"} 的 map,
  *     // 调用 {@link WebExport#export(String, String, LinkedHashMap, List, HttpServletResponse)} 即可
  * }
+ *
+ * // 数据量大时不要一次查出来, 传入迭代器、流或者分页的回调, 一边取一边写到响应里
+ * &#064;GetMapping("/xx-export")
+ * public void xxx(String type, ..., HttpServletResponse response) throws IOException {
+ *     WebExport.export(type, "文件名", (page, limit) -&gt; xxService.xxx(..., page, limit), XX.class, response);
+ * }
  * </pre>
  */
 public final class WebExport {
@@ -52,7 +60,7 @@ public final class WebExport {
     /**
      * 导出文件! 在 Controller 中调用!
      *
-     * @param type 文件类型, 现在有 xls03、xls07、csv 三种, 不在这三种中则默认是 xls07
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
      * @param name 导出时的文件名
      * @param dataList 导出的数据(数组中的每个 object 都是一行, 并且每个字段上有使用 &#064;ExportColumn 注解来说明导出的列名)
      * @param clazz 导出的实体类. 主要用来获取标题头
@@ -65,18 +73,92 @@ public final class WebExport {
     /**
      * 导出文件! 在 Controller 中调用!
      *
-     * @param type 文件类型, 现在有 xls03、xls07、csv 三种, 不在这三种中则默认是 xls07
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param dataIterator 导出的数据, 一边迭代一边写
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     */
+    public static <T> void export(String type, String name, Iterator<T> dataIterator, Class<T> clazz,
+                                  HttpServletResponse response) throws IOException {
+        export(type, name, ExportColumnHandler.collectTitle(clazz), dataIterator, response);
+    }
+
+    /**
+     * 导出文件! 在 Controller 中调用! 写完后会关闭流
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param dataStream 导出的数据, 一边取一边写
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     */
+    public static <T> void export(String type, String name, Stream<T> dataStream, Class<T> clazz,
+                                  HttpServletResponse response) throws IOException {
+        export(type, name, ExportColumnHandler.collectTitle(clazz), dataStream, response);
+    }
+
+    /**
+     * 导出文件! 在 Controller 中调用!
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param exportPage 分页取数据的回调, 每页 {@link ExportPage#DEFAULT_LIMIT} 条, 取完一页写完一页
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     */
+    public static <T> void export(String type, String name, ExportPage<T> exportPage, Class<T> clazz,
+                                  HttpServletResponse response) throws IOException {
+        export(type, name, ExportColumnHandler.collectTitle(clazz),
+                ExportPage.iterator(exportPage, ExportPage.DEFAULT_LIMIT), response);
+    }
+
+    /**
+     * 导出文件! 在 Controller 中调用!
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
      * @param name 导出时的文件名
      * @param titleMap 标题(key 为英文, value 为标题内容)
      * @param dataList 导出的数据(数组中的每个 object 都是一行, object 中的属性名与标题中的 key 相对)
      */
     public static void export(String type, String name, LinkedHashMap<String, String> titleMap,
                               List<?> dataList, HttpServletResponse response) throws IOException {
+        export(type, name, titleMap, (dataList == null) ? null : dataList.iterator(), response);
+    }
+
+    /**
+     * 导出文件! 在 Controller 中调用! 写完后会关闭流
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param dataStream 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     */
+    public static void export(String type, String name, LinkedHashMap<String, String> titleMap,
+                              Stream<?> dataStream, HttpServletResponse response) throws IOException {
+        if (dataStream == null) {
+            export(type, name, titleMap, (Iterator<?>) null, response);
+        } else {
+            try (Stream<?> stream = dataStream) {
+                export(type, name, titleMap, stream.iterator(), response);
+            }
+        }
+    }
+
+    /**
+     * 导出文件! 在 Controller 中调用!
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param dataIterator 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     */
+    public static void export(String type, String name, LinkedHashMap<String, String> titleMap,
+                              Iterator<?> dataIterator, HttpServletResponse response) throws IOException {
         ExportType exportType = ExportType.to(type);
         if (exportType.isExcel()) {
-            exportExcel(exportType.is07(), name, titleMap, dataList, response);
+            exportExcel(exportType.is07(), name, titleMap, dataIterator, response);
         } else if (exportType.isCsv()) {
-            exportCsv(name, titleMap, dataList, response);
+            exportCsv(name, titleMap, dataIterator, response);
+        } else if (exportType.isArrow()) {
+            exportArrow(name, titleMap, dataIterator, response);
         }
     }
 
@@ -85,26 +167,54 @@ public final class WebExport {
      *
      * @param name     导出的文件名(不带后缀)
      * @param titleMap 标题(key 为英文, value 为标题内容)
-     * @param dataList 导出的数据(数组中的每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     * @param dataIterator 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
      */
     private static void exportCsv(String name, LinkedHashMap<String, String> titleMap,
-                                  List<?> dataList, HttpServletResponse response) throws IOException {
+                                  Iterator<?> dataIterator, HttpServletResponse response) throws IOException {
         // 导出的文件名
         String fileName = encodeName(name) + ".csv";
         typeAndHeader(response, "text/csv", fileName);
 
         // 没有数据或没有标题, 返回一个内容为空的文件
-        String content = ExportCsv.getContent(titleMap, dataList);
-        response.getOutputStream().write(content.getBytes(StandardCharsets.UTF_8));
+        if (ExportCsv.isGzip() && acceptGzip()) {
+            response.setHeader("Content-Encoding", "gzip");
+            // syncFlush: 标题行写完刷新时, 压缩的内容也一起发出去
+            GZIPOutputStream outputStream = new GZIPOutputStream(response.getOutputStream(), 8192, true);
+            ExportCsv.write(titleMap, dataIterator, outputStream);
+            outputStream.finish();
+        } else {
+            ExportCsv.write(titleMap, dataIterator, response.getOutputStream());
+        }
+    }
+
+    /**
+     * 导出 arrow 格式文件, 给数据分析用
+     *
+     * @param name     导出的文件名(不带后缀)
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param dataIterator 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     */
+    private static void exportArrow(String name, LinkedHashMap<String, String> titleMap,
+                                    Iterator<?> dataIterator, HttpServletResponse response) throws IOException {
+        String fileName = encodeName(name) + ".arrow";
+        typeAndHeader(response, "application/vnd.apache.arrow.file", fileName);
+        ExportArrow.write(titleMap, dataIterator, response.getOutputStream());
+    }
+
+    private static boolean acceptGzip() {
+        String acceptEncoding = RequestUtils.getRequest().getHeader("Accept-Encoding");
+        return U.isNotBlank(acceptEncoding) && acceptEncoding.toLowerCase().contains("gzip");
     }
 
     private static void exportExcel(boolean excel07, String name, LinkedHashMap<String, String> titleMap,
-                                    List<?> dataList, HttpServletResponse response) throws IOException {
+                                    Iterator<?> dataIterator, HttpServletResponse response) throws IOException {
         // 导出的文件名
         String fileName = encodeName(name) + "." + (excel07 ? "xlsx" : "xls");
         typeAndHeader(response, "text/xls", fileName);
 
-        ExportExcel.handle(excel07, titleMap, A.linkedMaps(name, dataList)).write(response.getOutputStream());
+        LinkedHashMap<String, Iterator<?>> dataMap = new LinkedHashMap<>();
+        dataMap.put(name, dataIterator);
+        ExportExcel.write(ExportExcel.handle(excel07, titleMap, dataMap), response.getOutputStream());
     }
 
     private static void typeAndHeader(HttpServletResponse response, String type, String fileName) {
@@ -2,11 +2,13 @@ package com.github.common.mvc;
 
 import com.github.common.Const;
 import com.github.common.encrypt.Encrypt;
+import com.github.common.encrypt.jwt.JWTVerifier;
 import com.github.common.json.JsonUtil;
 import com.github.common.util.A;
 import com.github.common.util.RequestUtils;
 import com.github.common.util.U;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -35,14 +37,44 @@ public final class AppTokenHandler {
     public static String resetTokenExpireTime() {
         String token = getToken();
         if (U.isNotBlank(token)) {
-            Map<String, Object> session = Encrypt.jwtDecode(token);
+            Map<String, Object> session = TokenCache.decode(token);
             if (A.isNotEmpty(session)) {
-                return Encrypt.jwtEncode(session, TOKEN_EXPIRE_TIME, TOKEN_EXPIRE_TIME_UNIT);
+                return regenerate(session);
             }
         }
         return U.EMPTY;
     }
 
+    /**
+     * 当前 token 已经用掉了有效期的 fraction(0 ~ 1) 时才重新生成, 否则返回空.
+     * 数据来自 token 缓存, 没到时间的请求只比较一下时间, 不用签名
+     */
+    public static String refreshToken(double fraction) {
+        String token = getToken();
+        if (U.isNotBlank(token)) {
+            Map<String, Object> session = TokenCache.decode(token);
+            Object exp = session.get(JWTVerifier.EXP);
+            if (exp instanceof Number) {
+                long lifetime = TOKEN_EXPIRE_TIME_UNIT.toMillis(TOKEN_EXPIRE_TIME);
+                long used = System.currentTimeMillis() - (((Number) exp).longValue() - lifetime);
+                if (used >= lifetime * fraction) {
+                    return regenerate(session);
+                }
+            }
+        }
+        return U.EMPTY;
+    }
+
+    private static String regenerate(Map<String, Object> session) {
+        // 缓存中的数据是只读的, 生成时会写入新的过期时间
+        return Encrypt.jwtEncode(new HashMap<>(session), TOKEN_EXPIRE_TIME, TOKEN_EXPIRE_TIME_UNIT);
+    }
+
+    /** 退出登录时调用, 当前请求的 token 在过期之前不能再使用 */
+    public static void revokeToken() {
+        TokenCache.revoke(getToken());
+    }
+
     /** 从请求中获取 token 数据 */
     private static String getToken() {
         return RequestUtils.getHeaderOrParam(Const.TOKEN);
@@ -52,7 +84,7 @@ public final class AppTokenHandler {
     public static <T> T getSessionInfoWithToken(Class<T> clazz) {
         String token = getToken();
         if (U.isNotBlank(token)) {
-            Map<String, Object> session = Encrypt.jwtDecode(token);
+            Map<String, Object> session = TokenCache.decode(token);
             if (A.isNotEmpty(session)) {
                 return JsonUtil.convert(session, clazz);
             }
@@ -18,6 +18,7 @@ public class CorsFilter implements Filter {
     private static final String ACCESS_CONTROL_ALLOW_HEADERS = "Access-Control-Allow-Headers";
     private static final String ACCESS_CONTROL_ALLOW_METHODS = "Access-Control-Allow-Methods";
     private static final String ACCESS_CONTROL_ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+    private static final String ACCESS_CONTROL_EXPOSE_HEADERS = "Access-Control-Expose-Headers";
 
     // /** for ie: https://www.lovelucy.info/ie-accept-third-party-cookie.html */
     // private static final String P3P = "P3P";
@@ -44,6 +45,10 @@ public class CorsFilter implements Filter {
                                 "X-Requested-With, Origin, Access-Control-Request-headers, " +
                                 Const.TOKEN + ", " + Const.VERSION);
             }
+            if (U.isBlank(response.getHeader(ACCESS_CONTROL_EXPOSE_HEADERS))) {
+                // 自定义的响应头要暴露出来, js 才能读到
+                response.addHeader(ACCESS_CONTROL_EXPOSE_HEADERS, Const.REFRESH_TOKEN);
+            }
             /*
             if (RequestUtils.isIeRequest() && U.isBlank(response.getHeader(P3P))) {
                 response.addHeader(P3P, "CP='CAO IDC DSP COR ADM DEVi TAIi PSA PSD IVAi IVDi CONi HIS OUR IND CNT'");
@@ -0,0 +1,92 @@
+package com.github.common.mvc;
+
+import com.github.common.annotation.NeedLogin;
+import com.github.common.annotation.NotNeedLogin;
+import com.github.common.annotation.NotNeedPermission;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <pre>
+ * 处理请求的方法上和登录、权限相关的注解, 每个方法只解析一次, 之后拦截器只需要查一次 map.
+ *
+ * 注解先找方法上的, 没有再找类上的(类上的注解会被方法上的覆盖), 注解的 flag 为 false 时当做没有标注.
+ * 同一个方法可能被多个子类继承, 类上的注解不一样, 所以先按类再按方法缓存
+ * </pre>
+ */
+public final class HandlerAuth {
+
+    /** 类 -> (方法 -> 解析结果) */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, HandlerAuth>> CACHE = new ConcurrentHashMap<>();
+
+    /** 标注了 {@link NeedLogin} */
+    private final boolean needLogin;
+    /** 标注了 {@link NotNeedLogin} */
+    private final boolean notNeedLogin;
+    /** 标注了 {@link NotNeedPermission} */
+    private final boolean notNeedPermission;
+
+    private HandlerAuth(boolean needLogin, boolean notNeedLogin, boolean notNeedPermission) {
+        this.needLogin = needLogin;
+        this.notNeedLogin = notNeedLogin;
+        this.notNeedPermission = notNeedPermission;
+    }
+
+    public boolean isNeedLogin() {
+        return needLogin;
+    }
+    public boolean isNotNeedLogin() {
+        return notNeedLogin;
+    }
+    public boolean isNotNeedPermission() {
+        return notNeedPermission;
+    }
+
+    /** 获取方法的解析结果, 第一次时解析 */
+    public static HandlerAuth of(HandlerMethod handlerMethod) {
+        Class<?> beanType = handlerMethod.getBeanType();
+        ConcurrentMap<Method, HandlerAuth> methodMap = CACHE.get(beanType);
+        if (methodMap == null) {
+            methodMap = CACHE.computeIfAbsent(beanType, key -> new ConcurrentHashMap<>());
+        }
+        Method method = handlerMethod.getMethod();
+        HandlerAuth auth = methodMap.get(method);
+        if (auth == null) {
+            // 解析是幂等的, 并发时多解析一次也没关系, 不用 computeIfAbsent 锁住桶
+            auth = resolve(handlerMethod);
+            methodMap.putIfAbsent(method, auth);
+        }
+        return auth;
+    }
+
+    private static HandlerAuth resolve(HandlerMethod handlerMethod) {
+        NeedLogin needLogin = getAnnotation(handlerMethod, NeedLogin.class);
+        NotNeedLogin notNeedLogin = getAnnotation(handlerMethod, NotNeedLogin.class);
+        NotNeedPermission notNeedPermission = getAnnotation(handlerMethod, NotNeedPermission.class);
+        return new HandlerAuth(
+                needLogin != null && needLogin.flag(),
+                notNeedLogin != null && notNeedLogin.flag(),
+                notNeedPermission != null && notNeedPermission.flag()
+        );
+    }
+    private static <T extends Annotation> T getAnnotation(HandlerMethod handlerMethod, Class<T> clazz) {
+        // 先找方法上的注解, 没有再找类上的注解
+        T annotation = handlerMethod.getMethodAnnotation(clazz);
+        return annotation == null ? AnnotationUtils.findAnnotation(handlerMethod.getBeanType(), clazz) : annotation;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("needLogin", needLogin);
+        map.put("notNeedLogin", notNeedLogin);
+        map.put("notNeedPermission", notNeedPermission);
+        return map;
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.common.mvc;
+
+import com.github.common.encrypt.Encrypt;
+import com.github.common.encrypt.jwt.JWTVerifier;
+import com.github.common.util.A;
+import com.github.common.util.U;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * 验证过的 token 的缓存. 同一个 token 在有效期内会带上成千上万次, 验签和解析 json 只需要做一次.
+ *
+ * key 是 token 的 sha-256 摘要(不保存 token 原文), value 是解析好的数据(只读), 到 token 中的 exp(毫秒)时失效.
+ * 按估算的内存大小淘汰最久没用的, 没有 exp 的 token 最多缓存 {@link #NO_EXPIRE_MINUTES} 分钟.
+ *
+ * jwt 本身是无状态的, 退出时调用 {@link #revoke(String)}, 这个 token 在本机就不能再用了(直到它过期).
+ * 多个节点时退出只在处理退出请求的那个节点生效
+ * </pre>
+ */
+public final class TokenCache {
+
+    /** 缓存占用的最大内存(估算), 单位: 字节 */
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    /** 没有 exp 的 token 最多缓存的时间, 单位: 分钟 */
+    private static final long NO_EXPIRE_MINUTES = 60;
+    /** 作废的 token 最多记录的条数 */
+    private static final long MAX_REVOKED = 100000;
+    /** 作废的 token 最多记录的时间(和 token 的有效期一致), 单位: 天 */
+    private static final long REVOKED_DAYS = 7;
+
+    /** 每个缓存项除了数据之外的固定开销(摘要、缓存项对象、guava 内部的节点等), 估算值 */
+    private static final int ENTRY_OVERHEAD = 200;
+    /** map 中每个 key value 的固定开销(节点、字符串对象头等), 估算值 */
+    private static final int FIELD_OVERHEAD = 80;
+
+    private static final class Entry {
+        private final Map<String, Object> claims;
+        /** 失效的时间点(毫秒) */
+        private final long expireAt;
+        /** 估算的内存占用(字节) */
+        private final int bytes;
+
+        private Entry(Map<String, Object> claims, long expireAt, int bytes) {
+            this.claims = claims;
+            this.expireAt = expireAt;
+            this.bytes = bytes;
+        }
+    }
+
+    /** 当前缓存的估算内存占用 */
+    private static final AtomicLong BYTES = new AtomicLong();
+
+    private static final Cache<HashCode, Entry> CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_BYTES)
+            .weigher((HashCode key, Entry value) -> value.bytes)
+            .expireAfterWrite(REVOKED_DAYS, TimeUnit.DAYS)
+            .removalListener(notification -> {
+                if (notification.getValue() != null) {
+                    BYTES.addAndGet(-notification.getValue().bytes);
+                }
+            })
+            .recordStats()
+            .build();
+
+    /** 作废的 token: 摘要 -> 失效的时间点 */
+    private static final Cache<HashCode, Long> REVOKED = CacheBuilder.newBuilder()
+            .maximumSize(MAX_REVOKED)
+            .expireAfterWrite(REVOKED_DAYS, TimeUnit.DAYS)
+            .build();
+
+    private static HashCode digest(String token) {
+        return Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 验证并解析 token, 验证过的直接返回缓存中的数据. 验证失败、过期、已作废都返回空 map.
+     * 返回的 map 是只读的, 要修改请复制一份
+     */
+    public static Map<String, Object> decode(String token) {
+        if (U.isBlank(token)) {
+            return Collections.emptyMap();
+        }
+        HashCode key = digest(token);
+        if (REVOKED.getIfPresent(key) != null) {
+            return Collections.emptyMap();
+        }
+
+        long now = System.currentTimeMillis();
+        Entry entry = CACHE.getIfPresent(key);
+        if (entry != null) {
+            if (now < entry.expireAt) {
+                return entry.claims;
+            }
+            CACHE.invalidate(key);
+        }
+
+        Map<String, Object> claims = Encrypt.jwtDecode(token);
+        if (A.isEmpty(claims)) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> readOnly = Collections.unmodifiableMap(claims);
+        long expireAt = expireAt(claims, now);
+        if (now < expireAt) {
+            Entry newEntry = new Entry(readOnly, expireAt, bytes(token, claims));
+            BYTES.addAndGet(newEntry.bytes);
+            CACHE.put(key, newEntry);
+        }
+        return readOnly;
+    }
+
+    /** token 中的 exp 是毫秒, 没有的话最多缓存 {@link #NO_EXPIRE_MINUTES} 分钟 */
+    private static long expireAt(Map<String, Object> claims, long now) {
+        long limit = now + TimeUnit.MINUTES.toMillis(NO_EXPIRE_MINUTES);
+        Object exp = claims.get(JWTVerifier.EXP);
+        if (exp instanceof Number) {
+            long expire = ((Number) exp).longValue();
+            return (expire > 0) ? expire : limit;
+        }
+        return limit;
+    }
+
+    /** 估算一个缓存项的内存占用: 固定开销 + 每个字段的 key 和 value(字符串按 2 字节一个字符) */
+    private static int bytes(String token, Map<String, Object> claims) {
+        long bytes = ENTRY_OVERHEAD;
+        for (Map.Entry<String, Object> entry : claims.entrySet()) {
+            bytes += FIELD_OVERHEAD + entry.getKey().length() * 2L;
+            Object value = entry.getValue();
+            bytes += (value == null) ? 0 : Math.max(16, value.toString().length() * 2L);
+        }
+        // 解析出来的数据一般不会比 token 本身大很多, 防止估算偏小
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(bytes, token.length()));
+    }
+
+    /** 作废 token(退出时调用), 在它过期之前本机都不会再接受它 */
+    public static void revoke(String token) {
+        if (U.isBlank(token)) {
+            return;
+        }
+        HashCode key = digest(token);
+        REVOKED.put(key, System.currentTimeMillis());
+        CACHE.invalidate(key);
+    }
+
+    /** 清空缓存(比如更换了密钥), 作废的记录保留 */
+    public static void clear() {
+        CACHE.invalidateAll();
+    }
+
+    /** 缓存的统计: 条数、估算的内存占用、命中率等 */
+    public static Map<String, Object> stats() {
+        CacheStats stats = CACHE.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", CACHE.size());
+        map.put("bytes", BYTES.get());
+        map.put("hit", stats.hitCount());
+        map.put("miss", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("eviction", stats.evictionCount());
+        map.put("revoked", REVOKED.size());
+        return map;
+    }
+}
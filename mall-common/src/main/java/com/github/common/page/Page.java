@@ -45,7 +45,7 @@ public class Page implements Serializable {
     /** 分页默认的每页条数 */
     private static final int DEFAULT_LIMIT = 15;
     /** 最大分页条数 */
-    private static final int MAX_LIMIT = 1000;
+    public static final int MAX_LIMIT = 1000;
 
     /** 当前页数. 不传或传入 0, 或负数, 或非数字则默认是 1 */
     @ApiParam("当前页数. 不传或传入 0, 或负数, 或非数字则默认是 1")
@@ -4,20 +4,38 @@ import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class ApplicationContexts implements ApplicationContextAware {
 
     private static ApplicationContext context;
+    /** 可选的 bean, 没有时放的是 {@link #NONE}, 每次请求都要用的时候不必再去容器里查找 */
+    private static final Map<Class<?>, Object> OPTIONAL_BEANS = new ConcurrentHashMap<>();
+    private static final Object NONE = new Object();
 
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         // 注入上下文对象
         context = applicationContext;
+        OPTIONAL_BEANS.clear();
     }
 
     public static <T> T getBean(Class<T> clazz) {
         return context.getBean(clazz);
     }
 
+    /** 容器中没有这个 bean(或者还没有容器)时返回 null */
+    @SuppressWarnings("unchecked")
+    public static <T> T getBeanIfPresent(Class<T> clazz) {
+        if (context == null) {
+            return null;
+        }
+        Object bean = OPTIONAL_BEANS.computeIfAbsent(clazz, type ->
+                (context.getBeanNamesForType(type).length == 0) ? NONE : context.getBean(type));
+        return (bean == NONE) ? null : (T) bean;
+    }
+
     @SuppressWarnings("unchecked")
     public static <T> T getBean(String name) {
         return (T) context.getBean(name);
@@ -5,61 +5,88 @@ import java.net.NetworkInterface;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * <p>https://github.com/mongodb/mongo-java-driver/blob/master/bson/src/main/org/bson/types/ObjectId.java</p>
+ * <p>序列号生成, 参考 snowflake, 不需要和其他节点协调, 也不需要加锁</p>
  *
  * <p>由以下几个部分组成:</p>
  * <li>生成序列号的行为. 如 D 表示订单, X 表示提现, T 表示退款 等</li>
- * <li>时间规则的 hashcode 值</li>
- * <li>自增值. 这个值基于当前进程是同步的. 基于 concurrent 下的 atomic 类实现, 避免 synchronized 锁</li>
- * <li>机器码 + 进程号合并后的 hashcode 值</li>
- * &nbsp;&nbsp;&nbsp;&nbsp;机器码. 当前机器的 mac 地址. 在多台不同的机器时, 此规则可以区分<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;进程号. 此 jvm 进程号. 在一台机器的多个不同进程时, 此规则可以区分
+ * <li>一个 49 位的数字, 左补 0 到 15 位</li>
+ * &nbsp;&nbsp;&nbsp;&nbsp;时间. 从 2018-01-01 开始的秒数, 30 位, 可以用到 2052 年<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;节点号. 5 位, 0 ~ 31, 同时运行的节点之间不能重复<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;序列. 14 位, 每个节点每秒 16384 个
  *
  * <table border="1">
- *     <caption>ObjectID layout</caption>
+ *     <caption>layout</caption>
  *     <tr>
  *         <td>1</td>
- *         <td>2</td>
- *         <td>3</td>
- *         <td>4</td>
+ *         <td>30 bit</td>
+ *         <td>5 bit</td>
+ *         <td>14 bit</td>
  *     </tr>
  *     <tr>
  *         <td>behavior</td>
- *         <td>time.hashCode.sub</td>
- *         <td>inc</td>
- *         <td>(machine + pid).hashCode.sub</td>
+ *         <td>second</td>
+ *         <td>worker</td>
+ *         <td>sequence</td>
  *     </tr>
  * </table>
+ *
+ * <p>时间和序列放在一个 AtomicLong 中用 cas 递增, 序列用完时直接进位到下一秒(借用未来的时间),
+ * 突发时每个节点也能生成远超每秒 16384 个, 领先当前时间超过 {@link #MAX_BORROW_SECONDS} 秒后才会等待.
+ * 时钟回拨时继续使用已经用到的时间, 不会重复也不会阻塞</p>
+ *
+ * <p>节点号默认基于 mac 地址和进程号取模, 多个节点时可能冲突, 应该用 {@link #setWorkerId(int)} 指定,
+ * 或者由 redis 租用(见 mall-global 的 NoWorkerConfig). 使用固定节点号时, 重启的间隔要大于借用的时间</p>
  */
 public final class NoUtil {
 
     private static final Logger LOGGER = Logger.getLogger(NoUtil.class.getName());
 
-    /** 机器码 加 进程号 会导致生成的序列号很长, 基于这两个值做一些截取 */
-    private static final String MP;
-    /** 截取长度 */
-    private static final int HORIZONTAL_LEN = 4;
-    /** 最大长度 */
+    /** 时间的起点: 2018-01-01 00:00:00 +0800, 单位: 秒 */
+    static final long EPOCH = 1514736000L;
+    static final int TIME_BITS = 30;
+    static final int WORKER_BITS = 5;
+    static final int SEQUENCE_BITS = 14;
+    /** 最大的节点号 */
+    public static final int MAX_WORKER_ID = (1 << WORKER_BITS) - 1;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    static final long MAX_SECOND = (1L << TIME_BITS) - 1;
+    /** 序列用完时最多借用未来多少秒 */
+    static final long MAX_BORROW_SECONDS = 10;
+    /** 数字部分的长度 */
     private static final int MAX_LEN = 15;
+    private static final char[] ZERO = "000000000000000".toCharArray();
+
+    private static volatile int workerId;
     static {
         // 机器码 --> 本机 mac 地址的 hashcode 值
         int machineIdentifier = createMachineIdentifier();
         // 进程号 --> 当前运行的 jvm 进程号的 hashcode 值
         int processIdentifier = createProcessIdentifier();
 
-        String mp = Integer.toString(Math.abs((machineIdentifier + "" + processIdentifier).hashCode()));
-        MP = (mp.length() > HORIZONTAL_LEN) ? mp.substring(mp.length() - HORIZONTAL_LEN, mp.length()) : mp;
+        workerId = Math.abs((machineIdentifier + "" + processIdentifier).hashCode() % (MAX_WORKER_ID + 1));
+    }
+
+    /** 设置当前节点的节点号, 需要在生成序列号之前调用 */
+    public static void setWorkerId(int id) {
+        if (id < 0 || id > MAX_WORKER_ID) {
+            throw new IllegalArgumentException(String.format("worker id must between 0 and %s, not %s", MAX_WORKER_ID, id));
+        }
+        if (id != workerId && LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(String.format("no worker id changed from %s to %s", workerId, id));
+        }
+        workerId = id;
+    }
+    public static int getWorkerId() {
+        return workerId;
     }
 
     private static int createMachineIdentifier() {
@@ -110,51 +137,76 @@ public final class NoUtil {
         return processId;
     }
 
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat("HHyyssMMmmdd");
-    private static String unitCode() {
-        String unit = Integer.toString(Math.abs(DATE_FORMAT.format(new Date()).hashCode()));
-        return unit.substring(unit.length() - HORIZONTAL_LEN, unit.length());
+    /** 时间和序列的生成, 两者合在一个 long 中: 时间 << 序列位数 | 序列 */
+    static final class Generator {
+        private final AtomicLong state = new AtomicLong();
+
+        long next() {
+            while (true) {
+                long now = System.currentTimeMillis() / 1000 - EPOCH;
+                long value = next(now);
+                if (value >= 0) {
+                    return value;
+                }
+                // 借用的时间太多了, 等一会儿再来
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        /** 返回 时间 << 序列位数 | 序列, 借用的时间超出上限时返回 -1 */
+        long next(long now) {
+            while (true) {
+                long current = state.get();
+                long second = current >>> SEQUENCE_BITS;
+                long next;
+                if (now > second) {
+                    next = now << SEQUENCE_BITS;
+                } else {
+                    // 时钟回拨或者同一秒内: 在已经用到的时间上递增, 序列用完会自动进位到下一秒
+                    next = current + 1;
+                    if ((next >>> SEQUENCE_BITS) - now > MAX_BORROW_SECONDS) {
+                        return -1;
+                    }
+                }
+                if ((next >>> SEQUENCE_BITS) > MAX_SECOND) {
+                    throw new IllegalStateException("no time bits exhausted");
+                }
+                if (state.compareAndSet(current, next)) {
+                    return next;
+                }
+            }
+        }
+    }
+
+    /** 将 时间和序列 与 节点号 合成数字 */
+    static long compose(long timeAndSequence, int worker) {
+        long second = timeAndSequence >>> SEQUENCE_BITS;
+        long sequence = timeAndSequence & SEQUENCE_MASK;
+        return (second << (WORKER_BITS + SEQUENCE_BITS)) | ((long) worker << SEQUENCE_BITS) | sequence;
+    }
+
+    /** 行为 + 左补 0 到 15 位的数字 */
+    static String render(String behavior, long id) {
+        String num = Long.toString(id);
+        StringBuilder sbd = new StringBuilder(behavior.length() + MAX_LEN).append(behavior);
+        if (num.length() < MAX_LEN) {
+            sbd.append(ZERO, 0, MAX_LEN - num.length());
+        }
+        return sbd.append(num).toString();
     }
 
     /** 生成序列号的类型 */
     private enum Category {
-        /** 订单: 标识, 初始值, 步长, 最大值(只要保证之内, 从初始化值加步长不会超时最大值就不会有重复) */
-        Order("D", 16, 3, 10000000);
-
-        String behavior;
-        int init, step, max;
-        AtomicLong counter;
-        Lock lock;
-        Category(String behavior, int init, int step, int max) {
-            this.behavior = behavior;
-            this.init = init;
-            this.step = step;
-            this.max = max - step;
+        /** 订单 */
+        Order("D");
 
-            counter = new AtomicLong(init);
-            lock = new ReentrantLock();
+        private final String behavior;
+        private final Generator generator = new Generator();
+        Category(String behavior) {
+            this.behavior = behavior;
         }
         public String no() {
-            long increment = counter.addAndGet(step);
-            if (increment >= max) {
-                lock.lock();
-                try {
-                    if (increment >= max) {
-                        increment = counter.getAndSet(init);
-                    }
-                } finally {
-                    lock.unlock();
-                }
-            }
-            String no = unitCode() + increment + MP;
-            if (no.length() < MAX_LEN) {
-                StringBuilder sbd = new StringBuilder();
-                for (int i = 0; i < MAX_LEN - no.length(); i++) {
-                    sbd.append("0");
-                }
-                no = unitCode() + sbd.toString() + increment + MP;
-            }
-            return behavior + no;
+            return render(behavior, compose(generator.next(), workerId));
         }
     }
 
@@ -162,4 +214,18 @@ public final class NoUtil {
     public static String getOrderNo() {
         return Category.Order.no();
     }
+
+    /** 从序列号中解析出生成的时间(秒级), 格式不对时返回 null */
+    public static Date parseTime(String no) {
+        if (no == null || no.length() < MAX_LEN) {
+            return null;
+        }
+        try {
+            long id = Long.parseLong(no.substring(no.length() - MAX_LEN));
+            long second = id >>> (WORKER_BITS + SEQUENCE_BITS);
+            return new Date((second + EPOCH) * 1000);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 }
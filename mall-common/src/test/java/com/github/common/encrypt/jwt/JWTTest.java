@@ -0,0 +1,149 @@
+package com.github.common.encrypt.jwt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class JWTTest {
+
+    private static final String SECRET = "*W0$%Te#nr&y^pOt";
+    private static final Algorithm[] ALGORITHMS = { Algorithm.HS256, Algorithm.HS384, Algorithm.HS512 };
+    private static final int COUNT = 100000;
+
+    private final JWTSigner signer = new JWTSigner(SECRET);
+    private final JWTHmac hmac = new JWTHmac(SECRET.getBytes());
+    private final JWTVerifier verifier = new JWTVerifier(SECRET);
+
+    private static Map<String, Object> claims() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("id", 123L);
+        claims.put("name", "中文-tester");
+        claims.put(JWTVerifier.EXP, System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        return claims;
+    }
+
+    /** 每次都 Mac.getInstance 的签名, 用来检查结果一致, 也作为性能的对照 */
+    private static String reference(String token, Algorithm algorithm) throws Exception {
+        String signingInput = token.substring(0, token.lastIndexOf('.'));
+        Mac mac = Mac.getInstance(algorithm.getValue());
+        mac.init(new SecretKeySpec(SECRET.getBytes(), algorithm.getValue()));
+        byte[] signature = mac.doFinal(signingInput.getBytes(StandardCharsets.UTF_8));
+        return signingInput + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    @Test
+    public void signAndVerify() throws Exception {
+        for (Algorithm algorithm : ALGORITHMS) {
+            String token = signer.sign(claims(), new JWTSigner.Options().setAlgorithm(algorithm));
+            Assert.assertEquals(reference(token, algorithm), token);
+
+            Map<String, Object> map = verifier.verify(token);
+            Assert.assertEquals(123, ((Number) map.get("id")).intValue());
+            Assert.assertEquals("中文-tester", map.get("name"));
+
+            try {
+                verifier.verify(token.substring(0, token.length() - 1) + (token.endsWith("A") ? "B" : "A"));
+                Assert.fail();
+            } catch (SignatureException e) {
+                // 签名不对
+            }
+        }
+
+        Map<String, Object> expired = claims();
+        expired.put(JWTVerifier.EXP, System.currentTimeMillis() - 1);
+        try {
+            verifier.verify(signer.sign(expired));
+            Assert.fail();
+        } catch (JWTExpiredException e) {
+            // 已过期
+        }
+        try {
+            verifier.verify("a.b");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Wrong number of segments: 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        for (Algorithm algorithm : ALGORITHMS) {
+            JWTSigner.Options options = new JWTSigner.Options().setAlgorithm(algorithm);
+            Map<String, Object> claims = claims();
+            String token = signer.sign(claims, options);
+
+            long sink = 0;
+            for (int loop = 0; loop < 3; loop++) {
+                sink += sign(claims, options) + verify(token) + references(token, algorithm) + hmacs(token, algorithm);
+            }
+
+            long start = System.nanoTime();
+            sink += references(token, algorithm);
+            long reference = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += hmacs(token, algorithm);
+            long hmac = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += sign(claims, options);
+            long sign = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += verify(token);
+            long verify = System.nanoTime() - start;
+
+            System.out.printf("%s: sign %.0f ops/s, verify %.0f ops/s, hmac only: Mac.getInstance per op %.0f ops/s,"
+                            + " thread-local Mac %.0f ops/s (%s)%n", algorithm, opsPerSecond(sign), opsPerSecond(verify),
+                    opsPerSecond(reference), opsPerSecond(hmac), sink);
+        }
+    }
+
+    private static double opsPerSecond(long nanos) {
+        return COUNT * 1000000000D / nanos;
+    }
+
+    private long sign(Map<String, Object> claims, JWTSigner.Options options) {
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += signer.sign(claims, options).length();
+        }
+        return sum;
+    }
+
+    private long verify(String token) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += verifier.verify(token).size();
+        }
+        return sum;
+    }
+
+    private static long references(String token, Algorithm algorithm) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += reference(token, algorithm).length();
+        }
+        return sum;
+    }
+
+    private long hmacs(String token, Algorithm algorithm) throws Exception {
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        int signingLength = token.lastIndexOf('.');
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            Mac mac = hmac.mac(algorithm);
+            mac.update(bytes, 0, signingLength);
+            sum += mac.doFinal().length;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.common.export;
+
+import com.github.common.date.DateFormatType;
+import com.github.common.util.U;
+import lombok.Data;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+public class ExportAccessorTest {
+
+    public enum Status {
+        Wait("待处理"), Done("已完成"), Other(null);
+
+        private final String value;
+        Status(String value) { this.value = value; }
+        public String getValue() { return value; }
+    }
+
+    /** 30 列的实体 */
+    @Data
+    public static class Wide {
+        @ExportColumn("c01") private String c01;
+        @ExportColumn("c02") private String c02;
+        @ExportColumn("c03") private String c03;
+        @ExportColumn("c04") private String c04;
+        @ExportColumn("c05") private String c05;
+        @ExportColumn("c06") private String c06;
+        @ExportColumn("c07") private String c07;
+        @ExportColumn("c08") private String c08;
+        @ExportColumn("c09") private Long c09;
+        @ExportColumn("c10") private Long c10;
+        @ExportColumn("c11") private Long c11;
+        @ExportColumn("c12") private Long c12;
+        @ExportColumn("c13") private Integer c13;
+        @ExportColumn("c14") private Integer c14;
+        @ExportColumn("c15") private Integer c15;
+        @ExportColumn("c16") private Integer c16;
+        @ExportColumn("c17") private BigDecimal c17;
+        @ExportColumn("c18") private BigDecimal c18;
+        @ExportColumn("c19") private BigDecimal c19;
+        @ExportColumn("c20") private BigDecimal c20;
+        @ExportColumn("c21") private Date c21;
+        @ExportColumn(value = "c22", dateFormat = DateFormatType.YYYY_MM_DD) private Date c22;
+        @ExportColumn(value = "c23", dateFormat = DateFormatType.CN_YYYY_MM_DD_HH_MM_SS) private Date c23;
+        @ExportColumn("c24") private Date c24;
+        @ExportColumn("c25") private Status c25;
+        @ExportColumn("c26") private Status c26;
+        @ExportColumn("c27") private Status c27;
+        @ExportColumn("c28") private Boolean c28;
+        @ExportColumn("c29") private Object c29;
+        @ExportColumn("c30") private String c30;
+    }
+
+    private static Wide wide(int i) {
+        Wide wide = new Wide();
+        wide.setC01("name-" + i);
+        wide.setC02(" trim ");
+        wide.setC03("null");
+        wide.setC04("");
+        wide.setC05("广东省");
+        wide.setC06("深圳市");
+        wide.setC07("a,\"b\"");
+        wide.setC08(null);
+        wide.setC09((long) i);
+        wide.setC10((long) -i);
+        wide.setC11(Long.MAX_VALUE);
+        wide.setC12(null);
+        wide.setC13(i % 100);
+        wide.setC14(0);
+        wide.setC15(Integer.MIN_VALUE);
+        wide.setC16(null);
+        wide.setC17(new BigDecimal("12.50"));
+        wide.setC18(BigDecimal.valueOf(i, 2));
+        wide.setC19(BigDecimal.ZERO);
+        wide.setC20(null);
+        wide.setC21(new Date(1500000000000L + i * 1000L));
+        wide.setC22(new Date(1500000000000L));
+        wide.setC23(new Date(1500000000000L));
+        wide.setC24(null);
+        wide.setC25(Status.values()[i % 3]);
+        wide.setC26(Status.Done);
+        wide.setC27(null);
+        wide.setC28(i % 2 == 0);
+        wide.setC29((i % 2 == 0) ? new Date(1500000000000L) : Status.Wait);
+        wide.setC30("end");
+        return wide;
+    }
+
+    @Test
+    public void sameAsGetField() {
+        String[] fields = ExportColumnHandler.collectTitle(Wide.class).keySet().toArray(new String[0]);
+        Assert.assertEquals(30, fields.length);
+
+        ExportColumnHandler.RowAccessor rowAccessor = new ExportColumnHandler.RowAccessor(fields);
+        for (int i = 0; i < 10; i++) {
+            Wide data = wide(i);
+            ExportColumnHandler.Accessor[] accessors = rowAccessor.of(data);
+            for (int j = 0; j < fields.length; j++) {
+                Assert.assertEquals(fields[j], U.getField(data, fields[j]), accessors[j].get(data));
+            }
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("c21", new Date(1500000000000L));
+        map.put("c25", Status.Wait);
+        map.put("c09", 1L);
+        String[] mapFields = { "c21|yyyy-MM-dd", "c25", "c09", "none" };
+        ExportColumnHandler.Accessor[] accessors = new ExportColumnHandler.RowAccessor(mapFields).of(map);
+        for (int j = 0; j < mapFields.length; j++) {
+            Assert.assertEquals(mapFields[j], U.getField(map, mapFields[j]), accessors[j].get(map));
+        }
+    }
+
+    /** get 方法不是公有的 */
+    public static class Hidden {
+        @ExportColumn("name") private String name = "abc";
+        @ExportColumn("num") private Integer num = 123;
+        String getName() { return name; }
+        private Integer getNum() { return num; }
+    }
+
+    @Test
+    public void nonPublicGetter() {
+        String[] fields = { "name", "num", "none" };
+        Hidden data = new Hidden();
+        ExportColumnHandler.Accessor[] accessors = new ExportColumnHandler.RowAccessor(fields).of(data);
+        Assert.assertEquals("abc", accessors[0].get(data));
+        Assert.assertEquals("123", accessors[1].get(data));
+        Assert.assertEquals(U.EMPTY, accessors[2].get(data));
+    }
+
+    @Test
+    public void benchmark() {
+        String[] fields = ExportColumnHandler.collectTitle(Wide.class).keySet().toArray(new String[0]);
+        int count = 20000;
+        List<Wide> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(wide(i));
+        }
+
+        // 预热
+        long sink = 0;
+        for (int loop = 0; loop < 3; loop++) {
+            sink += reflect(list, fields) + compiled(list, fields);
+        }
+
+        long start = System.nanoTime();
+        sink += reflect(list, fields);
+        long reflect = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        sink += compiled(list, fields);
+        long compiled = System.nanoTime() - start;
+
+        System.out.printf("30 columns, U.getField: %.0f ns/row, accessor: %.0f ns/row (%s)%n",
+                (double) reflect / count, (double) compiled / count, sink);
+    }
+
+    private static long reflect(List<Wide> list, String[] fields) {
+        long length = 0;
+        for (Wide data : list) {
+            for (String field : fields) {
+                length += U.getField(data, field).length();
+            }
+        }
+        return length;
+    }
+
+    private static long compiled(List<Wide> list, String[] fields) {
+        long length = 0;
+        ExportColumnHandler.RowAccessor rowAccessor = new ExportColumnHandler.RowAccessor(fields);
+        for (Wide data : list) {
+            ExportColumnHandler.Accessor[] accessors = rowAccessor.of(data);
+            for (ExportColumnHandler.Accessor accessor : accessors) {
+                length += accessor.get(data).length();
+            }
+        }
+        return length;
+    }
+}
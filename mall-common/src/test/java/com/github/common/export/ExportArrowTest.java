@@ -0,0 +1,141 @@
+package com.github.common.export;
+
+import lombok.Data;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class ExportArrowTest {
+
+    private static final int COUNT = 200000;
+
+    public enum Status {
+        Wait("待处理"), Done("已完成"), Cancel("已取消");
+
+        private final String value;
+        Status(String value) { this.value = value; }
+        public String getValue() { return value; }
+    }
+
+    @Data
+    public static class Order {
+        @ExportColumn("订单号") private Long id;
+        @ExportColumn("商品") private String name;
+        @ExportColumn("数量") private Integer num;
+        @ExportColumn("金额") private BigDecimal price;
+        @ExportColumn("下单时间") private Date createTime;
+        @ExportColumn("状态") private Status status;
+        @ExportColumn("已支付") private Boolean paid;
+    }
+
+    private static Iterator<Order> rows(int count) {
+        return new Iterator<Order>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Order next() {
+                int i = index++;
+                Order order = new Order();
+                order.setId(100000000L + i);
+                order.setName((i % 5 == 0) ? null : ("商品-" + (i % 1000)));
+                order.setNum(i % 10);
+                order.setPrice(BigDecimal.valueOf(i % 100000, 2));
+                order.setCreateTime(new Date(1500000000000L + i * 1000L));
+                order.setStatus(Status.values()[i % 3]);
+                order.setPaid(i % 2 == 0);
+                return order;
+            }
+        };
+    }
+
+    private static byte[] write(String type, int count) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long start = System.currentTimeMillis();
+        FileExport.write(type, "order", FileExport.title(Order.class), rows(count), outputStream);
+        System.out.println(String.format("%s: %s rows, %s ms, %s KB",
+                type, count, System.currentTimeMillis() - start, outputStream.size() >> 10));
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void readBack() throws Exception {
+        byte[] csv = write("csv", COUNT);
+        byte[] arrow = write("arrow", COUNT);
+        Assert.assertTrue(arrow.length * 3 < csv.length);
+
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowFileReader reader = new ArrowFileReader(new ByteArrayReadableSeekableByteChannel(arrow),
+                     allocator, CommonsCompressionFactory.INSTANCE)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            List<String> names = new ArrayList<>();
+            for (Field field : root.getSchema().getFields()) {
+                names.add(field.getName());
+            }
+            Assert.assertEquals(Arrays.asList("id", "name", "num", "price", "createTime", "status", "paid"), names);
+            Assert.assertEquals("订单号", root.getSchema().getFields().get(0).getMetadata().get("title"));
+
+            long start = System.currentTimeMillis();
+            int rows = 0;
+            int batches = 0;
+            while (reader.loadNextBatch()) {
+                if (batches == 0) {
+                    Assert.assertEquals(100000001L, ((BigIntVector) root.getVector("id")).get(1));
+                    Assert.assertTrue(root.getVector("name").isNull(0));
+                    Assert.assertEquals("商品-1", new String(((VarCharVector) root.getVector("name")).get(1), StandardCharsets.UTF_8));
+                    Assert.assertEquals(new BigDecimal("0.01"), ((DecimalVector) root.getVector("price")).getObject(1));
+                    Assert.assertEquals(1500000001000L, ((TimeStampMilliTZVector) root.getVector("createTime")).get(1));
+                    Assert.assertEquals(1, ((IntVector) root.getVector("status")).get(1));
+                    Assert.assertEquals(0, ((BitVector) root.getVector("paid")).get(1));
+                }
+                rows += root.getRowCount();
+                batches++;
+            }
+            System.out.println(String.format("arrow read: %s rows, %s batches, %s ms",
+                    rows, batches, System.currentTimeMillis() - start));
+            Assert.assertEquals(COUNT, rows);
+            Assert.assertEquals((COUNT + ExportArrow.ROW_GROUP - 1) / ExportArrow.ROW_GROUP, batches);
+
+            long id = root.getSchema().findField("status").getDictionary().getId();
+            Dictionary dictionary = reader.getDictionaryVectors().get(id);
+            VarCharVector values = (VarCharVector) dictionary.getVector();
+            Assert.assertEquals("已完成", new String(values.get(1), StandardCharsets.UTF_8));
+        }
+    }
+
+    /** arrow 用 jackson 做 schema 和 json 的互转, 这里用的是 spring boot 管理的 jackson 版本, 确认能用 */
+    @Test
+    public void schemaJson() throws Exception {
+        byte[] arrow = write("arrow", 10);
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowFileReader reader = new ArrowFileReader(new ByteArrayReadableSeekableByteChannel(arrow),
+                     allocator, CommonsCompressionFactory.INSTANCE)) {
+            Schema schema = reader.getVectorSchemaRoot().getSchema();
+            Assert.assertEquals(schema, Schema.fromJSON(schema.toJson()));
+            Assert.assertTrue(reader.loadNextBatch());
+            Assert.assertNotNull(reader.getVectorSchemaRoot().contentToTSVString());
+        }
+    }
+
+    @Test
+    public void empty() throws Exception {
+        Assert.assertEquals(0, write("arrow", 0).length);
+    }
+}
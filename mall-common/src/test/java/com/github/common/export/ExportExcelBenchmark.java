@@ -0,0 +1,48 @@
+package com.github.common.export;
+
+import com.github.common.util.U;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** 顺序生成和并行生成 xlsx 的耗时对比, 数据量大, 不放在单元测试里, 手动运行 */
+public class ExportExcelBenchmark {
+
+    /** 总行数, 可以用 -Dexport.rows=xxx 调整 */
+    private static final int ROWS = Integer.getInteger("export.rows", 1000000);
+    private static final int SHEETS = 5;
+
+    private static long export(int parallelism, File file) throws Exception {
+        LinkedHashMap<String, Iterator<?>> dataMap = new LinkedHashMap<>();
+        for (int i = 0; i < SHEETS; i++) {
+            dataMap.put("sheet" + i, ExportExcelTest.rows("sheet" + i, ROWS / SHEETS));
+        }
+        long start = System.currentTimeMillis();
+        Workbook workbook = ExportExcel.handle(true, ExportExcelTest.titleMap(), dataMap, parallelism);
+        int sheetCount = workbook.getNumberOfSheets();
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            ExportExcel.write(workbook, outputStream);
+        }
+        long time = System.currentTimeMillis() - start;
+        System.out.println(String.format("parallelism %s: %s rows, %s sheets, %s ms, %s KB",
+                parallelism, ROWS, sheetCount, time, file.length() >> 10));
+        return time;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File sequential = File.createTempFile("export-sequential", ".xlsx");
+        File parallel = File.createTempFile("export-parallel", ".xlsx");
+        try {
+            export(1, sequential);
+            export(U.PROCESSORS, parallel);
+        } finally {
+            sequential.delete();
+            parallel.delete();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.common.export;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class ExportExcelTest {
+
+    static Iterator<Export> rows(String prefix, int count) {
+        return new Iterator<Export>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Export next() {
+                int i = index++;
+                Export export = new Export();
+                export.setProvince(prefix);
+                export.setCity("深圳市");
+                export.setArea("南山区-" + i);
+                export.setOrderCount((long) i);
+                export.setGoodsNum((long) (i % 100));
+                export.setTotalMoney(i + ".50");
+                return export;
+            }
+        };
+    }
+
+    static LinkedHashMap<String, String> titleMap() {
+        LinkedHashMap<String, String> titleMap = new LinkedHashMap<>();
+        titleMap.put("province", "省份");
+        titleMap.put("city", "城市");
+        titleMap.put("area", "县区");
+        titleMap.put("orderCount", "订单笔数|0");
+        titleMap.put("goodsNum", "商品数量|0");
+        titleMap.put("totalMoney", "结算金额|0.00");
+        return titleMap;
+    }
+
+    @Test
+    public void sheetOrderAndStyle() {
+        LinkedHashMap<String, Iterator<?>> dataMap = new LinkedHashMap<>();
+        dataMap.put("a", rows("a", 70000));
+        dataMap.put("b", rows("b", 10));
+        dataMap.put("c", null);
+        Workbook workbook = ExportExcel.handle(true, titleMap(), dataMap, 4);
+        try {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+                names.add(workbook.getSheetAt(i).getSheetName());
+            }
+            Assert.assertEquals(Arrays.asList("a-1", "a-2", "b", "c"), names);
+            // 相同格式的列共用一个样式. 流式写入时前面的行已经刷到临时文件了, 用还在内存中的 b
+            Row row = workbook.getSheet("b").getRow(1);
+            Assert.assertEquals(row.getCell(3).getCellStyle().getIndex(), row.getCell(4).getCellStyle().getIndex());
+            Assert.assertNotEquals(row.getCell(3).getCellStyle().getIndex(), row.getCell(5).getCellStyle().getIndex());
+        } finally {
+            ((SXSSFWorkbook) workbook).dispose();
+        }
+    }
+
+    /** 迭代数据出错时抛出来, 共用线程池中的线程都会放出来, 之后的导出不受影响 */
+    @Test
+    public void iteratorError() {
+        LinkedHashMap<String, Iterator<?>> dataMap = new LinkedHashMap<>();
+        dataMap.put("a", rows("a", 100000));
+        dataMap.put("b", new Iterator<Export>() {
+            private final Iterator<Export> rows = rows("b", 1000);
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+            @Override
+            public Export next() {
+                if (rows.hasNext()) {
+                    return rows.next();
+                }
+                throw new IllegalStateException("query error");
+            }
+        });
+        try {
+            ExportExcel.handle(true, titleMap(), dataMap, 2);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("query error", e.getMessage());
+        }
+
+        for (int i = 0; i < 3; i++) {
+            dataMap = new LinkedHashMap<>();
+            for (int j = 0; j < 4; j++) {
+                dataMap.put("s" + j, rows("s" + j, 1000));
+            }
+            Workbook workbook = ExportExcel.handle(true, titleMap(), dataMap, 4);
+            try {
+                Assert.assertEquals(4, workbook.getNumberOfSheets());
+                Assert.assertEquals("s0", workbook.getSheetAt(0).getSheetName());
+            } finally {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+        }
+    }
+
+    /** 没有指定并行数时在当前线程中顺序生成 */
+    @Test
+    public void sequentialByDefault() {
+        Thread current = Thread.currentThread();
+        LinkedHashMap<String, Iterator<?>> dataMap = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            Iterator<Export> rows = rows("s" + i, 10);
+            dataMap.put("s" + i, new Iterator<Export>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+                @Override
+                public Export next() {
+                    Assert.assertSame(current, Thread.currentThread());
+                    return rows.next();
+                }
+            });
+        }
+        Workbook workbook = ExportExcel.handle(true, titleMap(), dataMap);
+        try {
+            Assert.assertEquals(3, workbook.getNumberOfSheets());
+        } finally {
+            ((SXSSFWorkbook) workbook).dispose();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.common.export;
+
+import com.github.common.page.Page;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class ExportStreamTest {
+
+    private static final int COUNT = 200000;
+
+    private static List<Export> page(int page, int limit) {
+        int start = (page - 1) * limit;
+        int end = Math.min(start + limit, COUNT);
+        List<Export> list = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            Export export = new Export();
+            export.setProvince("广东省");
+            export.setCity("深圳市");
+            export.setArea("南山区-" + i);
+            export.setOrderCount((long) i);
+            export.setGoodsNum((long) (i % 100));
+            export.setTotalMoney(i + ".50");
+            list.add(export);
+        }
+        return list;
+    }
+
+    @Test
+    public void pageIterator() {
+        int[] calls = new int[1];
+        Iterator<Export> iterator = ExportPage.iterator((page, limit) -> {
+            calls[0]++;
+            return page(page, limit);
+        }, 1000);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(COUNT, count);
+        // 最后一页刚好是满的, 会多取一次空页
+        Assert.assertEquals(COUNT / 1000 + 1, calls[0]);
+    }
+
+    /** 回调中用 Page 去查时, 默认的条数和超过上限的条数都不能被 Page 改成 15 条 */
+    @Test
+    public void pageThroughPage() {
+        for (int limit : new int[] { ExportPage.DEFAULT_LIMIT, 5000 }) {
+            Iterator<Export> iterator = ExportPage.iterator((page, size) -> {
+                Page param = new Page(String.valueOf(page), String.valueOf(size));
+                return page(param.getPage(), param.getLimit());
+            }, limit);
+            int count = 0;
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            Assert.assertEquals(String.valueOf(limit), COUNT, count);
+        }
+    }
+
+    @Test
+    public void csv() throws Exception {
+        LinkedHashMap<String, String> titleMap = new LinkedHashMap<>();
+        titleMap.put("province", "省\"份\"|0.00|20");
+        titleMap.put("totalMoney", "金额");
+        Export export = new Export();
+        export.setProvince("a,\"b\"\"");
+        export.setTotalMoney("1.50");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ExportCsv.write(titleMap, Arrays.asList(export, null, export).iterator(), outputStream);
+        String expected = "\"省\"\"份\"\"\",\"金额\"\n\"a,\"\"b\"\"\"\"\",\"1.50\"";
+        Assert.assertEquals(expected + "\n" + expected.substring(expected.indexOf('\n') + 1),
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+
+        ExportCsv.setBom(true);
+        try {
+            outputStream.reset();
+            ExportCsv.write(titleMap, Collections.singletonList(export).iterator(), outputStream);
+            byte[] bytes = outputStream.toByteArray();
+            Assert.assertEquals((byte) 0xEF, bytes[0]);
+            Assert.assertEquals(expected, new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8));
+        } finally {
+            ExportCsv.setBom(false);
+        }
+    }
+
+    @Test
+    public void stream() throws Exception {
+        File directory = Files.createTempDirectory("export").toFile();
+        try {
+            for (String type : new String[] { "xls07", "csv" }) {
+                System.gc();
+                Runtime runtime = Runtime.getRuntime();
+                long memory = runtime.totalMemory() - runtime.freeMemory();
+                long start = System.currentTimeMillis();
+
+                FileExport.save(type, "stream-" + type, ExportStreamTest::page, Export.class, directory.getPath());
+
+                long used = runtime.totalMemory() - runtime.freeMemory() - memory;
+                System.out.println(String.format("%s export %s rows: %s ms, heap delta: %s KB",
+                        type, COUNT, System.currentTimeMillis() - start, used >> 10));
+            }
+            File[] files = directory.listFiles();
+            Assert.assertNotNull(files);
+            Assert.assertEquals(2, files.length);
+            for (File file : files) {
+                Assert.assertTrue(file.length() > 0);
+            }
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+}
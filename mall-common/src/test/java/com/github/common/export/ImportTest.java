@@ -0,0 +1,199 @@
+package com.github.common.export;
+
+import com.github.common.date.DateFormatType;
+import lombok.Data;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ImportTest {
+
+    /** 大文件的行数, 可以用 -Dimport.rows=xxx 调整 */
+    private static final int ROWS = Integer.getInteger("import.rows", 1000000);
+
+    public enum Status {
+        Wait("待处理"), Done("已完成");
+
+        private final String value;
+        Status(String value) { this.value = value; }
+        public String getValue() { return value; }
+    }
+
+    @Data
+    public static class Product {
+        @ExportColumn("编号") private Long id;
+        @ExportColumn("名称") private String name;
+        @ExportColumn("价格|0.00") private BigDecimal price;
+        @ExportColumn("库存") private Integer stock;
+        @ExportColumn(value = "上架时间", dateFormat = DateFormatType.YYYY_MM_DD) private Date onTime;
+        @ExportColumn("状态") private Status status;
+    }
+
+    private static Product product(int i) {
+        Product product = new Product();
+        product.setId(100000000000L + i);
+        product.setName("商品,\"" + i + "\"");
+        product.setPrice(BigDecimal.valueOf(i, 2));
+        product.setStock(i % 100);
+        product.setOnTime(new Date(1500000000000L));
+        product.setStatus(Status.values()[i % 2]);
+        return product;
+    }
+
+    private static Iterator<Product> products(int count) {
+        return new Iterator<Product>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Product next() {
+                return product(index++);
+            }
+        };
+    }
+
+    private static void assertSame(Product expected, Product actual) {
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(0, expected.getPrice().compareTo(actual.getPrice()));
+        Assert.assertEquals(expected.getStock(), actual.getStock());
+        Assert.assertEquals(expected.getStatus(), actual.getStatus());
+        Assert.assertNotNull(actual.getOnTime());
+    }
+
+    @Test
+    public void csvRoundTrip() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        FileExport.write("csv", "product", FileExport.title(Product.class), products(5000), outputStream);
+
+        List<Product> list = new ArrayList<>();
+        List<Integer> batches = new ArrayList<>();
+        ImportResult result = FileImport.read("csv", new ByteArrayInputStream(outputStream.toByteArray()),
+                Product.class, 1000, null, batch -> {
+                    batches.add(batch.size());
+                    list.addAll(batch);
+                });
+        Assert.assertEquals(5000, result.getSuccess());
+        Assert.assertEquals(0, result.getFail());
+        Assert.assertEquals(Arrays.asList(1000, 1000, 1000, 1000, 1000), batches);
+        for (int i = 0; i < list.size(); i++) {
+            assertSame(product(i), list.get(i));
+        }
+    }
+
+    /** 传入线程池时转换和校验都在这个线程池中, 批处理依然在调用线程中 */
+    @Test
+    public void customExecutor() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        FileExport.write("csv", "product", FileExport.title(Product.class), products(3000), outputStream);
+
+        Thread caller = Thread.currentThread();
+        Set<String> validateThreads = Collections.synchronizedSet(new HashSet<>());
+        List<Product> list = new ArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                r -> new Thread(r, "custom-import"));
+        try {
+            ImportResult result = FileImport.read("csv", new ByteArrayInputStream(outputStream.toByteArray()),
+                    Product.class, 500, product -> {
+                        validateThreads.add(Thread.currentThread().getName());
+                        return null;
+                    }, batch -> {
+                        Assert.assertSame(caller, Thread.currentThread());
+                        list.addAll(batch);
+                    }, executor);
+            Assert.assertEquals(3000, result.getSuccess());
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(Collections.singleton("custom-import"), validateThreads);
+        for (int i = 0; i < list.size(); i++) {
+            assertSame(product(i), list.get(i));
+        }
+    }
+
+    @Test
+    public void rowErrors() throws Exception {
+        String csv = "\uFEFF名称,库存,状态,不认识的列\r\n"
+                + "\"a\nb\",1,待处理,x\r\n"
+                + "b,1.5,Done,\n"
+                + ",,,\n"
+                + "c,2,不存在,\n"
+                + "d,-1,Wait,\n"
+                + "\"e\"\"\",3,已完成";
+        List<Product> list = new ArrayList<>();
+        ImportResult result = FileImport.read("csv", new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                Product.class, 2, product -> (product.getStock() < 0) ? "库存不能小于 0" : null, list::addAll);
+
+        Assert.assertEquals(5, result.getTotal());
+        Assert.assertEquals(2, result.getSuccess());
+        Assert.assertEquals(3, result.getFail());
+        Assert.assertEquals("a\nb", list.get(0).getName());
+        Assert.assertEquals(Status.Wait, list.get(0).getStatus());
+        Assert.assertEquals("e\"", list.get(1).getName());
+
+        List<ImportResult.RowError> errors = result.getErrors();
+        Assert.assertEquals(4, errors.get(0).getRow());
+        Assert.assertEquals("库存(1.5)不是整数或超出了范围", errors.get(0).getMessage());
+        Assert.assertEquals(6, errors.get(1).getRow());
+        Assert.assertEquals("状态(不存在)不是可选的值", errors.get(1).getMessage());
+        Assert.assertEquals(7, errors.get(2).getRow());
+        Assert.assertEquals("库存不能小于 0", errors.get(2).getMessage());
+    }
+
+    @Test
+    public void xlsxRoundTrip() throws Exception {
+        LinkedHashMap<String, Iterator<?>> dataMap = new LinkedHashMap<>();
+        dataMap.put("product", products(70000));
+        Workbook workbook = ExportExcel.handle(true, FileExport.title(Product.class), dataMap);
+        File file = File.createTempFile("import-test", ".xlsx");
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+                ExportExcel.write(workbook, outputStream);
+            }
+
+            int[] index = new int[1];
+            ImportResult result = FileImport.read("xls07", file, Product.class, 1000, null, batch -> {
+                for (Product product : batch) {
+                    assertSame(product(index[0]++), product);
+                }
+            });
+            // 超过 65535 行时分成了两个 sheet, 每个 sheet 都有标题
+            Assert.assertEquals(70000, result.getSuccess());
+            Assert.assertEquals(0, result.getFail());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void bigCsv() throws Exception {
+        File file = File.createTempFile("import-big", ".csv");
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+                FileExport.write("csv", "product", FileExport.title(Product.class), products(ROWS), outputStream);
+            }
+
+            Runtime runtime = Runtime.getRuntime();
+            long[] maxUsed = new long[1];
+            long start = System.currentTimeMillis();
+            ImportResult result = FileImport.read("csv", file, Product.class, FileImport.DEFAULT_BATCH, null, batch ->
+                    maxUsed[0] = Math.max(maxUsed[0], runtime.totalMemory() - runtime.freeMemory()));
+            System.out.println(String.format("import %s rows (%s MB file), %s ms, max heap used %s MB", result.getSuccess(),
+                    file.length() >> 20, System.currentTimeMillis() - start, maxUsed[0] >> 20));
+            Assert.assertEquals(ROWS, result.getSuccess());
+        } finally {
+            file.delete();
+        }
+    }
+}
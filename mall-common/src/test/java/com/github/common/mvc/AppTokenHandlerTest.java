@@ -0,0 +1,50 @@
+package com.github.common.mvc;
+
+import com.github.common.Const;
+import com.github.common.encrypt.Encrypt;
+import com.github.common.encrypt.jwt.JWTVerifier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class AppTokenHandlerTest {
+
+    /** 生成一个还剩 remain 天有效期的 token(有效期一共 7 天) */
+    private static void bind(long remain) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 1L);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(Const.TOKEN, Encrypt.jwtEncode(map, remain, TimeUnit.DAYS));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @After
+    public void clean() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void refreshAfterFraction() {
+        // 才用了 1 天
+        bind(6);
+        Assert.assertEquals("", AppTokenHandler.refreshToken(0.5));
+
+        // 用了 5 天, 超过一半
+        bind(2);
+        String token = AppTokenHandler.refreshToken(0.5);
+        Map<String, Object> session = Encrypt.jwtDecode(token);
+        Assert.assertEquals(1, ((Number) session.get("id")).intValue());
+        long expire = ((Number) session.get(JWTVerifier.EXP)).longValue() - System.currentTimeMillis();
+        Assert.assertTrue(expire > TimeUnit.DAYS.toMillis(6));
+
+        // 大于等于 1 时永远不会到
+        Assert.assertEquals("", AppTokenHandler.refreshToken(1.1));
+    }
+}
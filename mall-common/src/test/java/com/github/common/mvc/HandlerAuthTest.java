@@ -0,0 +1,48 @@
+package com.github.common.mvc;
+
+import com.github.common.annotation.NeedLogin;
+import com.github.common.annotation.NotNeedLogin;
+import com.github.common.annotation.NotNeedPermission;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.method.HandlerMethod;
+
+public class HandlerAuthTest {
+
+    @NeedLogin
+    @NotNeedPermission
+    public static class UserController {
+        public void info() {}
+
+        @NeedLogin(flag = false)
+        public void open() {}
+    }
+
+    /** 继承的方法, 类上的注解不一样 */
+    @NotNeedLogin
+    public static class PublicController extends UserController {
+    }
+
+    private static HandlerAuth auth(Object bean, String method) throws NoSuchMethodException {
+        return HandlerAuth.of(new HandlerMethod(bean, method));
+    }
+
+    @Test
+    public void resolve() throws NoSuchMethodException {
+        HandlerAuth info = auth(new UserController(), "info");
+        Assert.assertTrue(info.isNeedLogin());
+        Assert.assertFalse(info.isNotNeedLogin());
+        Assert.assertTrue(info.isNotNeedPermission());
+        // 解析一次之后拿到的是同一个
+        Assert.assertSame(info, auth(new UserController(), "info"));
+
+        // 方法上 flag = false 覆盖类上的
+        HandlerAuth open = auth(new UserController(), "open");
+        Assert.assertFalse(open.isNeedLogin());
+        Assert.assertTrue(open.isNotNeedPermission());
+
+        HandlerAuth inherit = auth(new PublicController(), "info");
+        Assert.assertTrue(inherit.isNotNeedLogin());
+        Assert.assertNotSame(info, inherit);
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.common.mvc;
+
+import com.github.common.encrypt.Encrypt;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TokenCacheTest {
+
+    private static final int COUNT = 100000;
+
+    private static String token(long id, long time, TimeUnit unit) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", id);
+        map.put("name", "user-" + id);
+        return Encrypt.jwtEncode(map, time, unit);
+    }
+
+    @Test
+    public void cacheAndRevoke() {
+        String token = token(1L, 1, TimeUnit.DAYS);
+        long hit = (Long) TokenCache.stats().get("hit");
+
+        Map<String, Object> first = TokenCache.decode(token);
+        Assert.assertEquals("user-1", first.get("name"));
+        Assert.assertSame(first, TokenCache.decode(token));
+        Assert.assertEquals(hit + 1, TokenCache.stats().get("hit"));
+        Assert.assertTrue((Long) TokenCache.stats().get("bytes") > 0);
+
+        // 篡改过的不能通过
+        Assert.assertTrue(TokenCache.decode(token + "x").isEmpty());
+
+        TokenCache.revoke(token);
+        Assert.assertTrue(TokenCache.decode(token).isEmpty());
+    }
+
+    @Test
+    public void expire() throws Exception {
+        String token = token(2L, 200, TimeUnit.MILLISECONDS);
+        Assert.assertFalse(TokenCache.decode(token).isEmpty());
+        Thread.sleep(300);
+        Assert.assertTrue(TokenCache.decode(token).isEmpty());
+    }
+
+    @Test
+    public void benchmark() {
+        String[] tokens = new String[100];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = token(i, 1, TimeUnit.DAYS);
+        }
+        long sink = 0;
+        for (int loop = 0; loop < 3; loop++) {
+            sink += decode(tokens) + cached(tokens);
+        }
+
+        long start = System.nanoTime();
+        sink += decode(tokens);
+        long decode = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        sink += cached(tokens);
+        long cached = System.nanoTime() - start;
+
+        System.out.printf("verify and parse: %.0f ns/token, cached: %.0f ns/token, stats: %s (%s)%n",
+                (double) decode / COUNT, (double) cached / COUNT, TokenCache.stats(), sink);
+    }
+
+    private static long decode(String[] tokens) {
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += Encrypt.jwtDecode(tokens[i % tokens.length]).size();
+        }
+        return sum;
+    }
+
+    private static long cached(String[] tokens) {
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += TokenCache.decode(tokens[i % tokens.length]).size();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.common.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * 序列号生成的 jmh 基准测试, 运行 main 方法即可(不会在 mvn test 中运行).
+ *
+ * 每个节点每秒最多 2^14 个序列号, 用真实的时钟测出来的只是这个上限,
+ * 这里用一个模拟的时钟(序列用完就往前走一秒)测生成本身的开销: 单线程, 以及多个线程抢同一个生成器
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoBenchmark {
+
+    private NoUtil.Generator generator;
+    private AtomicLong clock;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        generator = new NoUtil.Generator();
+        clock = new AtomicLong(100000);
+    }
+
+    private String next() {
+        while (true) {
+            long now = clock.get();
+            long value = generator.next(now);
+            if (value >= 0) {
+                return NoUtil.render("D", NoUtil.compose(value, 1));
+            }
+            // 模拟时间往前走
+            clock.compareAndSet(now, now + 1);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String single() {
+        return next();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String contended() {
+        return next();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(NoBenchmark.class.getSimpleName()).build()).run();
+    }
+}
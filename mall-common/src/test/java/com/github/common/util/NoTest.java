@@ -2,6 +2,7 @@ package com.github.common.util;
 
 import com.github.common.date.DateFormatType;
 import com.github.common.date.DateUtil;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.*;
@@ -9,7 +10,13 @@ import java.util.concurrent.*;
 
 public class NoTest {
 
-    private static final int count = 1000000;
+    /**
+     * 每个节点每秒最多生成 2^14 个, 生成的数量按这个上限算, 在 invokeAll 的一分钟内能跑完.
+     * 两个用例共用同一个生成器, 加起来也不能超过一分钟的量(借用的时间要等真实时间追上来)
+     */
+    private static final int count = (int) (NoUtil.SEQUENCE_MASK + 1) * 20;
+    /** 多线程唯一性检查生成的数量 */
+    private static final int UNIQUE_COUNT = (int) (NoUtil.SEQUENCE_MASK + 1) * 10;
 
     @Test
     public void generateOrderNo() throws Exception {
@@ -47,4 +54,70 @@ public class NoTest {
             System.out.println(s);
         }
     }
+
+    @Test
+    public void format() {
+        String no = NoUtil.getOrderNo();
+        Assert.assertEquals(16, no.length());
+        Assert.assertTrue(no.startsWith("D"));
+        Assert.assertTrue(no.substring(1).chars().allMatch(Character::isDigit));
+
+        Date time = NoUtil.parseTime(no);
+        Assert.assertNotNull(time);
+        Assert.assertTrue(Math.abs(time.getTime() - System.currentTimeMillis()) < (NoUtil.MAX_BORROW_SECONDS + 2) * 1000);
+
+        // 最大值也不会超过 15 位
+        long max = NoUtil.compose((NoUtil.MAX_SECOND << NoUtil.SEQUENCE_BITS) | NoUtil.SEQUENCE_MASK, NoUtil.MAX_WORKER_ID);
+        Assert.assertEquals(16, NoUtil.render("D", max).length());
+    }
+
+    @Test
+    public void clockBackward() {
+        NoUtil.Generator generator = new NoUtil.Generator();
+        long now = 100000;
+        long first = generator.next(now);
+        // 时钟回拨 5 秒, 依然比之前的大
+        long second = generator.next(now - 5);
+        Assert.assertTrue(second > first);
+        Assert.assertEquals(now, second >>> NoUtil.SEQUENCE_BITS);
+
+        // 序列用完后进位到下一秒, 借用的时间超出上限后返回 -1
+        long value = second;
+        long generated = 0;
+        while (value >= 0) {
+            value = generator.next(now);
+            generated++;
+        }
+        Assert.assertEquals((NoUtil.MAX_BORROW_SECONDS + 1) * (NoUtil.SEQUENCE_MASK + 1) - 2, generated - 1);
+        // 时间追上来之后又可以生成了
+        Assert.assertTrue(generator.next(now + 1) > 0);
+    }
+
+    @Test
+    public void uniqueInMultiThread() throws Exception {
+        int threads = U.PROCESSORS * 2;
+        int perThread = UNIQUE_COUNT / threads;
+        ConcurrentMap<String, Boolean> map = new ConcurrentHashMap<>(threads * perThread * 2);
+        CountDownLatch latch = new CountDownLatch(threads);
+        List<Thread> threadList = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    latch.countDown();
+                    latch.await();
+                    for (int j = 0; j < perThread; j++) {
+                        Assert.assertNull(map.putIfAbsent(NoUtil.getOrderNo(), Boolean.TRUE));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threadList.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+        Assert.assertEquals(threads * perThread, map.size());
+    }
 }
@@ -0,0 +1,19 @@
+package com.github.global.config;
+
+import com.github.global.service.CacheAsidePostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/** 让 {@link com.github.global.service.CacheAside} 注解生效 */
+@Configuration
+@ConditionalOnClass(StringRedisTemplate.class)
+public class CacheAsideConfig {
+
+    /** 后置处理器要尽早实例化, 使用静态方法, 避免当前配置类被提前初始化 */
+    @Bean
+    public static CacheAsidePostProcessor cacheAsidePostProcessor() {
+        return new CacheAsidePostProcessor();
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.global.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** 在 actuator 中暴露所有线程池的运行情况: /actuator/executors */
+@Configuration
+@ConditionalOnClass(Endpoint.class)
+public class ExecutorEndpointConfig {
+
+    @Bean
+    public ExecutorEndpoint executorEndpoint() {
+        return new ExecutorEndpoint();
+    }
+
+    @Endpoint(id = "executors")
+    public static class ExecutorEndpoint {
+
+        @Autowired
+        private Map<String, MonitoredTaskExecutor> executorMap;
+
+        @ReadOperation
+        public Map<String, Map<String, Object>> executors() {
+            Map<String, Map<String, Object>> returnMap = new LinkedHashMap<>();
+            for (Map.Entry<String, MonitoredTaskExecutor> entry : executorMap.entrySet()) {
+                returnMap.put(entry.getKey(), entry.getValue().stats());
+            }
+            return returnMap;
+        }
+    }
+}
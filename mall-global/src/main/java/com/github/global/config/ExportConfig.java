@@ -0,0 +1,30 @@
+package com.github.global.config;
+
+import com.github.common.export.ExportCsv;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * <pre>
+ * 导出 csv 时的设置:
+ *   export.csv-bom: true   # 文件开头写入 utf-8 的 BOM, windows 上的 excel 直接打开时中文不会乱码
+ *   export.csv-gzip: true  # web 导出时, 客户端支持的话使用 gzip 传输
+ * </pre>
+ */
+@Configuration
+public class ExportConfig {
+
+    @Value("${export.csv-bom:false}")
+    private boolean csvBom;
+
+    @Value("${export.csv-gzip:false}")
+    private boolean csvGzip;
+
+    @PostConstruct
+    public void init() {
+        ExportCsv.setBom(csvBom);
+        ExportCsv.setGzip(csvGzip);
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.global.config;
+
+import com.github.common.util.A;
+import com.github.common.util.U;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** 可以观察的线程池: 活跃数、排队数、拒绝数、由调用方执行的数量, 以及任务从提交到完成的耗时分位数 */
+public class MonitoredTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 保留最近多少个任务的耗时用来计算分位数 */
+    private static final int SAMPLE_SIZE = 1024;
+
+    /** 线程池满了之后的处理方式 */
+    public enum Overflow {
+        /** 由调用方线程执行 */
+        CALLER_RUNS,
+        /** 丢掉队列中最老的任务, 丢掉的 Future 会被取消, 等待结果的调用方不会一直阻塞 */
+        DROP_OLDEST,
+        /** 抛出 RejectedExecutionException */
+        ABORT;
+
+        static Overflow to(String overflow, Overflow defaultOverflow) {
+            if (U.isNotBlank(overflow)) {
+                String name = overflow.trim().replace('-', '_');
+                for (Overflow value : values()) {
+                    if (value.name().equalsIgnoreCase(name)) {
+                        return value;
+                    }
+                }
+            }
+            return defaultOverflow;
+        }
+    }
+
+    private final String name;
+    /** 没有在线程池中执行的任务数: 丢掉的、抛出异常的 */
+    private final LongAdder rejected = new LongAdder();
+    /** 线程池满了之后由调用方线程执行的任务数, 任务依然执行了, 不算在 rejected 中 */
+    private final LongAdder callerRuns = new LongAdder();
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_SIZE);
+    private final AtomicLong sampleIndex = new AtomicLong();
+
+    /**
+     * @param name 线程池名, 也是线程名的前缀
+     * @param overflow 线程池满了之后的处理方式
+     */
+    public MonitoredTaskExecutor(String name, Overflow overflow) {
+        this.name = name;
+        setThreadNamePrefix(name + "-");
+        setTaskDecorator(task -> new TimedTask(task, System.nanoTime()));
+        setRejectedExecutionHandler(rejectedHandler(overflow));
+    }
+
+    private RejectedExecutionHandler rejectedHandler(Overflow overflow) {
+        RejectedExecutionHandler callerRunsPolicy = new ThreadPoolExecutor.CallerRunsPolicy();
+        return (task, executor) -> {
+            switch (overflow) {
+                case DROP_OLDEST:
+                    if (!executor.isShutdown()) {
+                        // 没有队列(或队列是空的)时没有可丢的任务, 由调用方线程执行
+                        Runnable oldest = executor.getQueue().poll();
+                        if (oldest != null) {
+                            rejected.increment();
+                            cancel(oldest);
+                            // 直接放进队列, 再走一次 execute 会被重复包装
+                            if (executor.getQueue().offer(task)) {
+                                return;
+                            }
+                        }
+                    }
+                    callerRuns.increment();
+                    callerRunsPolicy.rejectedExecution(task, executor);
+                    return;
+                case ABORT:
+                    rejected.increment();
+                    throw new RejectedExecutionException(String.format("executor(%s) was full", name));
+                default:
+                    callerRuns.increment();
+                    callerRunsPolicy.rejectedExecution(task, executor);
+            }
+        };
+    }
+
+    /** submit 和 @Async 提交的是 Future, 丢掉时取消, 不然调用 get() 的地方会一直等下去 */
+    private static void cancel(Runnable task) {
+        Runnable original = (task instanceof TimedTask) ? ((TimedTask) task).task : task;
+        if (original instanceof Future) {
+            ((Future<?>) original).cancel(false);
+        }
+    }
+
+    private void record(long nanos) {
+        samples.set((int) (sampleIndex.getAndIncrement() % SAMPLE_SIZE), nanos);
+    }
+
+    /** 当前线程池的运行情况, 耗时单位: 毫秒 */
+    public Map<String, Object> stats() {
+        int count = (int) Math.min(sampleIndex.get(), SAMPLE_SIZE);
+        long[] copy = new long[count];
+        for (int i = 0; i < count; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+
+        ThreadPoolExecutor executor = getThreadPoolExecutor();
+        return A.linkedMaps(
+                "pool_size", executor.getPoolSize(),
+                "max_size", executor.getMaximumPoolSize(),
+                "active", executor.getActiveCount(),
+                "queued", executor.getQueue().size(),
+                "queue_remaining", executor.getQueue().remainingCapacity(),
+                "completed", executor.getCompletedTaskCount(),
+                "rejected", rejected.sum(),
+                "caller_runs", callerRuns.sum(),
+                "latency_p50", percentile(copy, 0.5),
+                "latency_p90", percentile(copy, 0.9),
+                "latency_p99", percentile(copy, 0.99),
+                "latency_max", percentile(copy, 1.0)
+        );
+    }
+    private static double percentile(long[] sorted, double percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000000.0;
+    }
+
+    /** 记录任务从提交到完成的耗时 */
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submitTime;
+
+        private TimedTask(Runnable task, long submitTime) {
+            this.task = task;
+            this.submitTime = submitTime;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                record(System.nanoTime() - submitTime);
+            }
+        }
+    }
+}
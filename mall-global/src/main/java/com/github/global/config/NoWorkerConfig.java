@@ -0,0 +1,122 @@
+package com.github.global.config;
+
+import com.github.common.util.LogUtil;
+import com.github.common.util.NoUtil;
+import com.github.common.util.U;
+import com.github.global.service.CacheService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 设置 {@link NoUtil} 的节点号, 同时运行的节点之间不能重复:
+ *   no.worker-id: 3        # 固定的节点号, 由部署保证不重复
+ *   no.worker-lease: true  # 从 redis 中租用一个空闲的节点号, 定时续期
+ *
+ * 租约的存活时间大于序列号生成时最多借用的时间, 节点挂掉后要等租约过期别人才能用这个节点号,
+ * 这样新节点生成的序列号不会和旧节点借用的时间重叠. 关闭时也不主动释放, 让它自然过期
+ *
+ * 两个都没有配置时使用 mac 地址 + 进程号的散列(只有 32 个), 多个节点时很可能重复, 启动时会打 WARN;
+ * 开启了租用但没有 redis 时启动失败, 不会悄悄退回到散列的节点号
+ * </pre>
+ */
+@Configuration
+public class NoWorkerConfig {
+
+    private static final String LEASE_PREFIX = "no:worker:";
+    /** 租约的存活时间, 单位: 秒 */
+    private static final long LEASE_SECONDS = 30;
+    /** 续期的间隔, 单位: 秒 */
+    private static final long RENEW_SECONDS = LEASE_SECONDS / 3;
+
+    @Value("${no.worker-id:-1}")
+    private int workerId;
+
+    @Value("${no.worker-lease:false}")
+    private boolean lease;
+
+    @Autowired(required = false)
+    private CacheService cacheService;
+
+    private final String leaseValue = U.uuid();
+    private volatile int leaseId = -1;
+    private ScheduledExecutorService renewal;
+
+    @PostConstruct
+    public void init() {
+        if (workerId >= 0) {
+            NoUtil.setWorkerId(workerId);
+            return;
+        }
+        if (!lease) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("no.worker-id and no.worker-lease are not set, use worker id({}) hashed from mac and pid, "
+                        + "it may collide with other nodes and generate duplicate no", NoUtil.getWorkerId());
+            }
+            return;
+        }
+        if (cacheService == null) {
+            throw new IllegalStateException("no.worker-lease is true but there is no redis, set no.worker-id instead");
+        }
+        if (!acquire()) {
+            throw new IllegalStateException("no free worker id in redis, all " + (NoUtil.MAX_WORKER_ID + 1) + " are leased");
+        }
+        renewal = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "no-worker-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewal.scheduleWithFixedDelay(this::renew, RENEW_SECONDS, RENEW_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (renewal != null) {
+            renewal.shutdownNow();
+        }
+    }
+
+    /** 从上次用的节点号开始往后找一个空闲的 */
+    private boolean acquire() {
+        int start = Math.max(leaseId, 0);
+        for (int i = 0; i <= NoUtil.MAX_WORKER_ID; i++) {
+            int id = (start + i) % (NoUtil.MAX_WORKER_ID + 1);
+            if (cacheService.setIfNotExists(LEASE_PREFIX + id, leaseValue, LEASE_SECONDS)) {
+                leaseId = id;
+                NoUtil.setWorkerId(id);
+                if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                    LogUtil.ROOT_LOG.info("lease no worker id({})", id);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void renew() {
+        try {
+            if (cacheService.expireIfEquals(LEASE_PREFIX + leaseId, leaseValue, LEASE_SECONDS)) {
+                return;
+            }
+            // 租约丢了(如 redis 长时间不可用后过期了), 换一个空闲的节点号
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("no worker id({}) lease was lost, try to lease again", leaseId);
+            }
+            if (!acquire() && LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("no free worker id in redis, keep using ({})", leaseId);
+            }
+        } catch (Exception e) {
+            // redis 暂时不可用时继续用当前的节点号, 下个周期再续
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error(String.format("renew no worker id(%s) exception", leaseId), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.global.config;
+
+import com.github.common.util.LogUtil;
+import com.github.global.service.CompactRedisSerializer;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * <pre>
+ * 将 redisTemplate 的值序列化从 jdk 换成 {@link CompactRedisSerializer}, 在配置中开启
+ *
+ * cache.serializer: compact
+ * # 超过多少字节才尝试压缩, 默认 1024, 小于等于 0 表示不压缩
+ * cache.compress-threshold: 1024
+ *
+ * 需要应用中引入 kryo 和 lz4-java(在 mall-global 中是 provided)
+ *
+ * 以前用 jdk 序列化写进去的值依然可以读出来, 但还没升级的节点读不了新格式, 所有节点都升级之后再开启
+ * </pre>
+ */
+@Configuration
+@ConditionalOnClass(value = RedisTemplate.class, name = { "com.esotericsoftware.kryo.Kryo", "net.jpountz.lz4.LZ4Factory" })
+@ConditionalOnProperty(name = "cache.serializer", havingValue = "compact")
+public class RedisSerializerConfig {
+
+    /** 后置处理器要尽早实例化, 使用静态方法, 避免当前配置类被提前初始化 */
+    @Bean
+    public static BeanPostProcessor compactRedisSerializerPostProcessor() {
+        return new CompactSerializerPostProcessor();
+    }
+
+    private static class CompactSerializerPostProcessor implements BeanPostProcessor, EnvironmentAware {
+
+        /** 只处理这个名字的 template, StringRedisTemplate 存的是字符串, 不需要换 */
+        private static final String TEMPLATE_NAME = "redisTemplate";
+
+        private int compressThreshold;
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            compressThreshold = environment.getProperty("cache.compress-threshold", Integer.class, 1024);
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (TEMPLATE_NAME.equals(beanName) && bean instanceof RedisTemplate) {
+                CompactRedisSerializer serializer = new CompactRedisSerializer(compressThreshold);
+                RedisTemplate template = (RedisTemplate) bean;
+                template.setValueSerializer(serializer);
+                template.setHashValueSerializer(serializer);
+                if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                    LogUtil.ROOT_LOG.info("redisTemplate value serializer: compact, compress threshold({})",
+                            compressThreshold);
+                }
+            }
+            return bean;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.global.config;
+
+import com.github.common.mvc.HandlerAuth;
+import com.github.common.util.LogUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 启动后把所有请求方法上登录、权限相关的注解解析一遍({@link HandlerAuth}), 第一次请求时不用再解析.
+ * 在 actuator 中列出每个地址的登录、权限要求: /actuator/routes-auth
+ * </pre>
+ */
+@Configuration
+@ConditionalOnClass({ Endpoint.class, RequestMappingHandlerMapping.class })
+public class RouteAuthEndpointConfig {
+
+    @Autowired(required = false)
+    @Qualifier("requestMappingHandlerMapping")
+    private RequestMappingHandlerMapping handlerMapping;
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void warm() {
+        if (handlerMapping != null) {
+            Map<RequestMappingInfo, HandlerMethod> handlerMethods = handlerMapping.getHandlerMethods();
+            for (HandlerMethod handlerMethod : handlerMethods.values()) {
+                HandlerAuth.of(handlerMethod);
+            }
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("resolve login and permission of ({}) handler method", handlerMethods.size());
+            }
+        }
+    }
+
+    @Bean
+    public RouteAuthEndpoint routeAuthEndpoint() {
+        return new RouteAuthEndpoint(handlerMapping);
+    }
+
+    @Endpoint(id = "routes-auth")
+    public static class RouteAuthEndpoint {
+
+        private final RequestMappingHandlerMapping handlerMapping;
+        RouteAuthEndpoint(RequestMappingHandlerMapping handlerMapping) {
+            this.handlerMapping = handlerMapping;
+        }
+
+        @ReadOperation
+        public List<Map<String, Object>> routes() {
+            List<Map<String, Object>> returnList = new ArrayList<>();
+            if (handlerMapping != null) {
+                for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMapping.getHandlerMethods().entrySet()) {
+                    RequestMappingInfo info = entry.getKey();
+                    HandlerMethod handlerMethod = entry.getValue();
+
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    map.put("url", info.getPatternsCondition().getPatterns());
+                    map.put("method", info.getMethodsCondition().getMethods());
+                    map.put("handler", handlerMethod.getBeanType().getName() + "#" + handlerMethod.getMethod().getName());
+                    map.putAll(HandlerAuth.of(handlerMethod).toMap());
+                    returnList.add(map);
+                }
+            }
+            return returnList;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.global.config;
+
+import com.github.common.util.A;
+import com.github.global.service.LocalSmsProvider;
+import com.github.global.service.SmsDispatcher;
+import com.github.global.service.SmsProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 短信的批量发送. 实现 {@link SmsProvider} 并注册成 bean 即可接入服务商, 没有时使用只打印日志的本地服务商<br><br>
+ *
+ * sms.enable: true  # 需要发短信的应用才开启, 不开启时不会启动发送线程和写前日志<br>
+ * sms.wal-dir: /data/sms-wal-xxx  # 写前日志的目录, 每个应用(同一台机上的每个实例)要用不同的目录.
+ * 默认是临时目录下的 sms-wal/应用名-端口<br>
+ * sms.fsync: false  # 写前日志是否每次都刷到磁盘<br>
+ * sms.capacity: 100000  # 每个服务商的内存缓冲<br>
+ * sms.linger-ms: 200  # 攒一批最多等待的时间<br>
+ * sms.max-retry: 5  # 失败后最多重试的次数<br>
+ * sms.backoff-ms: 1000  # 第一次重试的间隔<br>
+ */
+@Configuration
+@ConditionalOnProperty(name = "sms.enable", havingValue = "true")
+public class SmsConfig {
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired(required = false)
+    private List<SmsProvider> providers;
+
+    @Bean(destroyMethod = "close")
+    public SmsDispatcher smsDispatcher() throws IOException {
+        List<SmsProvider> providerList = A.isEmpty(providers)
+                ? Collections.singletonList(new LocalSmsProvider()) : providers;
+        // 多个进程共用一个日志文件时会互相重发对方的消息, 默认按 应用名-端口 分开
+        String instance = environment.getProperty("spring.application.name", "application")
+                + "-" + environment.getProperty("server.port", "8080");
+        String walDir = environment.getProperty("sms.wal-dir",
+                new File(new File(System.getProperty("java.io.tmpdir"), "sms-wal"), instance).getPath());
+
+        SmsDispatcher dispatcher = new SmsDispatcher(providerList, new File(walDir),
+                environment.getProperty("sms.fsync", Boolean.class, false),
+                environment.getProperty("sms.capacity", Integer.class, 100000),
+                environment.getProperty("sms.linger-ms", Long.class, 200L),
+                environment.getProperty("sms.max-retry", Integer.class, 5),
+                environment.getProperty("sms.backoff-ms", Long.class, 1000L));
+        dispatcher.start();
+        return dispatcher;
+    }
+}
@@ -1,14 +1,18 @@
 package com.github.global.config;
 
+import com.github.common.util.LogUtil;
 import com.github.common.util.U;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
 import org.springframework.aop.interceptor.SimpleAsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * 让 @Async 注解下的方法异步处理的线程池. 下面的代码相当于以下的配置<br><br>
@@ -16,21 +20,94 @@ import java.util.concurrent.Executor;
  * &lt;task:executor id="myExecutor" pool-size="4-32" queue-capacity="8"/&gt;<br>
  * &lt;bean id="exceptionHandler" class="...SimpleAsyncUncaughtExceptionHandler"/&gt;<br><br>
  *
- * 如果想异步处理后返回结果, 在 @Async 注解的方法返回上使用 AsyncResult
+ * 如果想异步处理后返回结果, 在 @Async 注解的方法返回上使用 AsyncResult<br><br>
+ *
+ * 不同的业务使用不同的线程池, 互不影响, 在 @Async 上指定线程池名即可, 如 &#064;Async(TaskConfig.SMS).
+ * 每个线程池都可以单独配置, 不配置则使用默认值, 如<br>
+ * async.sms.core-size: 4<br>
+ * async.sms.max-size: 16<br>
+ * async.sms.queue-capacity: 2000<br>
+ * async.sms.overflow: caller-runs  # caller-runs, drop-oldest, abort<br><br>
+ *
+ * 运行时支持虚拟线程(jdk 21+)时, 可以让线程池使用虚拟线程, 不支持时依然使用上面的平台线程池<br>
+ * async.virtual-thread: true  # 所有的线程池<br>
+ * async.sms.virtual-thread: true  # 只针对某个线程池<br>
+ * async.sms.max-concurrency: 10000  # 使用虚拟线程时同时执行的任务上限, 超出后按 overflow 处理(不排队, drop-oldest 当做 caller-runs)<br>
  */
 @Configuration
 @EnableAsync
 public class TaskConfig implements AsyncConfigurer {
 
+    /** 默认的线程池, 没有指定线程池的 @Async 方法都使用这个 */
+    public static final String DEFAULT = "taskExecutor";
+    /** 发短信的线程池 */
+    public static final String SMS = "smsExecutor";
+    /** 后台导出的线程池. 导出很耗时, 线程少、队列短, 满了直接拒绝, 不能让调用方(tomcat 的线程)去执行 */
+    public static final String EXPORT = "exportExecutor";
+
+    /** 使用虚拟线程时同时执行的任务上限 */
+    private static final int VIRTUAL_MAX_CONCURRENCY = 10000;
+    /** 使用虚拟线程时空闲线程的存活时间, 单位: 秒 */
+    private static final int VIRTUAL_KEEP_ALIVE = 10;
+
+    @Autowired
+    private Environment environment;
+
+    @Bean(DEFAULT)
+    public MonitoredTaskExecutor taskExecutor() {
+        return createExecutor("task", U.PROCESSORS, U.PROCESSORS << 3, 1024, MonitoredTaskExecutor.Overflow.CALLER_RUNS);
+    }
+
+    @Bean(SMS)
+    public MonitoredTaskExecutor smsExecutor() {
+        return createExecutor("sms", U.PROCESSORS, U.PROCESSORS << 2, 2000, MonitoredTaskExecutor.Overflow.CALLER_RUNS);
+    }
+
+    @Bean(EXPORT)
+    public MonitoredTaskExecutor exportExecutor() {
+        return createExecutor("export", 2, 4, 64, MonitoredTaskExecutor.Overflow.ABORT);
+    }
+
+    /** 基于配置生成线程池, 线程名的前缀是 name-executor- */
+    private MonitoredTaskExecutor createExecutor(String name, int coreSize, int maxSize, int queueCapacity,
+                                                 MonitoredTaskExecutor.Overflow defaultOverflow) {
+        String prefix = "async." + name + ".";
+        boolean virtual = environment.getProperty(prefix + "virtual-thread", Boolean.class,
+                environment.getProperty("async.virtual-thread", Boolean.class, false));
+        ThreadFactory virtualFactory = virtual ? VirtualThreads.factory(name + "-executor-") : null;
+
+        MonitoredTaskExecutor.Overflow overflow =
+                MonitoredTaskExecutor.Overflow.to(environment.getProperty(prefix + "overflow"), defaultOverflow);
+        if (virtualFactory != null && overflow == MonitoredTaskExecutor.Overflow.DROP_OLDEST) {
+            // 虚拟线程模式不排队, 没有最老的任务可以丢, 丢弃策略会一直重试直到栈溢出, 改成由调用方线程执行
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("executor({}) with virtual thread has no queue, overflow DROP_OLDEST use CALLER_RUNS", name);
+            }
+            overflow = MonitoredTaskExecutor.Overflow.CALLER_RUNS;
+        }
+
+        MonitoredTaskExecutor executor = new MonitoredTaskExecutor(name + "-executor", overflow);
+        executor.setCorePoolSize(environment.getProperty(prefix + "core-size", Integer.class, coreSize));
+
+        if (virtualFactory != null) {
+            // 虚拟线程很廉价, 不排队, 来一个任务就用一个线程, 以最大线程数作为并发上限
+            executor.setThreadFactory(virtualFactory);
+            executor.setMaxPoolSize(environment.getProperty(prefix + "max-concurrency", Integer.class, VIRTUAL_MAX_CONCURRENCY));
+            executor.setQueueCapacity(0);
+            executor.setKeepAliveSeconds(VIRTUAL_KEEP_ALIVE);
+        } else {
+            if (virtual && LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("executor({}) virtual thread not supported, use platform thread pool", name);
+            }
+            executor.setMaxPoolSize(environment.getProperty(prefix + "max-size", Integer.class, maxSize));
+            executor.setQueueCapacity(environment.getProperty(prefix + "queue-capacity", Integer.class, queueCapacity));
+        }
+        return executor;
+    }
+
     @Override
     public Executor getAsyncExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(U.PROCESSORS);
-        executor.setMaxPoolSize(U.PROCESSORS << 3);      // 左移三位等同于 * 8
-        executor.setQueueCapacity(U.PROCESSORS << 1);    // 左移一位等同于 * 2
-        executor.setThreadNamePrefix("task-executor-");  // 线程名字的前缀
-        executor.initialize();
-        return executor;
+        return taskExecutor();
     }
 
     @Override
@@ -0,0 +1,61 @@
+package com.github.global.config;
+
+import com.github.common.util.LogUtil;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <pre>
+ * 让 tomcat 用虚拟线程处理请求, 请求中同步调用 dubbo 服务时不再占用平台线程,
+ * 同时处理的请求数不再受 server.tomcat.max-threads 限制(连接数依然受 server.tomcat.max-connections 限制)
+ *
+ * server.virtual-thread: true
+ *
+ * 运行时不支持虚拟线程(jdk 21 以下)时依然使用 tomcat 自己的线程池
+ * </pre>
+ */
+@Configuration
+@ConditionalOnClass({ Tomcat.class })
+@ConditionalOnProperty(name = "server.virtual-thread", havingValue = "true")
+public class VirtualThreadWebConfig {
+
+    private volatile ExecutorService executor;
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadCustomizer() {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            ProtocolHandler handler = connector.getProtocolHandler();
+            if (!(handler instanceof AbstractProtocol)) {
+                return;
+            }
+            ExecutorService virtual = VirtualThreads.executor("http-virtual-");
+            if (virtual == null) {
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn("virtual thread not supported, tomcat use platform thread pool");
+                }
+                return;
+            }
+            ((AbstractProtocol<?>) handler).setExecutor(virtual);
+            executor = virtual;
+        });
+    }
+
+    /** 外部设置的执行器 tomcat 不会关闭 */
+    @PreDestroy
+    public void destroy() {
+        ExecutorService virtual = executor;
+        if (virtual != null) {
+            virtual.shutdown();
+        }
+    }
+}
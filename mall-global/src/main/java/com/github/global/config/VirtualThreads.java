@@ -0,0 +1,84 @@
+package com.github.global.config;
+
+import com.github.common.util.LogUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <pre>
+ * 虚拟线程(jdk 21+)的工具类. 项目按 1.8 编译, 这里全部用反射调用, 运行时不支持则返回 null 由调用方退回到平台线程
+ *
+ * 虚拟线程适合阻塞等待多、计算少的任务(如调 dubbo 服务、发短信), 阻塞时会让出底层的平台线程.
+ * 注意: 在 synchronized 块里阻塞时(jdk 24 之前)会钉住平台线程, 这类代码不会因为换成虚拟线程而变快
+ * </pre>
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+    private static final Method NEW_THREAD_PER_TASK;
+    static {
+        Method ofVirtual = null, name = null, factory = null, newThreadPerTask = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newThreadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // jdk 19/20 中虚拟线程是预览特性, 没有打开时调用会抛异常
+            factory.invoke(ofVirtual.invoke(null));
+        } catch (Throwable e) {
+            ofVirtual = null;
+            if (LogUtil.ROOT_LOG.isDebugEnabled()) {
+                LogUtil.ROOT_LOG.debug("virtual thread not supported in java({})", System.getProperty("java.version"));
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK = newThreadPerTask;
+    }
+
+    private VirtualThreads() {}
+
+    /** 当前运行时是否支持虚拟线程 */
+    public static boolean supported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /** 生成虚拟线程的工厂, 线程名是 prefix + 序号. 不支持时返回 null */
+    public static ThreadFactory factory(String prefix) {
+        if (!supported()) {
+            return null;
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("create virtual thread factory exception", e);
+            }
+            return null;
+        }
+    }
+
+    /** 每个任务一个虚拟线程的执行器, 不支持时返回 null */
+    public static ExecutorService executor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK.invoke(null, factory);
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("create virtual thread executor exception", e);
+            }
+            return null;
+        }
+    }
+}
@@ -1,14 +1,57 @@
 package com.github.global.service;
 
+import com.github.common.util.A;
+import com.github.common.util.LogUtil;
+import com.github.common.util.U;
+import com.github.global.config.TaskConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.Async;
 
+import java.util.Collections;
+import java.util.List;
+
 /** 当前类上的方法, 在其他类调用时, 都会异步运行 */
 @Async
 @Configuration
 public class AsyncService {
 
+    /** 只在 sms.enable: true 时才有 */
+    @Autowired(required = false)
+    private SmsDispatcher smsDispatcher;
+
+    @Autowired(required = false)
+    private List<SmsProvider> providers;
+
+    /**
+     * 短信使用单独的线程池, 写完本地日志就返回, 由 {@link SmsDispatcher} 攒批发送.
+     * 大批量发送(如营销推送)时直接调用 {@link SmsDispatcher#send} 可以知道是否被接收.
+     * 没有开启 sms.enable 时直接用第一个服务商发送, 不攒批也不重试
+     */
+    @Async(TaskConfig.SMS)
     public void sendSms(String phone, String sms) {
-        // todo ...
+        if (smsDispatcher != null) {
+            if (!smsDispatcher.send(phone, sms)) {
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn("sms to ({}) was rejected: {}", phone, sms);
+                }
+            }
+            return;
+        }
+
+        SmsProvider provider = A.first(providers);
+        if (provider == null) {
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("no sms provider, sms to ({}): {}", phone, sms);
+            }
+            return;
+        }
+        try {
+            provider.send(Collections.singletonList(new SmsMessage(U.uuid(), phone, sms)));
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error(String.format("send sms to (%s) with (%s) exception", phone, provider.name()), e);
+            }
+        }
     }
 }
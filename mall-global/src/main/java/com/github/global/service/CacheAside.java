@@ -0,0 +1,46 @@
+package com.github.global.service;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 标注在 spring 管理的 bean 的方法上, 先从 {@link CacheService} 中读, 没有再调用方法并写回缓存
+ *
+ * &#064;CacheAside(value = "product", key = "#id", expire = 10, unit = TimeUnit.MINUTES)
+ * public Product info(Long id) { ... }
+ *
+ * 同一个 jvm 内相同 key 的并发未命中只会有一个去调用方法, 其他的等待其结果;
+ * 多个节点之间用一个短期的分布式锁, 没抢到锁的节点等一会儿再从缓存里读.
+ * 方法返回 null 时也会缓存一个空值标记, 避免不存在的数据每次都打到数据库.
+ * 临近过期时会按概率提前刷新(越接近过期、加载越慢, 概率越大), 避免大量的 key 在同一时刻过期.
+ *
+ * 值用 json 序列化, 返回类型需要能被 jackson 反序列化. 同一个类中的内部调用不会经过缓存
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheAside {
+
+    /** 缓存 key 的前缀 */
+    String value();
+
+    /** 基于参数生成 key 的 spel 表达式, 如 #id、#p0、#user.id. 为空时用所有的参数以逗号拼接 */
+    String key() default "";
+
+    /** 缓存的过期时间 */
+    long expire() default 10;
+
+    /** 缓存为空值时的过期时间, 小于等于 0 表示不缓存空值 */
+    long nullExpire() default 1;
+
+    /** 过期时间的单位 */
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    /** 提前刷新的系数, 越大越容易提前刷新, 0 表示不提前刷新 */
+    double beta() default 1.0;
+
+    /** 多个节点之间加载时持有分布式锁的最长时间, 同时也是没抢到锁的节点等待缓存的最长时间, 单位: 毫秒 */
+    long lockMs() default 3000;
+}
@@ -0,0 +1,241 @@
+package com.github.global.service;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.github.common.json.JsonUtil;
+import com.github.common.util.A;
+import com.github.common.util.LogUtil;
+import com.github.common.util.U;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+/** 处理 {@link CacheAside} 注解的拦截器 */
+public class CacheAsideInterceptor implements MethodInterceptor {
+
+    /** 值的分隔符: 过期时间点|加载耗时|值 */
+    private static final char SPLIT = '|';
+    /** 空值标记 */
+    private static final char NULL_FLAG = 'N';
+    /** 有值标记 */
+    private static final char VALUE_FLAG = 'V';
+    /** 等待其他节点加载时, 每次从缓存中读的间隔, 单位: 毫秒 */
+    private static final long WAIT_INTERVAL_MS = 20L;
+    /** 加载时的分布式锁 key 后缀 */
+    private static final String LOAD_SUFFIX = ":load";
+
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    /** 解析过的 spel 表达式 */
+    private final ConcurrentMap<String, Expression> expressionMap = new ConcurrentHashMap<>();
+    /** 当前 jvm 中正在加载的 key */
+    private final ConcurrentMap<String, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+
+    private final BeanFactory beanFactory;
+    private volatile CacheService cacheService;
+    private volatile LockService lockService;
+    private volatile boolean resolved;
+
+    CacheAsideInterceptor(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    /** 服务都是有条件加载的, 没有 redis 时这两个服务都不存在, 第一次用到时再去上下文中找 */
+    private void resolveService() {
+        if (!resolved) {
+            if (beanFactory instanceof ListableBeanFactory) {
+                ListableBeanFactory factory = (ListableBeanFactory) beanFactory;
+                if (A.isNotEmpty(factory.getBeanNamesForType(CacheService.class))) {
+                    cacheService = factory.getBean(CacheService.class);
+                }
+                if (A.isNotEmpty(factory.getBeanNamesForType(LockService.class))) {
+                    lockService = factory.getBean(LockService.class);
+                }
+            }
+            resolved = true;
+        }
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        resolveService();
+        if (cacheService == null) {
+            return invocation.proceed();
+        }
+
+        Class<?> targetClass = (invocation.getThis() == null) ? null : AopUtils.getTargetClass(invocation.getThis());
+        Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+        CacheAside cacheAside = AnnotationUtils.findAnnotation(method, CacheAside.class);
+        if (cacheAside == null) {
+            return invocation.proceed();
+        }
+
+        String key = cacheAside.value() + ":" + generateKey(cacheAside, method, invocation.getArguments());
+        JavaType type = JsonUtil.RENDER.getTypeFactory().constructType(method.getGenericReturnType());
+
+        Entry entry = read(key, type);
+        if (entry != null && !entry.needRefresh(cacheAside.beta())) {
+            return entry.value;
+        }
+
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = loadingMap.putIfAbsent(key, mine);
+        if (running != null) {
+            // 当前 jvm 已经有线程在加载了, 缓存中还有值就先用, 没有就等它的结果
+            if (entry != null) {
+                return entry.value;
+            }
+            try {
+                return running.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+
+        try {
+            Object value = loadWithLock(invocation, cacheAside, key, type, entry);
+            mine.complete(value);
+            return value;
+        } catch (Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(key, mine);
+        }
+    }
+
+    private Object loadWithLock(MethodInvocation invocation, CacheAside cacheAside,
+                                String key, JavaType type, Entry entry) throws Throwable {
+        RedisLock lock = null;
+        if (lockService != null) {
+            lock = lockService.tryLock(key + LOAD_SUFFIX, 0, cacheAside.lockMs(), TimeUnit.MILLISECONDS);
+            if (lock == null) {
+                // 其他节点正在加载, 缓存中还有值就先用, 没有就等一会儿再读
+                if (entry != null) {
+                    return entry.value;
+                }
+                Entry loaded = waitOtherNode(key, type, cacheAside.lockMs());
+                if (loaded != null) {
+                    return loaded.value;
+                }
+            }
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Object value = invocation.proceed();
+            write(cacheAside, key, value, System.currentTimeMillis() - start);
+            return value;
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Entry waitOtherNode(String key, JavaType type, long waitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(WAIT_INTERVAL_MS);
+            Entry entry = read(key, type);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private String generateKey(CacheAside cacheAside, Method method, Object[] args) {
+        String keyExpression = cacheAside.key();
+        if (U.isBlank(keyExpression)) {
+            return A.toStr(args);
+        }
+        Expression expression = expressionMap.computeIfAbsent(keyExpression, PARSER::parseExpression);
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, DISCOVERER);
+        return U.toStr(expression.getValue(context));
+    }
+
+    private Entry read(String key, JavaType type) {
+        String cache;
+        try {
+            cache = cacheService.get(key);
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn(String.format("read cache(%s) exception", key), e);
+            }
+            return null;
+        }
+        if (U.isBlank(cache)) {
+            return null;
+        }
+
+        int first = cache.indexOf(SPLIT);
+        int second = (first < 0) ? -1 : cache.indexOf(SPLIT, first + 1);
+        if (second < 0 || second + 1 >= cache.length()) {
+            return null;
+        }
+        try {
+            long expireAt = Long.parseLong(cache.substring(0, first));
+            long delta = Long.parseLong(cache.substring(first + 1, second));
+            char flag = cache.charAt(second + 1);
+            Object value = (flag == NULL_FLAG) ? null : JsonUtil.RENDER.readValue(cache.substring(second + 2), type);
+            return new Entry(value, expireAt, delta);
+        } catch (Exception e) {
+            // 格式不对或者类型已经变了, 当成没有命中处理
+            if (LogUtil.ROOT_LOG.isDebugEnabled()) {
+                LogUtil.ROOT_LOG.debug(String.format("parse cache(%s) exception", key), e);
+            }
+            return null;
+        }
+    }
+
+    private void write(CacheAside cacheAside, String key, Object value, long delta) {
+        long expireMs = cacheAside.unit().toMillis(value == null ? cacheAside.nullExpire() : cacheAside.expire());
+        if (expireMs <= 0) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + expireMs;
+        String data = (value == null) ? String.valueOf(NULL_FLAG) : (VALUE_FLAG + JsonUtil.toJson(value));
+        try {
+            cacheService.set(key, expireAt + "" + SPLIT + delta + SPLIT + data, expireMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn(String.format("write cache(%s) exception", key), e);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+        private final long delta;
+
+        private Entry(Object value, long expireAt, long delta) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.delta = delta;
+        }
+
+        /** 概率提前刷新: now - delta * beta * ln(random) >= expireAt 时刷新, 越接近过期、加载越慢, 越容易刷新 */
+        private boolean needRefresh(double beta) {
+            if (beta <= 0) {
+                return false;
+            }
+            double random = ThreadLocalRandom.current().nextDouble();
+            if (random <= 0) {
+                return false;
+            }
+            return System.currentTimeMillis() - delta * beta * Math.log(random) >= expireAt;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.global.service;
+
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.BeanFactory;
+
+/**
+ * 给标注了 {@link CacheAside} 的方法所在的 bean 加上代理, 跟 &#064;Async 的处理方式一样, 不依赖 aspectj.
+ * 使用类代理, dubbo 的 &#064;Service 注解可以被继承, 暴露出去的服务同样会经过缓存
+ */
+public class CacheAsidePostProcessor extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    public CacheAsidePostProcessor() {
+        setBeforeExistingAdvisors(true);
+        setProxyTargetClass(true);
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        super.setBeanFactory(beanFactory);
+        this.advisor = new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forMethodAnnotation(CacheAside.class),
+                new CacheAsideInterceptor(beanFactory));
+    }
+}
@@ -1,27 +1,55 @@
 package com.github.global.service;
 
 import com.github.common.date.DateUtil;
-import com.github.common.util.U;
+import com.github.common.util.A;
+import com.github.common.util.LogUtil;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.connection.jedis.JedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.util.ReflectionUtils;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import redis.clients.jedis.Jedis;
 
-import java.lang.reflect.Field;
-import java.util.Date;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
 @ConditionalOnClass({ Jedis.class, RedisTemplate.class })
-@ConditionalOnBean({ RedisTemplate.class, StringRedisTemplate.class })
 public class CacheService {
 
+    /** 值相同才设置过期时间, 成功返回 1 */
+    private static final RedisScript<Long> EXPIRE_IF_EQUALS = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('expire', KEYS[1], ARGV[2]) " +
+            "else " +
+            "  return 0 " +
+            "end", Long.class);
+    /** key 存在才续期并写入一个字段, ARGV: 字段 值 过期秒数, 返回续期成功的个数 */
+    private static final RedisScript<Long> TOUCH_IF_EXISTS = new DefaultRedisScript<>(
+            "local count = 0 " +
+            "for i, key in ipairs(KEYS) do " +
+            "  if redis.call('exists', key) == 1 then " +
+            "    redis.call('hset', key, ARGV[1], ARGV[2]) " +
+            "    redis.call('expire', key, ARGV[3]) " +
+            "    count = count + 1 " +
+            "  end " +
+            "end " +
+            "return count", Long.class);
+
     @Autowired
     private RedisConnectionFactory connectionFactory;
 
@@ -32,13 +60,117 @@ public class CacheService {
     @Autowired
     public RedisTemplate<Object, Object> redisTemplate;
 
+    /** 是否在 redis 前面加一层进程内缓存, 只作用于 set get delete 这几个字符串操作 */
+    @Value("${cache.near.enable:false}")
+    private boolean nearEnable;
+    /** 进程内缓存的最大条数 */
+    @Value("${cache.near.max-size:10000}")
+    private long nearMaxSize;
+    /** 进程内缓存写入后的存活时间, 单位: 秒. 就算丢了失效消息, 最多也只会读到这么久的旧数据. redis 中的 key 过期得更早时以 redis 为准 */
+    @Value("${cache.near.ttl-seconds:60}")
+    private long nearTtlSeconds;
+
+    private NearCache nearCache;
+    private RedisMessageListenerContainer nearListener;
+
+    @PostConstruct
+    public void init() {
+        if (nearEnable) {
+            nearCache = new NearCache(nearMaxSize, nearTtlSeconds);
+
+            nearListener = new RedisMessageListenerContainer();
+            nearListener.setConnectionFactory(connectionFactory);
+            nearListener.addMessageListener((message, pattern) ->
+                    nearCache.onInvalidateMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(NearCache.CHANNEL));
+            nearListener.afterPropertiesSet();
+            nearListener.start();
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("near cache enable, max-size({}), ttl({}s)", nearMaxSize, nearTtlSeconds);
+            }
+        }
+    }
+    @PreDestroy
+    public void destroy() throws Exception {
+        if (nearListener != null) {
+            nearListener.destroy();
+        }
+    }
+
+    /** 本地缓存的值放进去(存活时间不超过 redis 中的过期时间), 并通知其他节点删掉它们本地的值 */
+    private void nearPut(String key, String value, long ttlMillis) {
+        if (nearCache != null) {
+            nearCache.put(key, value, ttlMillis);
+            stringRedisTemplate.convertAndSend(NearCache.CHANNEL, nearCache.invalidateMessage(key));
+        }
+    }
+    /** 删掉本地缓存的值, 并通知其他节点也删掉 */
+    private void nearRemove(String key) {
+        if (nearCache != null) {
+            nearCache.remove(key);
+            stringRedisTemplate.convertAndSend(NearCache.CHANNEL, nearCache.invalidateMessage(key));
+        }
+    }
+
+    /** 批量删掉本地缓存的值, 并通知其他节点也删掉 */
+    private void nearRemoveAll(Collection<String> keys) {
+        if (nearCache != null) {
+            for (String key : keys) {
+                nearCache.remove(key);
+            }
+            nearPublishAll(keys);
+        }
+    }
+    /** 绕过本类直接写了 redis 的 key(比如 {@link LockService} 的 lua 脚本), 删掉本地缓存的值并通知其他节点也删掉 */
+    void nearInvalidate(Collection<String> keys) {
+        nearRemoveAll(keys);
+    }
+    /** 在一次管道里读出多个 key 的值和 redis 中剩余的过期时间(毫秒), 返回 值1 过期时间1 值2 过期时间2 ... */
+    private List<Object> getWithTtl(List<String> keys) {
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.get(key);
+                conn.pTtl(key);
+            }
+            return null;
+        });
+    }
+    /** 从 redis 读到的值放进本地, 读的期间 key 被写入或删除过就不放 */
+    private String nearLoad(String key, long generation, Object value, Object ttl) {
+        String str = (String) value;
+        nearCache.recordRedis(str != null);
+        // pttl 返回 -1 表示没有过期时间, 0 表示马上就过期
+        long ms = (ttl instanceof Number) ? ((Number) ttl).longValue() : -1;
+        nearCache.putIfGeneration(key, str, generation, (ms < 0) ? 0 : Math.max(ms, 1));
+        return str;
+    }
+
+    /** 在一次管道里把多个 key 的失效消息广播出去 */
+    private void nearPublishAll(Collection<String> keys) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.publish(NearCache.CHANNEL, nearCache.invalidateMessage(key));
+            }
+            return null;
+        });
+    }
+
+    /** 每一层缓存的 命中 和 未命中 次数, 没有开启进程内缓存时返回空 */
+    public Map<String, Object> nearStats() {
+        return nearCache == null ? Collections.emptyMap() : nearCache.stats();
+    }
+
     /** 往 redis 中放值 */
     public void set(String key, String value) {
         stringRedisTemplate.opsForValue().set(key, value);
+        nearPut(key, value, 0);
     }
     /** 往 redis 放值, 并设定超时时间 */
     public void set(String key, String value, long timeOut, TimeUnit timeUnit) {
         stringRedisTemplate.opsForValue().set(key, value, timeOut, timeUnit);
+        nearPut(key, value, timeUnit.toMillis(timeOut));
     }
     /** 往 redis 放值, 并设定超时时间 */
     public void set(String key, String value, Date expireTime) {
@@ -48,49 +180,183 @@ public class CacheService {
         }
     }
     /**
-     * <pre>
-     * 向 redis 中原子存放一个值, 成功则返回 true, 否则返回 false, 想要操作分布式锁, 可以像下面这样操作
-     *
-     * String key = xxx;
-     * String value = uuid();
-     * long seconds = yyy;
-     * boolean flag = cacheService.setIfNotExists(key, value, seconds);
-     * if (flag) {
-     *   try {
-     *     // 获取到锁之后的业务处理
-     *   } finally {
-     *     // 释放锁的时候先去缓存中取, 如果值跟之前存进去的一样才进行删除操作
-     *     // 避免当前线程执行太长, 超时后其他线程又设置了值在处理
-     *     // 如果当前线程 不获取并比较就直接删除, 会将其他线程获取到的锁信息也给删掉
-     *     String val = cacheService.get(key);
-     *     if (value.equals(val)) {
-     *       cacheService.delete(key);
-     *     }
-     *   }
-     * }
-     * </pre>
+     * 向 redis 中原子存放一个值(SET key value NX EX seconds), 成功则返回 true, 否则返回 false.
+     * 要使用分布式锁请用 {@link LockService}, 其释放、续期都是原子的, 并且带有防护令牌
      *
      * @param key 键
      * @param value 值
      * @param seconds 超时时间, 单位: 秒
-     * @return 返回 true 则表示获取到了锁
+     * @return 返回 true 则表示设置成功
      */
     public boolean setIfNotExists(String key, String value, long seconds) {
-        Field jedisField = ReflectionUtils.findField(JedisConnection.class, "jedis");
-        ReflectionUtils.makeAccessible(jedisField);
-        Jedis jedis = (Jedis) ReflectionUtils.getField(jedisField, connectionFactory.getConnection());
+        Boolean flag = stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(
+                key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8),
+                Expiration.seconds(seconds), RedisStringCommands.SetOption.ifAbsent()));
+        boolean success = flag != null && flag;
+        if (success) {
+            nearRemove(key);
+        }
+        return success;
+    }
 
-        String result = jedis.set(key, value, "NX", "EX", seconds);
-        return U.isNotBlank(result) && "OK".equalsIgnoreCase(result);
+    /**
+     * 值相同才重新设置过期时间, 用来续期租约: 只有持有者知道值, 别人的租约不会被续上
+     *
+     * @return 返回 true 则表示续期成功, false 表示 key 已经过期或者值已经不是这个了
+     */
+    public boolean expireIfEquals(String key, String value, long seconds) {
+        Long result = stringRedisTemplate.execute(EXPIRE_IF_EQUALS, Collections.singletonList(key),
+                value, String.valueOf(seconds));
+        boolean success = result != null && result > 0;
+        if (success) {
+            // 过期时间变了, 本地缓存的值按旧的过期时间存活, 删掉重新从 redis 读
+            nearRemove(key);
+        }
+        return success;
     }
 
-    /** 从 redis 中取值 */
+    /** 从 redis 中取值, 开启了进程内缓存则先从本地取 */
     public String get(String key) {
-        return stringRedisTemplate.opsForValue().get(key);
+        if (nearCache == null) {
+            return stringRedisTemplate.opsForValue().get(key);
+        }
+
+        String value = nearCache.get(key);
+        if (value == null) {
+            long generation = nearCache.generation(key);
+            List<Object> results = getWithTtl(Collections.singletonList(key));
+            value = nearLoad(key, generation, results.get(0), results.get(1));
+        }
+        return value;
     }
     /** 从 redis 中删值 */
     public void delete(String key) {
         stringRedisTemplate.delete(key);
+        nearRemove(key);
+    }
+
+    /** 批量取值(mget), 返回的值跟传入的 key 顺序一致, 不存在的 key 对应的值是 null */
+    public List<String> multiGet(List<String> keys) {
+        if (A.isEmpty(keys)) {
+            return Collections.emptyList();
+        }
+        if (nearCache == null) {
+            return stringRedisTemplate.opsForValue().multiGet(keys);
+        }
+
+        List<String> values = new ArrayList<>(keys.size());
+        List<Integer> missIndex = new ArrayList<>();
+        List<String> missKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String value = nearCache.get(keys.get(i));
+            values.add(value);
+            if (value == null) {
+                missIndex.add(i);
+                missKeys.add(keys.get(i));
+            }
+        }
+        if (A.isNotEmpty(missKeys)) {
+            long[] generations = new long[missKeys.size()];
+            for (int i = 0; i < missKeys.size(); i++) {
+                generations[i] = nearCache.generation(missKeys.get(i));
+            }
+            List<Object> results = getWithTtl(missKeys);
+            for (int i = 0; i < missKeys.size(); i++) {
+                String value = nearLoad(missKeys.get(i), generations[i], results.get(i << 1), results.get((i << 1) + 1));
+                values.set(missIndex.get(i), value);
+            }
+        }
+        return values;
+    }
+    /** 批量放值(mset), 不设置超时时间 */
+    public void multiSet(Map<String, String> keyValues) {
+        if (A.isEmpty(keyValues)) {
+            return;
+        }
+        stringRedisTemplate.opsForValue().multiSet(keyValues);
+        if (nearCache != null) {
+            for (Map.Entry<String, String> entry : keyValues.entrySet()) {
+                nearCache.put(entry.getKey(), entry.getValue(), 0);
+            }
+            nearPublishAll(keyValues.keySet());
+        }
+    }
+    /**
+     * 批量放值, 每个 key 可以有自己的超时时间, 所有的命令在一次管道里发出
+     *
+     * @param keyValues 键值对
+     * @param expireMs 每个 key 对应的超时时间, 单位: 毫秒. 没有或者小于等于 0 表示不超时
+     */
+    public void multiSet(Map<String, String> keyValues, Map<String, Long> expireMs) {
+        if (A.isEmpty(keyValues)) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Map.Entry<String, String> entry : keyValues.entrySet()) {
+                Long ms = (expireMs == null) ? null : expireMs.get(entry.getKey());
+                if (ms != null && ms > 0) {
+                    conn.pSetEx(entry.getKey(), ms, entry.getValue());
+                } else {
+                    conn.set(entry.getKey(), entry.getValue());
+                }
+            }
+            return null;
+        });
+        if (nearCache != null) {
+            for (Map.Entry<String, String> entry : keyValues.entrySet()) {
+                Long ms = (expireMs == null) ? null : expireMs.get(entry.getKey());
+                nearCache.put(entry.getKey(), entry.getValue(), (ms == null) ? 0 : ms);
+            }
+            nearPublishAll(keyValues.keySet());
+        }
+    }
+    /** 批量删值, 返回删除成功的条数 */
+    public long multiDelete(Collection<String> keys) {
+        if (A.isEmpty(keys)) {
+            return 0;
+        }
+        Long count = stringRedisTemplate.delete(keys);
+        nearRemoveAll(keys);
+        return count == null ? 0 : count;
+    }
+
+    /** key 是否存在: exists key */
+    public boolean exists(String key) {
+        Boolean exists = stringRedisTemplate.hasKey(key);
+        return exists != null && exists;
+    }
+    /** 从 hash 中取一个字段的值(二进制): hget key field */
+    public byte[] hashGet(String key, String field) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(
+                key.getBytes(StandardCharsets.UTF_8), field.getBytes(StandardCharsets.UTF_8)));
+    }
+    /** 往 hash 中放一个字段的值(二进制)并设置超时时间, 在一次管道里完成: hset key field value + expire key seconds */
+    public void hashSet(String key, String field, byte[] value, long seconds) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hSet(rawKey, field.getBytes(StandardCharsets.UTF_8), value);
+            connection.expire(rawKey, seconds);
+            return null;
+        });
+    }
+    /** 从 hash 中删一个字段: hdel key field */
+    public void hashDelete(String key, String field) {
+        stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.hDel(
+                key.getBytes(StandardCharsets.UTF_8), field.getBytes(StandardCharsets.UTF_8)));
+    }
+    /**
+     * 多个 hash 存在时才写入一个字段并续期, 一个 lua 脚本完成, 不会把已经过期的 key 又建出来
+     *
+     * @return 续期成功的个数
+     */
+    public long touchIfExists(Collection<String> keys, String field, String value, long seconds) {
+        if (A.isEmpty(keys)) {
+            return 0;
+        }
+        Long count = stringRedisTemplate.execute(TOUCH_IF_EXISTS, new ArrayList<>(keys),
+                field, value, String.valueOf(seconds));
+        return count == null ? 0 : count;
     }
 
     /** 向队列写值(从左边压栈) */
@@ -101,6 +367,36 @@ public class CacheService {
     public Object pop(Object key) {
         return redisTemplate.opsForList().rightPop(key);
     }
+    /** 向队列批量写值(从左边压栈), 一条 lpush 命令完成, 返回写入后队列的长度 */
+    public long pushAll(Object key, Collection<?> values) {
+        if (A.isEmpty(values)) {
+            return 0;
+        }
+        Long size = redisTemplate.opsForList().leftPushAll(key, values.toArray());
+        return size == null ? 0 : size;
+    }
+    /** 向队列批量读值(从右边出栈), 在一次管道里最多出栈 count 个, 返回的顺序跟出栈的顺序一致 */
+    @SuppressWarnings("unchecked")
+    public List<Object> popAll(Object key, int count) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        byte[] rawKey = ((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(key);
+        List<Object> values = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < count; i++) {
+                connection.rPop(rawKey);
+            }
+            return null;
+        });
+        List<Object> returnList = new ArrayList<>(values.size());
+        for (Object value : values) {
+            // 队列里的值不够 count 个时, 后面出栈的都是 null
+            if (value != null) {
+                returnList.add(value);
+            }
+        }
+        return returnList;
+    }
 
 
     /** 获取指定 set 的长度: scard key */
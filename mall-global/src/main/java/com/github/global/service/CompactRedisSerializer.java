@@ -0,0 +1,139 @@
+package com.github.global.service;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * redis 值的二进制序列化: kryo 编码, 超过阈值且压缩后更小时再用 lz4 压缩
+ *
+ * 格式: 魔数(1 字节) + 版本(1 字节) + 标记(1 字节) + [压缩前的长度(4 字节)] + 内容
+ *
+ * 以 jdk 序列化的魔数(0xACED)开头的旧数据使用 jdk 反序列化, 切换前写进去的值依然可以读出来
+ * </pre>
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private static final byte MAGIC = (byte) 0xC7;
+    private static final byte VERSION = 1;
+    /** 标记位: 内容是否被压缩 */
+    private static final byte FLAG_LZ4 = 1;
+    /** 不压缩时的头长度 */
+    private static final int HEAD_LEN = 3;
+    /** 压缩时的头长度, 多了 4 字节存压缩前的长度 */
+    private static final int LZ4_HEAD_LEN = HEAD_LEN + 4;
+
+    /** jdk 序列化的魔数 */
+    private static final byte JDK_MAGIC_0 = (byte) 0xAC;
+    private static final byte JDK_MAGIC_1 = (byte) 0xED;
+
+    /** kryo 编码时的初始缓冲大小 */
+    private static final int BUFFER_SIZE = 4096;
+    /** 编码大对象时缓冲会扩容, 超过这个大小用完就换回初始大小, 不让每个线程一直占着最大的那次 */
+    private static final int MAX_KEEP_BUFFER_SIZE = 64 * 1024;
+
+    /** kryo 不是线程安全的, 每个线程一个 */
+    private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new Kryo();
+        kryo.setReferences(true);
+        kryo.setRegistrationRequired(false);
+        // 没有无参构造器的类也可以反序列化
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        return kryo;
+    });
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(BUFFER_SIZE, -1));
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    /** 内容超过这个字节数才尝试压缩, 小于等于 0 表示不压缩 */
+    private final int compressThreshold;
+
+    public CompactRedisSerializer(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object obj) throws SerializationException {
+        if (obj == null) {
+            return EMPTY_ARRAY;
+        }
+
+        byte[] content;
+        Output output = OUTPUT.get();
+        try {
+            output.clear();
+            KRYO.get().writeClassAndObject(output, obj);
+            content = output.toBytes();
+        } catch (Exception e) {
+            throw new SerializationException("kryo serialize exception", e);
+        } finally {
+            if (output.getBuffer().length > MAX_KEEP_BUFFER_SIZE) {
+                output.setBuffer(new byte[BUFFER_SIZE], -1);
+            }
+        }
+
+        if (compressThreshold > 0 && content.length > compressThreshold) {
+            byte[] compressed = COMPRESSOR.compress(content);
+            if (compressed.length + LZ4_HEAD_LEN - HEAD_LEN < content.length) {
+                return ByteBuffer.allocate(LZ4_HEAD_LEN + compressed.length)
+                        .put(MAGIC).put(VERSION).put(FLAG_LZ4).putInt(content.length).put(compressed).array();
+            }
+        }
+        return ByteBuffer.allocate(HEAD_LEN + content.length)
+                .put(MAGIC).put(VERSION).put((byte) 0).put(content).array();
+    }
+
+    /** 当前线程的编码缓冲大小 */
+    static int bufferSize() {
+        return OUTPUT.get().getBuffer().length;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length >= 2 && bytes[0] == JDK_MAGIC_0 && bytes[1] == JDK_MAGIC_1) {
+            return jdkSerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEAD_LEN || bytes[0] != MAGIC) {
+            throw new SerializationException("unknown redis value format");
+        }
+        byte version = bytes[1];
+        if (version != VERSION) {
+            throw new SerializationException("unsupported redis value version: " + version);
+        }
+
+        byte[] content;
+        int offset;
+        if ((bytes[2] & FLAG_LZ4) != 0) {
+            int length = ByteBuffer.wrap(bytes, HEAD_LEN, 4).getInt();
+            content = new byte[length];
+            DECOMPRESSOR.decompress(bytes, LZ4_HEAD_LEN, content, 0, length);
+            offset = 0;
+        } else {
+            content = bytes;
+            offset = HEAD_LEN;
+        }
+        try {
+            return KRYO.get().readClassAndObject(new Input(content, offset, content.length - offset));
+        } catch (Exception e) {
+            throw new SerializationException("kryo deserialize exception", e);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.github.global.service;
+
+import com.github.common.export.ExportPage;
+import com.github.common.export.FileExport;
+import com.github.common.json.JsonUtil;
+import com.github.common.util.LogUtil;
+import com.github.common.util.RequestUtils;
+import com.github.common.util.U;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * <pre>
+ * 导出结果的缓存: 同一份报表(类型、标题、查询条件、数据版本都相同)只生成一次文件, 之后的请求直接把文件发出去.
+ *
+ * &#064;GetMapping("/order-daily-export")
+ * public void export(String type, OrderQuery query, HttpServletResponse response) throws IOException {
+ *     // 数据版本: 数据有变化时要跟着变, 比如日报用日期, 或者用表中最大的更新时间
+ *     String version = orderService.lastUpdateTime(query);
+ *     exportCacheService.export(type, "订单日报", OrderExport.class, query, version,
+ *             (page, limit) -&gt; orderService.export(query, page, limit), response);
+ * }
+ *
+ * // 数据修正后让这个报表的缓存全部失效
+ * exportCacheService.evict("订单日报");
+ *
+ * export.cache.enable: true                  # 需要导出缓存的应用才开启
+ * export.cache.directory: /data/export-cache  # 文件存放的目录, 每个应用要用不同的目录.
+ *                                             # 默认是临时目录下的 export-cache/应用名-端口
+ * export.cache.max-size-mb: 1024              # 所有缓存文件的总大小, 超出后淘汰最久没用过的
+ * export.cache.ttl-minutes: 1440              # 最后一次使用后保留的时间
+ * export.cache.sendfile: true                 # tomcat 支持时用 sendfile 发送文件, 不经过应用的内存
+ *
+ * 同一个 key 同时有多个请求时只有一个去生成, 其他的等它完成. 缓存只在本机, 重启后清空,
+ * 启动时只删除目录中 缓存生成的 文件(上次运行留下的), 不会动其他的文件
+ * </pre>
+ */
+@Configuration
+@ConditionalOnClass(Servlet.class)
+@ConditionalOnProperty(name = "export.cache.enable", havingValue = "true")
+public class ExportCacheService {
+
+    /** 淘汰的文件延迟删除的时间, 单位: 分钟. tomcat 的 sendfile 在请求返回后才去读文件, 不能马上删 */
+    private static final long DELETE_DELAY_MINUTES = 1;
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /** 缓存生成的文件名: key(sha-256) - 不带 - 的 uuid . 后缀(生成中是 tmp) */
+    private static final Pattern FILE_PATTERN = Pattern.compile("[0-9a-f]{64}-[0-9a-f]{32}\\.[a-z0-9]+");
+
+    @Value("${export.cache.directory:}")
+    private String directory;
+
+    @Value("${spring.application.name:application}")
+    private String applicationName;
+
+    @Value("${server.port:8080}")
+    private String port;
+
+    @Value("${export.cache.max-size-mb:1024}")
+    private long maxSizeMb;
+
+    @Value("${export.cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${export.cache.sendfile:true}")
+    private boolean sendfile;
+
+    private File cacheDirectory;
+    /** key -> 缓存的文件, 按文件大小(KB)计算权重 */
+    private Cache<String, CachedFile> cache;
+    /** 已经淘汰等待删除的文件: 文件 -> 淘汰的时间 */
+    private final ConcurrentMap<File, Long> deleteMap = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "export-cache-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** 缓存的文件 */
+    private static final class CachedFile {
+        private final File file;
+        private final String name;
+        private final String suffix;
+        private final long size;
+
+        private CachedFile(File file, String name, String suffix) {
+            this.file = file;
+            this.name = name;
+            this.suffix = suffix;
+            this.size = file.length();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // 同一台机上的多个应用不能共用目录, 否则会删掉别人(可能正在 sendfile)的文件
+        String dir = U.isBlank(directory) ? (System.getProperty("java.io.tmpdir") + File.separator
+                + "export-cache" + File.separator + applicationName + "-" + port) : directory;
+        cacheDirectory = new File(dir);
+        if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+            throw new IllegalStateException("can't create export cache directory: " + dir);
+        }
+        // 重启前的缓存已经不在内存中了, 留下的文件直接删掉
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && FILE_PATTERN.matcher(file.getName()).matches()) {
+                    delete(file);
+                }
+            }
+        }
+
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSizeMb * 1024)
+                .weigher((String key, CachedFile value) -> (int) Math.min(Integer.MAX_VALUE, (value.size >> 10) + 1))
+                .expireAfterAccess(ttlMinutes, TimeUnit.MINUTES)
+                .removalListener(notification -> {
+                    if (notification.getValue() != null) {
+                        deleteMap.put(notification.getValue().file, System.currentTimeMillis());
+                    }
+                })
+                .recordStats()
+                .build();
+        cleaner.scheduleWithFixedDelay(this::clean, DELETE_DELAY_MINUTES, DELETE_DELAY_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * 导出, 每页取 {@link ExportPage#DEFAULT_LIMIT} 条
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名, 也用来让同一个报表的缓存一起失效
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     * @param query 查询条件, 转成 json 后参与计算 key
+     * @param version 数据版本, 数据有变化时要跟着变, 没有版本时传空(只靠过期时间和手动失效)
+     * @param exportPage 分页取数据的回调, 只在没有缓存时调用
+     */
+    public <T> void export(String type, String name, Class<T> clazz, Object query, Object version,
+                           ExportPage<T> exportPage, HttpServletResponse response) throws IOException {
+        export(type, name, FileExport.title(clazz), query, version,
+                () -> ExportPage.iterator(exportPage, ExportPage.DEFAULT_LIMIT), response);
+    }
+
+    /**
+     * 导出
+     *
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名, 也用来让同一个报表的缓存一起失效
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param query 查询条件, 转成 json 后参与计算 key
+     * @param version 数据版本, 数据有变化时要跟着变, 没有版本时传空(只靠过期时间和手动失效)
+     * @param data 取数据, 只在没有缓存时调用
+     */
+    public void export(String type, String name, LinkedHashMap<String, String> titleMap, Object query,
+                       Object version, Supplier<Iterator<?>> data, HttpServletResponse response) throws IOException {
+        U.assertNil(data, "导出时数据来源不能为空");
+        String suffix = FileExport.suffix(type);
+        String key = key(suffix, name, titleMap, query, version);
+
+        CachedFile cachedFile;
+        try {
+            cachedFile = cache.get(key, () -> build(key, type, name, suffix, titleMap, data));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+        send(cachedFile, response);
+    }
+
+    /** 类型、文件名、标题、查询条件、数据版本 一起算 sha-256, map 类型的查询条件按 key 排序后再转 json */
+    @SuppressWarnings("unchecked")
+    private static String key(String suffix, String name, LinkedHashMap<String, String> titleMap,
+                              Object query, Object version) {
+        Object sortedQuery = (query instanceof Map) ? new TreeMap<>((Map<Object, Object>) query) : query;
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(suffix, StandardCharsets.UTF_8).putChar('\n')
+                .putString(U.toStr(name), StandardCharsets.UTF_8).putChar('\n');
+        if (titleMap != null) {
+            for (Map.Entry<String, String> entry : titleMap.entrySet()) {
+                hasher.putString(entry.getKey(), StandardCharsets.UTF_8).putChar('=')
+                        .putString(U.toStr(entry.getValue()), StandardCharsets.UTF_8).putChar(',');
+            }
+        }
+        hasher.putChar('\n').putString(U.toStr(JsonUtil.toJson(sortedQuery)), StandardCharsets.UTF_8)
+                .putChar('\n').putString(U.toStr(version), StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * 先写到临时文件, 写完后再改名, 生成失败时不会留下半个文件.
+     * 每次生成的文件名都不一样, 淘汰后延迟删除的旧文件不会和新文件冲突
+     */
+    private CachedFile build(String key, String type, String name, String suffix,
+                             LinkedHashMap<String, String> titleMap, Supplier<Iterator<?>> data) throws IOException {
+        long start = System.currentTimeMillis();
+        String fileName = key + "-" + U.uuid();
+        File file = new File(cacheDirectory, fileName + "." + suffix);
+        File tmp = new File(cacheDirectory, fileName + ".tmp");
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                FileExport.write(type, name, titleMap, data.get(), outputStream);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+            LogUtil.ROOT_LOG.info("export cache({}) of ({}) built, size: {}, time: {}ms",
+                    key, name, file.length(), System.currentTimeMillis() - start);
+        }
+        return new CachedFile(file, name, suffix);
+    }
+
+    /** tomcat 支持时用 sendfile(文件直接从内核发到 socket), 否则用 FileChannel 发送 */
+    private void send(CachedFile cachedFile, HttpServletResponse response) throws IOException {
+        String fileName = cachedFile.name + "." + cachedFile.suffix;
+        fileName = new String(fileName.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        response.setContentType("application/octet-stream");
+        response.setHeader("Content-Disposition", "attachment;filename=" + fileName);
+        response.setHeader("Content-Length", String.valueOf(cachedFile.size));
+        if (cachedFile.size == 0) {
+            return;
+        }
+
+        HttpServletRequest request = RequestUtils.getRequest();
+        if (sendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, cachedFile.file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, cachedFile.size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(cachedFile.file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < cachedFile.size) {
+                position += channel.transferTo(position, cachedFile.size - position, target);
+            }
+        }
+    }
+
+    /** 同名(同一个报表)的缓存全部失效, 数据修正后调用 */
+    public void evict(String name) {
+        cache.asMap().values().removeIf(cachedFile -> Objects.equals(cachedFile.name, name));
+    }
+
+    /** 所有的缓存全部失效 */
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    /** 缓存的统计: 条数、总大小、命中率等 */
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        long size = 0;
+        for (CachedFile cachedFile : cache.asMap().values()) {
+            size += cachedFile.size;
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", cache.size());
+        map.put("size", size);
+        map.put("hit", stats.hitCount());
+        map.put("miss", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("eviction", stats.evictionCount());
+        map.put("averageBuildMs", TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()));
+        return map;
+    }
+
+    /** 触发过期淘汰, 删除淘汰超过延迟时间的文件 */
+    private void clean() {
+        try {
+            cache.cleanUp();
+            long expire = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(DELETE_DELAY_MINUTES);
+            for (Map.Entry<File, Long> entry : deleteMap.entrySet()) {
+                if (entry.getValue() < expire && deleteMap.remove(entry.getKey(), entry.getValue())) {
+                    delete(entry.getKey());
+                }
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("clean export cache exception", e);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn(String.format("delete export cache file(%s) exception", file), e);
+            }
+        }
+    }
+}
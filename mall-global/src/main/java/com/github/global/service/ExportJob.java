@@ -0,0 +1,168 @@
+package com.github.global.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.github.common.util.U;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 后台导出任务, 由 {@link ExportJobService} 生成, 返回给前端用来展示状态和进度 */
+public class ExportJob {
+
+    /** 任务状态 */
+    public enum Status {
+        Wait(0, "排队中"), Running(1, "导出中"), Success(2, "已完成"), Fail(3, "失败");
+
+        int code;
+        String value;
+        Status(int code, String value) {
+            this.code = code;
+            this.value = value;
+        }
+        public String getValue() {
+            return value;
+        }
+        public int getCode() {
+            return code;
+        }
+
+        @JsonValue
+        public Map<String, String> serializer() {
+            return U.serializerEnum(code, value);
+        }
+
+        boolean isDone() {
+            return this == Success || this == Fail;
+        }
+    }
+
+    private final String id;
+    private final String userId;
+    private final String name;
+    /** 文件类型, xls03、xls07、csv、arrow */
+    private final String type;
+    /** 文件后缀 */
+    private final String suffix;
+    /** 总条数, 小于等于 0 表示不知道总数, 此时只展示已导出的条数 */
+    private final long total;
+    private final Date createTime;
+
+    private final AtomicLong rows = new AtomicLong();
+    private volatile Status status = Status.Wait;
+    private volatile String error;
+    private volatile long size = -1;
+    private volatile Date finishTime;
+
+    ExportJob(String id, String userId, String name, String type, String suffix, long total) {
+        this.id = id;
+        this.userId = userId;
+        this.name = name;
+        this.type = type;
+        this.suffix = suffix;
+        this.total = total;
+        this.createTime = new Date();
+    }
+
+    public String getId() {
+        return id;
+    }
+    @JsonIgnore
+    public String getUserId() {
+        return userId;
+    }
+    public String getName() {
+        return name;
+    }
+    public String getType() {
+        return type;
+    }
+    public String getSuffix() {
+        return suffix;
+    }
+    public long getTotal() {
+        return total;
+    }
+    public Date getCreateTime() {
+        return createTime;
+    }
+    /** 已经导出的条数 */
+    public long getRows() {
+        return rows.get();
+    }
+    public Status getStatus() {
+        return status;
+    }
+    public String getError() {
+        return error;
+    }
+    /** 文件的字节数, 完成前是 -1 */
+    public long getSize() {
+        return size;
+    }
+    public Date getFinishTime() {
+        return finishTime;
+    }
+
+    /** 进度百分比. 不知道总数时只在完成后是 100 */
+    public int getProgress() {
+        if (status == Status.Success) {
+            return 100;
+        }
+        if (total <= 0) {
+            return 0;
+        }
+        // 写完最后一行到文件输出完还有一段时间, 完成前最多到 99
+        return (int) Math.min(99, rows.get() * 100 / total);
+    }
+
+    /** 下载时的文件名 */
+    @JsonIgnore
+    public String getFileName() {
+        return name + "." + suffix;
+    }
+
+    /** 在存储中的 key */
+    String storeKey() {
+        return id + "." + suffix;
+    }
+
+    boolean isDone() {
+        return status.isDone();
+    }
+
+    void running() {
+        status = Status.Running;
+    }
+
+    void success(long size) {
+        this.size = size;
+        this.finishTime = new Date();
+        this.status = Status.Success;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        this.finishTime = new Date();
+        this.status = Status.Fail;
+    }
+
+    /** 迭代时记录已导出的条数 */
+    <T> Iterator<T> track(Iterator<T> iterator) {
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                T next = iterator.next();
+                rows.incrementAndGet();
+                return next;
+            }
+        };
+    }
+}
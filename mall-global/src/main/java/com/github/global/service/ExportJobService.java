@@ -0,0 +1,253 @@
+package com.github.global.service;
+
+import com.github.common.export.ExportPage;
+import com.github.common.export.FileExport;
+import com.github.common.util.LogUtil;
+import com.github.common.util.U;
+import com.github.global.config.MonitoredTaskExecutor;
+import com.github.global.config.TaskConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <pre>
+ * 后台导出: 请求只是提交一个任务, 任务在单独的线程池({@link TaskConfig#EXPORT})中分页取数据写成文件,
+ * 前端轮询任务的状态和进度, 完成后再下载. 大的导出不再占着 tomcat 的线程, 也不会因为浏览器超时而失败
+ *
+ * &#064;GetMapping("/xx-export")
+ * public JsonResult&lt;ExportJob&gt; export(String type, ...) {
+ *     String userId = String.valueOf(ManagerSessionUtil.getUserId());
+ *     ExportJob job = exportJobService.submit(userId, type, "文件名", XX.class,
+ *             (page, limit) -&gt; xxService.xxx(..., page, limit));
+ *     return JsonResult.success("导出任务已提交", job);
+ * }
+ *
+ * export.job.enable: true                   # 需要后台导出的应用才开启
+ * export.job.directory: /data/export-manager # 文件存放的目录, 每个应用要用不同的目录.
+ *                                            # 默认是临时目录下的 export-job/应用名-端口
+ * export.job.user-limit: 2                   # 每个用户同时排队和执行中的任务数
+ * export.job.keep-minutes: 60                # 任务完成后保留的时间, 过期后任务和文件都会被清理
+ *
+ * 启动时只清理目录中 任务生成的、超过保留时间的 文件(上次运行留下的), 不会动其他的文件
+ *
+ * 文件默认放在本机的目录中, 任务也只在本机的内存中. 多个节点时需要让同一个用户的请求落到同一个节点,
+ * 或者声明一个 {@link ExportStore} 的 bean 来替换默认的存储
+ * </pre>
+ */
+@Configuration
+@ConditionalOnClass(Servlet.class)
+@ConditionalOnProperty(name = "export.job.enable", havingValue = "true")
+public class ExportJobService {
+
+    /** 清理过期任务的间隔, 单位: 分钟 */
+    private static final long CLEAN_MINUTES = 1;
+
+    @Value("${export.job.directory:}")
+    private String directory;
+
+    @Value("${spring.application.name:application}")
+    private String applicationName;
+
+    @Value("${server.port:8080}")
+    private String port;
+
+    @Value("${export.job.user-limit:2}")
+    private int userLimit;
+
+    @Value("${export.job.keep-minutes:60}")
+    private int keepMinutes;
+
+    @Autowired
+    @Qualifier(TaskConfig.EXPORT)
+    private MonitoredTaskExecutor exportExecutor;
+
+    @Autowired(required = false)
+    private ExportStore store;
+    /** 没有声明存储时使用的本机目录 */
+    private LocalExportStore localStore;
+
+    /** 所有的任务: id -> 任务 */
+    private final ConcurrentMap<String, ExportJob> jobMap = new ConcurrentHashMap<>();
+    /** 每个用户还没完成的任务数, 都完成了就移除 */
+    private final ConcurrentMap<String, Integer> userActiveMap = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "export-job-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        if (store == null) {
+            // 同一台机上的多个应用不能共用目录, 否则会删掉别人的文件
+            String dir = U.isBlank(directory) ? (System.getProperty("java.io.tmpdir") + File.separator
+                    + "export-job" + File.separator + applicationName + "-" + port) : directory;
+            localStore = new LocalExportStore(dir);
+            store = localStore;
+        }
+        cleaner.scheduleWithFixedDelay(this::clean, 0, CLEAN_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * 提交导出任务, 每页取 {@link ExportPage#DEFAULT_LIMIT} 条
+     *
+     * @param userId 提交任务的用户, 用来限制每个人同时导出的数量, 以及查看和下载时的校验
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     * @param exportPage 分页取数据的回调, 比如调用 dubbo 服务的分页查询
+     */
+    public <T> ExportJob submit(String userId, String type, String name, Class<T> clazz, ExportPage<T> exportPage) {
+        return submit(userId, type, name, FileExport.title(clazz), 0, ExportPage.DEFAULT_LIMIT, exportPage);
+    }
+
+    /**
+     * 提交导出任务
+     *
+     * @param userId 提交任务的用户, 用来限制每个人同时导出的数量, 以及查看和下载时的校验
+     * @param type 文件类型, 现在有 xls03、xls07、csv、arrow 四种, 不在这四种中则默认是 xls07
+     * @param name 导出时的文件名
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param total 总条数, 用来计算进度, 不知道时传 0
+     * @param limit 每页的条数, 要和分页查询允许的最大条数一致, 返回的条数小于它时表示没有下一页了
+     * @param exportPage 分页取数据的回调, 比如调用 dubbo 服务的分页查询
+     */
+    public ExportJob submit(String userId, String type, String name, LinkedHashMap<String, String> titleMap,
+                            long total, int limit, ExportPage<?> exportPage) {
+        U.assertNil(userId, "导出时用户不能为空");
+        U.assertNil(exportPage, "导出时数据来源不能为空");
+
+        boolean[] acquired = new boolean[1];
+        userActiveMap.compute(userId, (k, count) -> {
+            int active = (count == null) ? 0 : count;
+            if (active >= userLimit) {
+                return count;
+            }
+            acquired[0] = true;
+            return active + 1;
+        });
+        U.assertException(!acquired[0], String.format("同时只能有 %s 个导出任务, 请等之前的完成后再试", userLimit));
+
+        String suffix = FileExport.suffix(type);
+        ExportJob job = new ExportJob(U.uuid(), userId, name, type, suffix, total);
+        jobMap.put(job.getId(), job);
+        try {
+            exportExecutor.execute(() -> run(job, titleMap, limit, exportPage));
+        } catch (RejectedExecutionException e) {
+            jobMap.remove(job.getId());
+            release(userId);
+            U.assertException("导出的任务太多了, 请稍后再试");
+        }
+        return job;
+    }
+
+    private void run(ExportJob job, LinkedHashMap<String, String> titleMap, int limit, ExportPage<?> exportPage) {
+        job.running();
+        long start = System.currentTimeMillis();
+        String key = job.storeKey();
+        try {
+            try (OutputStream outputStream = store.output(key)) {
+                Iterator<?> iterator = job.track(ExportPage.iterator(exportPage, limit));
+                FileExport.write(job.getType(), job.getName(), titleMap, iterator, outputStream);
+            }
+            job.success(store.size(key));
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("export job({}) of user({}) done, rows: {}, size: {}, time: {}ms", job.getId(),
+                        job.getUserId(), job.getRows(), job.getSize(), System.currentTimeMillis() - start);
+            }
+        } catch (Throwable e) {
+            store.delete(key);
+            job.fail(U.isBlank(e.getMessage()) ? e.getClass().getSimpleName() : e.getMessage());
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error(String.format("export job(%s) of user(%s) exception", job.getId(), job.getUserId()), e);
+            }
+        } finally {
+            release(job.getUserId());
+        }
+    }
+
+    private void release(String userId) {
+        userActiveMap.computeIfPresent(userId, (k, count) -> (count <= 1) ? null : (count - 1));
+    }
+
+    /** 用户的某个任务, 不是这个用户的任务返回 null */
+    public ExportJob job(String userId, String id) {
+        ExportJob job = jobMap.get(id);
+        return (job != null && job.getUserId().equals(userId)) ? job : null;
+    }
+
+    /** 用户所有的任务, 新提交的在前面 */
+    public List<ExportJob> jobs(String userId) {
+        List<ExportJob> jobs = new ArrayList<>();
+        for (ExportJob job : jobMap.values()) {
+            if (job.getUserId().equals(userId)) {
+                jobs.add(job);
+            }
+        }
+        jobs.sort(Comparator.comparing(ExportJob::getCreateTime).reversed());
+        return jobs;
+    }
+
+    /** 下载任务生成的文件, 任务不存在或还没完成时抛出业务异常 */
+    public void download(String userId, String id, HttpServletResponse response) throws IOException {
+        ExportJob job = job(userId, id);
+        U.assertNil(job, "没有这个导出任务或者已经过期");
+        U.assertException(job.getStatus() != ExportJob.Status.Success, "导出任务还没有完成");
+
+        String fileName = new String(job.getFileName().getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        response.setContentType("application/octet-stream");
+        response.setHeader("Content-Disposition", "attachment;filename=" + fileName);
+        if (job.getSize() >= 0) {
+            response.setHeader("Content-Length", String.valueOf(job.getSize()));
+        }
+        try (InputStream inputStream = store.input(job.storeKey())) {
+            StreamUtils.copy(inputStream, response.getOutputStream());
+        }
+    }
+
+    /**
+     * 清理完成后超过保留时间的任务和文件.
+     * 重启前的任务已经不在内存中了, 留下的文件也没人能下载, 本机目录中超过保留时间的也一起删掉
+     */
+    void clean() {
+        try {
+            long expire = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(keepMinutes);
+            for (ExportJob job : jobMap.values()) {
+                if (job.isDone() && job.getFinishTime().getTime() < expire) {
+                    jobMap.remove(job.getId());
+                    store.delete(job.storeKey());
+                }
+            }
+            if (localStore != null) {
+                localStore.deleteBefore(expire);
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("clean export job exception", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.global.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 后台导出任务生成的文件存放的地方, 默认是本机目录 {@link LocalExportStore}.
+ * 多个节点时可以自己实现一个(比如放到共享目录或者对象存储)并声明成 bean, {@link ExportJobService} 会用它替换默认的
+ */
+public interface ExportStore {
+
+    /** 写入文件的输出流, 由调用方关闭 */
+    OutputStream output(String key) throws IOException;
+
+    /** 读取文件的输入流, 由调用方关闭 */
+    InputStream input(String key) throws IOException;
+
+    /** 文件的字节数, 文件不存在时返回 -1 */
+    long size(String key);
+
+    /** 删除文件, 文件不存在时忽略 */
+    void delete(String key);
+}
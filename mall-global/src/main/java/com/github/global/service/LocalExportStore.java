@@ -0,0 +1,71 @@
+package com.github.global.service;
+
+import com.github.common.util.LogUtil;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+
+/** 把导出的文件放在本机的目录中. 文件只在生成它的节点上, 下载的请求需要落到同一个节点 */
+public class LocalExportStore implements ExportStore {
+
+    /** 任务生成的文件名: 不带 - 的 uuid + 后缀, 目录中其他的文件不去动 */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{32}\\.[a-z0-9]+");
+
+    private final File directory;
+
+    public LocalExportStore(String directory) {
+        this.directory = new File(directory);
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            throw new IllegalStateException("can't create export directory: " + directory);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File file(String key) {
+        // key 由任务生成, 不能带路径
+        return new File(directory, new File(key).getName());
+    }
+
+    @Override
+    public OutputStream output(String key) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(file(key)));
+    }
+
+    @Override
+    public InputStream input(String key) throws IOException {
+        return new BufferedInputStream(new FileInputStream(file(key)));
+    }
+
+    @Override
+    public long size(String key) {
+        File file = file(key);
+        return file.exists() ? file.length() : -1;
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(file(key).toPath());
+        } catch (IOException e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn(String.format("delete export file(%s) exception", key), e);
+            }
+        }
+    }
+
+    /** 删除任务生成的、修改时间早于指定时间点的文件, 清理重启前没来得及删除的文件 */
+    public void deleteBefore(long time) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.lastModified() < time && KEY_PATTERN.matcher(file.getName()).matches()) {
+                    delete(file.getName());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.global.service;
+
+import com.github.common.util.LogUtil;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/** 本地桩服务商: 不真正发送, 只打印日志, 没有配置服务商时或者离线测试时使用 */
+public class LocalSmsProvider implements SmsProvider {
+
+    private final int batchSize;
+    private final double rate;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder batch = new LongAdder();
+
+    public LocalSmsProvider() {
+        this(100, 1000);
+    }
+    public LocalSmsProvider(int batchSize, double rate) {
+        this.batchSize = batchSize;
+        this.rate = rate;
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public int batchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public double rate() {
+        return rate;
+    }
+
+    @Override
+    public void send(List<SmsMessage> messages) {
+        sent.add(messages.size());
+        batch.increment();
+        if (LogUtil.ROOT_LOG.isDebugEnabled()) {
+            for (SmsMessage message : messages) {
+                LogUtil.ROOT_LOG.debug("send sms to ({}): {}", message.getPhone(), message.getContent());
+            }
+        }
+    }
+
+    /** 已经发送的条数 */
+    public long getSentCount() {
+        return sent.sum();
+    }
+    /** 批量调用的次数 */
+    public long getBatchCount() {
+        return batch.sum();
+    }
+}
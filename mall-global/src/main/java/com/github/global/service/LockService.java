@@ -0,0 +1,186 @@
+package com.github.global.service;
+
+import com.github.common.util.LogUtil;
+import com.github.common.util.U;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 基于 redis 的分布式锁
+ *
+ * 获取: 一个 lua 脚本里 SET key value NX PX lease, 成功后 INCR 出一个防护令牌(fencing token)
+ * 释放: lua 脚本里比较值相同才删除, 不会误删别人的锁
+ * 续期: 不指定租期时使用看门狗, 每隔 租期/3 比较值相同就重新设置过期时间, 直到释放
+ * 等待: 在指定的时间内自旋重试, 每次重试的间隔逐步变长并加一点随机值, 避免大家同时去抢
+ * 脚本绕过了 {@link CacheService} 直接写 redis, 写成功后让进程内缓存中的这些 key 失效
+ *
+ * try (RedisLock lock = lockService.tryLock("order-cancel", 0, TimeUnit.SECONDS)) {
+ *     if (lock != null) {
+ *         // 获取到锁之后的业务处理
+ *     }
+ * }
+ * </pre>
+ */
+@Configuration
+@ConditionalOnClass(StringRedisTemplate.class)
+public class LockService {
+
+    /** 使用看门狗时的租期, 单位: 毫秒 */
+    private static final long WATCHDOG_LEASE_MS = 30 * 1000L;
+    /** 防护令牌的 key 后缀 */
+    private static final String FENCE_SUFFIX = ":fence";
+    /** 自旋等待的初始间隔, 单位: 毫秒 */
+    private static final long MIN_SPIN_MS = 5L;
+    /** 自旋等待的最大间隔, 单位: 毫秒 */
+    private static final long MAX_SPIN_MS = 100L;
+
+    /** 获取成功返回防护令牌, 失败返回 0 */
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "  return redis.call('incr', KEYS[2]) " +
+            "else " +
+            "  return 0 " +
+            "end", Long.class);
+    /** 值相同才删除, 成功返回 1 */
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('del', KEYS[1]) " +
+            "else " +
+            "  return 0 " +
+            "end", Long.class);
+    /** 值相同才续期, 成功返回 1 */
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+            "else " +
+            "  return 0 " +
+            "end", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /** 没有 jedis 时没有这个实例, 也就没有进程内缓存 */
+    @Autowired(required = false)
+    private CacheService cacheService;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 在等待时间内获取锁, 获取到后由看门狗续期直到释放
+     *
+     * @param key 锁的 key
+     * @param waitTime 最多等待的时间, 小于等于 0 表示只尝试一次
+     * @return 没有获取到锁时返回 null
+     */
+    public RedisLock tryLock(String key, long waitTime, TimeUnit unit) {
+        RedisLock lock = acquire(key, WATCHDOG_LEASE_MS, unit.toMillis(waitTime));
+        if (lock != null) {
+            long period = WATCHDOG_LEASE_MS / 3;
+            lock.setRenewal(watchdog.scheduleAtFixedRate(() -> renew(lock), period, period, TimeUnit.MILLISECONDS));
+        }
+        return lock;
+    }
+
+    /**
+     * 在等待时间内获取锁, 到了租期自动过期, 不会续期
+     *
+     * @param key 锁的 key
+     * @param waitTime 最多等待的时间, 小于等于 0 表示只尝试一次
+     * @param leaseTime 租期
+     * @return 没有获取到锁时返回 null
+     */
+    public RedisLock tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return acquire(key, unit.toMillis(leaseTime), unit.toMillis(waitTime));
+    }
+
+    private RedisLock acquire(String key, long leaseMs, long waitMs) {
+        String value = U.uuid();
+        long deadline = System.currentTimeMillis() + waitMs;
+        long spin = MIN_SPIN_MS;
+        while (true) {
+            Long token = stringRedisTemplate.execute(ACQUIRE, Arrays.asList(key, key + FENCE_SUFFIX),
+                    value, String.valueOf(leaseMs));
+            if (token != null && token > 0) {
+                nearInvalidate(key, key + FENCE_SUFFIX);
+                return new RedisLock(key, value, token, this);
+            }
+
+            long remain = deadline - System.currentTimeMillis();
+            if (remain <= 0) {
+                return null;
+            }
+            try {
+                Thread.sleep(Math.min(remain, spin + ThreadLocalRandom.current().nextLong(spin)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            spin = Math.min(spin << 1, MAX_SPIN_MS);
+        }
+    }
+
+    void renew(RedisLock lock) {
+        try {
+            Long result = stringRedisTemplate.execute(RENEW, Collections.singletonList(lock.getKey()),
+                    lock.getValue(), String.valueOf(WATCHDOG_LEASE_MS));
+            if (result == null || result == 0) {
+                // 锁已经不是自己的了, 不再续期
+                lock.cancelRenewal();
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn("lock({}) was lost before release, stop renew", lock.getKey());
+                }
+            } else {
+                nearInvalidate(lock.getKey());
+            }
+        } catch (Exception e) {
+            // redis 暂时不可用时保留任务, 下个周期再试
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error(String.format("renew lock(%s) exception", lock.getKey()), e);
+            }
+        }
+    }
+
+    boolean unlock(RedisLock lock) {
+        Long result = stringRedisTemplate.execute(RELEASE, Collections.singletonList(lock.getKey()), lock.getValue());
+        boolean success = result != null && result > 0;
+        if (success) {
+            nearInvalidate(lock.getKey());
+        }
+        return success;
+    }
+
+    /** 广播失败只会让其他节点的本地值多存活一会(不超过本地的存活时间), 不影响锁本身 */
+    private void nearInvalidate(String... keys) {
+        if (cacheService != null) {
+            try {
+                cacheService.nearInvalidate(Arrays.asList(keys));
+            } catch (Exception e) {
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error(String.format("invalidate near cache(%s) exception", Arrays.toString(keys)), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.github.global.service;
+
+import com.github.common.util.LogUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <pre>
+ * mybatis 的二级缓存, 在 mapper 的 xml 中使用 &lt;cache type="com.github.global.service.MybatisCache"/&gt;
+ * 或者在 mapper 接口上使用 &#064;CacheNamespace(implementation = MybatisCache.class)
+ *
+ * 值放在 redis 中, 可以在前面加一层本地缓存, 本地缓存中存的是序列化后的字节, 每次读出来都是新的对象.
+ * 每个命名空间可以单独配置, 没有配置的用全局的, 如(以 product 的 mapper 为例):
+ *   mybatis.cache.ttl-seconds: 600        # 全局的 redis 存活时间
+ *   mybatis.cache.com.github.product.repository.ProductMapper.ttl-seconds: 60
+ *   mybatis.cache.com.github.product.repository.ProductMapper.max-size: 5000
+ *   mybatis.cache.com.github.product.repository.ProductMapper.local: true
+ *   mybatis.cache.com.github.product.repository.ProductMapper.local-ttl-seconds: 10
+ *   mybatis.cache.com.github.product.repository.ProductMapper.scope: tag  # tag 或 namespace
+ *   mybatis.cache.tags.com.github.product.repository.ProductMapper.selectByPrimaryKey: product,hot
+ *
+ * scope 是 tag 时, 写操作只失效用到相同表(或者相同标签)的缓存, 而且是所有命名空间的,
+ * 需要在 SqlSessionFactory 上装 {@link MybatisCacheInterceptor}, 没装时依然清空整个命名空间
+ * </pre>
+ */
+public class MybatisCache implements org.apache.ibatis.cache.Cache {
+
+    private final String id;
+    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+
+    private volatile MybatisCacheContext.Policy policy;
+    private volatile Cache<String, LocalEntry> local;
+
+    public MybatisCache(String id) {
+        this.id = id;
+        MybatisCacheContext.register(this);
+    }
+
+    private MybatisCacheContext.Policy policy() {
+        MybatisCacheContext.Policy current = policy;
+        if (current == null) {
+            synchronized (this) {
+                current = policy;
+                if (current == null) {
+                    current = MybatisCacheContext.policy(id);
+                    if (current.local) {
+                        local = CacheBuilder.newBuilder()
+                                .maximumSize(current.maxSize)
+                                .expireAfterWrite(current.localTtlMs, TimeUnit.MILLISECONDS)
+                                .build();
+                    }
+                    policy = current;
+                }
+            }
+        }
+        return current;
+    }
+    /** 上下文设置好之后重新读取配置 */
+    synchronized void resetPolicy() {
+        policy = null;
+        local = null;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public void putObject(Object key, Object value) {
+        if (key == null || value == null) {
+            return;
+        }
+        MybatisCacheContext.Policy current = policy();
+        String keyStr = key.toString();
+        String digest = DigestUtils.md5Hex(keyStr);
+        try {
+            byte[] bytes = MybatisCacheContext.serialize(value);
+            Set<String> tags = MybatisCacheContext.readTags(statementId(keyStr), sql(keyStr));
+
+            Cache<String, LocalEntry> localCache = local;
+            if (localCache != null) {
+                localCache.put(digest, new LocalEntry(bytes, tags));
+            }
+            MybatisCacheRedis redis = MybatisCacheContext.redis();
+            if (redis != null) {
+                redis.put(id, digest, bytes, tags, current.ttlMs, current.maxSize);
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn(String.format("put mybatis cache(%s) exception", id), e);
+            }
+        }
+    }
+
+    @Override
+    public Object getObject(Object key) {
+        if (key == null) {
+            return null;
+        }
+        policy();
+        String keyStr = key.toString();
+        String statementId = statementId(keyStr);
+        String digest = DigestUtils.md5Hex(keyStr);
+        try {
+            Cache<String, LocalEntry> localCache = local;
+            if (localCache != null) {
+                LocalEntry entry = localCache.getIfPresent(digest);
+                if (entry != null) {
+                    MybatisCacheContext.record(statementId, MybatisCacheContext.LOCAL_HIT);
+                    return MybatisCacheContext.deserialize(entry.bytes);
+                }
+            }
+            MybatisCacheRedis redis = MybatisCacheContext.redis();
+            if (redis != null) {
+                byte[] bytes = redis.get(id, digest);
+                if (bytes != null && bytes.length > 0) {
+                    if (localCache != null) {
+                        localCache.put(digest, new LocalEntry(bytes, MybatisCacheContext.readTags(statementId, sql(keyStr))));
+                    }
+                    MybatisCacheContext.record(statementId, MybatisCacheContext.REDIS_HIT);
+                    return MybatisCacheContext.deserialize(bytes);
+                }
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn(String.format("get mybatis cache(%s) exception", id), e);
+            }
+        }
+        MybatisCacheContext.record(statementId, MybatisCacheContext.MISS);
+        return null;
+    }
+
+    @Override
+    public Object removeObject(Object key) {
+        if (key == null) {
+            return null;
+        }
+        policy();
+        String digest = DigestUtils.md5Hex(key.toString());
+        Cache<String, LocalEntry> localCache = local;
+        if (localCache != null) {
+            localCache.invalidate(digest);
+        }
+        MybatisCacheRedis redis = MybatisCacheContext.redis();
+        if (redis != null) {
+            try {
+                redis.remove(id, digest);
+            } catch (Exception e) {
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn(String.format("remove mybatis cache(%s) exception", id), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 命名空间中的写语句提交时 mybatis 会调用这里.
+     * 按标签失效时已经由 {@link MybatisCacheInterceptor} 处理过了(认不出表时它会清空命名空间), 这里什么都不做
+     */
+    @Override
+    public void clear() {
+        if (policy().tagScope && MybatisCacheContext.isInterceptorInstalled()) {
+            return;
+        }
+        clearNamespace();
+    }
+
+    /** 清空整个命名空间(本地和 redis). 认不出写语句写到哪个表时由 {@link MybatisCacheInterceptor} 调用 */
+    void clearNamespace() {
+        clearLocal();
+        MybatisCacheRedis redis = MybatisCacheContext.redis();
+        if (redis != null) {
+            try {
+                redis.clear(id);
+            } catch (Exception e) {
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error(String.format("clear mybatis cache(%s) exception", id), e);
+                }
+            }
+        }
+    }
+
+    void clearLocal() {
+        Cache<String, LocalEntry> localCache = local;
+        if (localCache != null) {
+            localCache.invalidateAll();
+        }
+    }
+
+    /** 删掉本地缓存中用到这些标签的值 */
+    void invalidateLocal(Collection<String> tags) {
+        Cache<String, LocalEntry> localCache = local;
+        if (localCache != null) {
+            localCache.asMap().values().removeIf(entry -> !Collections.disjoint(entry.tags, tags));
+        }
+    }
+
+    @Override
+    public int getSize() {
+        Cache<String, LocalEntry> localCache = local;
+        return (localCache == null) ? 0 : (int) localCache.size();
+    }
+
+    @Override
+    public ReadWriteLock getReadWriteLock() {
+        return readWriteLock;
+    }
+
+    /** CacheKey 的 toString 是: hashcode:checksum:语句id:offset:limit:sql:参数...:环境 */
+    private static String statementId(String keyStr) {
+        int first = keyStr.indexOf(':');
+        int second = (first < 0) ? -1 : keyStr.indexOf(':', first + 1);
+        int third = (second < 0) ? -1 : keyStr.indexOf(':', second + 1);
+        return (third < 0) ? keyStr : keyStr.substring(second + 1, third);
+    }
+    /** CacheKey 中语句 id 之后的部分(sql 及参数), 用来解析用到的表 */
+    private static String sql(String keyStr) {
+        int index = -1;
+        for (int i = 0; i < 5; i++) {
+            index = keyStr.indexOf(':', index + 1);
+            if (index < 0) {
+                return keyStr;
+            }
+        }
+        return keyStr.substring(index + 1);
+    }
+
+    private static class LocalEntry {
+        private final byte[] bytes;
+        private final Set<String> tags;
+
+        private LocalEntry(byte[] bytes, Set<String> tags) {
+            this.bytes = bytes;
+            this.tags = tags;
+        }
+    }
+}
@@ -2,19 +2,110 @@ package com.github.global.service;
 
 import com.github.liuanxin.caches.MybatisRedisCache;
 import com.github.liuanxin.caches.RedisContextUtils;
+import org.apache.ibatis.cache.Cache;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.ClassUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ * mybatis 的二级缓存, 见 {@link MybatisCache}. 有名为 redisTemplate 的 bean 时值放在 redis 中, 否则只用本地缓存.
+ * 需要在配置中开启, 不开启时不会订阅 redis 的失效消息, 也没有 {@link MybatisCacheInterceptor}:
+ *
+ * mybatis.cache.enable: true
+ *
+ * 开启后在 SqlSessionFactory 上装 {@link MybatisCacheInterceptor}(见 ProductDataSourceInit),
+ * 并在 mapper 上声明 &lt;cache type="com.github.global.service.MybatisCache"/&gt;
+ * </pre>
+ */
 @Configuration
-@ConditionalOnClass({ MybatisRedisCache.class, RedisTemplate.class })
-@ConditionalOnBean(RedisTemplate.class)
+@ConditionalOnClass({ Cache.class })
 public class MybatisCacheConfig {
 
-    @Bean
-    public RedisContextUtils redisContext() {
-        return new RedisContextUtils();
+    @Configuration
+    @ConditionalOnProperty(name = "mybatis.cache.enable", havingValue = "true")
+    public static class MybatisCacheProviderConfig {
+
+        private static final String REDIS_TEMPLATE_CLASS = "org.springframework.data.redis.core.RedisTemplate";
+        private static final String REDIS_TEMPLATE_NAME = "redisTemplate";
+
+        @Autowired
+        private Environment environment;
+
+        @Autowired
+        private BeanFactory beanFactory;
+
+        @PostConstruct
+        public void init() {
+            MybatisCacheRedis redis = null;
+            if (ClassUtils.isPresent(REDIS_TEMPLATE_CLASS, null) && beanFactory.containsBean(REDIS_TEMPLATE_NAME)) {
+                redis = RedisHolder.create(beanFactory.getBean(REDIS_TEMPLATE_NAME));
+            }
+            MybatisCacheContext.setup(environment, redis);
+        }
+        @PreDestroy
+        public void destroy() throws Exception {
+            MybatisCacheContext.destroy();
+        }
+
+        @Bean
+        public MybatisCacheInterceptor mybatisCacheInterceptor() {
+            return new MybatisCacheInterceptor();
+        }
+
+        /** 在 actuator 中暴露每个语句的命中率: /actuator/mybatis */
+        @Configuration
+        @ConditionalOnClass(Endpoint.class)
+        public static class MybatisCacheEndpointConfig {
+
+            @Bean
+            public MybatisCacheEndpoint mybatisCacheEndpoint() {
+                return new MybatisCacheEndpoint();
+            }
+        }
+    }
+
+    /** 放在单独的类里, 没有 redis 的项目不会加载到 redis 的类 */
+    private static class RedisHolder {
+        @SuppressWarnings("unchecked")
+        private static MybatisCacheRedis create(Object redisTemplate) {
+            return (redisTemplate instanceof RedisTemplate)
+                    ? new MybatisCacheRedis((RedisTemplate<Object, Object>) redisTemplate) : null;
+        }
+    }
+
+    /** 外部的 redis 缓存插件 */
+    @Configuration
+    @ConditionalOnClass({ MybatisRedisCache.class, RedisTemplate.class })
+    @ConditionalOnBean(RedisTemplate.class)
+    public static class ExternalRedisCacheConfig {
+
+        @Bean
+        public RedisContextUtils redisContext() {
+            return new RedisContextUtils();
+        }
+    }
+
+    @Endpoint(id = "mybatis")
+    public static class MybatisCacheEndpoint {
+
+        @ReadOperation
+        public List<Map<String, Object>> stats() {
+            return MybatisCacheContext.stats();
+        }
     }
 }
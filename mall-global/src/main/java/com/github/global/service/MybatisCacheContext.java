@@ -0,0 +1,269 @@
+package com.github.global.service;
+
+import com.github.common.util.A;
+import com.github.common.util.LogUtil;
+import com.github.common.util.U;
+import org.springframework.core.env.Environment;
+import org.springframework.util.SerializationUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <pre>
+ * mybatis 的缓存实例是 mybatis 反射生成的, 拿不到 spring 上下文, 所以配置、redis、统计都放在这里静态持有.
+ * 由 {@link MybatisCacheConfig} 在启动时设置, 没有设置时只使用本地缓存
+ * </pre>
+ */
+final class MybatisCacheContext {
+
+    /** 块注释和行注释, 解析表之前先去掉 */
+    private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/|--\\s[^\\n]*", Pattern.DOTALL);
+    /** 表名, 可以带库名和引号, 第一组是表名 */
+    private static final String NAME = "[`\"]?(?:\\w+[`\"]?\\.[`\"]?)?(\\w+)[`\"]?";
+    /** 跟在表名后面时不是别名的关键字 */
+    private static final String KEYWORD = "(?:where|on|using|join|inner|left|right|outer|cross|natural|straight_join"
+            + "|group|order|limit|having|union|for|lock|set|values|value|select|partition)\\b";
+
+    /** 查询语句中 from 和 join 的开始 */
+    private static final Pattern READ_FROM = Pattern.compile("(?i)\\b(?:from|join)\\s+");
+    /** from 后面的一个表: 表名 [as] [别名] [,] , 有逗号时后面还有表(from a, b) */
+    private static final Pattern READ_TABLE = Pattern.compile(
+            "(?i)" + NAME + "(?:\\s+(?:as\\s+)?(?!" + KEYWORD + ")\\w+)?\\s*(,)?\\s*");
+
+    /** 单表的 update: update 表 [别名] set */
+    private static final Pattern UPDATE_TABLE = Pattern.compile(
+            "(?i)^\\s*update\\s+(?:low_priority\\s+)?(?:ignore\\s+)?" + NAME
+                    + "(?:\\s+(?:as\\s+)?(?!" + KEYWORD + ")\\w+)?\\s+set\\b");
+    /** 单表的 delete: delete from 表 [别名] [where|order|limit] */
+    private static final Pattern DELETE_TABLE = Pattern.compile(
+            "(?i)^\\s*delete\\s+(?:low_priority\\s+)?(?:quick\\s+)?(?:ignore\\s+)?from\\s+" + NAME
+                    + "(?:\\s+(?:as\\s+)?(?!" + KEYWORD + ")\\w+)?\\s*(?:$|where\\b|order\\b|limit\\b)");
+    /** insert 和 replace 只写入 into 后面的那个表(insert ... select 中 from 的表只是读) */
+    private static final Pattern INSERT_TABLE = Pattern.compile(
+            "(?i)^\\s*(?:insert|replace)\\s+(?:low_priority\\s+|delayed\\s+|high_priority\\s+)?(?:ignore\\s+)?into\\s+" + NAME);
+
+    private static final String PREFIX = "mybatis.cache.";
+
+    private static volatile Environment environment;
+    private static volatile MybatisCacheRedis redis;
+    /** 是否装了 {@link MybatisCacheInterceptor}, 没装时无法按表失效, 只能清空整个命名空间 */
+    private static volatile boolean interceptorInstalled;
+
+    private static final ConcurrentMap<String, MybatisCache> CACHE_MAP = new ConcurrentHashMap<>();
+    /** 语句 id 配置的标签 */
+    private static final ConcurrentMap<String, Set<String>> STATEMENT_TAG_MAP = new ConcurrentHashMap<>();
+    /** 语句 id: [本地命中, redis 命中, 未命中] */
+    private static final ConcurrentMap<String, LongAdder[]> STATS_MAP = new ConcurrentHashMap<>();
+
+    static final int LOCAL_HIT = 0;
+    static final int REDIS_HIT = 1;
+    static final int MISS = 2;
+
+    private MybatisCacheContext() {}
+
+    static void setup(Environment env, MybatisCacheRedis cacheRedis) {
+        environment = env;
+        redis = cacheRedis;
+        if (cacheRedis != null) {
+            cacheRedis.start(MybatisCacheContext::invalidateLocal, namespace -> {
+                MybatisCache cache = CACHE_MAP.get(namespace);
+                if (cache != null) {
+                    cache.clearLocal();
+                }
+            });
+        }
+        for (MybatisCache cache : CACHE_MAP.values()) {
+            cache.resetPolicy();
+        }
+    }
+    static void destroy() throws Exception {
+        MybatisCacheRedis cacheRedis = redis;
+        redis = null;
+        if (cacheRedis != null) {
+            cacheRedis.stop();
+        }
+    }
+
+    static MybatisCacheRedis redis() {
+        return redis;
+    }
+    static void register(MybatisCache cache) {
+        CACHE_MAP.put(cache.getId(), cache);
+    }
+    static void interceptorInstalled() {
+        interceptorInstalled = true;
+    }
+    static boolean isInterceptorInstalled() {
+        return interceptorInstalled;
+    }
+
+    /** 命名空间的策略, 没有单独配置时用全局的, 全局也没有配置时用默认值 */
+    static Policy policy(String namespace) {
+        long ttlSeconds = property(namespace, "ttl-seconds", Long.class, 600L);
+        long maxSize = property(namespace, "max-size", Long.class, 10000L);
+        boolean local = property(namespace, "local", Boolean.class, false);
+        long localTtlSeconds = property(namespace, "local-ttl-seconds", Long.class, 10L);
+        String scope = property(namespace, "scope", String.class, "tag");
+        long ttlMs = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        boolean tagScope = "tag".equalsIgnoreCase(scope);
+        if (redis == null) {
+            // 没有 redis 时只能用本地缓存, 本地缓存就是唯一的一层
+            return new Policy(ttlMs, maxSize, true, ttlMs, tagScope);
+        }
+        return new Policy(ttlMs, maxSize, local, TimeUnit.SECONDS.toMillis(localTtlSeconds), tagScope);
+    }
+    private static <T> T property(String namespace, String name, Class<T> clazz, T defaultValue) {
+        Environment env = environment;
+        if (env == null) {
+            return defaultValue;
+        }
+        return env.getProperty(PREFIX + namespace + "." + name, clazz, env.getProperty(PREFIX + name, clazz, defaultValue));
+    }
+
+    /** 语句上配置的标签: mybatis.cache.tags.语句id: product,sku */
+    private static Set<String> statementTags(String statementId) {
+        return STATEMENT_TAG_MAP.computeIfAbsent(statementId, id -> {
+            Environment env = environment;
+            String tags = (env == null) ? null : env.getProperty(PREFIX + "tags." + id);
+            if (U.isBlank(tags)) {
+                return Collections.emptySet();
+            }
+            Set<String> tagSet = new LinkedHashSet<>();
+            for (String tag : tags.split(",")) {
+                if (U.isNotBlank(tag)) {
+                    tagSet.add(tag.trim().toLowerCase());
+                }
+            }
+            return tagSet;
+        });
+    }
+
+    /** 查询用到的标签: 语句里 from(包括 from a, b 这种) 和 join 的表, 以及语句上配置的标签 */
+    static Set<String> readTags(String statementId, String sql) {
+        Set<String> tags = new LinkedHashSet<>(statementTags(statementId));
+        String clean = COMMENT.matcher(sql).replaceAll(" ");
+        Matcher from = READ_FROM.matcher(clean);
+        Matcher table = READ_TABLE.matcher(clean);
+        while (from.find()) {
+            int start = from.end();
+            while (start < clean.length() && table.region(start, clean.length()).lookingAt()) {
+                tags.add(table.group(1).toLowerCase());
+                if (table.group(2) == null) {
+                    break;
+                }
+                start = table.end();
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * 写语句写入的表. 只认单表的 update、delete 和 insert,
+     * 多表的(update a join b、update a, b、delete t from ...)以及认不出来的返回 null, 这时要清空整个命名空间
+     */
+    static String writeTable(String sql) {
+        String clean = COMMENT.matcher(sql).replaceAll(" ");
+        for (Pattern pattern : new Pattern[] { UPDATE_TABLE, DELETE_TABLE, INSERT_TABLE }) {
+            Matcher matcher = pattern.matcher(clean);
+            if (matcher.find()) {
+                return matcher.group(1).toLowerCase();
+            }
+        }
+        return null;
+    }
+    /** 写语句影响的标签: 写入的表, 以及语句上配置的标签 */
+    static Set<String> writeTags(String statementId, String sql) {
+        Set<String> tags = new LinkedHashSet<>(statementTags(statementId));
+        String table = writeTable(sql);
+        if (table != null) {
+            tags.add(table);
+        }
+        return tags;
+    }
+
+    /** 失效所有命名空间中用到这些标签的缓存 */
+    static void invalidate(Collection<String> tags) {
+        if (A.isEmpty(tags)) {
+            return;
+        }
+        invalidateLocal(tags);
+        MybatisCacheRedis cacheRedis = redis;
+        if (cacheRedis != null) {
+            try {
+                cacheRedis.invalidate(tags);
+            } catch (Exception e) {
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error(String.format("invalidate mybatis cache tags(%s) exception", tags), e);
+                }
+            }
+        }
+    }
+    private static void invalidateLocal(Collection<String> tags) {
+        for (MybatisCache cache : CACHE_MAP.values()) {
+            cache.invalidateLocal(tags);
+        }
+    }
+
+    static byte[] serialize(Object value) {
+        MybatisCacheRedis cacheRedis = redis;
+        return (cacheRedis == null) ? SerializationUtils.serialize(value) : cacheRedis.serialize(value);
+    }
+    static Object deserialize(byte[] bytes) {
+        MybatisCacheRedis cacheRedis = redis;
+        return (cacheRedis == null) ? SerializationUtils.deserialize(bytes) : cacheRedis.deserialize(bytes);
+    }
+
+    static void record(String statementId, int type) {
+        STATS_MAP.computeIfAbsent(statementId, id -> new LongAdder[] { new LongAdder(), new LongAdder(), new LongAdder() })[type].increment();
+    }
+
+    /** 每个语句的命中情况, 按查询次数倒序 */
+    static List<Map<String, Object>> stats() {
+        List<Map<String, Object>> returnList = new ArrayList<>();
+        for (Map.Entry<String, LongAdder[]> entry : STATS_MAP.entrySet()) {
+            LongAdder[] counts = entry.getValue();
+            long localHit = counts[LOCAL_HIT].sum();
+            long redisHit = counts[REDIS_HIT].sum();
+            long miss = counts[MISS].sum();
+            long total = localHit + redisHit + miss;
+            returnList.add(A.linkedMaps(
+                    "statement", entry.getKey(),
+                    "total", total,
+                    "local_hit", localHit,
+                    "redis_hit", redisHit,
+                    "miss", miss,
+                    "hit_ratio", (total == 0) ? 0 : (double) (localHit + redisHit) / total
+            ));
+        }
+        returnList.sort((o1, o2) -> Long.compare((Long) o2.get("total"), (Long) o1.get("total")));
+        return returnList;
+    }
+
+    /** 命名空间的缓存策略 */
+    static class Policy {
+        /** redis 中的存活时间, 单位: 毫秒 */
+        final long ttlMs;
+        /** 最大条数 */
+        final long maxSize;
+        /** 是否在 redis 前加一层本地缓存 */
+        final boolean local;
+        /** 本地缓存的存活时间, 单位: 毫秒 */
+        final long localTtlMs;
+        /** 写操作是否只失效用到相同表(标签)的缓存, 否则清空整个命名空间 */
+        final boolean tagScope;
+
+        Policy(long ttlMs, long maxSize, boolean local, long localTtlMs, boolean tagScope) {
+            this.ttlMs = ttlMs;
+            this.maxSize = maxSize;
+            this.local = local;
+            this.localTtlMs = localTtlMs;
+            this.tagScope = tagScope;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.global.service;
+
+import com.github.common.util.A;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.*;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * <pre>
+ * 写语句执行后按写入的表(以及语句上配置的标签)失效 {@link MybatisCache} 中的缓存, 事务提交后再失效一次,
+ * 避免提交前被其他查询又把旧数据放回缓存. 认不出写到哪个表时(多表的 update、delete 等), 清空语句所在的整个命名空间.
+ *
+ * 在 spring 的事务中, mybatis 的 commit 是在 beforeCommit 里调用的(这时数据库还没有提交),
+ * 所以提交后的那次失效注册在 spring 事务的 afterCommit 上; 不在 spring 事务中时在 mybatis 的 commit 之后.
+ * 装到 SqlSessionFactory 上:
+ *
+ * sessionFactory.setPlugins(new Interceptor[] { mybatisPage(), mybatisCacheInterceptor });
+ * </pre>
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+        @Signature(type = Executor.class, method = "commit", args = { boolean.class }),
+        @Signature(type = Executor.class, method = "rollback", args = { boolean.class })
+})
+public class MybatisCacheInterceptor implements Interceptor {
+
+    private static final boolean SPRING_TX = ClassUtils.isPresent(
+            "org.springframework.transaction.support.TransactionSynchronizationManager",
+            MybatisCacheInterceptor.class.getClassLoader());
+
+    /** 不在 spring 事务中时, 当前会话(线程)中写过、等待提交后再失效一次的 */
+    private static final ThreadLocal<Pending> PENDING = new ThreadLocal<>();
+
+    /** 等待提交后再失效一次的标签和命名空间 */
+    private static class Pending {
+        private final Set<String> tags = new LinkedHashSet<>();
+        private final Set<MybatisCache> caches = new LinkedHashSet<>();
+
+        private void invalidate() {
+            MybatisCacheContext.invalidate(tags);
+            for (MybatisCache cache : caches) {
+                cache.clearNamespace();
+            }
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        if ("update".equals(method)) {
+            Object[] args = invocation.getArgs();
+            MappedStatement ms = (MappedStatement) args[0];
+            String sql = ms.getBoundSql(args[1]).getSql();
+            Set<String> tags = MybatisCacheContext.writeTags(ms.getId(), sql);
+            // 认不出写到哪个表时按命名空间清空, 不然用到这个表的缓存一直是旧的
+            Cache cache = ms.getCache();
+            MybatisCache namespaceCache = (MybatisCacheContext.writeTable(sql) == null && cache instanceof MybatisCache)
+                    ? (MybatisCache) cache : null;
+
+            Object result = invocation.proceed();
+            if (A.isNotEmpty(tags) || namespaceCache != null) {
+                MybatisCacheContext.invalidate(tags);
+                if (namespaceCache != null) {
+                    namespaceCache.clearNamespace();
+                }
+                Pending pending = pending();
+                pending.tags.addAll(tags);
+                if (namespaceCache != null) {
+                    pending.caches.add(namespaceCache);
+                }
+            }
+            return result;
+        } else if ("commit".equals(method)) {
+            Object result = invocation.proceed();
+            Pending pending = PENDING.get();
+            PENDING.remove();
+            if (pending != null) {
+                pending.invalidate();
+            }
+            return result;
+        } else {
+            PENDING.remove();
+            return invocation.proceed();
+        }
+    }
+
+    /** 在 spring 事务中时绑定在事务上, 否则放在当前线程 */
+    private static Pending pending() {
+        if (SPRING_TX) {
+            Pending pending = SpringTx.pending();
+            if (pending != null) {
+                return pending;
+            }
+        }
+        Pending pending = PENDING.get();
+        if (pending == null) {
+            pending = new Pending();
+            PENDING.set(pending);
+        }
+        return pending;
+    }
+
+    /** 放在单独的类里, 没有 spring-tx 的项目不会加载到事务的类 */
+    private static class SpringTx {
+        private static final Object KEY = new Object();
+
+        private static Pending pending() {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                return null;
+            }
+            Pending pending = (Pending) TransactionSynchronizationManager.getResource(KEY);
+            if (pending == null) {
+                Pending newPending = new Pending();
+                TransactionSynchronizationManager.bindResource(KEY, newPending);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        newPending.invalidate();
+                    }
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(KEY);
+                    }
+                });
+                pending = newPending;
+            }
+            return pending;
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        if (target instanceof Executor) {
+            MybatisCacheContext.interceptorInstalled();
+            return Plugin.wrap(target, this);
+        }
+        return target;
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+}
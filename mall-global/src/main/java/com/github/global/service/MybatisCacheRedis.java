@@ -0,0 +1,185 @@
+package com.github.global.service;
+
+import com.github.common.util.A;
+import com.github.common.util.U;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * mybatis 二级缓存在 redis 中的存储, key 的结构:
+ *   mybatis:命名空间:摘要    缓存的值
+ *   mybatis:命名空间:keys    命名空间下所有的 key(zset, 分值是写入时间), 用来控制条数和清空命名空间
+ *   mybatis:tag:标签         用到这个标签(表)的所有 key(set), 用来按表失效
+ * </pre>
+ */
+class MybatisCacheRedis {
+
+    private static final String PREFIX = "mybatis:";
+    private static final String INDEX_SUFFIX = ":keys";
+    private static final String TAG_PREFIX = PREFIX + "tag:";
+    /** 其他节点的本地缓存失效时用的频道 */
+    private static final String CHANNEL = "mybatis-cache-invalidate";
+    /** 消息中节点标识和内容的分隔符 */
+    private static final char SPLIT = '|';
+    /** 消息内容是命名空间时的前缀, 否则是逗号分隔的标签 */
+    private static final char NAMESPACE_FLAG = '@';
+
+    /**
+     * KEYS: 值的 key, 命名空间索引, 标签...   ARGV: 值, 过期毫秒数, 当前毫秒数, 命名空间最大条数
+     * 写入值并加到索引里, 先去掉索引中已经过期的, 再把超出条数的最老的 key 删掉
+     */
+    private static final byte[] PUT = bytes(
+            "redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+            "redis.call('zremrangebyscore', KEYS[2], '-inf', tonumber(ARGV[3]) - tonumber(ARGV[2])) " +
+            "redis.call('zadd', KEYS[2], ARGV[3], KEYS[1]) " +
+            "redis.call('pexpire', KEYS[2], ARGV[2]) " +
+            "for i = 3, #KEYS do " +
+            "  redis.call('sadd', KEYS[i], KEYS[1]) " +
+            "  redis.call('pexpire', KEYS[i], ARGV[2]) " +
+            "end " +
+            "local over = redis.call('zcard', KEYS[2]) - tonumber(ARGV[4]) " +
+            "if over > 0 then " +
+            "  local old = redis.call('zrange', KEYS[2], 0, over - 1) " +
+            "  for _, k in ipairs(old) do redis.call('del', k) end " +
+            "  redis.call('zremrangebyrank', KEYS[2], 0, over - 1) " +
+            "end " +
+            "return 1");
+    /** KEYS: 标签...  删掉标签下所有的 key 以及标签本身, 返回删掉的值的个数 */
+    private static final byte[] INVALIDATE = bytes(
+            "local n = 0 " +
+            "for i = 1, #KEYS do " +
+            "  for _, k in ipairs(redis.call('smembers', KEYS[i])) do n = n + redis.call('del', k) end " +
+            "  redis.call('del', KEYS[i]) " +
+            "end " +
+            "return n");
+    /** KEYS: 命名空间索引  删掉命名空间下所有的 key 以及索引本身 */
+    private static final byte[] CLEAR = bytes(
+            "local n = 0 " +
+            "for _, k in ipairs(redis.call('zrange', KEYS[1], 0, -1)) do n = n + redis.call('del', k) end " +
+            "redis.call('del', KEYS[1]) " +
+            "return n");
+
+    private final RedisTemplate<Object, Object> redisTemplate;
+    private final RedisSerializer<Object> serializer;
+    private final String nodeId = U.uuid();
+    private RedisMessageListenerContainer listener;
+
+    @SuppressWarnings("unchecked")
+    MybatisCacheRedis(RedisTemplate<Object, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        RedisSerializer<?> valueSerializer = redisTemplate.getValueSerializer();
+        this.serializer = (valueSerializer == null)
+                ? new JdkSerializationRedisSerializer() : (RedisSerializer<Object>) valueSerializer;
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+    private static byte[] entryKey(String namespace, String digest) {
+        return bytes(PREFIX + namespace + ":" + digest);
+    }
+    private static byte[] indexKey(String namespace) {
+        return bytes(PREFIX + namespace + INDEX_SUFFIX);
+    }
+
+    /**
+     * 订阅其他节点的失效消息
+     *
+     * @param onTags 按标签失效本地缓存
+     * @param onNamespace 清空某个命名空间的本地缓存
+     */
+    void start(Consumer<List<String>> onTags, Consumer<String> onNamespace) {
+        listener = new RedisMessageListenerContainer();
+        listener.setConnectionFactory(redisTemplate.getConnectionFactory());
+        listener.addMessageListener((message, pattern) -> {
+            String msg = new String(message.getBody(), StandardCharsets.UTF_8);
+            int index = msg.indexOf(SPLIT);
+            if (index < 0 || msg.substring(0, index).equals(nodeId) || index + 1 >= msg.length()) {
+                return;
+            }
+            String content = msg.substring(index + 1);
+            if (content.charAt(0) == NAMESPACE_FLAG) {
+                onNamespace.accept(content.substring(1));
+            } else {
+                onTags.accept(Arrays.asList(content.split(",")));
+            }
+        }, new ChannelTopic(CHANNEL));
+        listener.afterPropertiesSet();
+        listener.start();
+    }
+    void stop() throws Exception {
+        if (listener != null) {
+            listener.destroy();
+        }
+    }
+
+    byte[] serialize(Object value) {
+        return serializer.serialize(value);
+    }
+    Object deserialize(byte[] bytes) {
+        return serializer.deserialize(bytes);
+    }
+
+    byte[] get(String namespace, String digest) {
+        byte[] key = entryKey(namespace, digest);
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key));
+    }
+
+    void put(String namespace, String digest, byte[] value, Collection<String> tags, long ttlMs, long maxSize) {
+        List<byte[]> keysAndArgs = new ArrayList<>(tags.size() + 6);
+        keysAndArgs.add(entryKey(namespace, digest));
+        keysAndArgs.add(indexKey(namespace));
+        for (String tag : tags) {
+            keysAndArgs.add(bytes(TAG_PREFIX + tag));
+        }
+        keysAndArgs.add(value);
+        keysAndArgs.add(bytes(String.valueOf(ttlMs)));
+        keysAndArgs.add(bytes(String.valueOf(System.currentTimeMillis())));
+        keysAndArgs.add(bytes(String.valueOf(maxSize)));
+        int numKeys = tags.size() + 2;
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.eval(PUT, ReturnType.INTEGER, numKeys, keysAndArgs.toArray(new byte[0][])));
+    }
+
+    void remove(String namespace, String digest) {
+        byte[] key = entryKey(namespace, digest);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.del(key));
+    }
+
+    /** 删掉这些标签下所有的值, 并通知其他节点失效本地缓存 */
+    void invalidate(Collection<String> tags) {
+        byte[][] keys = new byte[tags.size()][];
+        int i = 0;
+        for (String tag : tags) {
+            keys[i++] = bytes(TAG_PREFIX + tag);
+        }
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.eval(INVALIDATE, ReturnType.INTEGER, keys.length, keys);
+            connection.publish(bytes(CHANNEL), bytes(nodeId + SPLIT + A.toStr(tags)));
+            return null;
+        });
+    }
+
+    /** 清空命名空间, 并通知其他节点清空本地缓存 */
+    void clear(String namespace) {
+        byte[] key = indexKey(namespace);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.eval(CLEAR, ReturnType.INTEGER, 1, key);
+            connection.publish(bytes(CHANNEL), bytes(nodeId + SPLIT + NAMESPACE_FLAG + namespace));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.global.service;
+
+import com.github.common.util.A;
+import com.github.common.util.U;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 放在 redis 前面的进程内缓存(一级缓存), 按 条数 和 写入后的存活时间 淘汰.
+ *
+ * 任意节点写入或删除时都会往 redis 的 {@link #CHANNEL} 频道广播 "节点标识|key",
+ * 其他节点收到后删掉本地的 key, 自己发出的消息会被忽略. 因此一级缓存的存活时间只是兜底, 不要设置得太长.
+ *
+ * redis 中的 key 有过期时间时, 本地的存活时间不会超过它, redis 中过期了本地也就过期了.
+ *
+ * 从 redis 读到值再放进本地之间, 其他线程可能已经写入或者收到了失效消息, 这时读到的值是旧的, 不能放进本地.
+ * 所以每次写入、删除都会给 key 的版本号加一(按 key 的 hash 分段, 不用每个 key 都记),
+ * 读 redis 之前记下版本号, 放进本地后版本号变了就把刚放进去的删掉.
+ * </pre>
+ */
+final class NearCache {
+
+    /** 广播失效消息的 redis 频道 */
+    static final String CHANNEL = "near-cache-invalidate";
+    /** 消息中 节点标识 与 key 的分隔符 */
+    private static final String SPLIT = "|";
+
+    /** 当前节点的标识, 用来忽略自己发出的失效消息 */
+    private final String nodeId = U.uuid();
+
+    /** 版本号的分段数 */
+    private static final int GENERATION_SIZE = 1024;
+
+    private final Cache<String, Entry> cache;
+    private final Ticker ticker;
+    /** 按 key 的 hash 分段的版本号, 写入、删除时加一 */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_SIZE);
+
+    /** 二级(redis)的命中数 */
+    private final LongAdder redisHit = new LongAdder();
+    /** 二级(redis)的未命中数 */
+    private final LongAdder redisMiss = new LongAdder();
+
+    /** 本地缓存的值, 以及 redis 中的过期时间点(纳秒, 0 表示 redis 中不过期) */
+    private static final class Entry {
+        private final String value;
+        private final long deadline;
+
+        private Entry(String value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+
+    NearCache(long maxSize, long ttlSeconds) {
+        this(maxSize, ttlSeconds, Ticker.systemTicker());
+    }
+    NearCache(long maxSize, long ttlSeconds, Ticker ticker) {
+        this.ticker = ticker;
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    String get(String key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.deadline != 0 && ticker.read() - entry.deadline >= 0) {
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /** 本节点写入 redis 之后放进本地, ttlMillis 是写入 redis 时的过期时间, 小于等于 0 表示 redis 中不过期 */
+    void put(String key, String value, long ttlMillis) {
+        nextGeneration(key);
+        if (value != null) {
+            cache.put(key, new Entry(value, deadline(ttlMillis)));
+        }
+    }
+
+    /** 读 redis 之前的版本号 */
+    long generation(String key) {
+        return generations.get(index(key));
+    }
+    /**
+     * 从 redis 读到的值放进本地, 读之后 key 被写入或删除过(版本号变了)就不放
+     *
+     * @param generation 读 redis 之前调用 {@link #generation(String)} 拿到的版本号
+     * @param ttlMillis redis 中剩余的过期时间, 小于等于 0 表示 redis 中不过期
+     * @return 放进了本地则返回 true
+     */
+    boolean putIfGeneration(String key, String value, long generation, long ttlMillis) {
+        if (value == null || generation(key) != generation) {
+            return false;
+        }
+        Entry entry = new Entry(value, deadline(ttlMillis));
+        cache.put(key, entry);
+        // 放进去的同时被删掉了, 刚放进去的是旧值
+        if (generation(key) != generation) {
+            cache.asMap().remove(key, entry);
+            return false;
+        }
+        return true;
+    }
+
+    void remove(String key) {
+        nextGeneration(key);
+        cache.invalidate(key);
+    }
+    void clear() {
+        for (int i = 0; i < GENERATION_SIZE; i++) {
+            generations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    private long deadline(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return 0;
+        }
+        long deadline = ticker.read() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        // 0 表示不过期, 刚好算出 0 时往后挪一纳秒
+        return deadline == 0 ? 1 : deadline;
+    }
+    private void nextGeneration(String key) {
+        generations.incrementAndGet(index(key));
+    }
+    private static int index(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_SIZE;
+    }
+
+    void recordRedis(boolean hit) {
+        if (hit) {
+            redisHit.increment();
+        } else {
+            redisMiss.increment();
+        }
+    }
+
+    /** 生成广播给其他节点的失效消息 */
+    String invalidateMessage(String key) {
+        return nodeId + SPLIT + key;
+    }
+    /** 处理其他节点广播过来的失效消息 */
+    void onInvalidateMessage(String message) {
+        if (U.isBlank(message)) {
+            return;
+        }
+        int index = message.indexOf(SPLIT);
+        if (index < 0) {
+            return;
+        }
+        // 自己发出的消息不需要处理
+        if (nodeId.equals(message.substring(0, index))) {
+            return;
+        }
+        remove(message.substring(index + 1));
+    }
+
+    /** 每一层的命中情况 */
+    Map<String, Object> stats() {
+        CacheStats local = cache.stats();
+        return A.linkedMaps(
+                "local_size", cache.size(),
+                "local_hit", local.hitCount(),
+                "local_miss", local.missCount(),
+                "local_eviction", local.evictionCount(),
+                "redis_hit", redisHit.sum(),
+                "redis_miss", redisMiss.sum()
+        );
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.global.service;
+
+import lombok.Getter;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * <pre>
+ * 从 {@link LockService} 获取到的锁, 用 try-with-resources 释放即可
+ *
+ * try (RedisLock lock = lockService.tryLock(key, 3, TimeUnit.SECONDS)) {
+ *     if (lock == null) {
+ *         // 没有获取到锁
+ *         return;
+ *     }
+ *     // 将 lock.getToken() 随写操作一起提交, 存储方只接受比上一次更大的 token, 避免锁过期后的旧持有者写入
+ * }
+ * </pre>
+ */
+@Getter
+public final class RedisLock implements AutoCloseable {
+
+    /** 锁的 key */
+    private final String key;
+    /** 锁的值, 释放和续期时比较用, 只有持有者才知道 */
+    private final String value;
+    /** 防护令牌(fencing token), 每次获取到锁都会单调递增 */
+    private final long token;
+
+    private final LockService lockService;
+    /** 看门狗续期的任务, 固定租期的锁没有 */
+    private volatile ScheduledFuture<?> renewal;
+
+    RedisLock(String key, String value, long token, LockService lockService) {
+        this.key = key;
+        this.value = value;
+        this.token = token;
+        this.lockService = lockService;
+    }
+
+    void setRenewal(ScheduledFuture<?> renewal) {
+        this.renewal = renewal;
+    }
+    void cancelRenewal() {
+        ScheduledFuture<?> future = renewal;
+        if (future != null) {
+            future.cancel(false);
+            renewal = null;
+        }
+    }
+
+    /** 释放锁. 锁已经过期或者已经被别人持有时返回 false */
+    public boolean unlock() {
+        cancelRenewal();
+        return lockService.unlock(this);
+    }
+
+    @Override
+    public void close() {
+        unlock();
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.global.service;
+
+import com.github.common.util.LogUtil;
+import com.github.common.util.RequestUtils;
+import com.github.common.util.U;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.clients.jedis.Jedis;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 放在 redis 中的 session, 多个节点共享, 不需要粘性会话, 重新部署也不会丢登录.
+ *
+ * 每个 session 是一个 hash(key 是 session:id), 每个属性是其中的一个字段, 值是属性自己的二进制编码({@link Codec}).
+ * 属性在第一次用到时才去 redis 取(hget), 取到的放进进程内缓存, 存活 session.store.local-seconds 秒,
+ * 这期间同一个 session 的请求不再访问 redis. 写入和删除会同时更新 redis 和本节点的缓存,
+ * 其他节点最多读到这么久的旧数据, 因此这个时间不要设置得太长. 值会变的属性(比如验证码)请用 {@link #getAttributeFresh}.
+ *
+ * 过期时间是滑动的: 请求时只记下 session id, 每隔 session.store.touch-seconds 秒批量写入最后访问时间并续期.
+ * session id 放在 cookie 里(HttpOnly), 没有 cookie 时也会读同名的请求头.
+ * 请求带过来的 id 在 redis 中不存在时不会拿来写入, 而是生成新的; 登录时调用 {@link #renew()} 换一个新的 id,
+ * 别人事先塞给用户的 id 在登录后就没用了(防止会话固定攻击)
+ *
+ * 需要在配置中开启, 没有开启时各 session 工具类依然使用 HttpSession:
+ * session.store.enable: true
+ *
+ * sessionStore.setAttribute("user", user, UserCodec);
+ * User user = sessionStore.getAttribute("user", UserCodec);
+ * </pre>
+ */
+@Configuration
+@ConditionalOnClass({ Jedis.class, RedisTemplate.class })
+@ConditionalOnProperty(name = "session.store.enable", havingValue = "true")
+public class SessionStore {
+
+    /** 属性值的二进制编码, 写入和读取的顺序要一致 */
+    public interface Codec<T> {
+        void write(T value, DataOutput out) throws IOException;
+        T read(DataInput in) throws IOException;
+    }
+
+    /** 字符串属性 */
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            out.writeUTF(value);
+        }
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    /** redis 中 session 的 key 前缀 */
+    private static final String KEY_PREFIX = "session:";
+    /** 最后访问时间在 hash 中的字段, 属性名不要用这个 */
+    private static final String LAST_ACCESS = "#access";
+    /** 当前请求的 session id 放在 request 里的 key */
+    private static final String REQUEST_ID = SessionStore.class.getName() + "-ID";
+    /** 当前请求的 session id 是本次生成的或者确认过在 redis 中存在, 可以写入 */
+    private static final String REQUEST_TRUSTED = SessionStore.class.getName() + "-TRUSTED";
+    /** session id 的长度(不带 - 的 uuid) */
+    private static final int ID_LEN = 32;
+    /** 一次续期的 session 个数 */
+    private static final int TOUCH_BATCH = 500;
+
+    @Autowired
+    private CacheService cacheService;
+
+    /** session 的过期时间, 单位: 分钟 */
+    @Value("${session.store.timeout-minutes:30}")
+    private long timeoutMinutes;
+    /** 进程内缓存的存活时间, 单位: 秒 */
+    @Value("${session.store.local-seconds:5}")
+    private long localSeconds;
+    /** 进程内缓存的最大 session 数 */
+    @Value("${session.store.local-max-size:100000}")
+    private long localMaxSize;
+    /** 批量续期的间隔, 单位: 秒 */
+    @Value("${session.store.touch-seconds:60}")
+    private long touchSeconds;
+    /** 存放 session id 的 cookie 名 */
+    @Value("${session.store.cookie:SID}")
+    private String cookieName;
+
+    /** session id -> 已经取过的属性(属性名 -> 解码后的值) */
+    private Cache<String, ConcurrentMap<String, Object>> local;
+    /** 等待续期的 session id */
+    private final Set<String> touchSet = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder localHit = new LongAdder();
+    private final LongAdder redisRead = new LongAdder();
+
+    private final ScheduledExecutorService toucher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-store-touch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        local = CacheBuilder.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localSeconds, TimeUnit.SECONDS)
+                .build();
+        toucher.scheduleWithFixedDelay(this::touch, touchSeconds, touchSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        toucher.shutdownNow();
+        touch();
+    }
+
+    private long timeoutSeconds() {
+        return TimeUnit.MINUTES.toSeconds(timeoutMinutes);
+    }
+
+    /** 把这段时间访问过的 session 批量续期, 并写入最后访问时间 */
+    void touch() {
+        if (touchSet.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(touchSet);
+        touchSet.removeAll(ids);
+        String now = String.valueOf(System.currentTimeMillis());
+        try {
+            for (int i = 0; i < ids.size(); i += TOUCH_BATCH) {
+                List<String> keys = new ArrayList<>();
+                for (String id : ids.subList(i, Math.min(ids.size(), i + TOUCH_BATCH))) {
+                    keys.add(KEY_PREFIX + id);
+                }
+                cacheService.touchIfExists(keys, LAST_ACCESS, now, timeoutSeconds());
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("session 续期({}个)时异常", ids.size(), e);
+            }
+        }
+    }
+
+    /** 当前请求的 session id, 没有且 create 为 false 时返回空 */
+    public String sessionId(boolean create) {
+        HttpServletRequest request = RequestUtils.getRequest();
+        Object requestId = request.getAttribute(REQUEST_ID);
+        if (requestId == null) {
+            String id = RequestUtils.getCookie(cookieName);
+            if (!validId(id)) {
+                id = request.getHeader(cookieName);
+            }
+            requestId = validId(id) ? id : U.EMPTY;
+            request.setAttribute(REQUEST_ID, requestId);
+        }
+        // 空字符串表示请求中没有 session 或者已经删除了
+        if (!create) {
+            return requestId.toString();
+        }
+        String id = requestId.toString();
+        if (U.isNotBlank(id) && (request.getAttribute(REQUEST_TRUSTED) != null || known(id))) {
+            request.setAttribute(REQUEST_TRUSTED, Boolean.TRUE);
+            return id;
+        }
+        return create(request);
+    }
+
+    /** 请求带过来的 id 是不是服务端生成过的(在 redis 中存在), 不存在的不能拿来写入 */
+    private boolean known(String id) {
+        return local.getIfPresent(id) != null || cacheService.exists(KEY_PREFIX + id);
+    }
+
+    private String create(HttpServletRequest request) {
+        String id = U.uuid();
+        request.setAttribute(REQUEST_ID, id);
+        request.setAttribute(REQUEST_TRUSTED, Boolean.TRUE);
+        writeCookie(request, id, -1);
+        return id;
+    }
+
+    /** 登录时调用: 删掉当前的 session, 换一个新的 id, 之后写入的属性都放在新的 session 里 */
+    public String renew() {
+        String id = sessionId(false);
+        if (U.isNotBlank(id)) {
+            cacheService.delete(KEY_PREFIX + id);
+            local.invalidate(id);
+            touchSet.remove(id);
+        }
+        return create(RequestUtils.getRequest());
+    }
+
+    /** 只接受自己生成的格式, 不让外面传进来的值直接拼进 redis 的 key */
+    private static boolean validId(String id) {
+        if (id == null || id.length() != ID_LEN) {
+            return false;
+        }
+        for (int i = 0; i < ID_LEN; i++) {
+            char c = id.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeCookie(HttpServletRequest request, String id, int maxAge) {
+        HttpServletResponse response = RequestUtils.getResponse();
+        if (response != null) {
+            Cookie cookie = new Cookie(cookieName, id);
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setSecure(request.isSecure());
+            cookie.setMaxAge(maxAge);
+            response.addCookie(cookie);
+        }
+    }
+
+    /** 从进程内缓存中取, 没有再去 redis 取. 属性不存在时返回 null */
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(String name, Codec<T> codec) {
+        String id = sessionId(false);
+        if (U.isBlank(id)) {
+            return null;
+        }
+        ConcurrentMap<String, Object> attributes = local.getIfPresent(id);
+        if (attributes != null) {
+            Object value = attributes.get(name);
+            if (value != null) {
+                localHit.increment();
+                touchSet.add(id);
+                return (T) value;
+            }
+        }
+        return load(id, name, codec);
+    }
+
+    /** 不使用进程内缓存, 直接从 redis 中取 */
+    public <T> T getAttributeFresh(String name, Codec<T> codec) {
+        String id = sessionId(false);
+        return U.isBlank(id) ? null : load(id, name, codec);
+    }
+
+    private <T> T load(String id, String name, Codec<T> codec) {
+        redisRead.increment();
+        byte[] bytes = cacheService.hashGet(KEY_PREFIX + id, name);
+        if (bytes == null || bytes.length == 0) {
+            // 不存在的不缓存: 别的节点刚写进去(比如刚登录)时这里可以马上读到
+            return null;
+        }
+        T value;
+        try {
+            value = codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("session({}) 中的属性({})解码异常", id, name, e);
+            }
+            return null;
+        }
+        if (value != null) {
+            localAttributes(id).put(name, value);
+            touchSet.add(id);
+        }
+        return value;
+    }
+
+    private ConcurrentMap<String, Object> localAttributes(String id) {
+        try {
+            return local.get(id, ConcurrentHashMap::new);
+        } catch (Exception e) {
+            // ConcurrentHashMap 的构造不会出异常
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** 写入属性, 当前请求还没有 session 时新建一个 */
+    public <T> void setAttribute(String name, T value, Codec<T> codec) {
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            codec.write(value, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("session 属性(" + name + ")编码异常", e);
+        }
+        String id = sessionId(true);
+        cacheService.hashSet(KEY_PREFIX + id, name, bytes.toByteArray(), timeoutSeconds());
+        localAttributes(id).put(name, value);
+    }
+
+    /** 删除属性 */
+    public void removeAttribute(String name) {
+        String id = sessionId(false);
+        if (U.isNotBlank(id)) {
+            cacheService.hashDelete(KEY_PREFIX + id, name);
+            ConcurrentMap<String, Object> attributes = local.getIfPresent(id);
+            if (attributes != null) {
+                attributes.remove(name);
+            }
+        }
+    }
+
+    /** 删除整个 session, 并让浏览器删掉 cookie */
+    public void invalidate() {
+        String id = sessionId(false);
+        if (U.isNotBlank(id)) {
+            cacheService.delete(KEY_PREFIX + id);
+            local.invalidate(id);
+            touchSet.remove(id);
+
+            HttpServletRequest request = RequestUtils.getRequest();
+            request.setAttribute(REQUEST_ID, U.EMPTY);
+            request.removeAttribute(REQUEST_TRUSTED);
+            writeCookie(request, U.EMPTY, 0);
+        }
+    }
+
+    /** 进程内缓存的命中数、读 redis 的次数、缓存的 session 数 */
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("localHit", localHit.sum());
+        map.put("redisRead", redisRead.sum());
+        map.put("localSize", local.size());
+        map.put("pendingTouch", touchSet.size());
+        return map;
+    }
+}
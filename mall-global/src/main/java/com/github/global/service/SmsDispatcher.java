@@ -0,0 +1,299 @@
+package com.github.global.service;
+
+import com.github.common.util.A;
+import com.github.common.util.LogUtil;
+import com.github.common.util.U;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 批量发送短信: 消息先写入本地的写前日志再放进内存缓冲, 每个服务商一个发送线程,
+ * 攒够一批(服务商的 batchSize)或者等够了 lingerMs 就调用一次服务商的批量接口, 并按服务商的 rate 限流.
+ *
+ * 发送失败的整批消息按 backoffMs * 2^(失败次数-1) 退避重试(最多 60 秒, 加一点随机值), 超过 maxRetry 次后放弃.
+ * 发送成功或放弃后才在日志中标记完成, 进程重启后没有完成的消息会重新发送(所以服务商需要能容忍少量重复)
+ * </pre>
+ */
+public class SmsDispatcher {
+
+    /** 退避重试的最大间隔, 单位: 毫秒 */
+    private static final long MAX_BACKOFF_MS = 60 * 1000L;
+    /** 关闭时最多等待发送剩余消息的时间, 单位: 毫秒 */
+    private static final long CLOSE_WAIT_MS = 5000L;
+
+    private final Map<String, Lane> laneMap = new LinkedHashMap<>();
+    private final String defaultProvider;
+    private final long lingerMs;
+    private final int maxRetry;
+    private final long backoffMs;
+
+    private volatile boolean running;
+
+    /**
+     * @param providers 服务商, 第一个是默认的
+     * @param walDir 写前日志的目录
+     * @param fsync 写前日志是否每次都刷到磁盘
+     * @param capacity 每个服务商的内存缓冲能放多少条
+     * @param lingerMs 攒一批最多等待的时间
+     * @param maxRetry 失败后最多重试的次数
+     * @param backoffMs 第一次重试的间隔
+     */
+    public SmsDispatcher(List<SmsProvider> providers, File walDir, boolean fsync,
+                         int capacity, long lingerMs, int maxRetry, long backoffMs) {
+        U.assertException(A.isEmpty(providers), "no sms provider");
+        for (SmsProvider provider : providers) {
+            File wal = new File(walDir, provider.name() + ".wal");
+            laneMap.put(provider.name(), new Lane(provider, new SmsWal(wal, fsync), capacity));
+        }
+        this.defaultProvider = providers.get(0).name();
+        this.lingerMs = lingerMs;
+        this.maxRetry = maxRetry;
+        this.backoffMs = backoffMs;
+    }
+
+    /** 恢复上次没有发送的消息并启动发送线程 */
+    public void start() throws IOException {
+        running = true;
+        for (Lane lane : laneMap.values()) {
+            lane.start();
+        }
+    }
+
+    /** 停止接收新的消息, 在一定时间内把缓冲中的消息发完, 没发完的留在日志中下次启动再发 */
+    public void close() {
+        running = false;
+        for (Lane lane : laneMap.values()) {
+            lane.stop();
+        }
+    }
+
+    /** 使用默认的服务商发送, 缓冲满了或者已经关闭时返回 false */
+    public boolean send(String phone, String content) {
+        return send(defaultProvider, phone, content);
+    }
+
+    /** 使用指定的服务商发送, 缓冲满了或者已经关闭时返回 false */
+    public boolean send(String provider, String phone, String content) {
+        Lane lane = laneMap.get(provider);
+        U.assertNil(lane, String.format("no sms provider(%s)", provider));
+        if (!running) {
+            return false;
+        }
+        return lane.offer(new SmsMessage(U.uuid(), phone, content));
+    }
+
+    /** 每个服务商的发送情况 */
+    public Map<String, Object> stats() {
+        Map<String, Object> returnMap = new LinkedHashMap<>();
+        for (Map.Entry<String, Lane> entry : laneMap.entrySet()) {
+            returnMap.put(entry.getKey(), entry.getValue().stats());
+        }
+        return returnMap;
+    }
+
+    private long backoff(int attempt) {
+        long delay = Math.min(backoffMs << Math.min(attempt - 1, 20), MAX_BACKOFF_MS);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+    }
+
+    /** 一个服务商的缓冲、限流和发送线程 */
+    private class Lane implements Runnable {
+        private final SmsProvider provider;
+        private final SmsWal wal;
+        private final BlockingQueue<SmsMessage> queue;
+        /** 等待重试的消息, 只有发送线程会访问 */
+        private final PriorityQueue<SmsMessage> retryQueue = new PriorityQueue<>(Comparator.comparingLong(SmsMessage::getNextTime));
+        private final RateLimiter limiter;
+        private final int batchSize;
+
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder batch = new LongAdder();
+        private final LongAdder retried = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        private Thread thread;
+
+        private Lane(SmsProvider provider, SmsWal wal, int capacity) {
+            this.provider = provider;
+            this.wal = wal;
+            this.queue = new LinkedBlockingQueue<>(capacity);
+            this.limiter = RateLimiter.create(provider.rate());
+            this.batchSize = Math.max(1, provider.batchSize());
+        }
+
+        private void start() throws IOException {
+            List<SmsMessage> recovered = wal.recover();
+            if (A.isNotEmpty(recovered)) {
+                if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                    LogUtil.ROOT_LOG.info("sms provider({}) recover {} unsent message", provider.name(), recovered.size());
+                }
+                // 恢复的消息不受缓冲大小的限制
+                retryQueue.addAll(recovered);
+            }
+            thread = new Thread(this, "sms-dispatcher-" + provider.name());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void stop() {
+            Thread current = thread;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.join(CLOSE_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            current.interrupt();
+            try {
+                current.join(CLOSE_WAIT_MS);
+                wal.close();
+            } catch (Exception e) {
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn(String.format("close sms provider(%s) exception", provider.name()), e);
+                }
+            }
+        }
+
+        private boolean offer(SmsMessage message) {
+            try {
+                wal.add(message);
+            } catch (IOException e) {
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error(String.format("write sms wal(%s) exception", provider.name()), e);
+                }
+                rejected.increment();
+                return false;
+            }
+            if (queue.offer(message)) {
+                accepted.increment();
+                return true;
+            }
+            // 缓冲满了, 调用方会知道没有接收, 日志中也标记完成, 避免重启后再发一次
+            rejected.increment();
+            markDone(Collections.singletonList(message));
+            return false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // 关闭后把缓冲中的消息发完再退出, 还没到重试时间的留在日志中
+                while (running || !queue.isEmpty()) {
+                    List<SmsMessage> messages = collect();
+                    if (!messages.isEmpty()) {
+                        dispatch(messages);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** 先取到期的重试消息, 再从缓冲中取, 拿到第一条后最多再等 lingerMs 凑够一批 */
+        private List<SmsMessage> collect() throws InterruptedException {
+            List<SmsMessage> messages = new ArrayList<>(batchSize);
+            long now = System.currentTimeMillis();
+            while (messages.size() < batchSize && !retryQueue.isEmpty() && retryQueue.peek().getNextTime() <= now) {
+                messages.add(retryQueue.poll());
+            }
+            if (messages.isEmpty()) {
+                long wait = lingerMs;
+                if (!retryQueue.isEmpty()) {
+                    wait = Math.max(1, Math.min(wait, retryQueue.peek().getNextTime() - now));
+                }
+                SmsMessage first = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    return messages;
+                }
+                messages.add(first);
+            }
+
+            long deadline = System.currentTimeMillis() + lingerMs;
+            while (messages.size() < batchSize) {
+                queue.drainTo(messages, batchSize - messages.size());
+                long remain = deadline - System.currentTimeMillis();
+                if (messages.size() >= batchSize || remain <= 0) {
+                    break;
+                }
+                SmsMessage message = queue.poll(remain, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    break;
+                }
+                messages.add(message);
+            }
+            return messages;
+        }
+
+        private void dispatch(List<SmsMessage> messages) {
+            limiter.acquire(messages.size());
+            try {
+                provider.send(messages);
+                sent.add(messages.size());
+                batch.increment();
+                markDone(messages);
+            } catch (Exception e) {
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn(String.format("sms provider(%s) send %s message exception",
+                            provider.name(), messages.size()), e);
+                }
+                long now = System.currentTimeMillis();
+                List<SmsMessage> giveUp = new ArrayList<>();
+                for (SmsMessage message : messages) {
+                    if (message.getAttempt() >= maxRetry) {
+                        giveUp.add(message);
+                    } else {
+                        message.retryAt(now + backoff(message.getAttempt() + 1));
+                        retryQueue.add(message);
+                        retried.increment();
+                    }
+                }
+                if (!giveUp.isEmpty()) {
+                    dropped.add(giveUp.size());
+                    if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                        for (SmsMessage message : giveUp) {
+                            // 短信内容可能是验证码之类的, 不打到日志里
+                            LogUtil.ROOT_LOG.error("sms provider({}) give up message({}) to ({}) after {} retry",
+                                    provider.name(), message.getId(), U.foggy(message.getPhone(), 3, 7), maxRetry);
+                        }
+                    }
+                    markDone(giveUp);
+                }
+            }
+        }
+
+        private void markDone(List<SmsMessage> messages) {
+            try {
+                wal.done(messages);
+            } catch (IOException e) {
+                // 没有标记成功, 重启后会再发一次
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error(String.format("write sms wal(%s) exception", provider.name()), e);
+                }
+            }
+        }
+
+        private Map<String, Object> stats() {
+            return A.linkedMaps(
+                    "accepted", accepted.sum(),
+                    "rejected", rejected.sum(),
+                    "sent", sent.sum(),
+                    "batch", batch.sum(),
+                    "retried", retried.sum(),
+                    "dropped", dropped.sum(),
+                    "queued", queue.size(),
+                    "retrying", retryQueue.size(),
+                    "pending_in_wal", wal.pendingCount()
+            );
+        }
+    }
+}
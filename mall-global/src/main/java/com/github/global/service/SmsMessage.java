@@ -0,0 +1,29 @@
+package com.github.global.service;
+
+import lombok.Getter;
+
+/** 待发送的短信 */
+@Getter
+public class SmsMessage {
+
+    /** 唯一标识, 写前日志中用来对应发送结果 */
+    private final String id;
+    private final String phone;
+    private final String content;
+
+    /** 已经失败的次数 */
+    private int attempt;
+    /** 下次可以重试的时间点 */
+    private long nextTime;
+
+    SmsMessage(String id, String phone, String content) {
+        this.id = id;
+        this.phone = phone;
+        this.content = content;
+    }
+
+    void retryAt(long nextTime) {
+        this.attempt++;
+        this.nextTime = nextTime;
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.global.service;
+
+import java.util.List;
+
+/**
+ * 短信服务商, 实现后注册成 bean 即可被 {@link SmsDispatcher} 使用.
+ * 不同的服务商分开缓冲、分开限流, 一个服务商慢了不会影响其他服务商
+ */
+public interface SmsProvider {
+
+    /** 服务商名, 同时也是写前日志的文件名 */
+    String name();
+
+    /** 一次批量调用最多发送多少条 */
+    default int batchSize() {
+        return 100;
+    }
+
+    /** 每秒最多发送多少条 */
+    default double rate() {
+        return 100;
+    }
+
+    /** 批量发送, 抛出异常时整批消息都会退避重试 */
+    void send(List<SmsMessage> messages) throws Exception;
+}
@@ -0,0 +1,192 @@
+package com.github.global.service;
+
+import com.github.common.util.LogUtil;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * <pre>
+ * 短信的写前日志, 每个服务商一个文件, 每行一条记录:
+ *   A|id|base64(phone)|base64(content)  接收到消息
+ *   D|id                                发送成功或者放弃重试
+ *
+ * 启动时只有 A 没有 D 的消息就是上次没有发出去的, 重新发送. 完成的记录多了之后重写文件, 只保留未完成的.
+ * 文件旁边的 .lock 文件在使用期间一直锁着, 两个进程用了同一个文件时后启动的会失败, 而不是互相重发对方的消息
+ * </pre>
+ */
+class SmsWal implements Closeable {
+
+    private static final char ADD = 'A';
+    private static final char DONE = 'D';
+    private static final char SPLIT = '|';
+    /** 完成的记录超过这个数之后重写文件 */
+    private static final int COMPACT_THRESHOLD = 10000;
+
+    private static final Base64.Encoder ENCODER = Base64.getEncoder();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private final File file;
+    /** 是否每次写入都刷到磁盘, 更安全但更慢 */
+    private final boolean fsync;
+    /** 未完成的消息 */
+    private final Map<String, SmsMessage> pending = new LinkedHashMap<>();
+    private FileChannel channel;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private int doneCount;
+
+    SmsWal(File file, boolean fsync) {
+        this.file = file;
+        this.fsync = fsync;
+    }
+
+    /** 读出上次未完成的消息并重写文件, 之后才能写入 */
+    synchronized List<SmsMessage> recover() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("can't create wal directory: " + parent);
+        }
+        lock();
+        if (file.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    read(line);
+                }
+            }
+        }
+        compact();
+        return new ArrayList<>(pending.values());
+    }
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(new File(file.getPath() + ".lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IOException("sms wal(" + file + ") is used by another process, set a different sms.wal-dir");
+        }
+    }
+
+    private void read(String line) {
+        if (line.length() < 3 || line.charAt(1) != SPLIT) {
+            return;
+        }
+        try {
+            if (line.charAt(0) == ADD) {
+                String[] values = line.split("\\|", 4);
+                if (values.length == 4) {
+                    String phone = new String(DECODER.decode(values[2]), StandardCharsets.UTF_8);
+                    String content = new String(DECODER.decode(values[3]), StandardCharsets.UTF_8);
+                    pending.put(values[1], new SmsMessage(values[1], phone, content));
+                }
+            } else if (line.charAt(0) == DONE) {
+                pending.remove(line.substring(2));
+            }
+        } catch (IllegalArgumentException e) {
+            // 进程崩溃时最后一行可能只写了一半
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("ignore broken sms wal line in ({}), length: {}", file, line.length());
+            }
+        }
+    }
+
+    synchronized void add(SmsMessage message) throws IOException {
+        write(addLine(message));
+        pending.put(message.getId(), message);
+    }
+
+    synchronized void done(Collection<SmsMessage> messages) throws IOException {
+        StringBuilder sbd = new StringBuilder(messages.size() * 36);
+        for (SmsMessage message : messages) {
+            sbd.append(DONE).append(SPLIT).append(message.getId()).append('\n');
+            pending.remove(message.getId());
+        }
+        write(sbd.toString());
+        doneCount += messages.size();
+        if (doneCount >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /** 只保留未完成的消息: 先写临时文件再原子替换, 中途崩溃也不会丢 */
+    private void compact() throws IOException {
+        closeChannel();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder sbd = new StringBuilder();
+            for (SmsMessage message : pending.values()) {
+                sbd.append(addLine(message));
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(sbd.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        doneCount = 0;
+    }
+
+    private static String addLine(SmsMessage message) {
+        return ADD + "" + SPLIT + message.getId()
+                + SPLIT + ENCODER.encodeToString(message.getPhone().getBytes(StandardCharsets.UTF_8))
+                + SPLIT + ENCODER.encodeToString(message.getContent().getBytes(StandardCharsets.UTF_8)) + '\n';
+    }
+
+    private void write(String lines) throws IOException {
+        if (channel == null) {
+            throw new IOException("sms wal(" + file + ") not open");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /** 未完成的消息数 */
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeChannel();
+        if (lockChannel != null) {
+            // 关闭通道时锁也会释放
+            lockChannel.close();
+            lockChannel = null;
+            lock = null;
+        }
+    }
+}
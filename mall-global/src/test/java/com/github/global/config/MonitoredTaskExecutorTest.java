@@ -0,0 +1,187 @@
+package com.github.global.config;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MonitoredTaskExecutorTest {
+
+    private static MonitoredTaskExecutor executor(MonitoredTaskExecutor.Overflow overflow, int queueCapacity) {
+        MonitoredTaskExecutor executor = new MonitoredTaskExecutor("test", overflow);
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        // 关闭时不丢掉队列中的任务
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    /** 占住唯一的线程, 直到 latch 放行 */
+    private static void block(MonitoredTaskExecutor executor, CountDownLatch started, CountDownLatch release) {
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /** 由调用方执行的任务依然执行了, 单独计数, 不算拒绝 */
+    @Test
+    public void callerRuns() throws Exception {
+        MonitoredTaskExecutor executor = executor(MonitoredTaskExecutor.Overflow.CALLER_RUNS, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            block(executor, started, release);
+            started.await(10, TimeUnit.SECONDS);
+
+            Thread caller = Thread.currentThread();
+            AtomicInteger inCaller = new AtomicInteger();
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> {
+                    if (Thread.currentThread() == caller) {
+                        inCaller.incrementAndGet();
+                    }
+                });
+            }
+            Assert.assertEquals(3, inCaller.get());
+
+            Map<String, Object> stats = executor.stats();
+            Assert.assertEquals(3L, stats.get("caller_runs"));
+            Assert.assertEquals(0L, stats.get("rejected"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void abort() throws Exception {
+        MonitoredTaskExecutor executor = executor(MonitoredTaskExecutor.Overflow.ABORT, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            block(executor, started, release);
+            started.await(10, TimeUnit.SECONDS);
+            try {
+                executor.execute(() -> {});
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                // ignore
+            }
+            Map<String, Object> stats = executor.stats();
+            Assert.assertEquals(1L, stats.get("rejected"));
+            Assert.assertEquals(0L, stats.get("caller_runs"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /** 有队列时丢掉最老的; 没有队列时没有可丢的, 由调用方执行而不是一直重试 */
+    @Test
+    public void dropOldest() throws Exception {
+        MonitoredTaskExecutor executor = executor(MonitoredTaskExecutor.Overflow.DROP_OLDEST, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger run = new AtomicInteger();
+        try {
+            block(executor, started, release);
+            started.await(10, TimeUnit.SECONDS);
+            executor.execute(run::incrementAndGet);
+            executor.execute(run::incrementAndGet);
+            Assert.assertEquals(1L, executor.stats().get("rejected"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        executor.getThreadPoolExecutor().awaitTermination(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, run.get());
+
+        executor = executor(MonitoredTaskExecutor.Overflow.DROP_OLDEST, 0);
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        try {
+            block(executor, started, release);
+            started.await(10, TimeUnit.SECONDS);
+            AtomicInteger inCaller = new AtomicInteger();
+            executor.execute(inCaller::incrementAndGet);
+            Assert.assertEquals(1, inCaller.get());
+            Assert.assertEquals(1L, executor.stats().get("caller_runs"));
+            Assert.assertEquals(0L, executor.stats().get("rejected"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /** 丢掉的是 submit 提交的任务时会被取消, 等待结果的地方不会一直阻塞 */
+    @Test
+    public void dropOldestCancel() throws Exception {
+        MonitoredTaskExecutor executor = executor(MonitoredTaskExecutor.Overflow.DROP_OLDEST, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            block(executor, started, release);
+            started.await(10, TimeUnit.SECONDS);
+            Future<String> dropped = executor.submit(() -> "dropped");
+            Future<String> kept = executor.submit(() -> "kept");
+            Assert.assertTrue(dropped.isCancelled());
+            try {
+                dropped.get(1, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (CancellationException e) {
+                // ignore
+            }
+            release.countDown();
+            Assert.assertEquals("kept", kept.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1L, executor.stats().get("rejected"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /** 多个线程同时记录耗时, 分位数从有序的样本中取 */
+    @Test
+    public void latency() throws Exception {
+        MonitoredTaskExecutor executor = new MonitoredTaskExecutor("test", MonitoredTaskExecutor.Overflow.CALLER_RUNS);
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(10000);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+
+        int count = 5000;
+        CountDownLatch latch = new CountDownLatch(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                executor.execute(latch::countDown);
+            }
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        executor.getThreadPoolExecutor().awaitTermination(10, TimeUnit.SECONDS);
+
+        Map<String, Object> stats = executor.stats();
+        double p50 = (Double) stats.get("latency_p50");
+        double p99 = (Double) stats.get("latency_p99");
+        double max = (Double) stats.get("latency_max");
+        Assert.assertTrue(p50 > 0);
+        Assert.assertTrue(p50 <= p99);
+        Assert.assertTrue(p99 <= max);
+        Assert.assertEquals(0L, stats.get("rejected"));
+    }
+}
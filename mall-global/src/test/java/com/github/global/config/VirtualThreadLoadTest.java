@@ -0,0 +1,79 @@
+package com.github.global.config;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 下游服务很慢时, 平台线程池和虚拟线程能同时处理的请求数对比 */
+public class VirtualThreadLoadTest {
+
+    /** 同时发出的请求数 */
+    private static final int REQUESTS = 2000;
+    /** 模拟下游 dubbo 服务的耗时, 单位: 毫秒 */
+    private static final long PROVIDER_MS = 100;
+    /** tomcat 默认的最大线程数 */
+    private static final int POOL_SIZE = 200;
+
+    @Test
+    public void load() throws Exception {
+        long[] pool = run(null);
+        System.out.printf("platform pool(%d)  : in-flight max %5d, elapsed %5d ms%n", POOL_SIZE, pool[0], pool[1]);
+        Assert.assertTrue(pool[0] <= POOL_SIZE);
+
+        ThreadFactory factory = VirtualThreads.factory("load-virtual-");
+        if (factory == null) {
+            System.out.printf("virtual thread not supported in java(%s), skip%n", System.getProperty("java.version"));
+            return;
+        }
+        long[] virtual = run(factory);
+        System.out.printf("virtual thread     : in-flight max %5d, elapsed %5d ms%n", virtual[0], virtual[1]);
+        Assert.assertTrue(virtual[0] > POOL_SIZE);
+    }
+
+    /** 返回 [同时在处理的最大请求数, 总耗时] */
+    private long[] run(ThreadFactory virtualFactory) throws Exception {
+        MonitoredTaskExecutor executor = new MonitoredTaskExecutor("load", MonitoredTaskExecutor.Overflow.CALLER_RUNS);
+        if (virtualFactory != null) {
+            executor.setThreadFactory(virtualFactory);
+            executor.setCorePoolSize(1);
+            executor.setMaxPoolSize(REQUESTS);
+            executor.setQueueCapacity(0);
+        } else {
+            executor.setCorePoolSize(POOL_SIZE);
+            executor.setMaxPoolSize(POOL_SIZE);
+            executor.setQueueCapacity(REQUESTS);
+        }
+        executor.initialize();
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(REQUESTS);
+        long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                executor.execute(() -> {
+                    int current = inFlight.incrementAndGet();
+                    max.accumulateAndGet(current, Math::max);
+                    try {
+                        Thread.sleep(PROVIDER_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.decrementAndGet();
+                        latch.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(latch.await(1, TimeUnit.MINUTES));
+            long elapsed = System.currentTimeMillis() - start;
+            System.out.println(executor.stats());
+            return new long[] { max.get(), elapsed };
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
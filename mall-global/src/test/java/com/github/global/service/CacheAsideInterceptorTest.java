@@ -0,0 +1,142 @@
+package com.github.global.service;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheAsideInterceptorTest {
+
+    /** 用内存中的 map 代替 redis */
+    private static class MemoryCacheService extends CacheService {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+
+        @Override
+        public String get(String key) {
+            return values.get(key);
+        }
+        @Override
+        public void set(String key, String value, long timeOut, TimeUnit timeUnit) {
+            values.put(key, value);
+        }
+    }
+
+    public static class ProductService {
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @CacheAside(value = "product", key = "#p0")
+        public String info(Long id) throws InterruptedException {
+            loads.incrementAndGet();
+            // 模拟慢查询, 让并发的请求都落在加载期间
+            Thread.sleep(200);
+            return (id == 0) ? null : ("product-" + id);
+        }
+
+        @CacheAside(value = "no-null", key = "#p0", nullExpire = 0)
+        public String noNull(Long id) {
+            loads.incrementAndGet();
+            return null;
+        }
+
+        @CacheAside(value = "refresh", key = "#p0", beta = 100)
+        public String refresh(Long id) {
+            return "new-" + loads.incrementAndGet();
+        }
+
+        @CacheAside(value = "no-refresh", key = "#p0", beta = 0)
+        public String noRefresh(Long id) {
+            return "new-" + loads.incrementAndGet();
+        }
+    }
+
+    private MemoryCacheService cacheService;
+    private ProductService target;
+    private ProductService proxy;
+
+    @Before
+    public void setup() {
+        cacheService = new MemoryCacheService();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("cacheService", cacheService);
+
+        target = new ProductService();
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new CacheAsideInterceptor(beanFactory));
+        proxy = (ProductService) proxyFactory.getProxy();
+    }
+
+    /** 同一个 key 并发未命中时只调用一次方法, 其他的等它的结果 */
+    @Test
+    public void concurrentMissLoadOnce() throws Exception {
+        int threads = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return proxy.info(1L);
+                }));
+            }
+            start.countDown();
+            for (Future<String> future : futures) {
+                Assert.assertEquals("product-1", future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, target.loads.get());
+
+        // 之后直接从缓存中读
+        Assert.assertEquals("product-1", proxy.info(1L));
+        Assert.assertEquals(1, target.loads.get());
+        // 不同的 key 各自加载
+        Assert.assertEquals("product-2", proxy.info(2L));
+        Assert.assertEquals(2, target.loads.get());
+    }
+
+    /** 返回 null 时缓存空值标记, nullExpire 小于等于 0 时不缓存 */
+    @Test
+    public void nullValue() throws Exception {
+        Assert.assertNull(proxy.info(0L));
+        Assert.assertNull(proxy.info(0L));
+        Assert.assertEquals(1, target.loads.get());
+        Assert.assertTrue(cacheService.values.get("product:0").endsWith("|N"));
+
+        Assert.assertNull(proxy.noNull(1L));
+        Assert.assertNull(proxy.noNull(1L));
+        Assert.assertEquals(3, target.loads.get());
+        Assert.assertFalse(cacheService.values.containsKey("no-null:1"));
+    }
+
+    /** 临近过期并且加载很慢的值会被提前刷新, 离过期还很远的不会 */
+    @Test
+    public void earlyRefresh() {
+        long now = System.currentTimeMillis();
+        // 过期时间点|加载耗时|值
+        cacheService.values.put("refresh:1", (now + 100) + "|1000000|V\"old\"");
+        Assert.assertEquals("new-1", proxy.refresh(1L));
+        Assert.assertTrue(cacheService.values.get("refresh:1").endsWith("|V\"new-1\""));
+
+        cacheService.values.put("refresh:2", (now + TimeUnit.HOURS.toMillis(1)) + "|1|V\"old\"");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("old", proxy.refresh(2L));
+        }
+
+        // beta 为 0 时不提前刷新
+        cacheService.values.put("no-refresh:1", (now + 100) + "|1000000|V\"old\"");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("old", proxy.noRefresh(1L));
+        }
+        Assert.assertEquals(1, target.loads.get());
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.global.service;
+
+import lombok.Data;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class CompactRedisSerializerTest {
+
+    private static final int COUNT = 100000;
+
+    @Data
+    public static class Item implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long id;
+        private String name;
+        private BigDecimal price;
+        private Date createTime;
+        private List<String> tagList;
+    }
+
+    private static Item item(long i) {
+        Item item = new Item();
+        item.setId(i);
+        item.setName("商品名称-" + i);
+        item.setPrice(new BigDecimal("123.45"));
+        item.setCreateTime(new Date());
+        List<String> tagList = new ArrayList<>();
+        for (int j = 0; j < 5; j++) {
+            tagList.add("tag-" + j);
+        }
+        item.setTagList(tagList);
+        return item;
+    }
+
+    @Test
+    public void roundTrip() {
+        CompactRedisSerializer serializer = new CompactRedisSerializer(256);
+        Item item = item(1);
+        Assert.assertEquals(item, serializer.deserialize(serializer.serialize(item)));
+
+        // 大对象会被压缩
+        List<Item> itemList = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            itemList.add(item(i));
+        }
+        Assert.assertEquals(itemList, serializer.deserialize(serializer.serialize(itemList)));
+
+        // 以前 jdk 序列化的值也能读出来
+        byte[] jdk = new JdkSerializationRedisSerializer().serialize(item);
+        Assert.assertEquals(item, serializer.deserialize(jdk));
+
+        Assert.assertNull(serializer.deserialize(serializer.serialize(null)));
+    }
+
+    /** 编码大对象后缓冲不会一直保持在最大的那次 */
+    @Test
+    public void bufferShrink() {
+        CompactRedisSerializer serializer = new CompactRedisSerializer(0);
+        List<Item> itemList = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            itemList.add(item(i));
+        }
+        Assert.assertTrue(serializer.serialize(itemList).length > 64 * 1024);
+        Assert.assertEquals(4096, CompactRedisSerializer.bufferSize());
+
+        Assert.assertEquals(itemList, serializer.deserialize(serializer.serialize(itemList)));
+        Assert.assertEquals(item(1).getId(), ((Item) serializer.deserialize(serializer.serialize(item(1)))).getId());
+    }
+
+    @Test
+    public void compare() {
+        List<Item> itemList = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            itemList.add(item(i));
+        }
+        benchmark("jdk", new JdkSerializationRedisSerializer(), item(1), itemList);
+        benchmark("compact", new CompactRedisSerializer(0), item(1), itemList);
+        benchmark("compact+lz4", new CompactRedisSerializer(512), item(1), itemList);
+    }
+
+    private static void benchmark(String name, RedisSerializer<Object> serializer, Item item, List<Item> itemList) {
+        // 预热
+        for (int i = 0; i < COUNT / 10; i++) {
+            serializer.deserialize(serializer.serialize(item));
+        }
+
+        long start = System.nanoTime();
+        byte[] bytes = null;
+        for (int i = 0; i < COUNT; i++) {
+            bytes = serializer.serialize(item);
+        }
+        long ser = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            serializer.deserialize(bytes);
+        }
+        long deser = System.nanoTime() - start;
+
+        byte[] listBytes = serializer.serialize(itemList);
+        System.out.println(String.format("%-12s single: %4d bytes, list(%d): %6d bytes, ser: %5d ns/op, deser: %5d ns/op",
+                name, bytes.length, itemList.size(), listBytes.length, ser / COUNT, deser / COUNT));
+    }
+}
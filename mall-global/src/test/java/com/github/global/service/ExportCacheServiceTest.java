@@ -0,0 +1,135 @@
+package com.github.global.service;
+
+import org.junit.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class ExportCacheServiceTest {
+
+    private ExportCacheService service;
+    private File directory;
+    private MockHttpServletRequest request;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("export-cache-test").toFile();
+        service = new ExportCacheService();
+        ReflectionTestUtils.setField(service, "directory", directory.getAbsolutePath());
+        ReflectionTestUtils.setField(service, "maxSizeMb", 16L);
+        ReflectionTestUtils.setField(service, "ttlMinutes", 10L);
+        ReflectionTestUtils.setField(service, "sendfile", true);
+        service.init();
+
+        request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @After
+    public void clean() {
+        service.destroy();
+        RequestContextHolder.resetRequestAttributes();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static LinkedHashMap<String, String> titleMap() {
+        LinkedHashMap<String, String> titleMap = new LinkedHashMap<>();
+        titleMap.put("id", "编号");
+        titleMap.put("name", "名称");
+        return titleMap;
+    }
+
+    private static Supplier<Iterator<?>> data(AtomicInteger builds, int count) {
+        return () -> {
+            builds.incrementAndGet();
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Map<String, Object> map = new HashMap<>();
+                map.put("id", i);
+                map.put("name", "name-" + i);
+                list.add(map);
+            }
+            return list.iterator();
+        };
+    }
+
+    private String export(Map<String, Object> query, Object version, AtomicInteger builds) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.export("csv", "daily", titleMap(), query, version, data(builds, 1000), response);
+        return new String(response.getContentAsByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void hitMissAndEvict() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        Map<String, Object> query = new HashMap<>();
+        query.put("date", "2018-08-01");
+        query.put("status", 1);
+
+        String first = export(query, "v1", builds);
+        Assert.assertTrue(first.startsWith("\"编号\",\"名称\"\n\"0\",\"name-0\""));
+        Map<String, Object> sameQuery = new LinkedHashMap<>();
+        sameQuery.put("status", 1);
+        sameQuery.put("date", "2018-08-01");
+        Assert.assertEquals(first, export(sameQuery, "v1", builds));
+        Assert.assertEquals(1, builds.get());
+
+        // 数据版本变了
+        export(query, "v2", builds);
+        Assert.assertEquals(2, builds.get());
+
+        service.evict("daily");
+        export(query, "v2", builds);
+        Assert.assertEquals(3, builds.get());
+        Assert.assertEquals(1L, service.stats().get("hit"));
+    }
+
+    @Test
+    public void sendfile() throws Exception {
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.export("csv", "daily", titleMap(), null, null, data(new AtomicInteger(), 10), response);
+
+        // 交给 tomcat 发送, 应用里什么都不写
+        Assert.assertEquals(0, response.getContentAsByteArray().length);
+        File file = new File((String) request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        Assert.assertEquals(file.length(), request.getAttribute("org.apache.tomcat.sendfile.end"));
+        Assert.assertEquals(String.valueOf(file.length()), response.getHeader("Content-Length"));
+    }
+
+    /** 重启时只删除缓存自己生成的文件, 共用目录时别人的文件不会被删 */
+    @Test
+    public void startupKeepsOtherFiles() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.export("csv", "daily", titleMap(), null, null, data(new AtomicInteger(), 10), response);
+        File other = new File(directory, "other.csv");
+        Files.write(other.toPath(), "x".getBytes(StandardCharsets.UTF_8));
+
+        ExportCacheService restart = new ExportCacheService();
+        ReflectionTestUtils.setField(restart, "directory", directory.getAbsolutePath());
+        ReflectionTestUtils.setField(restart, "maxSizeMb", 16L);
+        ReflectionTestUtils.setField(restart, "ttlMinutes", 10L);
+        restart.init();
+        restart.destroy();
+
+        File[] files = directory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        Assert.assertEquals(other, files[0]);
+    }
+}
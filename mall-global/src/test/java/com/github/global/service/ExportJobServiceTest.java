@@ -0,0 +1,200 @@
+package com.github.global.service;
+
+import com.github.common.exception.ServiceException;
+import com.github.common.export.ExportPage;
+import com.github.global.config.MonitoredTaskExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ExportJobServiceTest {
+
+    private ExportJobService service;
+    private MonitoredTaskExecutor executor;
+    private File directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("export-job-test").toFile();
+        // 一个线程, 排队一个, 满了就拒绝
+        executor = new MonitoredTaskExecutor("export-test", MonitoredTaskExecutor.Overflow.ABORT);
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.initialize();
+
+        service = new ExportJobService();
+        ReflectionTestUtils.setField(service, "directory", directory.getAbsolutePath());
+        ReflectionTestUtils.setField(service, "userLimit", 2);
+        ReflectionTestUtils.setField(service, "keepMinutes", 60);
+        ReflectionTestUtils.setField(service, "exportExecutor", executor);
+        service.init();
+    }
+
+    @After
+    public void clean() {
+        service.destroy();
+        executor.shutdown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static LinkedHashMap<String, String> titleMap() {
+        LinkedHashMap<String, String> titleMap = new LinkedHashMap<>();
+        titleMap.put("id", "编号");
+        titleMap.put("name", "名称");
+        return titleMap;
+    }
+
+    private static List<Map<String, Object>> rows(int from, int count) {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", i);
+            map.put("name", "name-" + i);
+            list.add(map);
+        }
+        return list;
+    }
+
+    private static ExportPage<Map<String, Object>> pages(int total) {
+        return (page, limit) -> rows((page - 1) * limit, Math.max(0, Math.min(limit, total - (page - 1) * limit)));
+    }
+
+    private static void waitDone(ExportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!job.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(job.isDone());
+    }
+
+    /** 排队 → 执行中(进度) → 完成, 每个用户的任务数有上限, 线程池满了直接拒绝 */
+    @Test
+    public void stateAndLimit() throws Exception {
+        CountDownLatch reached = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExportPage<Map<String, Object>> blocking = (page, limit) -> {
+            if (page == 2) {
+                reached.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rows(limit, 1);
+            }
+            return rows(0, limit);
+        };
+
+        ExportJob running = service.submit("a", "csv", "running", titleMap(), 4, 2, blocking);
+        Assert.assertTrue(reached.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(ExportJob.Status.Running, running.getStatus());
+        Assert.assertEquals(2, running.getRows());
+        Assert.assertEquals(50, running.getProgress());
+
+        // 列表按提交时间倒序, 错开一点
+        Thread.sleep(5);
+        ExportJob waiting = service.submit("a", "csv", "waiting", titleMap(), 0, 2, pages(3));
+        Assert.assertEquals(ExportJob.Status.Wait, waiting.getStatus());
+        Assert.assertEquals(0, waiting.getProgress());
+
+        // 同一个用户同时只能有 2 个
+        try {
+            service.submit("a", "csv", "over", titleMap(), 0, 2, pages(3));
+            Assert.fail();
+        } catch (ServiceException e) {
+            // ignore
+        }
+        // 线程池和队列都满了, 其他用户的任务被拒绝, 不会留下任务
+        try {
+            service.submit("b", "csv", "rejected", titleMap(), 0, 2, pages(3));
+            Assert.fail();
+        } catch (ServiceException e) {
+            Assert.assertTrue(e.getMessage().contains("太多"));
+        }
+        Assert.assertTrue(service.jobs("b").isEmpty());
+
+        release.countDown();
+        waitDone(running);
+        waitDone(waiting);
+        Assert.assertEquals(ExportJob.Status.Success, running.getStatus());
+        Assert.assertEquals(100, running.getProgress());
+        Assert.assertEquals(3, running.getRows());
+        Assert.assertTrue(running.getSize() > 0);
+        Assert.assertEquals(running.getSize(), new File(directory, running.storeKey()).length());
+        Assert.assertEquals(3, waiting.getRows());
+
+        Assert.assertEquals(Arrays.asList(waiting, running), service.jobs("a"));
+        Assert.assertSame(running, service.job("a", running.getId()));
+        Assert.assertNull(service.job("b", running.getId()));
+
+        // 完成后名额释放, 被拒绝的用户也没有占着名额
+        ExportJob again = service.submit("b", "csv", "again", titleMap(), 0, 2, pages(3));
+        waitDone(again);
+        Assert.assertEquals(ExportJob.Status.Success, again.getStatus());
+    }
+
+    /** 取数据出错时任务失败, 不留下文件, 名额释放 */
+    @Test
+    public void fail() throws Exception {
+        ExportJob job = service.submit("a", "csv", "fail", titleMap(), 0, 2, (page, limit) -> {
+            if (page == 2) {
+                throw new IllegalStateException("query error");
+            }
+            return rows(0, limit);
+        });
+        waitDone(job);
+        Assert.assertEquals(ExportJob.Status.Fail, job.getStatus());
+        Assert.assertEquals("query error", job.getError());
+        Assert.assertFalse(new File(directory, job.storeKey()).exists());
+
+        for (int i = 0; i < 2; i++) {
+            waitDone(service.submit("a", "csv", "ok", titleMap(), 0, 2, pages(1)));
+        }
+    }
+
+    /** 清理过期的任务和文件, 目录中不是任务生成的文件不动 */
+    @Test
+    public void cleanup() throws Exception {
+        ExportJob job = service.submit("a", "csv", "clean", titleMap(), 0, 2, pages(3));
+        waitDone(job);
+        File file = new File(directory, job.storeKey());
+        Assert.assertTrue(file.exists());
+
+        // 重启前留下的文件
+        long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+        File stale = new File(directory, "0123456789abcdef0123456789abcdef.csv");
+        File other = new File(directory, "other.txt");
+        Assert.assertTrue(stale.createNewFile());
+        Assert.assertTrue(other.createNewFile());
+        Assert.assertTrue(stale.setLastModified(old));
+        Assert.assertTrue(other.setLastModified(old));
+
+        service.clean();
+        Assert.assertSame(job, service.job("a", job.getId()));
+        Assert.assertTrue(file.exists());
+        Assert.assertFalse(stale.exists());
+        Assert.assertTrue(other.exists());
+
+        ReflectionTestUtils.setField(service, "keepMinutes", 0);
+        Thread.sleep(10);
+        service.clean();
+        Assert.assertNull(service.job("a", job.getId()));
+        Assert.assertFalse(file.exists());
+        Assert.assertTrue(other.exists());
+    }
+}
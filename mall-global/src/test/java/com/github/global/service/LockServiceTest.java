@@ -0,0 +1,211 @@
+package com.github.global.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LockServiceTest {
+
+    /** 用内存中的 map 代替 redis, 按脚本的内容模拟 获取、释放、续期 三个 lua 脚本 */
+    private static class MemoryRedisTemplate extends StringRedisTemplate {
+        /** key -> [值, 过期的时间点(毫秒)] */
+        private final Map<String, Object[]> values = new ConcurrentHashMap<>();
+        private final Map<String, Long> counters = new ConcurrentHashMap<>();
+        private final AtomicInteger published = new AtomicInteger();
+
+        private synchronized String get(String key) {
+            Object[] value = values.get(key);
+            if (value == null) {
+                return null;
+            }
+            if ((Long) value[1] <= System.currentTimeMillis()) {
+                values.remove(key);
+                return null;
+            }
+            return (String) value[0];
+        }
+        private synchronized long ttl(String key) {
+            return get(key) == null ? -2 : (Long) values.get(key)[1] - System.currentTimeMillis();
+        }
+        /** 模拟锁过期后被别人拿走 */
+        private synchronized void steal(String key, String value) {
+            values.put(key, new Object[] { value, System.currentTimeMillis() + 60000 });
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            String lua = script.getScriptAsString();
+            String key = keys.get(0);
+            String current = get(key);
+            if (lua.contains("'NX'")) {
+                if (current != null) {
+                    return (T) Long.valueOf(0);
+                }
+                values.put(key, new Object[] { args[0], System.currentTimeMillis() + Long.parseLong((String) args[1]) });
+                return (T) counters.merge(keys.get(1), 1L, Long::sum);
+            }
+            if (!args[0].equals(current)) {
+                return (T) Long.valueOf(0);
+            }
+            if (lua.contains("'del'")) {
+                values.remove(key);
+            } else if (lua.contains("'pexpire'")) {
+                values.put(key, new Object[] { current, System.currentTimeMillis() + Long.parseLong((String) args[1]) });
+            }
+            return (T) Long.valueOf(1);
+        }
+
+        /** 广播进程内缓存的失效消息 */
+        @Override
+        public List<Object> executePipelined(RedisCallback<?> action) {
+            published.incrementAndGet();
+            return Collections.emptyList();
+        }
+    }
+
+    private MemoryRedisTemplate redis;
+    private LockService lockService;
+
+    @Before
+    public void setup() {
+        redis = new MemoryRedisTemplate();
+        lockService = new LockService();
+        ReflectionTestUtils.setField(lockService, "stringRedisTemplate", redis);
+    }
+
+    @After
+    public void clean() {
+        lockService.destroy();
+    }
+
+    /** 和应用一样, 扫描到的 LockService 先于 redis 的自动配置注册, 依然能拿到自动配置的 StringRedisTemplate */
+    @Test
+    public void contextLoad() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .withUserConfiguration(LockService.class)
+                .run(context -> {
+                    Assert.assertNull(context.getStartupFailure());
+                    Assert.assertNotNull(context.getBean(LockService.class));
+                    Assert.assertSame(context.getBean(StringRedisTemplate.class),
+                            ReflectionTestUtils.getField(context.getBean(LockService.class), "stringRedisTemplate"));
+                });
+    }
+
+    @Test
+    public void acquireAndRelease() {
+        RedisLock lock = lockService.tryLock("k", 0, 10, TimeUnit.SECONDS);
+        Assert.assertNotNull(lock);
+        Assert.assertEquals(1, lock.getToken());
+        Assert.assertNull(lock.getRenewal());
+
+        // 已经被持有时拿不到
+        Assert.assertNull(lockService.tryLock("k", 0, 10, TimeUnit.SECONDS));
+        // 其他 key 不受影响
+        try (RedisLock other = lockService.tryLock("other", 0, 10, TimeUnit.SECONDS)) {
+            Assert.assertNotNull(other);
+        }
+
+        Assert.assertTrue(lock.unlock());
+        Assert.assertFalse(lock.unlock());
+        Assert.assertNull(redis.get("k"));
+
+        // 防护令牌单调递增
+        try (RedisLock again = lockService.tryLock("k", 0, 10, TimeUnit.SECONDS)) {
+            Assert.assertEquals(2, again.getToken());
+        }
+        Assert.assertNull(redis.get("k"));
+    }
+
+    /** 锁过期后被别人拿走, 旧的持有者释放时不会删掉别人的锁, 令牌也比别人的小 */
+    @Test
+    public void fencing() throws Exception {
+        RedisLock old = lockService.tryLock("k", 0, 50, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(old);
+
+        // 等待时间内锁过期了就能拿到
+        RedisLock current = lockService.tryLock("k", 2, 10, TimeUnit.SECONDS);
+        Assert.assertNotNull(current);
+        Assert.assertTrue(current.getToken() > old.getToken());
+
+        Assert.assertFalse(old.unlock());
+        Assert.assertEquals(current.getValue(), redis.get("k"));
+        Assert.assertTrue(current.unlock());
+    }
+
+    /** 看门狗续期, 锁已经不是自己的了就不再续期 */
+    @Test
+    public void renew() throws Exception {
+        RedisLock lock = lockService.tryLock("k", 0, TimeUnit.SECONDS);
+        Assert.assertNotNull(lock);
+        Assert.assertNotNull(lock.getRenewal());
+
+        Thread.sleep(100);
+        long before = redis.ttl("k");
+        lockService.renew(lock);
+        Assert.assertTrue(redis.ttl("k") > before);
+        Assert.assertNotNull(lock.getRenewal());
+
+        redis.steal("k", "someone-else");
+        lockService.renew(lock);
+        Assert.assertNull(lock.getRenewal());
+        Assert.assertFalse(lock.unlock());
+        Assert.assertEquals("someone-else", redis.get("k"));
+    }
+
+    /** 释放时停掉看门狗 */
+    @Test
+    public void releaseStopsRenew() {
+        RedisLock lock = lockService.tryLock("k", 0, TimeUnit.SECONDS);
+        Assert.assertNotNull(lock);
+        Assert.assertTrue(lock.unlock());
+        Assert.assertNull(lock.getRenewal());
+        Assert.assertNull(redis.get("k"));
+    }
+
+    /** 脚本写了 redis 之后, 进程内缓存中的锁和令牌都失效 */
+    @Test
+    public void nearInvalidate() {
+        NearCache nearCache = new NearCache(100, 60);
+        CacheService cacheService = new CacheService();
+        ReflectionTestUtils.setField(cacheService, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(cacheService, "nearCache", nearCache);
+        ReflectionTestUtils.setField(lockService, "cacheService", cacheService);
+
+        nearCache.put("k", "stale", 0);
+        nearCache.put("k:fence", "0", 0);
+        RedisLock lock = lockService.tryLock("k", 0, 10, TimeUnit.SECONDS);
+        Assert.assertNotNull(lock);
+        Assert.assertNull(nearCache.get("k"));
+        Assert.assertNull(nearCache.get("k:fence"));
+        Assert.assertEquals(1, redis.published.get());
+
+        // 没有拿到锁时没有写 redis, 不用广播
+        Assert.assertNull(lockService.tryLock("k", 0, 10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, redis.published.get());
+
+        lockService.renew(lock);
+        Assert.assertEquals(2, redis.published.get());
+
+        nearCache.put("k", lock.getValue(), 0);
+        Assert.assertTrue(lock.unlock());
+        Assert.assertNull(nearCache.get("k"));
+        Assert.assertEquals(3, redis.published.get());
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.global.service;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class MybatisCacheTest {
+
+    private static final String PRODUCT = "com.github.product.repository.ProductMapper";
+
+    @BeforeClass
+    public static void setup() {
+        // 没有 redis, 只使用本地缓存
+        MybatisCacheContext.setup(null, null);
+    }
+
+    /** 和 mybatis 的 CachingExecutor 生成 key 的方式一致 */
+    private static CacheKey key(String statementId, String sql, Object... params) {
+        CacheKey key = new CacheKey();
+        key.update(statementId);
+        key.update(0);
+        key.update(Integer.MAX_VALUE);
+        key.update(sql);
+        for (Object param : params) {
+            key.update(param);
+        }
+        key.update("default");
+        return key;
+    }
+
+    @Test
+    public void tags() {
+        Assert.assertEquals(Arrays.asList("t_product", "t_category"), new ArrayList<>(MybatisCacheContext.readTags(
+                PRODUCT + ".selectWithCategory",
+                "select p.* from `t_product` p left join t_category c on p.category_id = c.id where p.id = ?")));
+        Assert.assertEquals(Arrays.asList("t_product"), new ArrayList<>(MybatisCacheContext.writeTags(
+                PRODUCT + ".updateByPrimaryKey", "  UPDATE t_product SET name = ? WHERE id = ?")));
+        Assert.assertEquals(Arrays.asList("t_product"), new ArrayList<>(MybatisCacheContext.writeTags(
+                PRODUCT + ".insert", "insert into mall.t_product (name) values (?)")));
+        Assert.assertEquals(Arrays.asList("t_category"), new ArrayList<>(MybatisCacheContext.writeTags(
+                PRODUCT + ".delete", "delete from t_category where id = ?")));
+
+        // from a, b 中后面的表, 以及前面的注释
+        Assert.assertEquals(Arrays.asList("t_product", "t_category", "t_sku"), new ArrayList<>(MybatisCacheContext.readTags(
+                PRODUCT + ".selectComma", "/* from t_comment */ select * from t_product p, t_category as c, "
+                        + "`mall`.`t_sku` where p.category_id = c.id")));
+        Assert.assertEquals("t_product", MybatisCacheContext.writeTable(
+                "/* 改名 */ -- 注释\n update t_product p set p.name = ? where p.id = ?"));
+        Assert.assertEquals("t_product", MybatisCacheContext.writeTable("delete from t_product"));
+        // 多表的写认不出来, 要清空整个命名空间
+        Assert.assertNull(MybatisCacheContext.writeTable(
+                "update t_product p join t_category c on p.category_id = c.id set p.name = c.name"));
+        Assert.assertNull(MybatisCacheContext.writeTable("update t_product p, t_category c set p.name = c.name"));
+        Assert.assertNull(MybatisCacheContext.writeTable("delete p from t_product p join t_category c on p.id = c.id"));
+        Assert.assertNull(MybatisCacheContext.writeTable("delete from t_product using t_product, t_category"));
+    }
+
+    private static Invocation invocation(Executor executor, String method, Object... args) throws Exception {
+        Class<?>[] types = "update".equals(method)
+                ? new Class<?>[] { MappedStatement.class, Object.class } : new Class<?>[] { boolean.class };
+        return new Invocation(executor, Executor.class.getMethod(method, types), args);
+    }
+
+    @Test
+    public void namespaceFallbackAfterCommit() throws Throwable {
+        String order = "com.github.order.repository.OrderMapper";
+        MybatisCache cache = new MybatisCache(order);
+        CacheKey key = key(order + ".selectByPrimaryKey", "select * from t_order where id = ?", 1L);
+        List<String> orderList = new ArrayList<>(Arrays.asList("o1"));
+        cache.putObject(key, orderList);
+
+        Configuration configuration = new Configuration();
+        MappedStatement ms = new MappedStatement.Builder(configuration, order + ".updateUserName", new StaticSqlSource(
+                configuration, "update t_order o join t_user u on o.user_id = u.id set o.user_name = u.name"),
+                SqlCommandType.UPDATE).cache(cache).build();
+        Executor executor = Mockito.mock(Executor.class);
+        MybatisCacheInterceptor interceptor = new MybatisCacheInterceptor();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // 认不出写的表, 清空整个命名空间
+            interceptor.intercept(invocation(executor, "update", ms, null));
+            Assert.assertNull(cache.getObject(key));
+
+            // 数据库提交前被别的查询放回了旧数据. mybatis 的 commit 在 spring 的 beforeCommit 中, 这时还不能算提交
+            cache.putObject(key, orderList);
+            interceptor.intercept(invocation(executor, "commit", true));
+            Assert.assertNotNull(cache.getObject(key));
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            Assert.assertNull(cache.getObject(key));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void invalidateByTable() {
+        MybatisCache cache = new MybatisCache(PRODUCT);
+        CacheKey productKey = key(PRODUCT + ".selectByPrimaryKey", "select * from t_product where id = ?", 1L);
+        CacheKey categoryKey = key(PRODUCT + ".selectCategory", "select * from t_category where id = ?", 2L);
+
+        List<String> productList = new ArrayList<>(Arrays.asList("p1", "p2"));
+        cache.putObject(productKey, productList);
+        cache.putObject(categoryKey, new ArrayList<>(Arrays.asList("c1")));
+
+        Object cached = cache.getObject(productKey);
+        Assert.assertEquals(productList, cached);
+        // 存的是序列化后的字节, 每次读到的都是新对象
+        Assert.assertNotSame(productList, cached);
+        Assert.assertNull(cache.getObject(key(PRODUCT + ".selectByPrimaryKey", "select * from t_product where id = ?", 3L)));
+
+        // 写 t_product 只失效用到 t_product 的缓存
+        MybatisCacheContext.invalidate(MybatisCacheContext.writeTags(PRODUCT + ".updateByPrimaryKey",
+                "update t_product set name = ? where id = ?"));
+        Assert.assertNull(cache.getObject(productKey));
+        Assert.assertNotNull(cache.getObject(categoryKey));
+
+        Map<String, Object> stats = null;
+        for (Map<String, Object> map : MybatisCacheContext.stats()) {
+            if ((PRODUCT + ".selectByPrimaryKey").equals(map.get("statement"))) {
+                stats = map;
+            }
+        }
+        Assert.assertNotNull(stats);
+        Assert.assertEquals(3L, stats.get("total"));
+        Assert.assertEquals(1L, stats.get("local_hit"));
+        Assert.assertEquals(2L, stats.get("miss"));
+    }
+
+    @Test
+    public void clearWithoutInterceptor() {
+        MybatisCache cache = new MybatisCache(PRODUCT + "Ext");
+        CacheKey key = key(PRODUCT + "Ext.selectAll", "select * from t_sku");
+        cache.putObject(key, new ArrayList<>(Arrays.asList("s1")));
+        Assert.assertNotNull(cache.getObject(key));
+
+        // 没有装拦截器时, mybatis 的清空依然清空整个命名空间
+        cache.clear();
+        Assert.assertNull(cache.getObject(key));
+    }
+}
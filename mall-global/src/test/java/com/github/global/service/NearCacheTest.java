@@ -0,0 +1,85 @@
+package com.github.global.service;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class NearCacheTest {
+
+    /** 手动拨动的时钟 */
+    private static class ManualTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+        private void advance(long time, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(time));
+        }
+    }
+
+    /** 本地的存活时间不超过 redis 中的过期时间 */
+    @Test
+    public void ttlCappedByRedis() {
+        ManualTicker ticker = new ManualTicker();
+        NearCache cache = new NearCache(100, 60, ticker);
+
+        cache.put("short", "a", 2000);
+        cache.put("forever", "b", 0);
+        Assert.assertEquals("a", cache.get("short"));
+
+        ticker.advance(2, TimeUnit.SECONDS);
+        Assert.assertNull(cache.get("short"));
+        Assert.assertEquals("b", cache.get("forever"));
+
+        // redis 中的过期时间比本地的长, 以本地的为准
+        cache.put("long", "c", TimeUnit.HOURS.toMillis(1));
+        ticker.advance(60, TimeUnit.SECONDS);
+        Assert.assertNull(cache.get("long"));
+        Assert.assertNull(cache.get("forever"));
+
+        // 从 redis 读到的值也按剩余的过期时间
+        long generation = cache.generation("read");
+        Assert.assertTrue(cache.putIfGeneration("read", "d", generation, 500));
+        Assert.assertEquals("d", cache.get("read"));
+        ticker.advance(500, TimeUnit.MILLISECONDS);
+        Assert.assertNull(cache.get("read"));
+    }
+
+    /** 读 redis 的期间 key 被写入或删除过, 读到的旧值不放进本地 */
+    @Test
+    public void staleRead() {
+        NearCache cache = new NearCache(100, 60);
+
+        long generation = cache.generation("k");
+        // 读 redis 的期间收到了其他节点的失效消息
+        cache.onInvalidateMessage("other-node|k");
+        Assert.assertFalse(cache.putIfGeneration("k", "old", generation, 0));
+        Assert.assertNull(cache.get("k"));
+
+        // 读 redis 的期间本节点写入了新值, 新值不会被旧值覆盖
+        generation = cache.generation("k");
+        cache.put("k", "new", 0);
+        Assert.assertFalse(cache.putIfGeneration("k", "old", generation, 0));
+        Assert.assertEquals("new", cache.get("k"));
+
+        // 自己发出的失效消息不处理
+        generation = cache.generation("k");
+        cache.onInvalidateMessage(cache.invalidateMessage("k"));
+        Assert.assertEquals("new", cache.get("k"));
+        cache.remove("k");
+        Assert.assertTrue(cache.generation("k") != generation);
+
+        generation = cache.generation("k");
+        Assert.assertTrue(cache.putIfGeneration("k", "v", generation, 0));
+        Assert.assertEquals("v", cache.get("k"));
+
+        generation = cache.generation("k");
+        cache.clear();
+        Assert.assertFalse(cache.putIfGeneration("k", "v", generation, 0));
+    }
+}
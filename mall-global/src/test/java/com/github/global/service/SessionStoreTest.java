@@ -0,0 +1,206 @@
+package com.github.global.service;
+
+import org.junit.*;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionStoreTest {
+
+    /** 用内存中的 map 代替 redis, 并记下访问次数 */
+    private static class MemoryCacheService extends CacheService {
+        private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<>();
+        private final AtomicInteger reads = new AtomicInteger();
+        private final AtomicInteger touches = new AtomicInteger();
+
+        @Override
+        public byte[] hashGet(String key, String field) {
+            reads.incrementAndGet();
+            Map<String, byte[]> hash = hashes.get(key);
+            return hash == null ? null : hash.get(field);
+        }
+        @Override
+        public void hashSet(String key, String field, byte[] value, long seconds) {
+            hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(field, value);
+        }
+        @Override
+        public void hashDelete(String key, String field) {
+            Map<String, byte[]> hash = hashes.get(key);
+            if (hash != null) {
+                hash.remove(field);
+            }
+        }
+        @Override
+        public boolean exists(String key) {
+            return hashes.containsKey(key);
+        }
+        @Override
+        public void delete(String key) {
+            hashes.remove(key);
+        }
+        @Override
+        public long touchIfExists(Collection<String> keys, String field, String value, long seconds) {
+            long count = 0;
+            for (String key : keys) {
+                Map<String, byte[]> hash = hashes.get(key);
+                if (hash != null) {
+                    hash.put(field, value.getBytes());
+                    count++;
+                }
+            }
+            touches.addAndGet((int) count);
+            return count;
+        }
+    }
+
+    private MemoryCacheService cacheService;
+    private SessionStore store;
+
+    @Before
+    public void setup() {
+        cacheService = new MemoryCacheService();
+        store = new SessionStore();
+        ReflectionTestUtils.setField(store, "cacheService", cacheService);
+        ReflectionTestUtils.setField(store, "timeoutMinutes", 30L);
+        ReflectionTestUtils.setField(store, "localSeconds", 60L);
+        ReflectionTestUtils.setField(store, "localMaxSize", 1000L);
+        ReflectionTestUtils.setField(store, "touchSeconds", 3600L);
+        ReflectionTestUtils.setField(store, "cookieName", "SID");
+        store.init();
+    }
+
+    @After
+    public void clean() {
+        store.destroy();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /** 和应用一样, 扫描到的类先于 redis 的自动配置注册, 开启后 SessionStore 和 CacheService 都能装配上 */
+    @Test
+    public void contextLoad() {
+        ApplicationContextRunner runner = new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .withUserConfiguration(CacheService.class, SessionStore.class);
+
+        runner.withPropertyValues("session.store.enable=true").run(context -> {
+            Assert.assertNull(context.getStartupFailure());
+            SessionStore sessionStore = context.getBean(SessionStore.class);
+            Assert.assertSame(context.getBean(CacheService.class),
+                    ReflectionTestUtils.getField(sessionStore, "cacheService"));
+        });
+        // 没有开启时不注册, session 工具类继续用 HttpSession
+        runner.run(context -> {
+            Assert.assertNull(context.getStartupFailure());
+            Assert.assertTrue(context.getBeansOfType(SessionStore.class).isEmpty());
+            Assert.assertEquals(1, context.getBeansOfType(CacheService.class).size());
+        });
+    }
+
+    /** 模拟一次新请求, 带上之前的 session id */
+    private MockHttpServletResponse bind(String id) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (id != null) {
+            request.setCookies(new Cookie("SID", id));
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        return response;
+    }
+
+    @Test
+    public void createAndRead() {
+        MockHttpServletResponse response = bind(null);
+        Assert.assertEquals("", store.sessionId(false));
+        Assert.assertNull(store.getAttribute("user", SessionStore.STRING));
+
+        store.setAttribute("user", "abc", SessionStore.STRING);
+        Cookie cookie = response.getCookie("SID");
+        Assert.assertNotNull(cookie);
+        Assert.assertTrue(cookie.isHttpOnly());
+        String id = cookie.getValue();
+        Assert.assertEquals(32, id.length());
+
+        // 之后的请求走进程内缓存, 不再读 redis
+        int reads = cacheService.reads.get();
+        for (int i = 0; i < 10; i++) {
+            bind(id);
+            Assert.assertEquals("abc", store.getAttribute("user", SessionStore.STRING));
+        }
+        Assert.assertEquals(reads, cacheService.reads.get());
+
+        // 别的节点写入的值, 读 fresh 时马上能看到
+        cacheService.hashSet("session:" + id, "user", new byte[] { 0, 3, 'x', 'y', 'z' }, 60);
+        Assert.assertEquals("abc", store.getAttribute("user", SessionStore.STRING));
+        Assert.assertEquals("xyz", store.getAttributeFresh("user", SessionStore.STRING));
+
+        // 不认识的 id 不会拿去查 redis
+        bind("../../etc");
+        Assert.assertEquals("", store.sessionId(false));
+        Assert.assertNull(store.getAttribute("user", SessionStore.STRING));
+    }
+
+    @Test
+    public void invalidateAndTouch() {
+        MockHttpServletResponse response = bind(null);
+        store.setAttribute("user", "abc", SessionStore.STRING);
+        String id = response.getCookie("SID").getValue();
+
+        bind(id);
+        store.getAttribute("user", SessionStore.STRING);
+        store.touch();
+        Assert.assertEquals(1, cacheService.touches.get());
+        // 没有新的访问时不会续期
+        store.touch();
+        Assert.assertEquals(1, cacheService.touches.get());
+
+        response = bind(id);
+        store.invalidate();
+        Assert.assertEquals(0, response.getCookie("SID").getMaxAge());
+        Assert.assertNull(store.getAttribute("user", SessionStore.STRING));
+
+        bind(id);
+        Assert.assertNull(store.getAttribute("user", SessionStore.STRING));
+        store.touch();
+        Assert.assertEquals(1, cacheService.touches.get());
+    }
+
+    /** 请求带过来的、redis 中没有的 id 不能拿来写入, 登录时换新的 id */
+    @Test
+    public void fixation() {
+        String planted = "0123456789abcdef0123456789abcdef";
+        MockHttpServletResponse response = bind(planted);
+        store.setAttribute("code", "1234", SessionStore.STRING);
+        String id = response.getCookie("SID").getValue();
+        Assert.assertNotEquals(planted, id);
+        Assert.assertFalse(cacheService.exists("session:" + planted));
+
+        // 已经存在的 id 可以继续用
+        response = bind(id);
+        store.setAttribute("code", "5678", SessionStore.STRING);
+        Assert.assertNull(response.getCookie("SID"));
+
+        // 登录: 旧的 session 删掉, 换新的 id
+        response = bind(id);
+        String renew = store.renew();
+        store.setAttribute("user", "abc", SessionStore.STRING);
+        Assert.assertNotEquals(id, renew);
+        Assert.assertEquals(renew, response.getCookie("SID").getValue());
+        Assert.assertFalse(cacheService.exists("session:" + id));
+
+        bind(id);
+        Assert.assertNull(store.getAttribute("user", SessionStore.STRING));
+        bind(renew);
+        Assert.assertEquals("abc", store.getAttribute("user", SessionStore.STRING));
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.global.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class SmsDispatcherTest {
+
+    private File walDir;
+
+    @Before
+    public void before() throws Exception {
+        walDir = Files.createTempDirectory("sms-wal").toFile();
+    }
+
+    @After
+    public void after() {
+        File[] files = walDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        walDir.delete();
+    }
+
+    private static void waitUntil(long timeoutMs, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void batch() throws Exception {
+        LocalSmsProvider provider = new LocalSmsProvider(100, 100000);
+        SmsDispatcher dispatcher = new SmsDispatcher(Collections.singletonList(provider),
+                walDir, false, 10000, 50, 3, 10);
+        dispatcher.start();
+
+        int count = 1000;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            Assert.assertTrue(dispatcher.send("1380000" + i, "验证码: " + i));
+        }
+        waitUntil(5000, () -> provider.getSentCount() == count);
+        System.out.printf("send %d sms with %d batch in %d ms%n",
+                provider.getSentCount(), provider.getBatchCount(), System.currentTimeMillis() - start);
+        System.out.println(dispatcher.stats());
+        dispatcher.close();
+
+        Assert.assertEquals(count, provider.getSentCount());
+        // 一批 100 条, 等待凑批时偶尔会有不满的
+        Assert.assertTrue(provider.getBatchCount() < count / 10 * 2);
+    }
+
+    @Test
+    public void rateLimit() throws Exception {
+        LocalSmsProvider provider = new LocalSmsProvider(10, 100);
+        SmsDispatcher dispatcher = new SmsDispatcher(Collections.singletonList(provider),
+                walDir, false, 10000, 10, 3, 10);
+        dispatcher.start();
+
+        int count = 300;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            dispatcher.send("1380000" + i, "通知: " + i);
+        }
+        waitUntil(10000, () -> provider.getSentCount() == count);
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.printf("send %d sms at 100/s in %d ms%n", provider.getSentCount(), elapsed);
+        dispatcher.close();
+
+        Assert.assertEquals(count, provider.getSentCount());
+        // 每秒 100 条, 300 条至少要 2 秒左右(第一批不用等)
+        Assert.assertTrue(elapsed >= 1800);
+    }
+
+    @Test
+    public void retry() throws Exception {
+        AtomicInteger fail = new AtomicInteger(2);
+        AtomicInteger sent = new AtomicInteger();
+        SmsProvider provider = new SmsProvider() {
+            @Override
+            public String name() {
+                return "flaky";
+            }
+            @Override
+            public void send(List<SmsMessage> messages) {
+                if (fail.getAndDecrement() > 0) {
+                    throw new RuntimeException("provider unavailable");
+                }
+                sent.addAndGet(messages.size());
+            }
+        };
+        SmsDispatcher dispatcher = new SmsDispatcher(Collections.singletonList(provider),
+                walDir, false, 100, 10, 3, 10);
+        dispatcher.start();
+        dispatcher.send("13800000000", "retry");
+        waitUntil(5000, () -> sent.get() == 1);
+        dispatcher.close();
+
+        Assert.assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void recover() throws Exception {
+        SmsProvider down = new SmsProvider() {
+            @Override
+            public String name() {
+                return "local";
+            }
+            @Override
+            public void send(List<SmsMessage> messages) {
+                throw new RuntimeException("provider down");
+            }
+        };
+        // 退避时间很长, 关闭时消息都还没有发出去
+        SmsDispatcher dispatcher = new SmsDispatcher(Collections.singletonList(down),
+                walDir, true, 100, 10, 5, 60000);
+        dispatcher.start();
+        for (int i = 0; i < 10; i++) {
+            dispatcher.send("1380000000" + i, "wal-" + i);
+        }
+        Thread.sleep(200);
+        dispatcher.close();
+
+        // 重启后换成可用的服务商, 上次没发出去的重新发送
+        LocalSmsProvider provider = new LocalSmsProvider();
+        SmsDispatcher restart = new SmsDispatcher(Collections.singletonList(provider),
+                walDir, true, 100, 10, 5, 10);
+        restart.start();
+        waitUntil(5000, () -> provider.getSentCount() == 10);
+        restart.close();
+
+        Assert.assertEquals(10, provider.getSentCount());
+    }
+
+    /** 两个进程用了同一个目录时, 后启动的失败, 不会重发对方的消息 */
+    @Test
+    public void walLocked() throws Exception {
+        SmsDispatcher first = new SmsDispatcher(Collections.singletonList(new LocalSmsProvider()),
+                walDir, false, 100, 50, 3, 10);
+        first.start();
+        try {
+            SmsDispatcher second = new SmsDispatcher(Collections.singletonList(new LocalSmsProvider()),
+                    walDir, false, 100, 50, 3, 10);
+            try {
+                second.start();
+                Assert.fail("wal should be locked");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().contains("another process"));
+            }
+        } finally {
+            first.close();
+        }
+    }
+}
@@ -2,12 +2,14 @@ package com.github.product.config;
 
 import com.alibaba.druid.pool.DruidDataSource;
 import com.github.common.Const;
+import com.github.global.service.MybatisCacheInterceptor;
 import com.github.liuanxin.page.PageInterceptor;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.cache.annotation.EnableCaching;
@@ -28,6 +30,10 @@ import javax.sql.DataSource;
 @MapperScan(basePackages = Const.BASE_PACKAGE)
 public class ProductDataSourceInit {
 
+    /** 开启了 mybatis.cache.enable 时才有, 写语句之后按表失效二级缓存 */
+    @Autowired(required = false)
+    private MybatisCacheInterceptor mybatisCacheInterceptor;
+
     /** mybatis 的分页插件 */
     private Interceptor mybatisPage() {
         return new PageInterceptor("mysql");
@@ -55,7 +61,9 @@ public class ProductDataSourceInit {
         // 装载 typeHandler 实现
         sessionFactory.setTypeHandlers(ProductConfigData.HANDLER_ARRAY);
         // 插件
-        sessionFactory.setPlugins(new Interceptor[] { mybatisPage() });
+        sessionFactory.setPlugins(mybatisCacheInterceptor == null
+                ? new Interceptor[] { mybatisPage() }
+                : new Interceptor[] { mybatisPage(), mybatisCacheInterceptor });
         return sessionFactory.getObject();
     }
 
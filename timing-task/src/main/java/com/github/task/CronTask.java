@@ -4,9 +4,14 @@ import com.alibaba.dubbo.config.annotation.Reference;
 import com.github.common.Const;
 import com.github.common.service.CommonService;
 import com.github.common.util.LogUtil;
+import com.github.global.service.LockService;
+import com.github.global.service.RedisLock;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeUnit;
+
 /** 定时任务 --> 示例 */
 @Component
 public class CronTask {
@@ -15,6 +20,11 @@ public class CronTask {
     private static final String BUSINESS_DESC = "取消订单";
     /** 当前任务的表达式 */
     private static final String CRON = "0 */1 * * * *";
+    /** 部署了多个实例时, 同一时间只让一个实例执行 */
+    private static final String LOCK_KEY = "task:order-cancel";
+
+    @Autowired
+    private LockService lockService;
 
     @Reference(version = Const.DUBBO_VERSION, lazy = true, check = false, timeout = Const.DUBBO_TIMEOUT)
     private CommonService commonService;
@@ -23,8 +33,15 @@ public class CronTask {
     @Scheduled(cron = CRON)
     public void cancelOrder() {
         LogUtil.recordTime();
-        try {
-            handlerBusiness();
+        // 不等待, 没有获取到锁说明其他实例正在执行, 跳过这一次
+        try (RedisLock lock = lockService.tryLock(LOCK_KEY, 0, TimeUnit.SECONDS)) {
+            if (lock == null) {
+                if (LogUtil.ROOT_LOG.isDebugEnabled()) {
+                    LogUtil.ROOT_LOG.debug("{}正在其他实例中执行", BUSINESS_DESC);
+                }
+                return;
+            }
+            handlerBusiness(lock.getToken());
         } catch (Exception e) {
             if (LogUtil.ROOT_LOG.isErrorEnabled()) {
                 LogUtil.ROOT_LOG.error(String.format("%s时异常", BUSINESS_DESC), e);
@@ -34,9 +51,9 @@ public class CronTask {
         }
     }
 
-    /** 操作具体的业务 */
-    private void handlerBusiness() {
-        // int cancelCount = commonService.xxx();
+    /** 操作具体的业务, 防护令牌随更新一起提交, 锁过期后旧的执行者不能再写入 */
+    private void handlerBusiness(long token) {
+        // int cancelCount = commonService.xxx(token);
         // if (LogUtil.ROOT_LOG.isInfoEnabled()) {
         //     LogUtil.ROOT_LOG.info("{}时共操作了 {} 笔订单", BUSINESS_DESC, cancelCount);
         // }
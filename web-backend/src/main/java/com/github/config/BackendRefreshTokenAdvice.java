@@ -0,0 +1,43 @@
+package com.github.config;
+
+import com.github.common.Const;
+import com.github.common.mvc.AppTokenHandler;
+import com.github.common.util.U;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * token 用掉了有效期的一定比例后, 在响应头 {@link Const#REFRESH_TOKEN} 中返回新的 token, app 拿到后替换掉本地的.
+ *
+ * 在处理完请求、写响应体之前才生成: 退出登录的请求已经作废了 token, 这时不会再返回一个新的
+ */
+@ControllerAdvice
+public class BackendRefreshTokenAdvice implements ResponseBodyAdvice<Object> {
+
+    /** token 用掉了有效期的多少(0 ~ 1)时在响应头中返回新的 token, 默认一半, 大于等于 1 表示不处理 */
+    @Value("${token.refresh-fraction:0.5}")
+    private double refreshFraction;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return refreshFraction < 1;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        // 作废了的 token 从缓存中解析出来是空的, 不会生成新的
+        String token = AppTokenHandler.refreshToken(refreshFraction);
+        if (U.isNotBlank(token)) {
+            response.getHeaders().set(Const.REFRESH_TOKEN, token);
+        }
+        return body;
+    }
+}
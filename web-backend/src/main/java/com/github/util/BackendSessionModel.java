@@ -1,11 +1,15 @@
 package com.github.util;
 
 import com.github.common.json.JsonUtil;
+import com.github.global.service.SessionStore;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Objects;
 
@@ -20,6 +24,25 @@ class BackendSessionModel implements Serializable {
     private static final Long DEFAULT_ID = 0L;
     /** 默认未登录用户的 name */
     private static final String DEFAULT_NAME = "未登录用户";
+    /** 编码的版本, 字段有变化时加 1, 读到旧版本的数据当做没有登录 */
+    private static final byte CODEC_VERSION = 1;
+
+    /** 放进 session 存储时的二进制编码: 版本 + id + 用户名 */
+    static final SessionStore.Codec<BackendSessionModel> CODEC = new SessionStore.Codec<BackendSessionModel>() {
+        @Override
+        public void write(BackendSessionModel value, DataOutput out) throws IOException {
+            out.writeByte(CODEC_VERSION);
+            out.writeLong(value.id == null ? DEFAULT_ID : value.id);
+            out.writeUTF(value.name == null ? DEFAULT_NAME : value.name);
+        }
+        @Override
+        public BackendSessionModel read(DataInput in) throws IOException {
+            if (in.readByte() != CODEC_VERSION) {
+                return null;
+            }
+            return new BackendSessionModel().setId(in.readLong()).setName(in.readUTF());
+        }
+    };
 
 
     // ========== 存放在 session 中的数据 ==========
@@ -3,9 +3,13 @@ package com.github.util;
 import com.github.common.exception.NotLoginException;
 import com.github.common.json.JsonUtil;
 import com.github.common.mvc.AppTokenHandler;
+import com.github.common.util.ApplicationContexts;
 import com.github.common.util.LogUtil;
 import com.github.common.util.RequestUtils;
 import com.github.common.util.U;
+import com.github.global.service.SessionStore;
+
+import javax.servlet.http.HttpServletRequest;
 
 /** !!! 操作 session 都基于此, 其他地方不允许操作! 避免 session 被滥用 !!! */
 public class BackendSessionUtil {
@@ -14,12 +18,28 @@ public class BackendSessionUtil {
     private static final String CODE = BackendSessionUtil.class.getName() + "-CODE";
     /** 放在 session 里的用户 的 key */
     private static final String USER = BackendSessionUtil.class.getName() + "-USER";
+    /** 当前请求解析好的用户放在 request 里的 key, 一次请求只解析一次 token */
+    private static final String REQUEST_USER = BackendSessionUtil.class.getName() + "-REQUEST-USER";
+
+    /** 配置了 redis 时 session 放在 redis 中(多个节点共享), 否则使用 servlet 的 session */
+    private static SessionStore store() {
+        return ApplicationContexts.getBeanIfPresent(SessionStore.class);
+    }
+    private static String sessionId() {
+        SessionStore store = store();
+        return store == null ? RequestUtils.getSession().getId() : store.sessionId(false);
+    }
 
     /** 将图片验证码的值放入 session */
     public static void putImageCode(String code) {
-        RequestUtils.getSession().setAttribute(CODE, code);
+        SessionStore store = store();
+        if (store == null) {
+            RequestUtils.getSession().setAttribute(CODE, code);
+        } else {
+            store.setAttribute(CODE, code, SessionStore.STRING);
+        }
         if (LogUtil.ROOT_LOG.isDebugEnabled()) {
-            LogUtil.ROOT_LOG.debug("put image code({}) in session({})", code, RequestUtils.getSession().getId());
+            LogUtil.ROOT_LOG.debug("put image code({}) in session({})", code, sessionId());
         }
     }
     /** 验证图片验证码 */
@@ -28,7 +48,10 @@ public class BackendSessionUtil {
             return false;
         }
 
-        Object securityCode = RequestUtils.getSession().getAttribute(CODE);
+        SessionStore store = store();
+        // 验证码每次刷新都会变, 不使用进程内缓存
+        Object securityCode = (store == null)
+                ? RequestUtils.getSession().getAttribute(CODE) : store.getAttributeFresh(CODE, SessionStore.STRING);
         return securityCode != null && code.equalsIgnoreCase(securityCode.toString());
     }
 
@@ -37,11 +60,18 @@ public class BackendSessionUtil {
         if (U.isNotBlank(user)) {
             BackendSessionModel sessionModel = BackendSessionModel.assemblyData(user);
             if (U.isNotBlank(sessionModel)) {
+                SessionStore store = store();
+                if (store == null) {
+                    RequestUtils.getSession().setAttribute(USER, sessionModel);
+                } else {
+                    // 登录后换一个新的 session id, 登录前的 id 可能是别人塞进来的
+                    store.renew();
+                    store.setAttribute(USER, sessionModel, BackendSessionModel.CODEC);
+                }
                 if (LogUtil.ROOT_LOG.isDebugEnabled()) {
-                    LogUtil.ROOT_LOG.debug("put ({}) in session({})",
-                            JsonUtil.toJson(sessionModel), RequestUtils.getSession().getId());
+                    LogUtil.ROOT_LOG.debug("put ({}) in session({})", JsonUtil.toJson(sessionModel), sessionId());
                 }
-                RequestUtils.getSession().setAttribute(USER, sessionModel);
+                RequestUtils.getRequest().setAttribute(REQUEST_USER, sessionModel);
                 return AppTokenHandler.generateToken(sessionModel);
             }
         }
@@ -49,12 +79,29 @@ public class BackendSessionUtil {
     }
 
 
-    /** 获取用户信息. 没有则使用默认信息 */
+    /**
+     * 获取用户信息. 没有则使用默认信息.
+     * 拦截器、日志上下文、登录检查等在一次请求中会多次调用, 第一次解析(验签、解析 json)后放在 request 里, 之后直接用
+     */
     private static BackendSessionModel getSessionInfo() {
+        HttpServletRequest request = RequestUtils.getRequest();
+        Object resolved = request.getAttribute(REQUEST_USER);
+        if (resolved instanceof BackendSessionModel) {
+            return (BackendSessionModel) resolved;
+        }
+        BackendSessionModel sessionModel = resolveSessionInfo();
+        request.setAttribute(REQUEST_USER, sessionModel);
+        return sessionModel;
+    }
+
+    private static BackendSessionModel resolveSessionInfo() {
         // 从 token 中读, 为空再从 session 中读
         BackendSessionModel sessionModel = AppTokenHandler.getSessionInfoWithToken(BackendSessionModel.class);
         if (U.isBlank(sessionModel)) {
-            sessionModel = (BackendSessionModel) RequestUtils.getSession().getAttribute(USER);
+            SessionStore store = store();
+            sessionModel = (store == null)
+                    ? (BackendSessionModel) RequestUtils.getSession().getAttribute(USER)
+                    : store.getAttribute(USER, BackendSessionModel.CODEC);
         }
         // 为空则使用默认值
         return sessionModel == null ? BackendSessionModel.defaultUser() : sessionModel;
@@ -77,8 +124,15 @@ public class BackendSessionUtil {
         }
     }
 
-    /** 退出登录时调用. 清空 session */
+    /** 退出登录时调用. 清空 session 并作废 token */
     public static void signOut() {
-        RequestUtils.getSession().invalidate();
+        AppTokenHandler.revokeToken();
+        RequestUtils.getRequest().removeAttribute(REQUEST_USER);
+        SessionStore store = store();
+        if (store == null) {
+            RequestUtils.getSession().invalidate();
+        } else {
+            store.invalidate();
+        }
     }
 }
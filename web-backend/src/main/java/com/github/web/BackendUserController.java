@@ -1,5 +1,6 @@
 package com.github.web;
 
+import com.github.common.Const;
 import com.github.common.annotation.NeedLogin;
 import com.github.common.json.JsonResult;
 import com.github.common.mvc.AppTokenHandler;
@@ -16,7 +17,8 @@ import org.springframework.web.bind.annotation.RestController;
 public class BackendUserController {
 
     @NeedLogin
-    @ApiMethod(title = "刷新 token", develop = Develop.USER, desc = "每次打开 app 且本地有 token 值就请求此接口(pc 无视)")
+    @ApiMethod(title = "刷新 token", develop = Develop.USER, desc = "token 用掉一定比例(默认一半)的有效期后, 返回 json 的请求的响应头 " + Const.REFRESH_TOKEN
+            + " 中都会返回新的(退出登录的请求除外), 拿到就替换本地的, 不需要再请求此接口(pc 无视)")
     @GetMapping("/refresh-token")
     public JsonResult<String> index() {
         String refreshToken = AppTokenHandler.resetTokenExpireTime();
@@ -1,24 +1,21 @@
 package com.github.config;
 
-import com.github.common.annotation.NotNeedLogin;
-import com.github.common.annotation.NotNeedPermission;
+import com.github.common.mvc.HandlerAuth;
 import com.github.common.util.LogUtil;
 import com.github.common.util.RequestUtils;
 import com.github.util.ManagerSessionUtil;
-import com.google.common.collect.Lists;
-import org.springframework.core.annotation.AnnotationUtils;
+import com.google.common.collect.ImmutableSet;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.lang.annotation.Annotation;
-import java.util.List;
+import java.util.Set;
 
 public class ManagerInterceptor implements HandlerInterceptor {
 
-    private static final List<String> LET_IT_GO = Lists.newArrayList("/error");
+    private static final Set<String> LET_IT_GO = ImmutableSet.of("/error");
 
     private boolean online;
     ManagerInterceptor(boolean online) {
@@ -74,29 +71,22 @@ public class ManagerInterceptor implements HandlerInterceptor {
             return;
         }
 
-        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        HandlerAuth auth = HandlerAuth.of((HandlerMethod) handler);
 
         // 在不需要登录的 url 上标注 @NotNeedLogin
-        NotNeedLogin notNeedLogin = getAnnotation(handlerMethod, NotNeedLogin.class);
         // 标注了 NotNeedLogin 且 flag 为 true(默认就是 true)则表示当前的请求不需要验证登录
-        if (notNeedLogin != null && notNeedLogin.flag()) {
+        if (auth.isNotNeedLogin()) {
             return;
         }
         // 检查登录
         ManagerSessionUtil.checkLogin();
 
         // 在不需要验证权限的 url 上标注 @NotNeedPermission
-        NotNeedPermission notNeedPermission = getAnnotation(handlerMethod, NotNeedPermission.class);
         // 标注了 NotNeedPermission 且 flag 为 true(默认就是 true)则表示当前的请求不需要验证权限
-        if (notNeedPermission != null && notNeedPermission.flag()) {
+        if (auth.isNotNeedPermission()) {
             return;
         }
         // 检查权限
         ManagerSessionUtil.checkPermission();
     }
-    private <T extends Annotation> T getAnnotation(HandlerMethod handlerMethod, Class<T> clazz) {
-        // 先找方法上的注解, 没有再找类上的注解
-        T annotation = handlerMethod.getMethodAnnotation(clazz);
-        return annotation == null ? AnnotationUtils.findAnnotation(handlerMethod.getBeanType(), clazz) : annotation;
-    }
 }
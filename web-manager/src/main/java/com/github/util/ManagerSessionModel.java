@@ -3,11 +3,16 @@ package com.github.util;
 import com.github.common.json.JsonUtil;
 import com.github.common.util.A;
 import com.github.common.util.U;
+import com.github.global.service.SessionStore;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
@@ -27,6 +32,33 @@ class ManagerSessionModel implements Serializable {
     private static final List<String> SUPER_USER = Arrays.asList("admin", "root");
     /** 无值时的默认模型 */
     private static final ManagerSessionModel DEFAULT_MODEL = new ManagerSessionModel(DEFAULT_ID, DEFAULT_NAME);
+    /** 编码的版本, 字段有变化时加 1, 读到旧版本的数据当做没有登录 */
+    private static final byte CODEC_VERSION = 1;
+
+    /** 放进 session 存储时的二进制编码: 版本 + id + 用户名 + 是否有权限 + 编译好的权限 */
+    static final SessionStore.Codec<ManagerSessionModel> CODEC = new SessionStore.Codec<ManagerSessionModel>() {
+        @Override
+        public void write(ManagerSessionModel value, DataOutput out) throws IOException {
+            out.writeByte(CODEC_VERSION);
+            out.writeLong(value.id == null ? DEFAULT_ID : value.id);
+            out.writeUTF(value.userName == null ? DEFAULT_NAME : value.userName);
+            out.writeBoolean(value.permission != null);
+            if (value.permission != null) {
+                value.permission.write(out);
+            }
+        }
+        @Override
+        public ManagerSessionModel read(DataInput in) throws IOException {
+            if (in.readByte() != CODEC_VERSION) {
+                return null;
+            }
+            ManagerSessionModel model = new ManagerSessionModel(in.readLong(), in.readUTF());
+            if (in.readBoolean()) {
+                model.permission = PermissionMatcher.read(in);
+            }
+            return model;
+        }
+    };
 
 
     // ========== 存放在 session 中的数据 ==========
@@ -35,8 +67,10 @@ class ManagerSessionModel implements Serializable {
     private Long id;
     /** 用户名 */
     private String userName;
-    /** 权限列表 */
-    private List<Permission> permissionList;
+    /** 权限列表, 登录时编译好, 检查时不再逐条比较 */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private PermissionMatcher permission;
 
     // ========== 存放在 session 中的数据 ==========
 
@@ -75,25 +109,10 @@ class ManagerSessionModel implements Serializable {
     }
 
     private boolean wasPermission(String url, String method) {
-        if (A.isNotEmpty(permissionList)) {
-            for (Permission permission : permissionList) {
-                String permissionUrl = permission.getUrl();
-                String permissionMethod = permission.getMethod();
-
-                // 如果配置的 url 是 /user/*, 传进来的是 /user/info 也可以通过, 通配 或 全字
-                boolean matchUrl = permissionUrl.endsWith("/*") && url.startsWith(permissionUrl.replace("*", ""));
-                boolean urlCheck = matchUrl || url.equals(permissionUrl);
-
-                // 如果配置的 method 是 *, 传进来的是 GET 也可以通过, 通配 或 全字
-                boolean methodCheck = (("*").equals(permissionMethod) || permissionMethod.contains(method));
-
-                // url 和 method 都通过才表示有访问权限
-                if (urlCheck && methodCheck) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        // 如果配置的 url 是 /user/*, 传进来的是 /user/info 也可以通过, 通配 或 全字
+        // 如果配置的 method 是 *, 传进来的是 GET 也可以通过, 通配 或 全字
+        // url 和 method 都通过才表示有访问权限
+        return permission != null && permission.matches(url, method);
     }
     boolean notPermission(String url, String method) {
         return !wasPermission(url, method);
@@ -108,7 +127,11 @@ class ManagerSessionModel implements Serializable {
         if (U.isNotBlank(sessionModel)) {
             List<Permission> permissionList = JsonUtil.convertList(permissions, Permission.class);
             if (A.isNotEmpty(permissionList)) {
-                sessionModel.setPermissionList(permissionList);
+                PermissionMatcher.Builder builder = new PermissionMatcher.Builder();
+                for (Permission permission : permissionList) {
+                    builder.add(permission.getUrl(), permission.getMethod());
+                }
+                sessionModel.permission = builder.build();
             }
         }
         return sessionModel;
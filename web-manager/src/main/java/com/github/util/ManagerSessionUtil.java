@@ -3,9 +3,11 @@ package com.github.util;
 import com.github.common.exception.ForbiddenException;
 import com.github.common.exception.NotLoginException;
 import com.github.common.json.JsonUtil;
+import com.github.common.util.ApplicationContexts;
 import com.github.common.util.LogUtil;
 import com.github.common.util.RequestUtils;
 import com.github.common.util.U;
+import com.github.global.service.SessionStore;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
@@ -18,20 +20,37 @@ public class ManagerSessionUtil {
     /** 放在 session 里的用户 的 key */
     private static final String USER = ManagerSessionUtil.class.getName() + "-USER";
 
+    /** 配置了 redis 时 session 放在 redis 中(多个节点共享), 否则使用 servlet 的 session */
+    private static SessionStore store() {
+        return ApplicationContexts.getBeanIfPresent(SessionStore.class);
+    }
+    private static String sessionId() {
+        SessionStore store = store();
+        return store == null ? RequestUtils.getSession().getId() : store.sessionId(false);
+    }
+
     /** 验证图片验证码 */
     public static boolean checkImageCode(String code) {
         if (U.isBlank(code)) {
             return false;
         }
 
-        Object securityCode = RequestUtils.getSession().getAttribute(CODE);
+        SessionStore store = store();
+        // 验证码每次刷新都会变, 不使用进程内缓存
+        Object securityCode = (store == null)
+                ? RequestUtils.getSession().getAttribute(CODE) : store.getAttributeFresh(CODE, SessionStore.STRING);
         return securityCode != null && code.equalsIgnoreCase(securityCode.toString());
     }
     /** 将图片验证码的值放入 session */
     public static void putImageCode(String code) {
-        RequestUtils.getSession().setAttribute(CODE, code);
+        SessionStore store = store();
+        if (store == null) {
+            RequestUtils.getSession().setAttribute(CODE, code);
+        } else {
+            store.setAttribute(CODE, code, SessionStore.STRING);
+        }
         if (LogUtil.ROOT_LOG.isDebugEnabled()) {
-            LogUtil.ROOT_LOG.debug("put image code ({}) in session ({})", code, RequestUtils.getSession().getId());
+            LogUtil.ROOT_LOG.debug("put image code ({}) in session ({})", code, sessionId());
         }
     }
 
@@ -39,17 +58,26 @@ public class ManagerSessionUtil {
     public static <T,P> void whenLogin(T account, List<P> permissions) {
         ManagerSessionModel sessionModel = ManagerSessionModel.assemblyData(account, permissions);
         if (U.isNotBlank(sessionModel)) {
+            SessionStore store = store();
+            if (store == null) {
+                RequestUtils.getSession().setAttribute(USER, sessionModel);
+            } else {
+                // 登录后换一个新的 session id, 登录前的 id 可能是别人塞进来的
+                store.renew();
+                store.setAttribute(USER, sessionModel, ManagerSessionModel.CODEC);
+            }
             if (LogUtil.ROOT_LOG.isDebugEnabled()) {
-                LogUtil.ROOT_LOG.debug("put ({}) in session({})",
-                        JsonUtil.toJson(sessionModel), RequestUtils.getSession().getId());
+                LogUtil.ROOT_LOG.debug("put ({}) in session({})", JsonUtil.toJson(sessionModel), sessionId());
             }
-            RequestUtils.getSession().setAttribute(USER, sessionModel);
         }
     }
 
     /** 获取用户信息, 从 token 中获取, 没有则从 session 中获取 */
     private static ManagerSessionModel getSessionInfo() {
-        ManagerSessionModel sessionModel = (ManagerSessionModel) RequestUtils.getSession().getAttribute(USER);
+        SessionStore store = store();
+        ManagerSessionModel sessionModel = (store == null)
+                ? (ManagerSessionModel) RequestUtils.getSession().getAttribute(USER)
+                : store.getAttribute(USER, ManagerSessionModel.CODEC);
         return sessionModel == null ? ManagerSessionModel.defaultUser() : sessionModel;
     }
 
@@ -87,6 +115,11 @@ public class ManagerSessionUtil {
 
     /** 退出登录时调用. 清空 session */
     public static void signOut() {
-        RequestUtils.getSession().invalidate();
+        SessionStore store = store();
+        if (store == null) {
+            RequestUtils.getSession().invalidate();
+        } else {
+            store.invalidate();
+        }
     }
 }
@@ -0,0 +1,225 @@
+package com.github.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <pre>
+ * 登录时把权限列表编译成按 / 分段的路径树, 每个节点上用位掩码记录允许的方法.
+ *
+ * 规则和之前逐条比较时一样:
+ *   url 以 /* 结尾时, 去掉 * 之后是请求地址的前缀就算通过(/user/* 可以访问 /user/info), 否则要全字相等
+ *   method 是 * 时都可以通过, 否则包含请求的方法就算通过(GET,POST 可以访问 GET)
+ *
+ * 检查时沿着请求地址一段一段往下找, 次数和地址的层级有关, 和权限的条数无关, 过程中不产生新对象
+ * </pre>
+ */
+final class PermissionMatcher implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 可以识别的方法, 下标就是掩码中的位 */
+    private static final String[] METHODS = { "GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "OPTIONS", "TRACE" };
+    /** 其他不认识的方法, 只有配置成 * 时才可以通过 */
+    private static final int OTHER = 1 << METHODS.length;
+    /** 配置成 * 时 */
+    private static final int ALL = -1;
+
+    private static final class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** 子节点的路径段, 有序, 用来二分查找 */
+        private String[] segments = new String[0];
+        private Node[] children = new Node[0];
+        /** 地址正好到这个节点时允许的方法 */
+        private int exactMask;
+        /** 地址经过这个节点(后面还有 /)时允许的方法 */
+        private int prefixMask;
+
+        /** 查找 url 中 [start, end) 这一段对应的子节点 */
+        private Node child(String url, int start, int end) {
+            int low = 0, high = segments.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int compare = compare(segments[middle], url, start, end);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+    }
+
+    /** 和 segment.compareTo(url.substring(start, end)) 的结果一致, 但不截取字符串 */
+    private static int compare(String segment, String url, int start, int end) {
+        int length = end - start;
+        int min = Math.min(segment.length(), length);
+        for (int i = 0; i < min; i++) {
+            int diff = segment.charAt(i) - url.charAt(start + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return segment.length() - length;
+    }
+
+    private final Node root;
+
+    private PermissionMatcher(Node root) {
+        this.root = root;
+    }
+
+    /** 编译时用的树, 子节点放在 TreeMap 里, 最后转成有序数组 */
+    private static final class TreeNode {
+        private final Map<String, TreeNode> children = new TreeMap<>();
+        private int exactMask;
+        private int prefixMask;
+
+        private TreeNode child(String segment) {
+            return children.computeIfAbsent(segment, key -> new TreeNode());
+        }
+
+        private TreeNode walk(String url) {
+            TreeNode node = this;
+            int start = 0;
+            while (true) {
+                int end = url.indexOf('/', start);
+                if (end < 0) {
+                    return node.child(url.substring(start));
+                }
+                node = node.child(url.substring(start, end));
+                start = end + 1;
+            }
+        }
+
+        private Node build() {
+            Node node = new Node();
+            node.exactMask = exactMask;
+            node.prefixMask = prefixMask;
+            node.segments = children.keySet().toArray(new String[0]);
+            node.children = new Node[node.segments.length];
+            int i = 0;
+            for (TreeNode child : children.values()) {
+                node.children[i++] = child.build();
+            }
+            return node;
+        }
+    }
+
+    /** 登录时把权限一条条加进来, 最后编译 */
+    static final class Builder {
+        private final TreeNode root = new TreeNode();
+
+        Builder add(String url, String method) {
+            if (url != null && method != null) {
+                int mask = methodMask(method);
+                if (url.endsWith("/*")) {
+                    // 去掉 * 之后以 / 结尾, 通配记在最后一个 / 前面的那段上
+                    String prefix = url.replace("*", "");
+                    root.walk(prefix.substring(0, prefix.length() - 1)).prefixMask |= mask;
+                }
+                root.walk(url).exactMask |= mask;
+            }
+            return this;
+        }
+
+        PermissionMatcher build() {
+            return new PermissionMatcher(root.build());
+        }
+    }
+
+    /** 配置的方法转成掩码: * 是全部, 否则包含了哪个就有哪个 */
+    private static int methodMask(String method) {
+        if ("*".equals(method)) {
+            return ALL;
+        }
+        int mask = 0;
+        for (int i = 0; i < METHODS.length; i++) {
+            if (method.contains(METHODS[i])) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    private static int methodBit(String method) {
+        switch (method) {
+            case "GET": return 1;
+            case "HEAD": return 1 << 1;
+            case "POST": return 1 << 2;
+            case "PUT": return 1 << 3;
+            case "DELETE": return 1 << 4;
+            case "PATCH": return 1 << 5;
+            case "OPTIONS": return 1 << 6;
+            case "TRACE": return 1 << 7;
+            default: return OTHER;
+        }
+    }
+
+    /** 二进制编码: 每个节点依次写 两个掩码 + 子节点数, 再按顺序写每个子节点的 路径段 + 子节点 */
+    void write(DataOutput out) throws IOException {
+        write(root, out);
+    }
+    private static void write(Node node, DataOutput out) throws IOException {
+        out.writeInt(node.exactMask);
+        out.writeInt(node.prefixMask);
+        out.writeInt(node.segments.length);
+        for (int i = 0; i < node.segments.length; i++) {
+            out.writeUTF(node.segments[i]);
+            write(node.children[i], out);
+        }
+    }
+
+    /** 读取 {@link #write(DataOutput)} 写入的数据, 写入时就是有序的, 不用再排 */
+    static PermissionMatcher read(DataInput in) throws IOException {
+        return new PermissionMatcher(readNode(in));
+    }
+    private static Node readNode(DataInput in) throws IOException {
+        Node node = new Node();
+        node.exactMask = in.readInt();
+        node.prefixMask = in.readInt();
+        int size = in.readInt();
+        node.segments = new String[size];
+        node.children = new Node[size];
+        for (int i = 0; i < size; i++) {
+            node.segments[i] = in.readUTF();
+            node.children[i] = readNode(in);
+        }
+        return node;
+    }
+
+    /** 检查请求地址和方法是否有权限 */
+    boolean matches(String url, String method) {
+        if (url == null || method == null) {
+            return false;
+        }
+        int bit = methodBit(method);
+        int length = url.length();
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = url.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.child(url, start, end);
+            if (node == null) {
+                return false;
+            }
+            if (end == length) {
+                return (node.exactMask & bit) != 0;
+            }
+            if ((node.prefixMask & bit) != 0) {
+                return true;
+            }
+            start = end + 1;
+        }
+    }
+}
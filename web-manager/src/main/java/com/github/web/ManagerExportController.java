@@ -0,0 +1,44 @@
+package com.github.web;
+
+import com.github.common.json.JsonResult;
+import com.github.global.service.ExportJob;
+import com.github.global.service.ExportJobService;
+import com.github.liuanxin.api.annotation.ApiGroup;
+import com.github.liuanxin.api.annotation.ApiParam;
+import com.github.util.ManagerSessionUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+import static com.github.common.json.JsonResult.success;
+
+@ApiGroup({ "export-导出" })
+@RestController
+public class ManagerExportController {
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    @GetMapping("/export-jobs")
+    public JsonResult<List<ExportJob>> jobs() {
+        return success("导出任务列表", exportJobService.jobs(userId()));
+    }
+
+    @GetMapping("/export-job")
+    public JsonResult<ExportJob> job(@ApiParam("任务 id") String id) {
+        return success("导出任务", exportJobService.job(userId(), id));
+    }
+
+    @GetMapping("/export-job-download")
+    public void download(@ApiParam("任务 id") String id, HttpServletResponse response) throws IOException {
+        exportJobService.download(userId(), id, response);
+    }
+
+    private static String userId() {
+        return String.valueOf(ManagerSessionUtil.getUserId());
+    }
+}
@@ -2,14 +2,21 @@ package com.github.web;
 
 import com.alibaba.dubbo.config.annotation.Reference;
 import com.github.common.Const;
+import com.github.common.export.ExportPage;
+import com.github.common.export.FileExport;
 import com.github.common.json.JsonResult;
 import com.github.common.page.Page;
 import com.github.common.page.PageInfo;
+import com.github.global.service.ExportJob;
+import com.github.global.service.ExportJobService;
 import com.github.liuanxin.api.annotation.ApiGroup;
+import com.github.liuanxin.api.annotation.ApiParam;
 import com.github.product.constant.ProductConst;
 import com.github.product.model.DemoModel;
 import com.github.product.service.ProductExampleService;
+import com.github.util.ManagerSessionUtil;
 import com.github.vo.DemoVo;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -22,9 +29,20 @@ public class ManagerProductController {
     @Reference(version = Const.DUBBO_VERSION, lazy = true, check = false, timeout = Const.DUBBO_TIMEOUT)
     private ProductExampleService productExampleService;
 
+    @Autowired
+    private ExportJobService exportJobService;
+
     @GetMapping("/demo")
     public JsonResult<PageInfo<DemoVo>> demo(Page page) {
         PageInfo<DemoModel> productPage = productExampleService.demo(page);
         return success("demo", DemoVo.assemblyData(productPage));
     }
+
+    @GetMapping("/demo-export")
+    public JsonResult<ExportJob> demoExport(@ApiParam("文件类型: xls03、xls07、csv、arrow") String type) {
+        ExportJob job = exportJobService.submit(String.valueOf(ManagerSessionUtil.getUserId()), type, "demo",
+                FileExport.title(DemoModel.class), 0, ExportPage.DEFAULT_LIMIT, (page, size) ->
+                        productExampleService.demo(new Page(String.valueOf(page), String.valueOf(size))).getList());
+        return success("导出任务已提交, 完成后在导出任务中下载", job);
+    }
 }
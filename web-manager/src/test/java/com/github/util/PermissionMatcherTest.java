@@ -0,0 +1,150 @@
+package com.github.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PermissionMatcherTest {
+
+    private static final String[] METHODS = { "GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "PROPFIND" };
+    private static final int COUNT = 1000000;
+
+    /** 之前逐条比较的做法, 用来对照结果 */
+    private static boolean linear(List<String[]> permissions, String url, String method) {
+        for (String[] permission : permissions) {
+            String permissionUrl = permission[0];
+            String permissionMethod = permission[1];
+            boolean matchUrl = permissionUrl.endsWith("/*") && url.startsWith(permissionUrl.replace("*", ""));
+            boolean urlCheck = matchUrl || url.equals(permissionUrl);
+            boolean methodCheck = (("*").equals(permissionMethod) || permissionMethod.contains(method));
+            if (urlCheck && methodCheck) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PermissionMatcher compile(List<String[]> permissions) {
+        PermissionMatcher.Builder builder = new PermissionMatcher.Builder();
+        for (String[] permission : permissions) {
+            builder.add(permission[0], permission[1]);
+        }
+        return builder.build();
+    }
+
+    /** 1000 条权限: 模块/页面/操作, 有一部分是通配 */
+    private static List<String[]> permissions(Random random) {
+        List<String[]> permissions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String url = "/module" + (i % 20) + "/page" + (i % 50) + "/action" + i;
+            String method = (i % 3 == 0) ? "GET" : ((i % 3 == 1) ? "GET,POST" : "*");
+            if (random.nextInt(10) == 0) {
+                url = url.substring(0, url.lastIndexOf('/')) + "/*";
+            }
+            permissions.add(new String[] { url, method });
+        }
+        return permissions;
+    }
+
+    private static String url(Random random) {
+        int i = random.nextInt(1200);
+        String url = "/module" + (i % 20) + "/page" + (i % 50) + "/action" + i;
+        switch (random.nextInt(4)) {
+            case 0: return url + "/detail";
+            case 1: return url.substring(0, url.lastIndexOf('/') + 1);
+            default: return url;
+        }
+    }
+
+    @Test
+    public void sameAsLinear() {
+        List<String[]> permissions = new ArrayList<>();
+        permissions.add(new String[] { "/user/*", "GET" });
+        permissions.add(new String[] { "/order/list", "GET,POST" });
+        permissions.add(new String[] { "/order/*/detail", "*" });
+        permissions.add(new String[] { "/*", "HEAD" });
+        permissions.add(new String[] { "/a*b/*", "PUT" });
+        permissions.add(new String[] { "/product/", "DELETE" });
+        PermissionMatcher matcher = compile(permissions);
+
+        String[] urls = { "/user", "/user/", "/user/info", "/user/info/1", "/users/info", "/order/list", "/order/list/",
+                "/order/1/detail", "/order/*/detail", "/order/*/detail/x", "/x", "", "/ab/c", "/a*b/c", "/product/",
+                "/product", "user/info" };
+        for (String url : urls) {
+            for (String method : METHODS) {
+                Assert.assertEquals(url + " " + method, linear(permissions, url, method), matcher.matches(url, method));
+            }
+        }
+
+        Random random = new Random(1);
+        permissions = permissions(random);
+        matcher = compile(permissions);
+        for (int i = 0; i < 100000; i++) {
+            String url = url(random);
+            String method = METHODS[random.nextInt(METHODS.length)];
+            Assert.assertEquals(url + " " + method, linear(permissions, url, method), matcher.matches(url, method));
+        }
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        Random random = new Random(3);
+        PermissionMatcher matcher = compile(permissions(random));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        matcher.write(new DataOutputStream(bytes));
+        PermissionMatcher read = PermissionMatcher.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        for (int i = 0; i < 10000; i++) {
+            String url = url(random);
+            String method = METHODS[random.nextInt(METHODS.length)];
+            Assert.assertEquals(url + " " + method, matcher.matches(url, method), read.matches(url, method));
+        }
+    }
+
+    @Test
+    public void benchmark() {
+        Random random = new Random(2);
+        List<String[]> permissions = permissions(random);
+        PermissionMatcher matcher = compile(permissions);
+        String[] urls = new String[1024];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = url(random);
+        }
+
+        long sink = 0;
+        for (int loop = 0; loop < 3; loop++) {
+            sink += linear(permissions, urls) + matcher(matcher, urls);
+        }
+
+        long start = System.nanoTime();
+        sink += linear(permissions, urls);
+        long linear = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        sink += matcher(matcher, urls);
+        long matcherTime = System.nanoTime() - start;
+
+        System.out.printf("1000 permissions, linear: %.0f ns/check, matcher: %.0f ns/check (%s)%n",
+                (double) linear / (COUNT / 10), (double) matcherTime / COUNT, sink);
+    }
+
+    /** 逐条比较太慢, 只跑十分之一 */
+    private static long linear(List<String[]> permissions, String[] urls) {
+        long sum = 0;
+        for (int i = 0; i < COUNT / 10; i++) {
+            sum += linear(permissions, urls[i & (urls.length - 1)], "GET") ? 1 : 0;
+        }
+        return sum;
+    }
+
+    private static long matcher(PermissionMatcher matcher, String[] urls) {
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += matcher.matches(urls[i & (urls.length - 1)], "GET") ? 1 : 0;
+        }
+        return sum;
+    }
+}